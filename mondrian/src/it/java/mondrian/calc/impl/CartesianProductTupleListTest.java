@@ -0,0 +1,131 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package mondrian.calc.impl;
+
+import junit.framework.TestCase;
+import mondrian.calc.TupleCursor;
+import mondrian.calc.TupleList;
+import mondrian.olap.Member;
+import mondrian.olap.ResourceLimitExceededException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+public class CartesianProductTupleListTest extends TestCase {
+
+  private UnaryTupleList list0;
+  private ArrayTupleList list1;
+  private UnaryTupleList list2;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    list0 = new UnaryTupleList( members( 3 ) );
+    list1 = new ArrayTupleList( 2 );
+    for ( int i = 0; i < 4; i++ ) {
+      list1.addTuple( mock( Member.class ), mock( Member.class ) );
+    }
+    list2 = new UnaryTupleList( members( 5 ) );
+  }
+
+  public void testGetMatchesNestedLoops() {
+    final CartesianProductTupleList product =
+      new CartesianProductTupleList( Arrays.<TupleList>asList( list0, list1, list2 ) );
+    final List<List<Member>> expected = nestedLoops();
+    assertEquals( 4, product.getArity() );
+    assertEquals( expected.size(), product.size() );
+    for ( int i = 0; i < expected.size(); i++ ) {
+      assertEquals( expected.get( i ), product.get( i ) );
+      for ( int column = 0; column < 4; column++ ) {
+        assertSame( expected.get( i ).get( column ), product.get( column, i ) );
+        assertSame( expected.get( i ).get( column ), product.slice( column ).get( i ) );
+      }
+    }
+    assertEquals( expected, cursorTuples( product ) );
+  }
+
+  public void testSubListIsLazyAndMatches() {
+    final CartesianProductTupleList product =
+      new CartesianProductTupleList( Arrays.<TupleList>asList( list0, list1, list2 ) );
+    final List<List<Member>> expected = nestedLoops();
+    final TupleList subList = product.subList( 7, 43 );
+    assertTrue( subList instanceof CartesianProductTupleList );
+    assertEquals( expected.subList( 7, 43 ), cursorTuples( subList ) );
+    assertEquals( expected.subList( 9, 12 ), cursorTuples( subList.subList( 2, 5 ) ) );
+    assertEquals( expected.get( 8 ), subList.get( 1 ) );
+    assertEquals( 0, product.subList( 10, 10 ).size() );
+  }
+
+  public void testEmptyComponentGivesEmptyProduct() {
+    final CartesianProductTupleList product =
+      new CartesianProductTupleList(
+        Arrays.<TupleList>asList( list0, new UnaryTupleList( new ArrayList<Member>() ), list2 ) );
+    assertEquals( 0, product.size() );
+    assertFalse( product.tupleCursor().forward() );
+  }
+
+  public void testTooLargeProductExceedsLimit() {
+    final TupleList big =
+      new UnaryTupleList( Collections.nCopies( 1 << 16, mock( Member.class ) ) );
+    try {
+      new CartesianProductTupleList( Arrays.asList( big, big ) );
+      fail( "expected error" );
+    } catch ( ResourceLimitExceededException e ) {
+      // The same error as Util.checkCJResultLimit.
+    }
+  }
+
+  private List<List<Member>> nestedLoops() {
+    final List<List<Member>> list = new ArrayList<List<Member>>();
+    for ( List<Member> tuple0 : list0 ) {
+      for ( List<Member> tuple1 : list1 ) {
+        for ( List<Member> tuple2 : list2 ) {
+          final List<Member> tuple = new ArrayList<Member>( tuple0 );
+          tuple.addAll( tuple1 );
+          tuple.addAll( tuple2 );
+          list.add( tuple );
+        }
+      }
+    }
+    return list;
+  }
+
+  private static List<List<Member>> cursorTuples( TupleList list ) {
+    final List<List<Member>> tuples = new ArrayList<List<Member>>();
+    final TupleCursor cursor = list.tupleCursor();
+    final Member[] members = new Member[ list.getArity() ];
+    while ( cursor.forward() ) {
+      cursor.currentToArray( members, 0 );
+      tuples.add( new ArrayList<Member>( Arrays.asList( members ) ) );
+      for ( int i = 0; i < members.length; i++ ) {
+        assertSame( members[ i ], cursor.member( i ) );
+      }
+    }
+    return tuples;
+  }
+
+  private static List<Member> members( int count ) {
+    final List<Member> members = new ArrayList<Member>();
+    for ( int i = 0; i < count; i++ ) {
+      members.add( mock( Member.class ) );
+    }
+    return members;
+  }
+}
+
+// End CartesianProductTupleListTest.java
@@ -0,0 +1,88 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package mondrian.calc.impl;
+
+import junit.framework.TestCase;
+import mondrian.olap.Member;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+
+public class TupleHashSetTest extends TestCase {
+
+  private final Member[] members = new Member[ 50 ];
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    for ( int i = 0; i < members.length; i++ ) {
+      members[ i ] = mock( Member.class );
+    }
+  }
+
+  public void testAddIsDistinctAcrossLists() {
+    final ArrayTupleList list0 = new ArrayTupleList( 2 );
+    final ArrayTupleList list1 = new ArrayTupleList( 2 );
+    final Set<List<Member>> expected = new HashSet<List<Member>>();
+    // Grows well beyond its initial capacity.
+    final TupleHashSet set = new TupleHashSet( 4 );
+    for ( int i = 0; i < 1000; i++ ) {
+      final ArrayTupleList list = i % 2 == 0 ? list0 : list1;
+      list.addTuple( members[ i % 37 ], members[ i % 13 ] );
+      final List<Member> tuple = list.get( list.size() - 1 );
+      assertEquals( expected.add( tuple ), set.add( list, list.size() - 1 ) );
+    }
+    assertEquals( expected.size(), set.size() );
+    for ( int i = 0; i < list0.size(); i++ ) {
+      assertTrue( set.contains( list0, i ) );
+    }
+  }
+
+  public void testIndexOfReturnsFirstAddedTuple() {
+    final ArrayTupleList list = new ArrayTupleList( 2 );
+    list.addTuple( members[ 0 ], members[ 1 ] );
+    list.addTuple( members[ 1 ], members[ 0 ] );
+    list.addTuple( members[ 0 ], members[ 1 ] );
+    final TupleHashSet set = new TupleHashSet( list.size() );
+    set.addAll( list );
+    assertEquals( 2, set.size() );
+
+    final ArrayTupleList probe = new ArrayTupleList( 2 );
+    probe.addTuple( members[ 1 ], members[ 0 ] );
+    probe.addTuple( members[ 0 ], members[ 1 ] );
+    probe.addTuple( members[ 1 ], members[ 1 ] );
+    assertEquals( 1, set.indexOf( probe, 0 ) );
+    assertEquals( 0, set.indexOf( probe, 1 ) );
+    assertEquals( -1, set.indexOf( probe, 2 ) );
+    assertFalse( set.contains( probe, 2 ) );
+  }
+
+  public void testTuplesOfDifferentArityAreNotEqual() {
+    final UnaryTupleList unary = new UnaryTupleList( new ArrayList<Member>( Arrays.asList( members[ 0 ] ) ) );
+    final ArrayTupleList binary = new ArrayTupleList( 2 );
+    binary.addTuple( members[ 0 ], members[ 0 ] );
+    final TupleHashSet set = new TupleHashSet( 2 );
+    assertTrue( set.add( unary, 0 ) );
+    assertTrue( set.add( binary, 0 ) );
+    assertFalse( set.add( unary, 0 ) );
+    assertEquals( 2, set.size() );
+  }
+}
+
+// End TupleHashSetTest.java
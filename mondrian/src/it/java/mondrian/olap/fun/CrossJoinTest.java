@@ -18,6 +18,7 @@ import mondrian.calc.TupleCursor;
 import mondrian.calc.TupleIterable;
 import mondrian.calc.TupleList;
 import mondrian.calc.impl.ArrayTupleList;
+import mondrian.calc.impl.OrdinalTupleList;
 import mondrian.calc.impl.UnaryTupleList;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.Exp;
@@ -38,6 +39,7 @@ import mondrian.rolap.RolapCube;
 import mondrian.server.Execution;
 import mondrian.server.Locus;
 import mondrian.test.FoodMartTestCase;
+import mondrian.test.TestContext;
 
 import junit.framework.Assert;
 
@@ -352,6 +354,77 @@ public class CrossJoinTest extends FoodMartTestCase {
     Assert.assertEquals( e, s );
   }
 
+  public void testMutableListOrdinalTupleListCalc() {
+    propSaver.set( propSaver.properties.EnableOrdinalTupleLists, true );
+    CrossJoinFunDef.MutableListCalc calc =
+      crossJoinFunDef.new MutableListCalc(
+        getResolvedFunCall(), null );
+
+    Assert.assertTrue(
+      calc.makeList( makeListTuple( m3 ), makeListTuple( m4 ) )
+        instanceof OrdinalTupleList );
+    doMTupleTupleListTest( calc );
+  }
+
+  /**
+   * Tests that crossjoin, filter and sort give the same results whether or
+   * not tuple lists are stored as ordinals.
+   */
+  public void testOrdinalTupleLists() {
+    final String query =
+      "select [Measures].[Unit Sales] on 0,\n"
+        + " Order(\n"
+        + "   Filter(\n"
+        + "     NonEmptyCrossJoin(\n"
+        + "       CrossJoin([Gender].[Gender].Members, [Marital Status].[Marital Status].Members),\n"
+        + "       [Product].[Product Family].Members),\n"
+        + "     [Measures].[Unit Sales] > 10000),\n"
+        + "   [Measures].[Unit Sales], BDESC) on 1\n"
+        + "from [Sales]";
+    final String expected =
+      TestContext.toString( executeQuery( query ) );
+    propSaver.set( propSaver.properties.EnableOrdinalTupleLists, true );
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+    assertQueryReturns(
+      "select Hierarchize(TopCount(\n"
+        + " CrossJoin([Gender].[Gender].Members, [Store].[Store Country].Members),\n"
+        + " 2, [Measures].[Unit Sales])) on 0\n"
+        + "from [Sales]",
+      "Axis #0:\n"
+        + "{}\n"
+        + "Axis #1:\n"
+        + "{[Gender].[F], [Store].[USA]}\n"
+        + "{[Gender].[M], [Store].[USA]}\n"
+        + "Row #0: 131,558\n"
+        + "Row #0: 135,215\n" );
+  }
+
+  /**
+   * Tests that sorting an {@link OrdinalTupleList} is stable.
+   */
+  public void testOrdinalTupleListSortIsStable() {
+    final Member a = new TestMember( "a" );
+    final Member b = new TestMember( "b" );
+    final Member x = new TestMember( "x" );
+    final Member y = new TestMember( "y" );
+    final Member z = new TestMember( "z" );
+    final OrdinalTupleList list = new OrdinalTupleList( 2, 2 );
+    list.addTuple( b, x );
+    list.addTuple( a, y );
+    list.addTuple( b, y );
+    list.addTuple( a, z );
+    list.addTuple( a, x );
+    list.sort(
+      new Comparator<List<Member>>() {
+        public int compare( List<Member> o1, List<Member> o2 ) {
+          return o1.get( 0 ).toString().compareTo( o2.get( 0 ).toString() );
+        }
+      } );
+    Assert.assertEquals(
+      "{[a, y], [a, z], [a, x], [b, x], [b, y]}", toString( list ) );
+  }
+
   public void testResultLimitWithinCrossjoin() {
     propSaver.set( MondrianProperties.instance().ResultLimit, 1000 );
     assertAxisThrows( "Hierarchize(Crossjoin(Union({[Gender].CurrentMember}, [Gender].Children), "
@@ -15,17 +15,27 @@ package mondrian.olap.fun;
 
 import junit.framework.Assert;
 import junit.framework.ComparisonFailure;
+import mondrian.calc.Calc;
+import mondrian.calc.impl.GeneratedCalc;
 import mondrian.olap.Axis;
+import mondrian.olap.CacheControl;
 import mondrian.olap.Cell;
 import mondrian.olap.Connection;
+import mondrian.olap.Exp;
 import mondrian.olap.Member;
 import mondrian.olap.MondrianException;
 import mondrian.olap.MondrianProperties;
 import mondrian.olap.Position;
+import mondrian.olap.Query;
 import mondrian.olap.QueryTimeoutException;
 import mondrian.olap.Result;
+import mondrian.olap.ResultBase;
 import mondrian.olap.Util;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.NativeDecisionHistory;
+import mondrian.rolap.RolapConnection;
+import mondrian.rolap.RolapUtil;
+import mondrian.server.Execution;
 import mondrian.test.BasicQueryTest;
 import mondrian.test.FoodMartTestCase;
 import mondrian.test.TestContext;
@@ -47,6 +57,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CancellationException;
+import javax.tools.ToolProvider;
 
 /**
  * <code>FunctionTest</code> tests the functions defined in
@@ -3548,6 +3559,42 @@ public class FunctionTest extends FoodMartTestCase {
       "SUM({[Promotion Media].[Media Type].members})", "266,773" );
   }
 
+  /**
+   * Tests that aggregate functions give the same results whether or not
+   * numeric expressions are evaluated over the whole set in one call.
+   */
+  public void testBatchEvaluation() {
+    final String query =
+      "with member [Measures].[Profit Ratio] as\n"
+        + "  '([Measures].[Store Sales] - [Measures].[Store Cost])"
+        + " / [Measures].[Store Sales]'\n"
+        + " member [Measures].[Sum Profit] as\n"
+        + "  'Sum([Product].[Product Department].Members,"
+        + " [Measures].[Store Sales] - [Measures].[Store Cost])'\n"
+        + " member [Measures].[Avg Ratio] as\n"
+        + "  'Avg([Product].[Product Department].Members,"
+        + " [Measures].[Profit Ratio])'\n"
+        + " member [Measures].[Max Sales] as\n"
+        + "  'Max([Product].[Product Department].Members,"
+        + " [Measures].[Unit Sales] * 2)'\n"
+        + " member [Measures].[Min Drink] as\n"
+        + "  'Min([Store].[Store State].Members,"
+        + " ([Product].[Drink], [Measures].[Unit Sales]) + 1)'\n"
+        + "select {[Measures].[Sum Profit], [Measures].[Avg Ratio],"
+        + " [Measures].[Max Sales], [Measures].[Min Drink]} on 0,\n"
+        + " [Gender].Members on 1\n"
+        + "from [Sales]";
+    final String expected =
+      TestContext.toString( executeQuery( query ) );
+    propSaver.set( propSaver.properties.EnableBatchEvaluation, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+    // Again, with the cells in cache.
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+  }
+
   public void testValue() {
     // VALUE is usually a cell property, not a member property.
     // We allow it because MS documents it as a function, <Member>.VALUE.
@@ -11991,6 +12038,759 @@ Intel platforms):
       "No function matches signature 'Cache(<Numeric Expression>, <Numeric Expression>)'" );
   }
 
+  /**
+   * Tests that automatically memoized sub-expressions give the same results
+   * as when they are evaluated in every cell, including when the memoization
+   * budget is exhausted.
+   */
+  public void testExpMemoization() {
+    final String query =
+      "with member [Measures].[Share] as\n"
+        + "  '[Measures].[Unit Sales]"
+        + " / ([Measures].[Unit Sales], [Product].[All Products])'\n"
+        + " member [Measures].[Gender Share] as\n"
+        + "  '[Measures].[Unit Sales]"
+        + " / Sum([Gender].[Gender].Members, [Measures].[Unit Sales])'\n"
+        + " member [Measures].[Prior] as\n"
+        + "  'CoalesceEmpty(([Measures].[Store Sales], [Time].PrevMember), 0)"
+        + " + ([Measures].[Store Sales], [Product].[All Products])'\n"
+        + "select {[Measures].[Share], [Measures].[Gender Share],"
+        + " [Measures].[Prior]} on 0,\n"
+        + " CrossJoin([Product].[Product Family].Members,"
+        + " [Time].[1997].Children) on 1\n"
+        + "from [Sales]\n"
+        + "where [Gender].[F]";
+    final String nonEmptyQuery =
+      query.replace( " CrossJoin(", " NON EMPTY CrossJoin(" );
+    Result result = executeQuery( query );
+    final String expected = TestContext.toString( result );
+    final int unmemoizedHitCount =
+      ( (ResultBase) result ).getExecution().getExpCacheHitCount();
+    final String nonEmptyExpected =
+      TestContext.toString( executeQuery( nonEmptyQuery ) );
+    propSaver.set( propSaver.properties.EnableExpMemoization, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+    // Again, with the cells in cache. The members that do not depend on
+    // the product family look up the values of the other rows.
+    result = executeQuery( query );
+    Assert.assertEquals( expected, TestContext.toString( result ) );
+    final int hitCount =
+      ( (ResultBase) result ).getExecution().getExpCacheHitCount();
+    Assert.assertTrue(
+      hitCount + " > " + unmemoizedHitCount,
+      hitCount > unmemoizedHitCount );
+    // In NON EMPTY context, where memoized expressions are evaluated
+    // directly.
+    Assert.assertEquals(
+      nonEmptyExpected,
+      TestContext.toString( executeQuery( nonEmptyQuery ) ) );
+    // With room for only a few memoized results, fewer values are found.
+    propSaver.set( propSaver.properties.ExpMemoizationBudget, 1000 );
+    result = executeQuery( query );
+    Assert.assertEquals( expected, TestContext.toString( result ) );
+    final int budgetHitCount =
+      ( (ResultBase) result ).getExecution().getExpCacheHitCount();
+    Assert.assertTrue(
+      budgetHitCount + " < " + hitCount, budgetHitCount < hitCount );
+  }
+
+  public void testHoistInvariantSets() {
+    final String query =
+      "with set [Top Months] as\n"
+        + "  'Generate([Gender].[Gender].Members,"
+        + " TopCount(Descendants([Time].[1997], [Time].[Month]), 2,"
+        + " [Measures].[Unit Sales]))'\n"
+        + " member [Measures].[Month Count] as\n"
+        + "  'Count(Filter([Product].[Product Family].Members,"
+        + " Count(Filter(Descendants([Time].[1997], [Time].[Month]),"
+        + " [Measures].[Unit Sales] > 7000)) > 0))'\n"
+        + "select {[Measures].[Unit Sales], [Measures].[Month Count]} on 0,\n"
+        + " Order(CrossJoin([Product].[Product Family].Members, [Top Months]),"
+        + " Sum(Descendants([Store].[USA], [Store].[Store State]),"
+        + " [Measures].[Unit Sales]), BDESC) on 1\n"
+        + "from [Sales]";
+    final String expected =
+      TestContext.toString( executeQuery( query ) );
+    propSaver.set( propSaver.properties.HoistInvariantSets, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+    // Again, with the cells in cache.
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+  }
+
+  /**
+   * Tests that a hoisted set is evaluated once for each combination of the
+   * members of the hierarchies it depends on, and that it is not cached in
+   * NON EMPTY context, where the cache key would contain every member.
+   */
+  public void testHoistInvariantSetsOncePerContext() {
+    propSaver.set( propSaver.properties.HoistInvariantSets, true );
+    // The set depends only on [Time]; it is evaluated for 3 product
+    // families in each of 8 cells, but for only 4 distinct quarters.
+    final Result result = executeQuery(
+      "with member [Measures].[Family Count] as\n"
+        + "  'Count(Filter([Product].[Product Family].Members,"
+        + " Count(Descendants([Time].CurrentMember, [Time].[Month])) > 0))'\n"
+        + "select [Time].[1997].Children on 0,\n"
+        + " [Gender].[Gender].Members on 1\n"
+        + "from [Sales]\n"
+        + "where [Measures].[Family Count]" );
+    final Execution execution = ( (ResultBase) result ).getExecution();
+    Assert.assertEquals( 4, execution.getExpCacheMissCount() );
+    Assert.assertTrue( execution.getExpCacheHitCount() >= 20 );
+
+    final String nonEmptyQuery =
+      "select NON EMPTY Filter([Product].[Product Family].Members,"
+        + " Count(Descendants([Time].[1997], [Time].[Month])) > 0) on 0\n"
+        + "from [Sales]";
+    propSaver.set( propSaver.properties.HoistInvariantSets, false );
+    final Result expected = executeQuery( nonEmptyQuery );
+    final Execution expectedExecution =
+      ( (ResultBase) expected ).getExecution();
+    propSaver.set( propSaver.properties.HoistInvariantSets, true );
+    final Result actual = executeQuery( nonEmptyQuery );
+    final Execution actualExecution = ( (ResultBase) actual ).getExecution();
+    Assert.assertEquals(
+      TestContext.toString( expected ), TestContext.toString( actual ) );
+    Assert.assertEquals(
+      expectedExecution.getExpCacheMissCount(),
+      actualExecution.getExpCacheMissCount() );
+  }
+
+  public void testSimplifyExpressions() {
+    final String query =
+      "with member [Measures].[Literal] as '2 * 3 + 1'\n"
+        + " member [Measures].[Branch] as\n"
+        + "  'IIf(1 = 1, [Measures].[Unit Sales], 0) * 1'\n"
+        + " member [Measures].[Coalesced] as\n"
+        + "  'CoalesceEmpty([Measures].[Store Sales], 0) + 0'\n"
+        + " member [Measures].[Quarter] as\n"
+        + "  '(StrToMember(\"[Time].[1997].[Q1]\"),"
+        + " [Measures].[Unit Sales])'\n"
+        + " member [Gender].[Sum F] as 'Sum({[Gender].[F]})'\n"
+        + " member [Gender].[Aggregate M] as 'Aggregate({[Gender].[M]})'\n"
+        + "select {[Measures].[Literal], [Measures].[Branch],"
+        + " [Measures].[Coalesced], [Measures].[Quarter]} on 0,\n"
+        + " {StrToSet(\"{[Gender].[F], [Gender].[M]}\", [Gender]),"
+        + " [Gender].[Sum F], [Gender].[Aggregate M]} on 1\n"
+        + "from [Sales]";
+    final String expected =
+      TestContext.toString( executeQuery( query ) );
+    final TestContext testContext = getTestContext();
+    assertTrue(
+      testContext.compileExpression( "2 * 3 + 1", true )
+        .contains( "(name=*," ) );
+    propSaver.set( propSaver.properties.SimplifyExpressions, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+    // Again, with the cells in cache.
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+
+    // The rewritten expressions.
+    String plan = testContext.compileExpression( "2 * 3 + 1", true );
+    assertFalse( plan, plan.contains( "(name=*," ) );
+    assertFalse( plan, plan.contains( "(name=+," ) );
+    assertTrue( plan, plan.contains( "value=7" ) );
+    plan =
+      testContext.compileExpression(
+        "IIf(1 = 1, [Measures].[Unit Sales], 0) * 1", true );
+    assertFalse( plan, plan.contains( "(name=IIf," ) );
+    assertFalse( plan, plan.contains( "(name=*," ) );
+    assertTrue( plan, plan.contains( "value=[Measures].[Unit Sales]" ) );
+    plan = testContext.compileExpression( "Sum({[Gender].[F]})", true );
+    assertFalse( plan, plan.contains( "(name=Sum," ) );
+    assertTrue( plan, plan.contains( "value=[Gender].[F]" ) );
+    plan =
+      testContext.compileExpression(
+        "StrToSet(\"{[Gender].[F], [Gender].[M]}\", [Gender])", false );
+    assertFalse( plan, plan.contains( "(name=StrToSet," ) );
+    assertTrue( plan, plan.contains( "value=[Gender].[M]" ) );
+
+    // A set with more tuples than MAX_FOLDED_SET_SIZE is left as it is.
+    final StringBuilder buf = new StringBuilder( "{" );
+    for ( int i = 0; i < 101; i++ ) {
+      buf.append( i == 0 ? "" : ", " ).append( "[Gender].[F]" );
+    }
+    buf.append( "}" );
+    plan =
+      testContext.compileExpression(
+        "StrToSet(\"" + buf + "\", [Gender])", false );
+    assertTrue( plan, plan.contains( "(name=StrToSet," ) );
+  }
+
+  public void testPrecomputeSortKeys() {
+    final String query =
+      "select {[Measures].[Unit Sales], [Measures].[Store Sales]} on 0,\n"
+        + " Order(\n"
+        + "  Crossjoin([Product].[Product Family].Members,"
+        + " [Customers].[City].Members),\n"
+        + "  [Measures].[Unit Sales], BDESC,"
+        + " [Customers].CurrentMember.Name, BASC) on 1\n"
+        + "from [Sales]";
+    final String hierarchicalQuery =
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " Order([Product].[Product Department].Members,"
+        + " [Measures].[Unit Sales], BASC,"
+        + " [Measures].[Store Sales], DESC) on 1\n"
+        + "from [Sales]";
+    final String expected = TestContext.toString( executeQuery( query ) );
+    final String hierarchicalExpected =
+      TestContext.toString( executeQuery( hierarchicalQuery ) );
+    propSaver.set( propSaver.properties.PrecomputeSortKeys, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+    Assert.assertEquals(
+      hierarchicalExpected,
+      TestContext.toString( executeQuery( hierarchicalQuery ) ) );
+    // Again, sorting in parallel.
+    propSaver.set( propSaver.properties.ParallelSortThreshold, 2 );
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+  }
+
+  public void testStreamingTopBottom() {
+    final String[] queries = {
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " TopCount(Crossjoin([Product].[Product Department].Members,"
+        + " [Gender].[Gender].Members), 5, [Measures].[Unit Sales]) on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " BottomCount(Crossjoin([Product].[Product Department].Members,"
+        + " [Gender].[Gender].Members), 5, [Measures].[Unit Sales]) on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " {TopCount([Store].[Store City].Members, 3),"
+        + " BottomCount([Store].[Store City].Members, 3)} on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " {TopPercent([Product].[Product Department].Members, 40,"
+        + " [Measures].[Unit Sales]),\n"
+        + "  BottomSum([Product].[Product Department].Members, 10000,"
+        + " [Measures].[Unit Sales])} on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " Head(Crossjoin([Product].[Product Family].Members,"
+        + " [Customers].[City].Members), 4) on 1\n"
+        + "from [Sales]",
+      // String sort keys, with ties.
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " {TopCount(Crossjoin([Product].[Product Department].Members,"
+        + " [Gender].[Gender].Members), 5, [Product].CurrentMember.Name),\n"
+        + "  BottomCount([Store].[Store City].Members, 4,"
+        + " [Store].CurrentMember.Name)} on 1\n"
+        + "from [Sales]"
+    };
+    final String[] expected = new String[ queries.length ];
+    for ( int i = 0; i < queries.length; i++ ) {
+      expected[ i ] = TestContext.toString( executeQuery( queries[ i ] ) );
+    }
+    propSaver.set( propSaver.properties.StreamingTopBottom, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    for ( int i = 0; i < queries.length; i++ ) {
+      Assert.assertEquals(
+        expected[ i ], TestContext.toString( executeQuery( queries[ i ] ) ) );
+    }
+  }
+
+  public void testParallelFilterAndGenerate() {
+    final String[] queries = {
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " Filter(Crossjoin([Product].[Product Department].Members,"
+        + " [Gender].[Gender].Members), [Measures].[Unit Sales] > 5000) on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " Generate([Store].[Store State].Members,"
+        + " TopCount([Store].CurrentMember.Children, 2, [Measures].[Unit Sales]))"
+        + " on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " Generate([Product].[Product Family].Members,"
+        + " {[Gender].[Gender].Members}, ALL) on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " Generate([Store].[Store City].Members,"
+        + " {[Store].CurrentMember.Parent}) on 1\n"
+        + "from [Sales]",
+      // A named set used in each chunk.
+      "with set [Top Genders] as\n"
+        + " 'TopCount([Gender].[Gender].Members, 1, [Measures].[Unit Sales])'\n"
+        + "select {[Measures].[Unit Sales]} on 0,\n"
+        + " Filter([Product].[Product Department].Members,"
+        + " ([Measures].[Unit Sales], [Top Genders].Item(0)) > 2000) on 1\n"
+        + "from [Sales]"
+    };
+    final String[] expected = new String[ queries.length ];
+    for ( int i = 0; i < queries.length; i++ ) {
+      expected[ i ] = TestContext.toString( executeQuery( queries[ i ] ) );
+    }
+    propSaver.set( propSaver.properties.SetEvaluationParallelism, 4 );
+    propSaver.set( propSaver.properties.ParallelSetThreshold, 2 );
+    // Filter in memory, so that the filter is evaluated in chunks.
+    propSaver.set( propSaver.properties.EnableNativeFilter, false );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    for ( int i = 0; i < queries.length; i++ ) {
+      final Result result = executeQuery( queries[ i ] );
+      Assert.assertEquals( expected[ i ], TestContext.toString( result ) );
+      // The last query uses a named set, which each chunk would have to
+      // evaluate; its chunks may fall back to the query thread.
+      if ( i < queries.length - 1 ) {
+        assertTrue(
+          queries[ i ],
+          ( (ResultBase) result ).getExecution().getParallelChunkCount() > 1 );
+      }
+    }
+  }
+
+  public void testLazyCrossJoinList() {
+    final String[] queries = {
+      "with member [Measures].[Count] as\n"
+        + " Count(Crossjoin([Customers].[Name].Members, [Product].[Product Name].Members))\n"
+        + "select {[Measures].[Count]} on 0 from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " Subset(Crossjoin([Product].[Product Department].Members,"
+        + " [Gender].[Gender].Members), 5, 7) on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " {Head(Crossjoin([Store].[Store City].Members,"
+        + " [Time].[Quarter].Members), 3),\n"
+        + "  Tail(Crossjoin([Store].[Store City].Members,"
+        + " [Time].[Quarter].Members), 3)} on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " Crossjoin([Gender].[Gender].Members,"
+        + " [Marital Status].[Marital Status].Members) on 1\n"
+        + "from [Sales]"
+    };
+    final String[] expected = new String[ queries.length ];
+    for ( int i = 0; i < queries.length; i++ ) {
+      expected[ i ] = TestContext.toString( executeQuery( queries[ i ] ) );
+    }
+    propSaver.set( propSaver.properties.LazyCrossJoinList, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    for ( int i = 0; i < queries.length; i++ ) {
+      Assert.assertEquals(
+        expected[ i ], TestContext.toString( executeQuery( queries[ i ] ) ) );
+    }
+  }
+
+  public void testSegmentOccupancyPruning() {
+    // Evaluate the crossjoins in memory, so that tuples are pruned.
+    propSaver.set( propSaver.properties.EnableNativeCrossJoin, false );
+    propSaver.set( propSaver.properties.EnableNativeNonEmpty, false );
+    final String[] queries = {
+      "with member [Measures].[Profit Ratio] as\n"
+        + " '[Measures].[Store Sales] / [Measures].[Store Cost]'\n"
+        + "select {[Measures].[Profit Ratio]} on 0,\n"
+        + " NonEmptyCrossJoin([Customers].[City].Members,"
+        + " [Product].[Product Category].Members) on 1\n"
+        + "from [Sales]\n"
+        + "where [Time].[1997].[Q1].[2]",
+      "select {[Measures].[Unit Sales], [Measures].[Store Cost]} on 0,\n"
+        + " non empty Crossjoin([Store].[Store City].Members,"
+        + " Crossjoin([Education Level].Members,"
+        + " [Product].[Product Department].Members)) on 1\n"
+        + "from [Sales]\n"
+        + "where [Gender].[F]",
+      "select {[Measures].[Units Shipped], [Measures].[Unit Sales]} on 0,\n"
+        + " NonEmptyCrossJoin([Store].[Store State].Members,"
+        + " [Product].[Product Family].Members) on 1\n"
+        + "from [Warehouse and Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " non empty Crossjoin([Customers].[State Province].Members,"
+        + " [Promotions].[Promotion Name].Members) on 1\n"
+        + "from [Sales]\n"
+        + "where {[Time].[1997].[Q1], [Time].[1997].[Q3]}"
+    };
+    final String[] expected = new String[ queries.length ];
+    for ( int i = 0; i < queries.length; i++ ) {
+      expected[ i ] = TestContext.toString( executeQuery( queries[ i ] ) );
+    }
+    propSaver.set( propSaver.properties.SegmentOccupancyPruning, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    for ( int i = 0; i < queries.length; i++ ) {
+      Assert.assertEquals(
+        expected[ i ], TestContext.toString( executeQuery( queries[ i ] ) ) );
+    }
+
+    // A cold query has no segments on its first pass, so the tuples are
+    // pruned when the axis is evaluated again, after the segments that the
+    // first pass requested have been loaded.
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    final Result result = executeQuery( queries[ 1 ] );
+    Assert.assertEquals( expected[ 1 ], TestContext.toString( result ) );
+    final int prunedTupleCount =
+      ( (ResultBase) result ).getExecution().getPrunedTupleCount();
+    Assert.assertTrue(
+      String.valueOf( prunedTupleCount ), prunedTupleCount > 0 );
+  }
+
+  public void testCostBasedCrossJoin() {
+    final String[] queries = {
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " NonEmptyCrossJoin([Gender].[Gender].Members,"
+        + " [Marital Status].[Marital Status].Members) on 1\n"
+        + "from [Sales]",
+      "with member [Measures].[Profit Ratio] as\n"
+        + " '[Measures].[Store Sales] / [Measures].[Store Cost]'\n"
+        + "select {[Measures].[Profit Ratio]} on 0,\n"
+        + " NonEmptyCrossJoin([Customers].[City].Members,"
+        + " [Product].[Product Category].Members) on 1\n"
+        + "from [Sales]\n"
+        + "where [Time].[1997].[Q1].[2]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " non empty Crossjoin([Customers].[Name].Members,"
+        + " [Promotions].[Promotion Name].Members) on 1\n"
+        + "from [Sales]\n"
+        + "where [Store].[USA].[WA].[Seattle]",
+      "with member [Gender].[Both] as\n"
+        + " '[Gender].[F] + [Gender].[M]'\n"
+        + "select {[Measures].[Unit Sales]} on 0,\n"
+        + " non empty Crossjoin({[Gender].[F], [Gender].[Both]},"
+        + " [Store].[Store City].Members) on 1\n"
+        + "from [Sales]"
+    };
+    final String[] expected = new String[ queries.length ];
+    for ( int i = 0; i < queries.length; i++ ) {
+      expected[ i ] = TestContext.toString( executeQuery( queries[ i ] ) );
+    }
+    propSaver.set( propSaver.properties.CostBasedCrossJoin, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    for ( int i = 0; i < queries.length; i++ ) {
+      Assert.assertEquals(
+        expected[ i ], TestContext.toString( executeQuery( queries[ i ] ) ) );
+    }
+  }
+
+  /**
+   * Tests that with cost-based crossjoins a small non-empty crossjoin,
+   * written with either <code>NonEmptyCrossJoin</code> or
+   * <code>non empty Crossjoin</code>, is evaluated in memory rather than by a
+   * native SQL statement.
+   */
+  public void testCostBasedCrossJoinSkipsNative() {
+    final String[] queries = {
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " NonEmptyCrossJoin([Gender].[Gender].Members,"
+        + " [Marital Status].[Marital Status].Members) on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " non empty Crossjoin([Gender].[Gender].Members,"
+        + " [Marital Status].[Marital Status].Members) on 1\n"
+        + "from [Sales]"
+    };
+    for ( String query : queries ) {
+      propSaver.set( propSaver.properties.CostBasedCrossJoin, false );
+      getConnection().getCacheControl( null ).flushSchemaCache();
+      final int[] nativeCount = { 0 };
+      final String expected =
+        TestContext.toString( executeCountingNative( query, nativeCount ) );
+      assertTrue( query, nativeCount[ 0 ] > 0 );
+
+      propSaver.set( propSaver.properties.CostBasedCrossJoin, true );
+      getConnection().getCacheControl( null ).flushSchemaCache();
+      nativeCount[ 0 ] = 0;
+      Assert.assertEquals(
+        expected,
+        TestContext.toString( executeCountingNative( query, nativeCount ) ) );
+      assertEquals( query, 0, nativeCount[ 0 ] );
+    }
+  }
+
+  /**
+   * Executes a query, counting the statements that read the members of
+   * gender and marital status together, as a native crossjoin does, rather
+   * than cells.
+   */
+  private Result executeCountingNative(
+    String query, final int[] nativeCount ) {
+    RolapUtil.setHook(
+      new RolapUtil.ExecuteQueryHook() {
+        public void onExecuteQuery( String sql ) {
+          if ( sql.contains( "gender" ) && sql.contains( "marital_status" )
+            && !sql.contains( "sum(" ) && !sql.contains( "count(" ) ) {
+            ++nativeCount[ 0 ];
+          }
+        }
+      } );
+    try {
+      return executeQuery( query );
+    } finally {
+      RolapUtil.setHook( null );
+    }
+  }
+
+  /**
+   * Tests that choosing between native and in-memory evaluation from the
+   * history of past evaluations does not change results, whichever strategy
+   * is chosen.
+   */
+  public void testAdaptiveNative() {
+    final String[] queries = {
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " NativizeSet(Crossjoin([Gender].[Gender].Members,"
+        + " [Marital Status].[Marital Status].Members)) on 1\n"
+        + "from [Sales]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " non empty Crossjoin([Customers].[City].Members,"
+        + " [Product].[Product Category].Members) on 1\n"
+        + "from [Sales]\n"
+        + "where [Time].[1997].[Q1].[2]",
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " TopCount([Product].[Brand Name].Members, 5,"
+        + " [Measures].[Unit Sales]) on 1\n"
+        + "from [Sales]"
+    };
+    final String[] expected = new String[ queries.length ];
+    for ( int i = 0; i < queries.length; i++ ) {
+      expected[ i ] = TestContext.toString( executeQuery( queries[ i ] ) );
+    }
+    propSaver.set( propSaver.properties.EnableAdaptiveNative, true );
+    final NativeDecisionHistory history =
+      ( (RolapConnection) getConnection() ).getServer()
+        .getNativeDecisionHistory();
+    history.reset();
+    // Enough evaluations for each strategy to be measured and chosen.
+    for ( int k = 0; k < 20; k++ ) {
+      getConnection().getCacheControl( null ).flushSchemaCache();
+      for ( int i = 0; i < queries.length; i++ ) {
+        Assert.assertEquals(
+          expected[ i ],
+          TestContext.toString( executeQuery( queries[ i ] ) ) );
+      }
+    }
+    assertTrue( history.getShapeCount() > 0 );
+    history.reset();
+    assertEquals( 0, history.getShapeCount() );
+  }
+
+  /**
+   * Tests that once the in-memory strategy has been measured as faster for a
+   * shape, the next evaluation of that shape is in memory, and that shapes
+   * are keyed by schema as well as cube.
+   */
+  public void testAdaptiveNativePrefersFasterStrategy() {
+    final String query =
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " NativizeSet(Crossjoin([Gender].[Gender].Members,"
+        + " [Marital Status].[Marital Status].Members)) on 1\n"
+        + "from [Sales]";
+    final String expected = TestContext.toString( executeQuery( query ) );
+    propSaver.set( propSaver.properties.EnableAdaptiveNative, true );
+    final NativeDecisionHistory history =
+      ( (RolapConnection) getConnection() ).getServer()
+        .getNativeDecisionHistory();
+    history.reset();
+    executeQuery( query );
+    assertEquals( 1, history.getShapeCount() );
+    final String decision = history.getDecisions().get( 0 );
+    final String shape =
+      decision.substring( 0, decision.indexOf( " native={" ) );
+    assertTrue( shape, shape.startsWith( "FoodMart@" ) );
+    assertTrue( shape, shape.contains( ":Sales:NativizeSet(" ) );
+
+    // Native evaluation took a second, in-memory a microsecond.
+    for ( int i = 0; i < 3; i++ ) {
+      history.record( shape, true, 1000000000L, 16 );
+      history.record( shape, false, 1000L, 16 );
+    }
+    final int nativeCount = getCount( history, "native" );
+    final int inMemoryCount = getCount( history, "inMemory" );
+    assertTrue(
+      history.getDecisions().get( 0 ),
+      history.getDecisions().get( 0 ).endsWith( "prefer=inMemory" ) );
+    Assert.assertEquals(
+      expected, TestContext.toString( executeQuery( query ) ) );
+    assertEquals( nativeCount, getCount( history, "native" ) );
+    assertTrue( getCount( history, "inMemory" ) > inMemoryCount );
+  }
+
+  /**
+   * Tests that an in-memory evaluation which reads cells that are not cached
+   * is charged the time it takes to load them, although they are loaded
+   * after the evaluation has returned.
+   */
+  public void testAdaptiveNativeChargesCellLoads() {
+    // In memory, NativizeSet evaluates the crossjoin in a non-empty context,
+    // and so reads a cell for each tuple.
+    final String query =
+      "select {[Measures].[Unit Sales]} on 0,\n"
+        + " NativizeSet(Crossjoin([Gender].[Gender].Members,"
+        + " [Marital Status].[Marital Status].Members)) on 1\n"
+        + "from [Sales]";
+    final String expected = TestContext.toString( executeQuery( query ) );
+    propSaver.set( propSaver.properties.EnableAdaptiveNative, true );
+    final NativeDecisionHistory history =
+      ( (RolapConnection) getConnection() ).getServer()
+        .getNativeDecisionHistory();
+    history.reset();
+    executeQuery( query );
+    final String decision = history.getDecisions().get( 0 );
+    final String shape =
+      decision.substring( 0, decision.indexOf( " native={" ) );
+
+    // Make in-memory evaluation look a million times faster.
+    for ( int i = 0; i < 3; i++ ) {
+      history.record( shape, true, 1000000000L, 4 );
+      history.record( shape, false, 1000L, 4 );
+    }
+    assertTrue(
+      history.getDecisions().get( 0 ),
+      history.getDecisions().get( 0 ).endsWith( "prefer=inMemory" ) );
+
+    // Loading each segment takes at least 400 milliseconds.
+    final CacheControl cacheControl = getConnection().getCacheControl( null );
+    cacheControl.flush(
+      cacheControl.createMeasuresRegion(
+        getConnection().getSchema().lookupCube( "Sales", true ) ) );
+    RolapUtil.setHook(
+      new RolapUtil.ExecuteQueryHook() {
+        public void onExecuteQuery( String sql ) {
+          if ( sql.contains( "sum(" ) ) {
+            try {
+              Thread.sleep( 400 );
+            } catch ( InterruptedException e ) {
+              throw new RuntimeException( e );
+            }
+          }
+        }
+      } );
+    try {
+      Assert.assertEquals(
+        expected, TestContext.toString( executeQuery( query ) ) );
+    } finally {
+      RolapUtil.setHook( null );
+    }
+
+    // The evaluation that missed the cells was charged the load. Timing the
+    // evaluation alone would have left the mean at a few microseconds.
+    final double meanMillis = getMeanMillis( history, "inMemory" );
+    assertTrue( history.getDecisions().get( 0 ), meanMillis > 20d );
+  }
+
+  /**
+   * Returns the mean elapsed time, in milliseconds, of the evaluations of a
+   * strategy recorded for the only shape in a history.
+   */
+  private static double getMeanMillis(
+    NativeDecisionHistory history, String strategy )
+  {
+    final String decision = history.getDecisions().get( 0 );
+    final String prefix = " " + strategy + "={";
+    final int start =
+      decision.indexOf( "meanMillis=", decision.indexOf( prefix ) )
+        + "meanMillis=".length();
+    return Double.parseDouble(
+      decision.substring( start, decision.indexOf( ' ', start ) ) );
+  }
+
+  /**
+   * Returns the number of evaluations of a strategy recorded for the only
+   * shape in a history.
+   */
+  private static int getCount(
+    NativeDecisionHistory history, String strategy )
+  {
+    final String decision = history.getDecisions().get( 0 );
+    final String prefix = " " + strategy + "={count=";
+    final int start = decision.indexOf( prefix ) + prefix.length();
+    return Integer.parseInt(
+      decision.substring( start, decision.indexOf( ' ', start ) ) );
+  }
+
+  /**
+   * Tests that computing Aggregate in SQL, with a compound predicate on its
+   * set, gives the same results as rolling up the cells of the set, and
+   * that sets it does not apply to still roll up.
+   */
+  public void testNativeAggregate() {
+    final String[] queries = {
+      // sum, over a filtered set
+      "with member [Customers].[Big] as\n"
+        + " 'Aggregate(Filter([Customers].[Name].Members,"
+        + " [Measures].[Unit Sales] > 200))'\n"
+        + "select {[Measures].[Unit Sales], [Measures].[Sales Count]} on 0,\n"
+        + " {[Customers].[Big]} on 1\n"
+        + "from [Sales]",
+      // min and max, with the measure as second argument
+      "with member [Measures].[Min Cost] as\n"
+        + " 'Aggregate({[Store].[USA].[CA], [Store].[USA].[WA]},"
+        + " [Measures].[Store Cost])'\n"
+        + " member [Product].[Some] as\n"
+        + " 'Aggregate({[Product].[Drink], [Product].[Food]})'\n"
+        + "select {[Measures].[Min Cost], [Measures].[Unit Sales]} on 0,\n"
+        + " {[Product].[Some]} * [Gender].[Gender].Members on 1\n"
+        + "from [Sales]",
+      // tuples
+      "with member [Time].[Time].[Some] as\n"
+        + " 'Aggregate({([Time].[1997].[Q1], [Promotion Media].[Radio]),"
+        + " ([Time].[1997].[Q2], [Promotion Media].[TV])})'\n"
+        + "select {[Measures].[Unit Sales]} on 0,\n"
+        + " {[Time].[Time].[Some]} on 1\n"
+        + "from [Sales]",
+      // overlapping and repeated members still roll up in memory
+      "with member [Store].[Overlap] as\n"
+        + " 'Aggregate({[Store].[USA], [Store].[USA].[CA],"
+        + " [Store].[USA].[CA]})'\n"
+        + "select {[Measures].[Unit Sales]} on 0,\n"
+        + " {[Store].[Overlap]} on 1\n"
+        + "from [Sales]"
+    };
+    final String[] expected = new String[ queries.length ];
+    for ( int i = 0; i < queries.length; i++ ) {
+      expected[ i ] = TestContext.toString( executeQuery( queries[ i ] ) );
+    }
+    propSaver.set( propSaver.properties.EnableNativeAggregate, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    for ( int i = 0; i < queries.length; i++ ) {
+      Assert.assertEquals(
+        expected[ i ], TestContext.toString( executeQuery( queries[ i ] ) ) );
+    }
+  }
+
+  /**
+   * Tests that Aggregate of a set of stored members issues one SQL statement,
+   * with a predicate on the whole set, rather than one that groups by the
+   * members of the set.
+   */
+  public void testNativeAggregateSql() {
+    propSaver.set( propSaver.properties.EnableNativeAggregate, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    final List<String> statements = new ArrayList<String>();
+    RolapUtil.setHook(
+      new RolapUtil.ExecuteQueryHook() {
+        public void onExecuteQuery( String sql ) {
+          // Ignore quoting, which depends on the dialect.
+          final String unquoted = sql.replaceAll( "[`\"]", "" );
+          if ( unquoted.contains( "store_cost" ) ) {
+            statements.add( unquoted );
+          }
+        }
+      } );
+    try {
+      executeQuery(
+        "with member [Store].[CA and WA] as\n"
+          + " 'Aggregate({[Store].[USA].[CA], [Store].[USA].[WA]})'\n"
+          + "select {[Measures].[Store Cost]} on 0,\n"
+          + " {[Store].[CA and WA]} on 1\n"
+          + "from [Sales]" );
+    } finally {
+      RolapUtil.setHook( null );
+    }
+    assertEquals( statements.toString(), 1, statements.size() );
+    final String sql = statements.get( 0 );
+    assertTrue( sql, sql.contains( "'CA'" ) && sql.contains( "'WA'" ) );
+    // The states are a predicate, not a column of the result.
+    assertFalse(
+      sql, sql.substring( 0, sql.indexOf( " from " ) ).contains( "store_state" ) );
+  }
+
   // The following methods test VBA functions. They don't test all of them,
   // because the raw methods are tested in VbaTest, but they test the core
   // functionalities like error handling and operator overloading.
@@ -13489,6 +14289,43 @@ Intel platforms):
         + "Row #0: 104\n" );
   }
 
+  /**
+   * Tests that formulas translated into generated classes give the same results as interpreted formulas, for both
+   * ways of dividing by null, and that the schema reuses the class generated for a formula.
+   */
+  public void testGeneratedCalcCode() {
+    final String mdx =
+      "with member [Measures].[Ratio] as\n"
+        + "  ([Measures].[Store Sales] - [Measures].[Store Cost])\n"
+        + "    / ([Measures].[Unit Sales], [Time].[1998]) * 100\n"
+        + "member [Measures].[Adjusted] as\n"
+        + "  IIf([Measures].[Unit Sales] > 20000,\n"
+        + "    CoalesceEmpty(([Measures].[Unit Sales], [Time].[1998]), 0) + 1,\n"
+        + "    [Measures].[Unit Sales] / 2)\n"
+        + "select {[Measures].[Ratio], [Measures].[Adjusted]} on 0,\n"
+        + "  [Product].[Product Department].Members on 1\n"
+        + "from [Sales]";
+    for ( boolean nullDenominator : new boolean[] { false, true } ) {
+      propSaver.set( propSaver.properties.NullDenominatorProducesNull, nullDenominator );
+      propSaver.set( propSaver.properties.GenerateCalcCode, false );
+      final String expected = TestContext.toString( executeQuery( mdx ) );
+      propSaver.set( propSaver.properties.GenerateCalcCode, true );
+      assertEquals( expected, TestContext.toString( executeQuery( mdx ) ) );
+    }
+
+    if ( ToolProvider.getSystemJavaCompiler() == null ) {
+      // Without a compiler, formulas are interpreted.
+      return;
+    }
+    final Query query = getConnection().parseQuery( mdx );
+    final Exp exp = query.getFormulas()[ 0 ].getExpression();
+    final Calc calc1 = query.compileExpression( exp, true, null );
+    final Calc calc2 = query.compileExpression( exp, true, null );
+    assertTrue( calc1.getClass().getName(), calc1 instanceof GeneratedCalc );
+    assertNotSame( calc1, calc2 );
+    assertSame( calc1.getClass(), calc2.getClass() );
+  }
+
 }
 
 // End FunctionTest.java
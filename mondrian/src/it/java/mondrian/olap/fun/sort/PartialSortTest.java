@@ -15,6 +15,7 @@ package mondrian.olap.fun.sort;
 
 import junit.framework.Assert;
 import junit.framework.TestCase;
+import mondrian.olap.Util;
 import mondrian.test.PerformanceTest;
 import org.apache.commons.collections.ComparatorUtils;
 import org.apache.commons.collections.comparators.ReverseComparator;
@@ -495,6 +496,52 @@ public class PartialSortTest extends TestCase {
     randomItemTests( 50000, 12000 );
   }
 
+  // checks that a SortKeyHeap finds the same items, in the same order, as a
+  // stable sort
+  private void sortKeyHeapTest( int length, int limit, boolean desc ) {
+    final Object[] values = new Object[ length ];
+    for ( int i = 0; i < length; i++ ) {
+      values[ i ] = random.nextInt( 8 ) == 0 ? Util.nullValue : (Object) random.nextInt( length / 4 + 1 );
+    }
+    final Integer[] expected = new Integer[ length ];
+    for ( int i = 0; i < length; i++ ) {
+      expected[ i ] = i;
+    }
+    final int sign = desc ? -1 : 1;
+    Arrays.sort( expected, ( i, j ) -> sign * Sorter.compareValues( values[ i ], values[ j ] ) );
+
+    final SortKeyHeap bounded = new SortKeyHeap( limit, desc, true );
+    for ( int i = 0; i < length; i++ ) {
+      if ( bounded.isFull() ) {
+        bounded.replaceTopIfBefore( values[ i ], i );
+      } else {
+        bounded.add( values[ i ], i );
+      }
+    }
+    final int[] slots = bounded.drainSorted();
+    Assert.assertEquals( Math.min( limit, length ), slots.length );
+    for ( int i = 0; i < slots.length; i++ ) {
+      Assert.assertEquals( expected[ i ].intValue(), bounded.getOrdinal( slots[ i ] ) );
+    }
+
+    final SortKeyHeap full = new SortKeyHeap( length, desc, false );
+    for ( int i = 0; i < length; i++ ) {
+      full.add( values[ i ], i );
+    }
+    for ( int i = 0; i < length; i++ ) {
+      Assert.assertEquals( expected[ i ].intValue(), full.getOrdinal( full.poll() ) );
+    }
+  }
+
+  public void testSortKeyHeap() {
+    sortKeyHeapTest( 1, 1, true );
+    sortKeyHeapTest( 100, 20, true );
+    sortKeyHeapTest( 100, 20, false );
+    sortKeyHeapTest( 10000, 10, true );
+    sortKeyHeapTest( 10000, 500, false );
+    sortKeyHeapTest( 50, 100, true );
+  }
+
 
   // Compares elapsed time of full sort (mergesort), partial sort, and stable
   // partial sort on the same input set.
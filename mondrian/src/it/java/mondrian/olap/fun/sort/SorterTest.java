@@ -22,6 +22,7 @@ import mondrian.olap.Evaluator;
 import mondrian.olap.Hierarchy;
 import mondrian.olap.Member;
 import mondrian.olap.Query;
+import mondrian.olap.Util;
 import mondrian.olap.fun.MemberOrderKeyFunDef;
 import mondrian.server.Execution;
 import mondrian.server.Statement;
@@ -31,6 +32,12 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 import static java.util.Arrays.asList;
 import static java.util.stream.IntStream.range;
 import static org.mockito.ArgumentMatchers.any;
@@ -134,6 +141,31 @@ public class SorterTest extends TestCase {
     verify( execution, atLeastOnce() ).checkCancelOrTimeout();
   }
 
+  public void testPrecomputedSortKeysAreStableInParallel() {
+    // 20,000 values with many ties and some nulls, so that a parallel sort
+    // splits into several tasks and has to preserve the order of ties.
+    final Random random = new Random( 42 );
+    final Object[] values = new Object[ 20000 ];
+    for ( int i = 0; i < values.length; i++ ) {
+      values[ i ] = random.nextInt( 10 ) == 0 ? Util.nullValue : (double) random.nextInt( 100 );
+    }
+    when( calc1.evaluate( evaluator ) )
+      .thenReturn( values[ 0 ], Arrays.copyOfRange( values, 1, values.length ) );
+    final List<Member> members = Collections.nCopies( values.length, member1 );
+    final PrecomputedSortKeys<Member> keys = PrecomputedSortKeys.forMembers( members );
+    keys.addValueKey( evaluator, calc1, true );
+
+    final List<Integer> expected = new ArrayList<>();
+    range( 0, values.length ).forEach( expected::add );
+    expected.sort( ( i, j ) -> -Sorter.compareValues( values[ i ], values[ j ] ) );
+    final int[] sequential = keys.sortIndexes( 0 );
+    final int[] parallel = keys.sortIndexes( 2 );
+    for ( int i = 0; i < values.length; i++ ) {
+      assertEquals( expected.get( i ).intValue(), sequential[ i ] );
+      assertEquals( expected.get( i ).intValue(), parallel[ i ] );
+    }
+  }
+
 
   private void setupSortKeyMocks( boolean isOrderKeyCalc, Sorter.Flag flag1, Sorter.Flag flag2 ) {
     when( sortKeySpec1.getDirection() ).thenReturn( flag1 );
@@ -19,6 +19,7 @@ import mondrian.test.*;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -1281,6 +1282,98 @@ public class CacheControlTest extends FoodMartTestCase {
         assertCacheStateEquals(tag, "${output2}", actual);
     }
 
+    /**
+     * Tests that the result cache returns the result of a previous execution,
+     * and that flushing cells of a cube removes only the results that read
+     * from that cube.
+     */
+    public void testResultCache() {
+        if (MondrianProperties.instance().DisableCaching.get()) {
+            return;
+        }
+        propSaver.set(propSaver.properties.ResultCacheSize, 1000000);
+        final String query =
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + " [Store].[All Stores].Children on rows\n"
+            + "from [Sales]";
+        final Connection connection = getConnection();
+        final CacheControl cacheControl = connection.getCacheControl(null);
+        final Result result1 =
+            connection.execute(connection.parseQuery(query));
+        final Result result2 =
+            connection.execute(connection.parseQuery(query));
+
+        // The second execution is answered from the cache: it shares the
+        // axes of the first, but has its own result, query and cells.
+        assertNotSame(result1, result2);
+        assertNotSame(result1.getQuery(), result2.getQuery());
+        assertSame(result1.getAxes()[1], result2.getAxes()[1]);
+        assertNotSame(
+            result1.getCell(new int[] {0, 0}),
+            result2.getCell(new int[] {0, 0}));
+        assertEquals(
+            TestContext.toString(result1),
+            TestContext.toString(result2));
+
+        // Flushing a cube that the query does not read keeps the result.
+        final Cube warehouseCube =
+            connection.getSchema().lookupCube("Warehouse", true);
+        cacheControl.flush(cacheControl.createMeasuresRegion(warehouseCube));
+        final Result result3 =
+            connection.execute(connection.parseQuery(query));
+        assertSame(result1.getAxes()[1], result3.getAxes()[1]);
+
+        // Flushing the cube that the query reads removes the result.
+        final Cube salesCube =
+            connection.getSchema().lookupCube("Sales", true);
+        cacheControl.flush(cacheControl.createMeasuresRegion(salesCube));
+        final Result result4 =
+            connection.execute(connection.parseQuery(query));
+        assertNotSame(result1.getAxes()[1], result4.getAxes()[1]);
+        assertEquals(
+            TestContext.toString(result1),
+            TestContext.toString(result4));
+
+        // A query that calls a non-deterministic function, even through a
+        // calculated member, is evaluated every time.
+        final String nowQuery =
+            "with member [Measures].[Now] as 'Now()'\n"
+            + "select {[Measures].[Now]} on columns,\n"
+            + " [Store].[All Stores].Children on rows\n"
+            + "from [Sales]";
+        final Result result5 =
+            connection.execute(connection.parseQuery(nowQuery));
+        final Result result6 =
+            connection.execute(connection.parseQuery(nowQuery));
+        assertNotSame(result5.getAxes()[1], result6.getAxes()[1]);
+
+        // A result whose query was executing when a flush happened is not
+        // cached, because it may have been computed from flushed cells.
+        cacheControl.flush(cacheControl.createMeasuresRegion(salesCube));
+        final boolean[] flushed = {false};
+        RolapUtil.setHook(
+            new RolapUtil.ExecuteQueryHook() {
+                public void onExecuteQuery(String sql) {
+                    RolapResultCache.instance().flush(
+                        Collections.<RolapStar>emptyList());
+                    flushed[0] = true;
+                }
+            });
+        final Result result7;
+        try {
+            result7 = connection.execute(connection.parseQuery(query));
+        } finally {
+            RolapUtil.setHook(null);
+        }
+        assertTrue(flushed[0]);
+        final Result result8 =
+            connection.execute(connection.parseQuery(query));
+        assertNotSame(result7.getAxes()[1], result8.getAxes()[1]);
+        assertEquals(
+            TestContext.toString(result1),
+            TestContext.toString(result8));
+    }
+
     // todo: Test flushing a segment which is unconstrained
 
     // todo: Test flushing a segment where 2 or more axes are reduced. E.g.
@@ -0,0 +1,55 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package mondrian.rolap;
+
+import junit.framework.TestCase;
+
+public class CrossJoinCostModelTest extends TestCase {
+
+  public void testDenseArgumentsAreNotFiltered() {
+    final double[] sizes = { 10, 20 };
+    final double[] densities = { 1d, 0.99d };
+    final boolean[] filters = CrossJoinCostModel.plan( sizes, densities );
+    assertFalse( filters[ 0 ] );
+    assertFalse( filters[ 1 ] );
+    assertEquals( 200d, CrossJoinCostModel.cost( sizes, densities, filters ), 0d );
+  }
+
+  public void testSparsestArgumentIsFilteredFirst() {
+    // Filtering the first argument leaves 10 of its tuples, after which
+    // filtering the second, which would save 10 * 100 * 0.5 evaluations,
+    // is still worth its 100 evaluations.
+    final double[] sizes = { 1000, 100 };
+    final double[] densities = { 0.01d, 0.5d };
+    final boolean[] filters = CrossJoinCostModel.plan( sizes, densities );
+    assertTrue( filters[ 0 ] );
+    assertTrue( filters[ 1 ] );
+    assertEquals( 1000d + 100d + 10d * 50d, CrossJoinCostModel.cost( sizes, densities, filters ), 1e-6 );
+
+    // Once the first argument is filtered to 2 tuples, filtering the
+    // second would save only 2 * 100 * 0.5 evaluations.
+    final double[] densities2 = { 0.002d, 0.5d };
+    final boolean[] filters2 = CrossJoinCostModel.plan( sizes, densities2 );
+    assertTrue( filters2[ 0 ] );
+    assertFalse( filters2[ 1 ] );
+  }
+
+  public void testDensityOfUniformFacts() {
+    assertEquals( 1d - Math.exp( -1d ), CrossJoinCostModel.density( 100d, 100d ), 1e-9 );
+    assertTrue( CrossJoinCostModel.density( 100d, 1e6d ) < 0.001d );
+    assertTrue( CrossJoinCostModel.density( 1e6d, 100d ) > 0.999d );
+  }
+}
+
+// End CrossJoinCostModelTest.java
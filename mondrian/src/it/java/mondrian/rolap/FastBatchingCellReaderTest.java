@@ -1506,6 +1506,30 @@ public class FastBatchingCellReaderTest extends BatchTestCase {
     assertQueryReturns( "select lastnonempty([education level].members, measures.[unit sales]) on 0 from sales",
         "Axis #0:\n" + "{}\n" + "Axis #1:\n" + "{[Education Level].[Partial High School]}\n" + "Row #0: 79,155\n" );
   }
+
+  /**
+   * Tests that predicting the cell requests of calculated members, including both branches of conditionals, does not
+   * change the result of a query.
+   */
+  public void testPlanCellRequests() {
+    final String query =
+        "with member [Measures].[Growth] as\n"
+        + " 'IIf([Measures].[Unit Sales] > 20000,\n"
+        + "   [Measures].[Unit Sales] / ([Measures].[Unit Sales], [Time].[Time].PrevMember),\n"
+        + "   CoalesceEmpty(([Measures].[Store Sales], [Time].[Time].PrevMember),\n"
+        + "     [Measures].[Store Cost]))'\n"
+        + "member [Measures].[Share] as\n"
+        + " '[Measures].[Growth] / ([Measures].[Growth], [Product].[All Products])'\n"
+        + "select {[Measures].[Unit Sales], [Measures].[Growth], [Measures].[Share]} on columns,\n"
+        + " CrossJoin([Product].[Product Family].Members, [Time].[Quarter].Members) on rows\n"
+        + "from [Sales]";
+    final String expected = TestContext.toString( executeQuery( query ) );
+    propSaver.set( propSaver.properties.PlanCellRequests, true );
+    getConnection().getCacheControl( null ).flushSchemaCache();
+    assertEquals( expected, TestContext.toString( executeQuery( query ) ) );
+    // Again, with the cells in cache.
+    assertEquals( expected, TestContext.toString( executeQuery( query ) ) );
+  }
 }
 
 // End FastBatchingCellReaderTest.java
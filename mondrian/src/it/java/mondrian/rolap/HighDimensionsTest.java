@@ -246,6 +246,129 @@ public class HighDimensionsTest extends FoodMartTestCase {
             "select NON EMPTY filter([StoreSize].[Sqft].members, 1=1) on 0 from highCard");
     }
 
+    /**
+     * Tests that reading the members of a high-cardinality level in keyset
+     * chunks gives the same result as reading them all at once, including
+     * when the level contains a null member.
+     */
+    public void testKeysetPaging() {
+        final TestContext testContext = TestContext.instance().create(
+            null,
+            "<Cube name=\"highCard\"> \n"
+            + "  <Table name=\"sales_fact_1997\"/> \n"
+            + "<Dimension name=\"StoreSize\" foreignKey=\"store_id\"  highCardinality=\"true\">\n"
+            + "    <Hierarchy hasAll=\"true\" primaryKey=\"store_id\">\n"
+            + "      <Table name=\"store\"/>\n"
+            + "      <Level name=\"Sqft\" column=\"store_sqft\" type=\"Numeric\" uniqueMembers=\"true\"/>\n"
+            + "    </Hierarchy>\n"
+            + "  </Dimension>"
+            + "<Dimension name=\"Promotions\" foreignKey=\"promotion_id\" highCardinality=\"true\">\n"
+            + "    <Hierarchy hasAll=\"true\" primaryKey=\"promotion_id\">\n"
+            + "      <Table name=\"promotion\"/>\n"
+            + "      <Level name=\"Media Type\" column=\"media_type\" uniqueMembers=\"true\"/>\n"
+            + "      <Level name=\"Promotion Name\" column=\"promotion_name\" uniqueMembers=\"false\"/>\n"
+            + "    </Hierarchy>\n"
+            + "  </Dimension>"
+            + "  <Measure name=\"Unit Sales\" column=\"unit_sales\" aggregator=\"sum\"/> \n"
+            + "</Cube> \n",
+            null,
+            null,
+            null,
+            null);
+        final String[] queries = {
+            "select [Measures].[Unit Sales] on 0,\n"
+            + " filter([StoreSize].[Sqft].members, 1=1) on 1\n"
+            + "from highCard",
+            "select [Measures].[Unit Sales] on 0,\n"
+            + " filter([Promotions].[Promotion Name].members,"
+            + " [Measures].[Unit Sales] > 0) on 1\n"
+            + "from highCard"
+        };
+        for (String queryString : queries) {
+            propSaver.set(
+                MondrianProperties.instance().HighCardKeysetChunkSize, 0);
+            final String expected =
+                TestContext.toString(executeIterable(testContext, queryString));
+            propSaver.set(
+                MondrianProperties.instance().HighCardKeysetChunkSize, 7);
+            assertEquals(
+                queryString,
+                expected,
+                TestContext.toString(
+                    executeIterable(testContext, queryString)));
+        }
+    }
+
+    /**
+     * Tests that an axis over a high-cardinality level whose members are read
+     * in keyset chunks reads the later chunks only as its cells are
+     * evaluated, not when the query is executed.
+     */
+    public void testKeysetPagingAxisIsLazy() {
+        final TestContext testContext = TestContext.instance().create(
+            null,
+            "<Cube name=\"highCard\"> \n"
+            + "  <Table name=\"sales_fact_1997\"/> \n"
+            + "<Dimension name=\"StoreSize\" foreignKey=\"store_id\"  highCardinality=\"true\">\n"
+            + "    <Hierarchy hasAll=\"true\" primaryKey=\"store_id\">\n"
+            + "      <Table name=\"store\"/>\n"
+            + "      <Level name=\"Sqft\" column=\"store_sqft\" type=\"Numeric\" uniqueMembers=\"true\"/>\n"
+            + "    </Hierarchy>\n"
+            + "  </Dimension>"
+            + "  <Measure name=\"Unit Sales\" column=\"unit_sales\" aggregator=\"sum\"/> \n"
+            + "</Cube> \n",
+            null,
+            null,
+            null,
+            null);
+        propSaver.set(
+            MondrianProperties.instance().HighCardKeysetChunkSize, 3);
+        propSaver.set(MondrianProperties.instance().HighCardChunkSize, 2);
+        final int[] memberQueryCount = {0};
+        RolapUtil.setHook(
+            new RolapUtil.ExecuteQueryHook() {
+                public void onExecuteQuery(String sql) {
+                    if (sql.contains("store_sqft")
+                        && !sql.contains("sum("))
+                    {
+                        ++memberQueryCount[0];
+                    }
+                }
+            });
+        try {
+            final Result result = executeIterable(
+                testContext,
+                "select [Measures].[Unit Sales] on 0,\n"
+                + " filter([StoreSize].[Sqft].members, 1=1) on 1\n"
+                + "from highCard");
+            final int executeCount = memberQueryCount[0];
+            assertTrue(executeCount > 0);
+            final List<Position> positions =
+                result.getAxes()[1].getPositions();
+            for (int i = 0; i < positions.size(); i++) {
+                assertNotNull(result.getCell(new int[] {0, i}));
+            }
+            // More than 3 * 2 members, so the level takes several chunks.
+            assertTrue(positions.size() > 6);
+            assertTrue(
+                "members read at execute: " + executeCount
+                + ", in total: " + memberQueryCount[0],
+                executeCount < memberQueryCount[0]);
+        } finally {
+            RolapUtil.setHook(null);
+        }
+    }
+
+    private static Result executeIterable(
+        TestContext testContext,
+        String queryString)
+    {
+        final Connection connection = testContext.getConnection();
+        final Query query = connection.parseQuery(queryString);
+        query.setResultStyle(ResultStyle.ITERABLE);
+        return connection.execute(query);
+    }
+
     //
     // Private Stuff --------------------------------------------
     //
@@ -982,6 +982,69 @@ public class MemberCacheControlTest extends FoodMartTestCase {
         }
     }
 
+    /**
+     * Tests that flushing members of a parent-child hierarchy from the member
+     * cache discards the closure index of its level
+     * ({@link MondrianProperties#EnableParentChildIndex}).
+     */
+    public void testFlushParentChildIndex() {
+        propSaver.set(propSaver.properties.EnableParentChildIndex, true);
+        final TestContext testContext = getTestContext();
+        final CacheControl cacheControl =
+            testContext.getConnection().getCacheControl(null);
+        final RolapMember member =
+            findMember(testContext, "HR", "Employees", "Sheri Nowmer");
+        final RolapLevel level = member.getLevel();
+        assertTrue(level.isParentChild());
+        final ParentChildIndex index = level.getParentChildIndex(true);
+        assertNotNull(index);
+        assertSame(index, level.getParentChildIndex(false));
+
+        cacheControl.flush(cacheControl.createMemberSet(member, true));
+        assertNull(level.getParentChildIndex(false));
+        assertNotNull(level.getParentChildIndex(true));
+    }
+
+    /**
+     * Tests that flushing a member from the member cache discards its lazily
+     * loaded properties ({@link MondrianProperties#LazyMemberProperties}), so
+     * that they are read again.
+     */
+    public void testFlushLazyMemberProperties() {
+        propSaver.set(propSaver.properties.LazyMemberProperties, true);
+        final TestContext testContext = getTestContext();
+        CacheControlTest.flushCache(testContext);
+        final CacheControl cacheControl =
+            testContext.getConnection().getCacheControl(null);
+        final RolapMember member =
+            findMember(testContext, "Sales", "Retail", "CA", "San Francisco");
+        assertNotNull(member.getLevel().getMemberPropertyStore());
+
+        final Logger logger = RolapUtil.SQL_LOGGER;
+        final StringWriter sw = new StringWriter();
+        final Appender appender =
+            Util.makeAppender("testFlushLazyMemberProperties", sw, null);
+        Util.addAppender(appender, logger, org.apache.logging.log4j.Level.DEBUG);
+        try {
+            final Object value = member.getPropertyValue("Population");
+            assertTrue(sw.toString(), sw.toString().contains("store_postal_code"));
+
+            // Loaded; no more SQL.
+            int length = sw.getBuffer().length();
+            assertEquals(value, member.getPropertyValue("Population"));
+            assertEquals("", sw.getBuffer().substring(length));
+
+            // Flushed; the properties are read again.
+            cacheControl.flush(cacheControl.createMemberSet(member, false));
+            length = sw.getBuffer().length();
+            assertEquals(value, member.getPropertyValue("Population"));
+            assertTrue(
+                sw.getBuffer().substring(length).contains("store_postal_code"));
+        } finally {
+            Util.removeAppender(appender, logger);
+        }
+    }
+
     /**
      * Test case for bug
      * <a href="http://jira.pentaho.com/browse/MONDRIAN-1076">MONDRIAN-1076,
@@ -0,0 +1,68 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package mondrian.rolap;
+
+import junit.framework.TestCase;
+
+public class NativeDecisionHistoryTest extends TestCase {
+
+  public void testCallerChoiceStandsUntilMeasured() {
+    final NativeDecisionHistory history = new NativeDecisionHistory();
+    int explored = 0;
+    for ( int i = 1; i <= 2 * NativeDecisionHistory.EXPLORE_PERIOD; i++ ) {
+      if ( !history.chooseNative( "s", true ) ) {
+        explored++;
+      }
+    }
+    // Only the periodic exploration overrides the caller.
+    assertEquals( 2, explored );
+  }
+
+  public void testFasterStrategyIsLearned() {
+    final NativeDecisionHistory history = new NativeDecisionHistory();
+    for ( int i = 0; i < NativeDecisionHistory.MIN_SAMPLES; i++ ) {
+      history.record( "s", true, 1000000L, 10 );
+      history.record( "s", false, 1000L, 10 );
+    }
+    int inMemory = 0;
+    for ( int i = 1; i <= NativeDecisionHistory.EXPLORE_PERIOD; i++ ) {
+      if ( !history.chooseNative( "s", true ) ) {
+        inMemory++;
+      }
+    }
+    assertEquals( NativeDecisionHistory.EXPLORE_PERIOD - 1, inMemory );
+    assertEquals( 1, history.getDecisions().size() );
+    assertTrue( history.getDecisions().get( 0 ), history.getDecisions().get( 0 ).endsWith( "prefer=inMemory" ) );
+
+    // When native evaluation becomes faster, the decision follows.
+    for ( int i = 0; i < 10; i++ ) {
+      history.record( "s", true, 10L, 10 );
+    }
+    assertTrue( history.getDecisions().get( 0 ).endsWith( "prefer=native" ) );
+  }
+
+  public void testForgetAndReset() {
+    final NativeDecisionHistory history = new NativeDecisionHistory();
+    history.record( "a", true, 1L, 1 );
+    history.record( "b", false, 1L, 1 );
+    assertEquals( 2, history.getShapeCount() );
+    assertTrue( history.forget( "a" ) );
+    assertFalse( history.forget( "a" ) );
+    assertEquals( 1, history.getShapeCount() );
+    history.reset();
+    assertEquals( 0, history.getShapeCount() );
+  }
+}
+
+// End NativeDecisionHistoryTest.java
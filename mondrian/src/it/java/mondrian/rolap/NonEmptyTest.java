@@ -12,6 +12,7 @@
 
 package mondrian.rolap;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -1308,6 +1309,74 @@ public class NonEmptyTest extends BatchTestCase {
         + "Row #0: 28,275\n" );
   }
 
+  /**
+   * Verify that a member list longer than maxConstraints is still constrained in SQL, both when loading a segment and
+   * when evaluating a crossjoin natively, if the dialect can read the list from a VALUES table.
+   */
+  public void testInValuesTableExceedsMaxConstraints() {
+    propSaver.set( MondrianProperties.instance().MaxConstraints, 2 );
+    propSaver.set( MondrianProperties.instance().InValuesTableThreshold, 3 );
+    final boolean valuesTable = getTestContext().getDialect().supportsInValuesTable();
+    final String cities =
+      "{[Store].[USA].[CA].[Beverly Hills], "
+        + "[Store].[USA].[CA].[Los Angeles], "
+        + "[Store].[USA].[CA].[San Diego]}";
+    final List<String> sqls = new ArrayList<String>();
+    RolapUtil.setHook(
+      new RolapUtil.ExecuteQueryHook() {
+        public void onExecuteQuery( String sql ) {
+          sqls.add( sql );
+        }
+      } );
+    try {
+      // Segment load for a compound slicer.
+      getConnection().getCacheControl( null ).flushSchemaCache();
+      getTestContext().withFreshConnection().executeQuery(
+        "select {[Measures].[Unit Sales]} on columns from [Sales] where " + cities );
+      assertEquals( valuesTable, containsValuesTable( sqls, true ) );
+      assertNoDoubleRows( sqls );
+
+      // Native crossjoin of an enumerated member list.
+      sqls.clear();
+      final String mdx =
+        "select NonEmptyCrossJoin(" + cities + ", [Product].Children) on columns from [Sales]";
+      if ( valuesTable ) {
+        checkNative( 0, 9, mdx );
+      } else {
+        checkNotNative( 9, mdx );
+      }
+      assertEquals( valuesTable, containsValuesTable( sqls, false ) );
+      assertNoDoubleRows( sqls );
+    } finally {
+      RolapUtil.setHook( null );
+    }
+  }
+
+  /**
+   * Checks that no statement wraps the rows of a VALUES table in parentheses twice, as in
+   * <code>VALUES (('Beverly Hills'))</code>.
+   */
+  private static void assertNoDoubleRows( List<String> sqls ) {
+    for ( String sql : sqls ) {
+      assertFalse( sql, sql.contains( "(VALUES ((" ) );
+    }
+  }
+
+  /**
+   * Returns whether any of the statements, among those that aggregate a measure or among those that do not, reads an IN
+   * list from a VALUES table.
+   */
+  private static boolean containsValuesTable( List<String> sqls, boolean aggregate ) {
+    for ( String sql : sqls ) {
+      if ( sql.contains( "store_city" )
+        && sql.contains( "sum(" ) == aggregate
+        && sql.contains( " in (SELECT * FROM (VALUES (" ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Verify that the presence of All member in all the inputs disables native evaluation.
    */
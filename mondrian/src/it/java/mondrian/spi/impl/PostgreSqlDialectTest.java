@@ -19,6 +19,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 
 import java.sql.Statement;
+import java.util.Arrays;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -54,5 +55,17 @@ public class PostgreSqlDialectTest extends TestCase {
     assertEquals( "cast(table.column as text) is not null and cast(table.column as text) ~ '.*a.*'", sql );
   }
 
+  public void testGenerateInValuesTable() throws Exception {
+    when( metaData.getIdentifierQuoteString() ).thenReturn( "\"" );
+    dialect = new PostgreSqlDialect( connection );
+    assertTrue( dialect.supportsInValuesTable() );
+    assertEquals(
+      "(SELECT * FROM (VALUES (1), (2)) AS \"t\" (\"c0\"))",
+      dialect.generateInValuesTable( 1, Arrays.asList( "(1)", "(2)" ) ) );
+    assertEquals(
+      "(SELECT * FROM (VALUES (1, 'a'), (2, 'b')) AS \"t\" (\"c0\", \"c1\"))",
+      dialect.generateInValuesTable( 2, Arrays.asList( "(1, 'a')", "(2, 'b')" ) ) );
+  }
+
 }
 //End PostgreSqlDialectTest.java
@@ -15,11 +15,13 @@ package mondrian.test;
 import mondrian.olap.*;
 import mondrian.olap.Role.HierarchyAccess;
 import mondrian.rolap.RolapHierarchy.LimitedRollupMember;
+import mondrian.rolap.RolapUtil;
 
 import junit.framework.Assert;
 
 import org.olap4j.mdx.IdentifierNode;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -3675,6 +3677,74 @@ public class AccessControlTest extends FoodMartTestCase {
     }
 
 
+    /**
+     * Tests that pushing role member grants into native SQL
+     * ({@link mondrian.olap.MondrianProperties#EnableNativeRoleConstraints})
+     * gives the same results as filtering the members afterwards, and that
+     * the native SQL restricts the members to the states the role can see.
+     */
+    public void testNativeRoleConstraints() {
+        propSaver.set(propSaver.properties.EnableNativeCrossJoin, true);
+        propSaver.set(propSaver.properties.EnableNativeNonEmpty, true);
+        final TestContext testContext = getTestContext().create(
+            null, null, null, null, null,
+            "<Role name=\"role1\">\n"
+            + "  <SchemaGrant access=\"none\">\n"
+            + "    <CubeGrant cube=\"Sales\" access=\"all\">\n"
+            + "      <HierarchyGrant hierarchy=\"[Store]\" access=\"custom\"\n"
+            + "          rollupPolicy=\"partial\">\n"
+            + "        <MemberGrant member=\"[Store].[USA].[CA]\" access=\"all\"/>\n"
+            + "        <MemberGrant member=\"[Store].[USA].[CA].[Los Angeles]\" access=\"none\"/>\n"
+            + "        <MemberGrant member=\"[Store].[USA].[WA].[Seattle]\" access=\"all\"/>\n"
+            + "      </HierarchyGrant>\n"
+            + "    </CubeGrant>\n"
+            + "  </SchemaGrant>\n"
+            + "</Role>").withRole("role1");
+        final String[] queries = {
+            "select non empty crossjoin([Store].[Store City].Members,"
+            + " [Gender].[Gender].Members) on 0 from [Sales]",
+            "select non empty Descendants([Store].[USA], [Store].[Store Name])"
+            + " on 0 from [Sales]",
+            "select non empty [Store].[USA].[CA].Children on 0 from [Sales]"
+        };
+        for (String query : queries) {
+            propSaver.set(
+                propSaver.properties.EnableNativeRoleConstraints, false);
+            final String expected =
+                TestContext.toString(testContext.executeQuery(query));
+            testContext.flushSchemaCache();
+            propSaver.set(
+                propSaver.properties.EnableNativeRoleConstraints, true);
+            final List<String> sqls = new ArrayList<String>();
+            RolapUtil.setHook(
+                new RolapUtil.ExecuteQueryHook() {
+                    public void onExecuteQuery(String sql) {
+                        sqls.add(sql);
+                    }
+                });
+            try {
+                testContext.assertQueryReturns(query, expected);
+            } finally {
+                RolapUtil.setHook(null);
+            }
+            // The native member query, unlike the segment loads, does not
+            // aggregate; it carries the role's grants as an IN predicate.
+            boolean found = false;
+            for (String sql : sqls) {
+                final String unquoted = sql.replaceAll("[`\"]", "");
+                if (!unquoted.contains("sum(")
+                    && unquoted.contains("store_state in ('CA', 'WA')"))
+                {
+                    found = true;
+                }
+            }
+            assertTrue(
+                "no native SQL with the role's IN predicate for " + query
+                + ": " + sqls,
+                found);
+        }
+    }
+
     public void testValidMeasureWithRestrictedCubes() {
         //http://jira.pentaho.com/browse/MONDRIAN-1616
         final String roleDefs =
@@ -47,8 +47,10 @@ import org.olap4j.OlapConnection;
 import org.olap4j.OlapStatement;
 
 import junit.framework.Assert;
+import mondrian.calc.Calc;
 import mondrian.calc.ResultStyle;
 import mondrian.olap.Axis;
+import mondrian.olap.CacheControl;
 import mondrian.olap.Cell;
 import mondrian.olap.Connection;
 import mondrian.olap.Dimension;
@@ -1607,6 +1609,78 @@ public class BasicQueryTest extends FoodMartTestCase {
         + " milliseconds excluding db", execNonDbMillis <= 2000 && execMillis <= 30000 );
   }
 
+  public void testQueryPlanCache() {
+    final String queryString =
+        "with member [Measures].[Profit Ratio] as\n"
+            + " '[Measures].[Store Sales] / [Measures].[Store Cost]'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Profit Ratio]} on columns,\n"
+            + " [Product].Children on rows\n" + "from [Sales]";
+    final String expected = TestContext.toString( executeQuery( queryString ) );
+    propSaver.set( propSaver.properties.QueryPlanCacheSize, 10 );
+    final Connection connection = getConnection();
+    final RolapSchema schema = (RolapSchema) connection.getSchema();
+    final int hitCount = schema.getQueryPlanCacheHitCount();
+    final int missCount = schema.getQueryPlanCacheMissCount();
+    final Query query1 = connection.parseQuery( queryString );
+    assertEquals( hitCount, schema.getQueryPlanCacheHitCount() );
+    assertEquals( missCount + 1, schema.getQueryPlanCacheMissCount() );
+    assertEquals( expected, TestContext.toString( connection.execute( query1 ) ) );
+
+    // A closed query is reused as it is; it is not parsed, validated or
+    // compiled again.
+    final Calc[] axisCalcs = query1.axisCalcs;
+    query1.close();
+    final Query query2 = connection.parseQuery( queryString );
+    assertEquals( hitCount + 1, schema.getQueryPlanCacheHitCount() );
+    assertSame( query1, query2 );
+    assertSame( axisCalcs, query2.axisCalcs );
+    assertEquals( expected, TestContext.toString( connection.execute( query2 ) ) );
+
+    // While the cached query is in use, the text is parsed again, and the new
+    // query has its own calculated members.
+    final Query query3 = connection.parseQuery( queryString );
+    assertEquals( hitCount + 1, schema.getQueryPlanCacheHitCount() );
+    assertEquals( missCount + 2, schema.getQueryPlanCacheMissCount() );
+    assertNotSame( query2, query3 );
+    assertNotSame( query2.getFormulas()[0].getMdxMember(), query3.getFormulas()[0].getMdxMember() );
+    assertEquals( expected, TestContext.toString( connection.execute( query3 ) ) );
+    query3.close();
+    query2.close();
+
+    // A query with a parameter is reused too, with the parameter's default
+    // value.
+    final String parameterQueryString =
+        "select {[Measures].[Unit Sales]} on columns,\n"
+            + " {Parameter(\"P\", [Product], [Product].[Drink])} on rows\n" + "from [Sales]";
+    final Query parameterQuery1 = connection.parseQuery( parameterQueryString );
+    parameterQuery1.setParameter( "P", "[Product].[Food]" );
+    final String food = TestContext.toString( connection.execute( parameterQuery1 ) );
+    assertTrue( food, food.contains( "[Product].[Food]" ) );
+    parameterQuery1.close();
+    final Query parameterQuery2 = connection.parseQuery( parameterQueryString );
+    assertSame( parameterQuery1, parameterQuery2 );
+    final String drink = TestContext.toString( connection.execute( parameterQuery2 ) );
+    assertTrue( drink, drink.contains( "[Product].[Drink]" ) );
+    parameterQuery2.close();
+
+    // Flushing cells does not affect compiled queries.
+    final int cellFlushHitCount = schema.getQueryPlanCacheHitCount();
+    final CacheControl cacheControl = connection.getCacheControl( null );
+    cacheControl.flush( cacheControl.createMeasuresRegion( schema.lookupCube( "Sales", true ) ) );
+    final Query query4 = connection.parseQuery( queryString );
+    assertEquals( cellFlushHitCount + 1, schema.getQueryPlanCacheHitCount() );
+    assertEquals( expected, TestContext.toString( connection.execute( query4 ) ) );
+    query4.close();
+
+    // After a schema flush, the query is parsed again.
+    cacheControl.flushSchemaCache();
+    final int flushedHitCount = schema.getQueryPlanCacheHitCount();
+    final int flushedMissCount = schema.getQueryPlanCacheMissCount();
+    assertEquals( expected, TestContext.toString( connection.execute( connection.parseQuery( queryString ) ) ) );
+    assertEquals( flushedHitCount, schema.getQueryPlanCacheHitCount() );
+    assertEquals( flushedMissCount + 1, schema.getQueryPlanCacheMissCount() );
+  }
+
   public void testCatalogHierarchyBasedOnView() {
     // Don't run this test if aggregates are enabled: two levels mapped to
     // the "gender" column confuse the agg engine.
@@ -14,8 +14,15 @@
 package mondrian.test;
 
 import mondrian.olap.*;
+import mondrian.rolap.RolapResult;
+import mondrian.rolap.RolapUtil;
 
+import java.util.Collections;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A <code>ParameterTest</code> is a test suite for functionality relating to
@@ -35,6 +42,179 @@ public class ParallelTest extends FoodMartTestCase {
         checkSchemaFlush(5, 8, 10);
     }
 
+    /**
+     * Tests that cells evaluated on several threads have the same values as
+     * cells evaluated on one.
+     */
+    public void testParallelCellEvaluation() {
+        final String query =
+            "with member [Measures].[Profit Share] as\n"
+            + " '([Measures].[Store Sales] - [Measures].[Store Cost])\n"
+            + "   / ([Measures].[Store Sales], [Product].[All Products])',\n"
+            + " format_string = '0.00%'\n"
+            + "member [Measures].[Prev Sales] as\n"
+            + " '([Measures].[Unit Sales], [Time].[Time].PrevMember)'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Profit Share],\n"
+            + "  [Measures].[Prev Sales]} on columns,\n"
+            + " CrossJoin([Product].[Product Department].Members,\n"
+            + "  [Time].[Quarter].Members) on rows\n"
+            + "from [Sales]";
+        final String expected =
+            TestContext.toString(executeQuery(query));
+        propSaver.set(propSaver.properties.CellEvaluationParallelism, 4);
+        getConnection().getCacheControl(null).flushSchemaCache();
+        final Result result = executeQuery(query);
+        assertEquals(expected, TestContext.toString(result));
+        // The stripes ran on more than one thread of the pool.
+        assertTrue(((RolapResult) result).getForkedThreadCount() > 1);
+        // Again, with the cells in cache.
+        assertEquals(expected, TestContext.toString(executeQuery(query)));
+    }
+
+    /**
+     * Tests that a named set used by a calculated member gives the same
+     * values when cells are evaluated on several threads, each of which
+     * starts with the named sets already evaluated.
+     */
+    public void testParallelCellEvaluationWithNamedSet() {
+        final String query =
+            "with set [Top Products] as\n"
+            + " 'TopCount([Product].[Product Department].Members, 5,\n"
+            + "   [Measures].[Unit Sales])'\n"
+            + "member [Measures].[Top Sales] as\n"
+            + " 'Sum([Top Products], [Measures].[Unit Sales])'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Top Sales]}"
+            + " on columns,\n"
+            + " CrossJoin({[Top Products]}, [Time].[Quarter].Members) on rows\n"
+            + "from [Sales]";
+        final String expected =
+            TestContext.toString(executeQuery(query));
+        propSaver.set(propSaver.properties.CellEvaluationParallelism, 4);
+        getConnection().getCacheControl(null).flushSchemaCache();
+        assertEquals(expected, TestContext.toString(executeQuery(query)));
+    }
+
+    /**
+     * Tests a named set that is used only by the cells, so is first needed
+     * by a stripe running on a thread of the pool. Named sets are evaluated
+     * only on the thread executing the query, so that pass of the cells is
+     * evaluated on that thread instead, and the stripes of the next pass
+     * start with the set evaluated.
+     */
+    public void testParallelCellEvaluationNamedSetOnlyInCells() {
+        final String query =
+            "with set [Top Products] as\n"
+            + " 'TopCount([Product].[Product Department].Members, 5,\n"
+            + "   [Measures].[Unit Sales])'\n"
+            + "member [Measures].[Top Sales] as\n"
+            + " 'Sum([Top Products], [Measures].[Unit Sales])'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Top Sales]}"
+            + " on columns,\n"
+            + " CrossJoin([Store].[Store State].Members,\n"
+            + "  [Time].[Quarter].Members) on rows\n"
+            + "from [Sales]";
+        final String expected =
+            TestContext.toString(executeQuery(query));
+        propSaver.set(propSaver.properties.CellEvaluationParallelism, 4);
+        getConnection().getCacheControl(null).flushSchemaCache();
+        assertEquals(expected, TestContext.toString(executeQuery(query)));
+        // Again, with the cells in cache, so that there is only one pass.
+        assertEquals(expected, TestContext.toString(executeQuery(query)));
+    }
+
+    /**
+     * Tests that a query whose axes use expensive, independent set
+     * expressions gives the same result when its axes are evaluated
+     * concurrently. The named set is used by two axes, which must therefore
+     * be evaluated together.
+     */
+    public void testConcurrentAxisEvaluation() {
+        final String query =
+            "with set [Top Cities] as\n"
+            + " 'TopCount([Customers].[City].Members, 5,\n"
+            + "   [Measures].[Unit Sales])'\n"
+            + "select Filter([Product].[Product Family].Members,\n"
+            + "  [Measures].[Store Sales] > 100000) on columns,\n"
+            + " TopCount([Store].[Store Name].Members, 5,\n"
+            + "  [Measures].[Unit Sales]) on rows,\n"
+            + " Head([Top Cities], 2) on pages,\n"
+            + " Tail([Top Cities], 2) on chapters\n"
+            + "from [Sales]";
+        final String expected =
+            TestContext.toString(executeQuery(query));
+        propSaver.set(propSaver.properties.ConcurrentAxisEvaluation, true);
+        getConnection().getCacheControl(null).flushSchemaCache();
+        assertEquals(expected, TestContext.toString(executeQuery(query)));
+        // Again, with the cells in cache.
+        assertEquals(expected, TestContext.toString(executeQuery(query)));
+    }
+
+    /**
+     * Tests that independent axes are evaluated at the same time. The first
+     * thread of the pool to read from the database waits until a second
+     * thread reads too, which it can do only if the other axis is being
+     * evaluated concurrently.
+     */
+    public void testConcurrentAxisEvaluationOverlaps() {
+        final String query =
+            "select [Product].[Product Family].Members on columns,\n"
+            + " [Store].[Store Name].Members on rows\n"
+            + "from [Sales]";
+        final String expected =
+            TestContext.toString(executeQuery(query));
+        propSaver.set(propSaver.properties.ConcurrentAxisEvaluation, true);
+        getConnection().getCacheControl(null).flushSchemaCache();
+        final CountDownLatch latch = new CountDownLatch(2);
+        final Set<String> threadNames =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        RolapUtil.setHook(
+            new RolapUtil.ExecuteQueryHook() {
+                public void onExecuteQuery(String sql) {
+                    final String name = Thread.currentThread().getName();
+                    if (name.startsWith("mondrian.rolap.EvaluationPool_")
+                        && threadNames.add(name))
+                    {
+                        latch.countDown();
+                        try {
+                            latch.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw Util.newInternal(e, "interrupted");
+                        }
+                    }
+                }
+            });
+        final Result result;
+        try {
+            result = executeQuery(query);
+        } finally {
+            RolapUtil.setHook(null);
+        }
+        assertEquals(expected, TestContext.toString(result));
+        assertEquals(threadNames.toString(), 0, latch.getCount());
+        assertTrue(((RolapResult) result).getForkedThreadCount() > 1);
+    }
+
+    /**
+     * Tests concurrent axis evaluation where two axes share a named set only
+     * through the formula of another named set.
+     */
+    public void testConcurrentAxisEvaluationNestedNamedSet() {
+        final String query =
+            "with set [Top Cities] as\n"
+            + " 'TopCount([Customers].[City].Members, 5,\n"
+            + "   [Measures].[Unit Sales])'\n"
+            + " set [Top Two Cities] as 'Head([Top Cities], 2)'\n"
+            + "select [Product].[Product Family].Members on columns,\n"
+            + " [Top Two Cities] on rows,\n"
+            + " Tail([Top Cities], 2) on pages\n"
+            + "from [Sales]";
+        final String expected =
+            TestContext.toString(executeQuery(query));
+        propSaver.set(propSaver.properties.ConcurrentAxisEvaluation, true);
+        getConnection().getCacheControl(null).flushSchemaCache();
+        assertEquals(expected, TestContext.toString(executeQuery(query)));
+    }
+
     /**
      * Tests several threads, each of which is creating connections and
      * periodically flushing the schema cache.
@@ -1263,6 +1263,65 @@ public class ParentChildHierarchyTest extends FoodMartTestCase {
         testNoClosureContext.assertQueryReturns(mdx, expected);
     }
 
+    /**
+     * Tests that Descendants and the aggregated values of a parent-child
+     * hierarchy without a closure table are the same whether or not they
+     * are computed from the in-memory closure index
+     * ({@link MondrianProperties#EnableParentChildIndex}).
+     */
+    public void testParentChildIndex() {
+        final String cube =
+            "<Cube name=\"HR4C\">\n"
+            + "  <Table name=\"salary\"/>\n"
+            + "  <Dimension name=\"Employees\" foreignKey=\"employee_id\">\n"
+            + "    <Hierarchy hasAll=\"true\" allMemberName=\"All\"\n"
+            + "        primaryKey=\"employee_id\">\n"
+            + "      <Table name=\"employee\"/>\n"
+            + "      <Level name=\"Employee Id\" type=\"Numeric\" uniqueMembers=\"true\"\n"
+            + "          column=\"employee_id\" parentColumn=\"supervisor_id\"\n"
+            + "          nameColumn=\"full_name\" nullParentValue=\"0\">\n"
+            + "      </Level>\n"
+            + "    </Hierarchy>\n"
+            + "  </Dimension>\n"
+            + "  <Measure name=\"Count\" column=\"employee_id\" aggregator=\"count\" />\n"
+            + "  <Measure name=\"Max Paid\" column=\"salary_paid\" aggregator=\"max\" />\n"
+            + "</Cube>\n";
+        final String[] queries = {
+            "select {[Measures].[Count], [Measures].[Max Paid]} ON COLUMNS,\n"
+            + " Descendants([Employees].[Sheri Nowmer].[Derrick Whelply],"
+            + " [Employees].[Employee Id]) ON ROWS\n"
+            + "from [HR4C]",
+            "select {[Measures].[Count]} ON COLUMNS,\n"
+            + " Descendants([Employees].[Sheri Nowmer].[Derrick Whelply],"
+            + " [Employees].[Employee Id], SELF_AND_AFTER) ON ROWS\n"
+            + "from [HR4C]",
+            "select {[Measures].[Count]} ON COLUMNS,\n"
+            + " Descendants([Employees].[All], [Employees].[Employee Id],"
+            + " SELF) ON ROWS\n"
+            + "from [HR4C]",
+            "select {[Measures].[Count]} ON COLUMNS,\n"
+            + " Descendants([Employees].[Sheri Nowmer], 2, SELF_AND_AFTER)"
+            + " ON ROWS\n"
+            + "from [HR4C]",
+            "select {[Measures].[Count]} ON COLUMNS,\n"
+            + " Descendants([Employees].[Sheri Nowmer].[Michael Spence],,"
+            + " LEAVES) ON ROWS\n"
+            + "from [HR4C]"
+        };
+        for (String query : queries) {
+            propSaver.set(propSaver.properties.EnableParentChildIndex, false);
+            final TestContext testContext = TestContext.instance().create(
+                null, cube, null, null, null, null);
+            final String expected =
+                TestContext.toString(testContext.executeQuery(query));
+            propSaver.set(propSaver.properties.EnableParentChildIndex, true);
+            final TestContext indexContext = TestContext.instance().create(
+                null, cube, null, null, null, null).withFreshConnection();
+            indexContext.assertQueryReturns(
+                query, TestContext.unfold(expected));
+        }
+    }
+
     public void testSchemaReaderLevelMembers()
     {
         final SchemaReader schemaReader =
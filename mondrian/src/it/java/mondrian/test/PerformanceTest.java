@@ -488,6 +488,46 @@ public class PerformanceTest extends FoodMartTestCase {
     printDuration( "in-memory calc", start );
   }
 
+  /**
+   * Compares the time to evaluate arithmetic calculated members over a large
+   * axis with and without generated code, after the cells have been loaded.
+   * Both must give the same result.
+   */
+  public void testGeneratedCalcCode() {
+    final String mdx =
+      "with member [Measures].[Profit] as\n"
+        + "  [Measures].[Store Sales] - [Measures].[Store Cost]\n"
+        + "member [Measures].[Margin] as\n"
+        + "  IIf([Measures].[Store Sales] = 0, null,\n"
+        + "    [Measures].[Profit] / [Measures].[Store Sales] * 100)\n"
+        + "member [Measures].[Adjusted] as\n"
+        + "  CoalesceEmpty([Measures].[Unit Sales], 0) * 1.1\n"
+        + "    + ([Measures].[Store Sales], [Time].[1997].[Q1]) / 4\n"
+        + "select {[Measures].[Profit], [Measures].[Margin],\n"
+        + "  [Measures].[Adjusted]} on 0,\n"
+        + "  [Customers].[Name].Members on 1\n"
+        + "from [Sales]";
+    final int n = LOGGER.isDebugEnabled() ? 20 : 2;
+    String expected = null;
+    for ( boolean generate : new boolean[] { false, true } ) {
+      propSaver.set( propSaver.properties.GenerateCalcCode, generate );
+      final Statistician statistician =
+        new Statistician(
+          "testGeneratedCalcCode " + ( generate ? "generated" : "interpreted" ) );
+      for ( int i = 0; i < n; i++ ) {
+        final long start = System.currentTimeMillis();
+        final String actual = TestContext.toString( executeQuery( mdx ) );
+        statistician.record( start );
+        if ( expected == null ) {
+          expected = actual;
+        } else {
+          assertEquals( expected, actual );
+        }
+      }
+      statistician.printDurations();
+    }
+  }
+
   /**
    * Test case for
    * <a href="http://jira.pentaho.com/browse/MONDRIAN-843">
@@ -254,6 +254,46 @@ public class PropertiesTest extends FoodMartTestCase {
         assertEquals(4, axesProperties.length);
     }
 
+    /**
+     * Tests that member properties have the same values when they are loaded
+     * lazily, in batches, as when they are read with their members.
+     */
+    public void testLazyMemberProperties() {
+        final String mdx =
+            "WITH MEMBER [Measures].[Store Type] AS\n"
+            + " [Store].CurrentMember.Properties(\"Store Type\")\n"
+            + "SELECT {[Measures].[Unit Sales], [Measures].[Store Type]}"
+            + " ON COLUMNS,\n"
+            + " {[Store].[Store Name].Members} DIMENSION PROPERTIES\n"
+            + " [Store].[Store Name].[Store Manager] ON ROWS\n"
+            + "FROM [Sales]";
+        final Result expected = executeQuery(mdx);
+
+        propSaver.set(propSaver.properties.LazyMemberProperties, true);
+        final TestContext testContext = getTestContext().withFreshConnection();
+        testContext.flushSchemaCache();
+        try {
+            final Result result = testContext.executeQuery(mdx);
+            assertEquals(
+                TestContext.toString(expected),
+                TestContext.toString(result));
+            assertEquals(storeManagers(expected), storeManagers(result));
+        } finally {
+            // Members read while the property was set have no properties
+            // of their own; don't leave them in the cache.
+            testContext.flushSchemaCache();
+        }
+    }
+
+    private static String storeManagers(Result result) {
+        final StringBuilder buf = new StringBuilder();
+        for (Position position : result.getAxes()[1].getPositions()) {
+            buf.append(position.get(0).getPropertyValue("Store Manager"))
+                .append('\n');
+        }
+        return buf.toString();
+    }
+
     public void testMandatoryCellProperties() {
         Connection connection = getConnection();
         Query salesCube = connection.parseQuery(
@@ -155,6 +155,32 @@ public class UdfTest extends FoodMartTestCase {
             + "Row #5: 193,481\n");
     }
 
+    /**
+     * Tests that the result of a query that calls a user-defined function is
+     * not kept in the result cache, because the function may return a
+     * different value each time it is called.
+     */
+    public void testFunResultNotCached() {
+        if (MondrianProperties.instance().DisableCaching.get()) {
+            return;
+        }
+        propSaver.set(propSaver.properties.ResultCacheSize, 1000000);
+        final String query =
+            "WITH MEMBER [Measures].[Sqft Plus One] AS 'PlusOne([Measures].[Store Sqft])'\n"
+            + "SELECT {[Measures].[Sqft Plus One]} ON COLUMNS, \n"
+            + "  {[Store Type].children} ON ROWS \n"
+            + "FROM [Store]";
+        final Connection connection = getConnection();
+        final Result result1 =
+            connection.execute(connection.parseQuery(query));
+        final Result result2 =
+            connection.execute(connection.parseQuery(query));
+        assertNotSame(result1.getAxes()[1], result2.getAxes()[1]);
+        assertEquals(
+            TestContext.toString(result1),
+            TestContext.toString(result2));
+    }
+
     /**
      * Test case for bug
      * <a href="http://jira.pentaho.com/browse/MONDRIAN-1200">MONDRIAN-1200,
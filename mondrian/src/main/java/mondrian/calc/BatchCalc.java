@@ -0,0 +1,54 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.calc;
+
+import mondrian.olap.Evaluator;
+
+/**
+ * Compiled numeric expression that can be evaluated for every tuple of a
+ * list in one call.
+ *
+ * <p>Functions that aggregate an expression over a set, such as
+ * <code>Sum</code> and <code>Avg</code>, would otherwise evaluate the
+ * expression once per tuple, setting and restoring the context and
+ * dispatching through the whole tree of calcs each time. An implementation
+ * of this interface can instead evaluate its operands over the whole list
+ * and combine the resulting arrays, and look up the cells of stored measures
+ * in bulk.
+ *
+ * @see mondrian.olap.fun.FunUtil#evaluateDoubles
+ */
+public interface BatchCalc extends Calc {
+    /**
+     * Evaluates this expression once for each tuple of a list, in the
+     * context of the evaluator with the members of the tuple set, and stores
+     * the results in an array. A null result is stored as
+     * {@link mondrian.olap.fun.FunUtil#DoubleNull}.
+     *
+     * <p>The context of the evaluator is the same on return as on entry.
+     *
+     * @param evaluator Evaluation context
+     * @param tupleList List of tuples
+     * @param values Array, at least as long as the list, to receive values
+     * @return 0 if all values are valid; a positive number if some values
+     *   are not, because they depend on cells that have not been loaded yet;
+     *   or -1 if a value was not numeric, in which case the caller must
+     *   evaluate the expression one tuple at a time
+     */
+    int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList tupleList,
+        double[] values);
+}
+
+// End BatchCalc.java
@@ -88,6 +88,28 @@ public final class TupleCollections {
         }
     }
 
+    /**
+     * Creates a list of given arity and initial capacity for a function
+     * that may build a large list of tuples, such as a crossjoin.
+     *
+     * <p>If arity &gt; 1 and
+     * {@link MondrianProperties#EnableOrdinalTupleLists} is set, creates an
+     * {@link OrdinalTupleList}; otherwise behaves like
+     * {@link #createList(int, int)}.
+     *
+     * @param arity Arity
+     * @param initialCapacity Initial capacity
+     * @return Tuple list
+     */
+    public static TupleList createCompactList(int arity, int initialCapacity) {
+        if (arity > 1
+            && MondrianProperties.instance().EnableOrdinalTupleLists.get())
+        {
+            return new OrdinalTupleList(arity, initialCapacity);
+        }
+        return createList(arity, initialCapacity);
+    }
+
     /**
      * Returns an empty TupleList of given arity.
      *
@@ -0,0 +1,102 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.calc.impl;
+
+import mondrian.calc.BatchCalc;
+import mondrian.calc.Calc;
+import mondrian.calc.DoubleCalc;
+import mondrian.calc.TupleList;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Exp;
+import mondrian.olap.fun.FunUtil;
+
+/**
+ * Abstract implementation of a {@link mondrian.calc.DoubleCalc} that
+ * combines the values of two numeric operands, such as an arithmetic
+ * operator.
+ *
+ * <p>The derived class must implement the {@link #combine(double, double)}
+ * method. When evaluated over a list of tuples, each operand that implements
+ * {@link BatchCalc} is evaluated over the whole list, and the two arrays of
+ * values are combined.
+ */
+public abstract class AbstractBinaryDoubleCalc
+    extends AbstractDoubleCalc
+    implements BatchCalc
+{
+    private final DoubleCalc calc0;
+    private final DoubleCalc calc1;
+
+    /**
+     * Creates an AbstractBinaryDoubleCalc.
+     *
+     * @param exp Source expression
+     * @param calc0 Compiled expression of the first operand
+     * @param calc1 Compiled expression of the second operand
+     */
+    protected AbstractBinaryDoubleCalc(
+        Exp exp,
+        DoubleCalc calc0,
+        DoubleCalc calc1)
+    {
+        super(exp, new Calc[] {calc0, calc1});
+        this.calc0 = calc0;
+        this.calc1 = calc1;
+    }
+
+    /**
+     * Combines the values of the operands.
+     *
+     * @param v0 Value of the first operand, or
+     *   {@link FunUtil#DoubleNull} if null
+     * @param v1 Value of the second operand, or
+     *   {@link FunUtil#DoubleNull} if null
+     * @return Result, or {@link FunUtil#DoubleNull} if null
+     */
+    protected abstract double combine(double v0, double v1);
+
+    public double evaluateDouble(Evaluator evaluator) {
+        final double v0 = calc0.evaluateDouble(evaluator);
+        final double v1 = calc1.evaluateDouble(evaluator);
+        return combine(v0, v1);
+    }
+
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList tupleList,
+        double[] values)
+    {
+        if (!(calc0 instanceof BatchCalc || calc1 instanceof BatchCalc)) {
+            // Nothing to gain from evaluating the operands separately.
+            return FunUtil.evaluateEachDouble(
+                evaluator, tupleList, this, values);
+        }
+        final int notReady0 =
+            FunUtil.evaluateDoubles(evaluator, tupleList, calc0, values);
+        if (notReady0 < 0) {
+            return -1;
+        }
+        final double[] values1 = new double[tupleList.size()];
+        final int notReady1 =
+            FunUtil.evaluateDoubles(evaluator, tupleList, calc1, values1);
+        if (notReady1 < 0) {
+            return -1;
+        }
+        for (int i = 0; i < values1.length; i++) {
+            values[i] = combine(values[i], values1[i]);
+        }
+        return notReady0 + notReady1;
+    }
+}
+
+// End AbstractBinaryDoubleCalc.java
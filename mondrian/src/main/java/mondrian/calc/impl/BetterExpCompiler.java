@@ -14,10 +14,16 @@
 package mondrian.calc.impl;
 
 import mondrian.calc.*;
+import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 import mondrian.olap.type.*;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Enhanced expression compiler. It can generate code to convert between
@@ -27,6 +33,20 @@ import java.util.List;
  * @since Sep 29, 2005
  */
 public class BetterExpCompiler extends AbstractExpCompiler {
+    /**
+     * Expressions evaluated once for each tuple of a set, such as the
+     * condition of <code>Filter</code>, and the hierarchies that the set may
+     * use.
+     */
+    private final Map<Exp, List<Hierarchy>> iterationBodies =
+        new IdentityHashMap<Exp, List<Hierarchy>>();
+
+    /**
+     * Hierarchies iterated by the bodies being compiled, innermost first.
+     */
+    private final Deque<List<Hierarchy>> iterationScopes =
+        new ArrayDeque<List<Hierarchy>>();
+
     public BetterExpCompiler(Evaluator evaluator, Validator validator) {
         super(evaluator, validator);
     }
@@ -39,6 +59,100 @@ public class BetterExpCompiler extends AbstractExpCompiler {
         super(evaluator, validator, resultStyles);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>If {@link MondrianProperties#HoistInvariantSets} is set, a set
+     * expression inside the body of <code>Filter</code>, <code>Generate</code>
+     * or <code>Order</code> that does not depend on any hierarchy of the
+     * iterated set is evaluated once, rather than once per tuple. For
+     * example, in
+     *
+     * <blockquote><code>Filter([Product].Members,
+     * Count(Descendants([Time].[1997], [Month])) &gt; 0)</code></blockquote>
+     *
+     * the descendants are computed once, and kept in the expression result
+     * cache for as long as the members of the hierarchies they depend on
+     * stay the same.
+     */
+    public Calc compile(Exp exp) {
+        if (!MondrianProperties.instance().HoistInvariantSets.get()) {
+            return super.compile(exp);
+        }
+        final Exp unwrapped = DelegatingExpCompiler.unwrap(exp);
+        registerIterationBody(unwrapped);
+        final List<Hierarchy> hierarchies = iterationBodies.get(unwrapped);
+        if (hierarchies != null) {
+            iterationScopes.push(hierarchies);
+        }
+        try {
+            final Calc calc = super.compile(exp);
+            if (calc == null
+                || iterationScopes.isEmpty()
+                || !(unwrapped.getType() instanceof SetType)
+                || !canHoist(calc))
+            {
+                return calc;
+            }
+            for (Hierarchy hierarchy : iterationScopes.peek()) {
+                if (calc.dependsOn(hierarchy)) {
+                    return calc;
+                }
+            }
+            final ListCalc listCalc =
+                calc instanceof AbstractListCalc
+                    ? (ListCalc) calc
+                    : new IterableListCalc((IterCalc) calc);
+            return new HoistedListCalc(unwrapped, listCalc, getEvaluator());
+        } finally {
+            if (hierarchies != null) {
+                iterationScopes.pop();
+            }
+        }
+    }
+
+    /**
+     * If an expression is a call to a function that evaluates one of its
+     * arguments once for each tuple of a set, records that argument and the
+     * hierarchies of the set.
+     */
+    private void registerIterationBody(Exp exp) {
+        if (!(exp instanceof ResolvedFunCall)) {
+            return;
+        }
+        final ResolvedFunCall call = (ResolvedFunCall) exp;
+        final String funName = call.getFunName();
+        if (!(funName.equalsIgnoreCase("Filter")
+                || funName.equalsIgnoreCase("Generate")
+                || funName.equalsIgnoreCase("Order"))
+            || call.getArgCount() < 2
+            || !(call.getArg(0).getType() instanceof SetType))
+        {
+            return;
+        }
+        final Type setType = call.getArg(0).getType();
+        final List<Hierarchy> hierarchies = new ArrayList<Hierarchy>();
+        for (Member member : getEvaluator().getMembers()) {
+            if (setType.usesHierarchy(member.getHierarchy(), false)) {
+                hierarchies.add(member.getHierarchy());
+            }
+        }
+        iterationBodies.put(call.getArg(1), hierarchies);
+    }
+
+    /**
+     * Returns whether the value of a set calc can be shared by the tuples of
+     * an iteration: the caller must accept an immutable list, and an
+     * iterable calc must be able to be read into a list.
+     */
+    private boolean canHoist(Calc calc) {
+        final List<ResultStyle> resultStyles = getAcceptableResultStyles();
+        return (resultStyles.contains(ResultStyle.LIST)
+                || resultStyles.contains(ResultStyle.ITERABLE)
+                || resultStyles.contains(ResultStyle.ANY))
+            && (calc instanceof AbstractListCalc || calc instanceof IterCalc);
+    }
+
     public TupleCalc compileTuple(Exp exp) {
         final Calc calc = compile(exp);
         final Type type = exp.getType();
@@ -68,6 +182,38 @@ public class BetterExpCompiler extends AbstractExpCompiler {
         return listCalc;
     }
 
+    /**
+     * Calc that evaluates a set once for each combination of the members of
+     * the hierarchies it depends on, and keeps the list in the expression
+     * result cache. Lists count against the memoization budget, like other
+     * automatically memoized values.
+     *
+     * <p>In NON EMPTY context the cache key contains every current member,
+     * so the list would never be reused; there the set is evaluated
+     * directly.
+     */
+    private static class HoistedListCalc extends AbstractListCalc {
+        private final ListCalc listCalc;
+        private final ExpCacheDescriptor descriptor;
+
+        HoistedListCalc(Exp exp, ListCalc listCalc, Evaluator evaluator) {
+            super(exp, new Calc[] {listCalc}, false);
+            this.listCalc = listCalc;
+            // Key the cache by a private expression. Cache and Rank store
+            // other values for the same expression.
+            this.descriptor =
+                new ExpCacheDescriptor(
+                    new DummyExp(exp.getType()), listCalc, evaluator, true);
+        }
+
+        public TupleList evaluateList(Evaluator evaluator) {
+            if (evaluator.isNonEmpty()) {
+                return listCalc.evaluateList(evaluator);
+            }
+            return (TupleList) evaluator.getCachedResult(descriptor);
+        }
+    }
+
     private static class CopyListCalc extends AbstractListCalc {
         private final ListCalc listCalc;
 
@@ -0,0 +1,667 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.calc.impl;
+
+import mondrian.calc.BooleanCalc;
+import mondrian.calc.Calc;
+import mondrian.calc.DoubleCalc;
+import mondrian.mdx.ResolvedFunCall;
+import mondrian.olap.Exp;
+import mondrian.olap.FunDef;
+import mondrian.olap.Member;
+import mondrian.olap.Util;
+import mondrian.olap.fun.BuiltinFunTable;
+import mondrian.olap.fun.CoalesceEmptyFunDef;
+import mondrian.olap.fun.FunUtil;
+import mondrian.olap.fun.IifFunDef;
+import mondrian.olap.type.NumericType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates JVM classes that evaluate numeric expressions.
+ *
+ * <p>A calculated member's formula compiles to a tree of calcs, most of them
+ * anonymous classes, and each evaluation dispatches through every node of
+ * the tree. The call sites in the base classes see so many different
+ * receivers that the JIT cannot inline them.
+ *
+ * <p>This generator translates the arithmetic operators, numeric
+ * <code>IIf</code> and <code>CoalesceEmpty</code>, and the values of
+ * constant members and tuples in such a tree into a single class with one
+ * small method per node. The methods call each other directly, so the JIT
+ * can inline the whole subtree. Any other calc becomes a field of the
+ * generated class, and is called as before. Trees of the same shape share a
+ * generated class.
+ *
+ * <p>Each schema has its own generator, which owns the generated classes and
+ * the class loader that defines them, so they can be garbage-collected once
+ * the schema is flushed. A generator defines at most
+ * {@link #MAX_CLASS_COUNT} classes; further shapes are interpreted.
+ * Different shapes are compiled concurrently; threads that need the same
+ * shape wait for the one compiling it.
+ *
+ * <p>Classes are compiled using the system Java compiler, which is looked up
+ * once. If there is none, as in a runtime without the compiler module, no
+ * code is generated. If the generated code does not compile, the original
+ * calc is used.
+ *
+ * @see mondrian.olap.MondrianProperties#GenerateCalcCode
+ * @see mondrian.rolap.RolapSchema#getCalcCodeGenerator()
+ */
+public class CalcCodeGenerator {
+    private static final Logger LOGGER =
+        LogManager.getLogger(CalcCodeGenerator.class);
+
+    private static final String PACKAGE = "mondrian.calc.generated";
+
+    /**
+     * Name of the generated class in source code, replaced by a unique name
+     * when the class is compiled.
+     */
+    private static final String CLASS_NAME = "$Calc";
+
+    /**
+     * Maximum number of classes that a generator defines.
+     */
+    static final int MAX_CLASS_COUNT = 1000;
+
+    /**
+     * Whether the system Java compiler is available.
+     */
+    private static final boolean COMPILER_AVAILABLE = isCompilerAvailable();
+
+    /**
+     * Tasks that compile generated classes, keyed by source code. A task
+     * returns null if the source code could not be compiled.
+     */
+    private final ConcurrentMap<
+        String, FutureTask<Constructor<? extends GeneratedCalc>>> constructors =
+        new ConcurrentHashMap<
+            String, FutureTask<Constructor<? extends GeneratedCalc>>>();
+
+    private final AtomicInteger classCount = new AtomicInteger();
+    private final GeneratedClassLoader classLoader = new GeneratedClassLoader();
+
+    /**
+     * Creates a CalcCodeGenerator.
+     */
+    public CalcCodeGenerator() {
+    }
+
+    /**
+     * Returns a calc that evaluates the same expression as a given calc
+     * using a generated class, or the calc itself if its expression is not
+     * an operator that this generator translates, or code cannot be
+     * generated.
+     *
+     * @param calc Compiled expression
+     * @return Generated calc, or the given calc
+     */
+    public Calc generate(Calc calc) {
+        if (!COMPILER_AVAILABLE) {
+            return calc;
+        }
+        final Node root = node(calc);
+        if (root == null || root == Node.MEMBER_VALUE) {
+            return calc;
+        }
+        final SourceBuilder builder = new SourceBuilder();
+        builder.generateNode(calc, root);
+        final Constructor<? extends GeneratedCalc> constructor =
+            getConstructor(builder.getSource());
+        if (constructor == null) {
+            return calc;
+        }
+        try {
+            return constructor.newInstance(calc, builder.args.toArray());
+        } catch (Exception e) {
+            LOGGER.warn("Could not instantiate generated calc", e);
+            return calc;
+        }
+    }
+
+    /**
+     * Returns whether the system Java compiler is available. Looks up the
+     * compiler through {@link Compiler}, the only class that refers to the
+     * compiler API, so that a runtime without the compiler module does not
+     * fail to link this class.
+     */
+    private static boolean isCompilerAvailable() {
+        try {
+            if (Compiler.COMPILER != null) {
+                return true;
+            }
+        } catch (LinkageError e) {
+            // The compiler module is not present.
+        }
+        LOGGER.info(
+            "No Java compiler is available; expressions will be interpreted");
+        return false;
+    }
+
+    /**
+     * Returns the kind of node a calc translates to, or null if it is not
+     * translated.
+     */
+    private static Node node(Calc calc) {
+        if (calc instanceof AbstractBinaryDoubleCalc) {
+            return BinaryOperator.of(calc) != null
+                ? Node.BINARY
+                : null;
+        }
+        if (calc instanceof MemberValueCalc
+            || calc instanceof MemberArrayValueCalc)
+        {
+            return constantMembers((AbstractCalc) calc) != null
+                ? Node.MEMBER_VALUE
+                : null;
+        }
+        if (!(calc instanceof GenericCalc)
+            || !(calc.getType() instanceof NumericType))
+        {
+            return null;
+        }
+        final Exp exp = ((GenericCalc) calc).exp;
+        if (!(exp instanceof ResolvedFunCall)) {
+            return null;
+        }
+        final FunDef funDef = ((ResolvedFunCall) exp).getFunDef();
+        final Calc[] calcs = ((GenericCalc) calc).getCalcs();
+        if (funDef instanceof IifFunDef
+            && calcs.length == 3
+            && calcs[0] instanceof BooleanCalc
+            && calcs[1] instanceof DoubleCalc
+            && calcs[2] instanceof DoubleCalc)
+        {
+            return Node.IIF;
+        }
+        if (funDef instanceof CoalesceEmptyFunDef
+            && calcs.length > 0)
+        {
+            for (Calc operand : calcs) {
+                if (!(operand instanceof DoubleCalc)) {
+                    return null;
+                }
+            }
+            return Node.COALESCE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the members that a member value calc sets, or null if they
+     * are not constant.
+     */
+    private static Member[] constantMembers(AbstractCalc calc) {
+        final Calc[] calcs = calc.getCalcs();
+        final Member[] members = new Member[calcs.length];
+        for (int i = 0; i < calcs.length; i++) {
+            if (!(calcs[i] instanceof ConstantCalc)) {
+                return null;
+            }
+            final Object o = calcs[i].evaluate(null);
+            if (!(o instanceof Member) || ((Member) o).isNull()) {
+                return null;
+            }
+            members[i] = (Member) o;
+        }
+        return members;
+    }
+
+    /**
+     * Builds the source code of a generated class, and the values of its
+     * fields, from a tree of calcs.
+     */
+    private static class SourceBuilder {
+        private final StringBuilder fields = new StringBuilder();
+        private final StringBuilder assignments = new StringBuilder();
+        private final StringBuilder methods = new StringBuilder();
+        private final List<Object> args = new ArrayList<Object>();
+        private final Map<Calc, Integer> nodes =
+            new IdentityHashMap<Calc, Integer>();
+
+        /**
+         * Generates the methods of a node, if they have not been generated
+         * already, and returns its number.
+         */
+        private int generateNode(Calc calc, Node node) {
+            final Integer number = nodes.get(calc);
+            if (number != null) {
+                return number;
+            }
+            final int i = nodes.size();
+            nodes.put(calc, i);
+            final Calc[] calcs = ((AbstractCalc) calc).getCalcs();
+            switch (node) {
+            case BINARY:
+                final BinaryOperator operator = BinaryOperator.of(calc);
+                method(
+                    "double d" + i,
+                    "final double v0 = " + doubleExp(calcs[0]) + ";",
+                    "final double v1 = " + doubleExp(calcs[1]) + ";",
+                    operator.source);
+                method(
+                    "Object o" + i,
+                    "final double d = d" + i + "(e);",
+                    "return d == N ? null : Double.valueOf(d);");
+                break;
+
+            case IIF:
+                final String condition = field("BooleanCalc", calcs[0]);
+                final Calc calc1 = calcs[1];
+                final Calc calc2 = calcs[2];
+                method(
+                    "double d" + i,
+                    "return " + condition + ".evaluateBoolean(e)",
+                    "    ? " + doubleExp(calc1),
+                    "    : " + doubleExp(calc2) + ";");
+                method(
+                    "Object o" + i,
+                    "return " + condition + ".evaluateBoolean(e)",
+                    "    ? " + objectExp(calc1),
+                    "    : " + objectExp(calc2) + ";");
+                break;
+
+            case COALESCE:
+                final List<String> doubleLines = new ArrayList<String>();
+                final List<String> objectLines = new ArrayList<String>();
+                doubleLines.add("double d;");
+                objectLines.add("Object o;");
+                for (Calc operand : calcs) {
+                    doubleLines.add("d = " + doubleExp(operand) + ";");
+                    doubleLines.add("if (d != N) return d;");
+                    objectLines.add("o = " + objectExp(operand) + ";");
+                    objectLines.add("if (o != null) return o;");
+                }
+                doubleLines.add("return N;");
+                objectLines.add("return null;");
+                method("double d" + i, doubleLines.toArray(new String[0]));
+                method("Object o" + i, objectLines.toArray(new String[0]));
+                break;
+
+            case MEMBER_VALUE:
+                final Member[] members = constantMembers((AbstractCalc) calc);
+                final List<String> lines = new ArrayList<String>();
+                lines.add("final int savepoint = e.savepoint();");
+                lines.add("try {");
+                for (Member member : members) {
+                    lines.add(
+                        "    e.setContext(" + field("Member", member) + ");");
+                }
+                final boolean nullCheck =
+                    calc instanceof MemberValueCalc
+                        ? ((MemberValueCalc) calc).isNullCheck()
+                        : ((MemberArrayValueCalc) calc).isNullCheck();
+                if (nullCheck) {
+                    lines.add(
+                        "    if (e.needToReturnNullForUnrelatedDimension("
+                        + field("Member[]", members) + ")) return null;");
+                }
+                lines.add("    return e.evaluateCurrent();");
+                lines.add("} finally {");
+                lines.add("    e.restore(savepoint);");
+                lines.add("}");
+                method("double d" + i, "return toDouble(e, o" + i + "(e));");
+                method("Object o" + i, lines.toArray(new String[0]));
+                break;
+
+            default:
+                throw Util.unexpected(node);
+            }
+            return i;
+        }
+
+        private String doubleExp(Calc calc) {
+            final Node node = node(calc);
+            if (node != null) {
+                return "d" + generateNode(calc, node) + "(e)";
+            }
+            return field("DoubleCalc", calc) + ".evaluateDouble(e)";
+        }
+
+        private String objectExp(Calc calc) {
+            final Node node = node(calc);
+            if (node != null) {
+                return "o" + generateNode(calc, node) + "(e)";
+            }
+            return field("Calc", calc) + ".evaluate(e)";
+        }
+
+        /**
+         * Declares a field whose value is passed to the constructor of the
+         * generated class, and returns its name.
+         */
+        private String field(String type, Object value) {
+            final String name = "f" + args.size();
+            fields.append("    private final ").append(type).append(' ')
+                .append(name).append(";\n");
+            assignments.append("        ").append(name).append(" = (")
+                .append(type).append(") args[").append(args.size())
+                .append("];\n");
+            args.add(value);
+            return name;
+        }
+
+        private void method(String signature, String... lines) {
+            methods.append("\n    private ").append(signature)
+                .append("(Evaluator e) {\n");
+            for (String line : lines) {
+                methods.append("        ").append(line).append('\n');
+            }
+            methods.append("    }\n");
+        }
+
+        private String getSource() {
+            return "package " + PACKAGE + ";\n"
+                + "\n"
+                + "import mondrian.calc.BooleanCalc;\n"
+                + "import mondrian.calc.Calc;\n"
+                + "import mondrian.calc.DoubleCalc;\n"
+                + "import mondrian.calc.impl.AbstractCalc;\n"
+                + "import mondrian.calc.impl.GeneratedCalc;\n"
+                + "import mondrian.olap.Evaluator;\n"
+                + "import mondrian.olap.Member;\n"
+                + "import mondrian.olap.fun.FunUtil;\n"
+                + "\n"
+                + "public final class " + CLASS_NAME
+                + " extends GeneratedCalc {\n"
+                + "    private static final double N = FunUtil.DoubleNull;\n"
+                + fields
+                + "\n"
+                + "    public " + CLASS_NAME
+                + "(AbstractCalc calc, Object[] args) {\n"
+                + "        super(calc);\n"
+                + assignments
+                + "    }\n"
+                + "\n"
+                + "    public Object evaluate(Evaluator e) {\n"
+                + "        return o0(e);\n"
+                + "    }\n"
+                + "\n"
+                + "    public double evaluateDouble(Evaluator e) {\n"
+                + "        return d0(e);\n"
+                + "    }\n"
+                + methods
+                + "}\n";
+        }
+    }
+
+    /**
+     * Returns the constructor of the class generated from some source code,
+     * compiling the class if this is the first request for it, or null if it
+     * could not be compiled or this generator has reached its limit of
+     * classes.
+     */
+    private Constructor<? extends GeneratedCalc> getConstructor(
+        final String source)
+    {
+        FutureTask<Constructor<? extends GeneratedCalc>> task =
+            constructors.get(source);
+        if (task == null) {
+            if (constructors.size() >= MAX_CLASS_COUNT) {
+                return null;
+            }
+            final FutureTask<Constructor<? extends GeneratedCalc>> newTask =
+                new FutureTask<Constructor<? extends GeneratedCalc>>(
+                    new Callable<Constructor<? extends GeneratedCalc>>() {
+                        public Constructor<? extends GeneratedCalc> call() {
+                            return compile(source);
+                        }
+                    });
+            task = constructors.putIfAbsent(source, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw Util.newInternal(e.getCause(), "Error while generating code");
+        }
+    }
+
+    /**
+     * Compiles a generated class and defines it in this generator's class
+     * loader; returns its constructor, or null if it could not be compiled.
+     */
+    private Constructor<? extends GeneratedCalc> compile(String source) {
+        final String name = "Calc" + classCount.getAndIncrement();
+        final String className = PACKAGE + "." + name;
+        try {
+            final byte[] bytes =
+                Compiler.compile(className, source.replace(CLASS_NAME, name));
+            final Class<?> clazz = classLoader.define(className, bytes);
+            return clazz.asSubclass(GeneratedCalc.class)
+                .getConstructor(AbstractCalc.class, Object[].class);
+        } catch (Exception e) {
+            LOGGER.warn(
+                "Could not generate code for expression; it will be "
+                + "interpreted", e);
+            return null;
+        }
+    }
+
+    /**
+     * Compiles generated classes using the system Java compiler. This is the
+     * only class that refers to the compiler API.
+     */
+    private static class Compiler {
+        /**
+         * The system Java compiler, or null if there is none.
+         */
+        static final JavaCompiler COMPILER =
+            ToolProvider.getSystemJavaCompiler();
+
+        /**
+         * Compiles the source code of a class, and returns its byte code.
+         * Each call uses its own file manager, so that calls from different
+         * threads do not interfere.
+         */
+        static byte[] compile(String className, final String source)
+            throws Exception
+        {
+            final DiagnosticCollector<JavaFileObject> diagnostics =
+                new DiagnosticCollector<JavaFileObject>();
+            final Map<String, ByteArrayOutputStream> outputs =
+                new HashMap<String, ByteArrayOutputStream>();
+            final JavaFileManager fileManager =
+                new ForwardingJavaFileManager<StandardJavaFileManager>(
+                    COMPILER.getStandardFileManager(diagnostics, null, null))
+                {
+                    public JavaFileObject getJavaFileForOutput(
+                        Location location,
+                        final String outputName,
+                        JavaFileObject.Kind kind,
+                        FileObject sibling)
+                    {
+                        return new SimpleJavaFileObject(
+                            uri(outputName, kind), kind)
+                        {
+                            public OutputStream openOutputStream() {
+                                final ByteArrayOutputStream out =
+                                    new ByteArrayOutputStream();
+                                outputs.put(outputName, out);
+                                return out;
+                            }
+                        };
+                    }
+                };
+            final JavaFileObject file =
+                new SimpleJavaFileObject(
+                    uri(className, JavaFileObject.Kind.SOURCE),
+                    JavaFileObject.Kind.SOURCE)
+                {
+                    public CharSequence getCharContent(
+                        boolean ignoreEncodingErrors)
+                    {
+                        return source;
+                    }
+                };
+            final List<String> options =
+                Arrays.asList(
+                    "-classpath", getClassPath(), "-g:none", "-proc:none",
+                    "-nowarn");
+            try {
+                final boolean success =
+                    COMPILER.getTask(
+                        null, fileManager, diagnostics, options, null,
+                        Collections.singletonList(file)).call();
+                if (!success || !outputs.containsKey(className)) {
+                    throw Util.newInternal(
+                        "Could not compile generated class " + className
+                        + ": " + diagnostics.getDiagnostics() + "\n" + source);
+                }
+            } finally {
+                fileManager.close();
+            }
+            return outputs.get(className).toByteArray();
+        }
+
+        private static URI uri(String className, JavaFileObject.Kind kind) {
+            return URI.create(
+                "string:///" + className.replace('.', '/') + kind.extension);
+        }
+    }
+
+    /**
+     * Returns the class path for compiling generated classes: the class
+     * path of the JVM, and the location of Mondrian's classes, which differs
+     * if Mondrian is deployed in a container.
+     */
+    private static String getClassPath() {
+        final StringBuilder buf =
+            new StringBuilder(System.getProperty("java.class.path", ""));
+        try {
+            final CodeSource codeSource =
+                GeneratedCalc.class.getProtectionDomain().getCodeSource();
+            if (codeSource != null && codeSource.getLocation() != null) {
+                buf.append(File.pathSeparator)
+                    .append(new File(codeSource.getLocation().toURI()));
+            }
+        } catch (URISyntaxException e) {
+            // Use the class path of the JVM only.
+        } catch (SecurityException e) {
+            // Use the class path of the JVM only.
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Kinds of node translated into generated code.
+     */
+    private enum Node {
+        BINARY,
+        IIF,
+        COALESCE,
+        MEMBER_VALUE
+    }
+
+    /**
+     * Arithmetic operators, with the class of the calc that the built-in
+     * function table compiles each to, and the source code of its
+     * {@link AbstractBinaryDoubleCalc#combine(double, double)} method.
+     */
+    private enum BinaryOperator {
+        PLUS(
+            BuiltinFunTable.PlusCalc.class,
+            "return v0 == N ? v1 : v1 == N ? v0 : v0 + v1;"),
+        MINUS(
+            BuiltinFunTable.MinusCalc.class,
+            "return v0 == N ? (v1 == N ? N : -v1) : v1 == N ? v0 : v0 - v1;"),
+        TIMES(
+            BuiltinFunTable.MultiplyCalc.class,
+            "return v0 == N || v1 == N ? N : v0 * v1;"),
+        DIVIDE(
+            BuiltinFunTable.DivideCalc.class,
+            "return v0 == N ? N : v1 == N ? Double.POSITIVE_INFINITY"
+            + " : v0 / v1;"),
+        DIVIDE_NULL_DENOMINATOR_PRODUCES_NULL(
+            BuiltinFunTable.DivideNullDenominatorCalc.class,
+            "return v0 == N || v1 == N ? N : v0 / v1;");
+
+        private final Class<? extends AbstractBinaryDoubleCalc> calcClass;
+        private final String source;
+
+        BinaryOperator(
+            Class<? extends AbstractBinaryDoubleCalc> calcClass,
+            String source)
+        {
+            this.calcClass = calcClass;
+            this.source = source;
+        }
+
+        /**
+         * Returns the operator that a calc implements, or null if it is not
+         * one of the built-in arithmetic operators.
+         */
+        static BinaryOperator of(Calc calc) {
+            for (BinaryOperator operator : values()) {
+                if (operator.calcClass == calc.getClass()) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Class loader for the classes of a generator.
+     */
+    private static class GeneratedClassLoader extends ClassLoader {
+        GeneratedClassLoader() {
+            super(GeneratedCalc.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
+
+// End CalcCodeGenerator.java
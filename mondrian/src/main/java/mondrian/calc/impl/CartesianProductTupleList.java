@@ -0,0 +1,310 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.calc.impl;
+
+import mondrian.calc.TupleCollections;
+import mondrian.calc.TupleCursor;
+import mondrian.calc.TupleIterator;
+import mondrian.calc.TupleList;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Member;
+import mondrian.olap.Util;
+import mondrian.resource.MondrianResource;
+import mondrian.server.Execution;
+import mondrian.server.Locus;
+import mondrian.util.CancellationChecker;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only {@link TupleList} that is the cartesian product of other tuple lists, and computes its tuples on demand.
+ *
+ * <p>
+ * The tuple at a given index is found by index arithmetic, as in {@link mondrian.util.CartesianProductList}: the last
+ * list varies fastest, and the row of each list is the index divided by the product of the sizes of the lists after it,
+ * modulo its own size. {@link #size()}, {@link #get(int, int)} and {@link #subList(int, int)} therefore take constant
+ * time and allocate nothing in proportion to the size of the product, so that functions such as <code>Count</code>,
+ * <code>Subset</code>, <code>Head</code> and <code>Tail</code>, and paging through an axis, work on very large
+ * crossjoins without building them. A cursor over the list steps through the rows of the lists like an odometer.
+ *
+ * <p>
+ * The component lists must not be modified while the product is in use.
+ */
+public class CartesianProductTupleList extends AbstractTupleList {
+  private final TupleList[] lists;
+  private final int[] sizes;
+  private final int[] divisors;
+  private final int[] listOrdinals;
+  private final int[] listColumns;
+  private final int start;
+  private final int size;
+
+  /**
+   * Creates the cartesian product of a list of tuple lists.
+   *
+   * @param lists Lists
+   * @throws mondrian.olap.ResourceLimitExceededException if the product of their sizes exceeds
+   *     {@link Integer#MAX_VALUE}
+   */
+  public CartesianProductTupleList( List<TupleList> lists ) {
+    this( lists.toArray( new TupleList[ lists.size() ] ), 0, checkedSize( lists ) );
+  }
+
+  private CartesianProductTupleList( TupleList[] lists, int start, int size ) {
+    super( arity( lists ) );
+    this.mutable = false;
+    this.lists = lists;
+    this.start = start;
+    this.size = size;
+    this.sizes = new int[ lists.length ];
+    this.divisors = new int[ lists.length ];
+    this.listOrdinals = new int[ arity ];
+    this.listColumns = new int[ arity ];
+    int divisor = 1;
+    for ( int i = lists.length - 1; i >= 0; i-- ) {
+      sizes[ i ] = lists[ i ].size();
+      divisors[ i ] = divisor;
+      divisor *= sizes[ i ];
+    }
+    int column = 0;
+    for ( int i = 0; i < lists.length; i++ ) {
+      for ( int j = 0; j < lists[ i ].getArity(); j++ ) {
+        listOrdinals[ column ] = i;
+        listColumns[ column ] = j;
+        ++column;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of tuples in the product of some lists, or -1 if it does not fit in an {@code int}.
+   *
+   * @param lists Lists
+   * @return Size of product, or -1
+   */
+  public static long productSize( List<? extends TupleList> lists ) {
+    long size = 1;
+    for ( TupleList list : lists ) {
+      size *= list.size();
+      if ( size > Integer.MAX_VALUE ) {
+        return -1;
+      }
+    }
+    return size;
+  }
+
+  private static int checkedSize( List<TupleList> lists ) {
+    long size = 1;
+    for ( TupleList list : lists ) {
+      size *= list.size();
+      if ( size > Integer.MAX_VALUE ) {
+        // The same error as a crossjoin that is too large to evaluate.
+        throw MondrianResource.instance().LimitExceededDuringCrossjoin.ex( size, Integer.MAX_VALUE );
+      }
+    }
+    return (int) size;
+  }
+
+  private static int arity( TupleList[] lists ) {
+    int arity = 0;
+    for ( TupleList list : lists ) {
+      arity += list.getArity();
+    }
+    return arity;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Member get( int slice, int index ) {
+    if ( index < 0 || index >= size ) {
+      throw new IndexOutOfBoundsException( "index " + index + ", size " + size );
+    }
+    final int list = listOrdinals[ slice ];
+    final int row = ( ( start + index ) / divisors[ list ] ) % sizes[ list ];
+    return lists[ list ].get( listColumns[ slice ], row );
+  }
+
+  @Override
+  public List<Member> get( final int index ) {
+    if ( index < 0 || index >= size ) {
+      throw new IndexOutOfBoundsException( "index " + index + ", size " + size );
+    }
+    final Member[] members = new Member[ arity ];
+    for ( int i = 0; i < arity; i++ ) {
+      members[ i ] = get( i, index );
+    }
+    return Util.flatList( members );
+  }
+
+  @Override
+  public TupleList subList( int fromIndex, int toIndex ) {
+    if ( fromIndex < 0 || toIndex > size || fromIndex > toIndex ) {
+      throw new IndexOutOfBoundsException( "fromIndex " + fromIndex + ", toIndex " + toIndex + ", size " + size );
+    }
+    return new CartesianProductTupleList( lists, start + fromIndex, toIndex - fromIndex );
+  }
+
+  /**
+   * Returns this list, because its tuples never change.
+   */
+  @Override
+  public TupleList fix() {
+    return this;
+  }
+
+  public List<Member> slice( final int column ) {
+    if ( column < 0 || column >= arity ) {
+      throw new IllegalArgumentException( "column " + column + ", arity " + arity );
+    }
+    return new AbstractList<Member>() {
+      public Member get( int index ) {
+        return CartesianProductTupleList.this.get( column, index );
+      }
+
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  public TupleList cloneList( int capacity ) {
+    if ( capacity >= 0 ) {
+      return TupleCollections.createList( arity, capacity );
+    }
+    final TupleList list = TupleCollections.createList( arity, size );
+    final TupleCursor cursor = tupleCursor();
+    while ( cursor.forward() ) {
+      list.addCurrent( cursor );
+    }
+    return list;
+  }
+
+  public void addTuple( Member... members ) {
+    throw new UnsupportedOperationException();
+  }
+
+  public TupleList project( final int[] destIndices ) {
+    return new DelegatingTupleList(
+      destIndices.length,
+      new AbstractList<List<Member>>() {
+        public List<Member> get( int index ) {
+          final Member[] members = new Member[ destIndices.length ];
+          for ( int i = 0; i < members.length; i++ ) {
+            members[ i ] = CartesianProductTupleList.this.get( destIndices[ i ], index );
+          }
+          return Util.flatList( members );
+        }
+
+        public int size() {
+          return size;
+        }
+      } );
+  }
+
+  public TupleList withPositionCallback( final PositionCallback positionCallback ) {
+    return new DelegatingTupleList(
+      arity,
+      new AbstractList<List<Member>>() {
+        public List<Member> get( int index ) {
+          positionCallback.onPosition( index );
+          return CartesianProductTupleList.this.get( index );
+        }
+
+        public int size() {
+          return size;
+        }
+      } );
+  }
+
+  @Override
+  protected TupleIterator tupleIteratorInternal() {
+    return new ProductIterator();
+  }
+
+  /**
+   * Iterator over the product. It keeps the current row of each list, and advances them like an odometer, so that
+   * moving to the next tuple does not divide, and reading a member of the current tuple reads it from its list. Like
+   * the iterable crossjoin, it checks for cancellation and timeout each time the last list starts again.
+   */
+  private class ProductIterator extends AbstractTupleListIterator {
+    private final int[] rows = new int[ lists.length ];
+    private final Execution execution = Locus.isEmpty() ? null : Locus.peek().execution;
+    private long currentIteration = 0;
+
+    @Override
+    public boolean forward() {
+      if ( !super.forward() ) {
+        return false;
+      }
+      if ( lastRet == 0 ) {
+        for ( int i = 0; i < rows.length; i++ ) {
+          rows[ i ] = ( start / divisors[ i ] ) % sizes[ i ];
+        }
+      } else {
+        for ( int i = rows.length - 1; i >= 0; i-- ) {
+          if ( ++rows[ i ] < sizes[ i ] ) {
+            break;
+          }
+          rows[ i ] = 0;
+        }
+      }
+      if ( lastRet == 0 || rows[ rows.length - 1 ] == 0 ) {
+        CancellationChecker.checkCancelOrTimeout( currentIteration++, execution );
+      }
+      return true;
+    }
+
+    @Override
+    public List<Member> next() {
+      if ( !forward() ) {
+        throw new NoSuchElementException();
+      }
+      return current();
+    }
+
+    @Override
+    public List<Member> current() {
+      final Member[] members = new Member[ arity ];
+      currentToArray( members, 0 );
+      return Util.flatList( members );
+    }
+
+    @Override
+    public Member member( int column ) {
+      final int list = listOrdinals[ column ];
+      return lists[ list ].get( listColumns[ column ], rows[ list ] );
+    }
+
+    @Override
+    public void currentToArray( Member[] members, int offset ) {
+      for ( int i = 0; i < arity; i++ ) {
+        members[ offset + i ] = member( i );
+      }
+    }
+
+    @Override
+    public void setContext( Evaluator evaluator ) {
+      for ( int i = 0; i < arity; i++ ) {
+        evaluator.setContext( member( i ) );
+      }
+    }
+  }
+}
+
+// End CartesianProductTupleList.java
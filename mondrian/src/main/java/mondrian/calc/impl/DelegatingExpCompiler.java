@@ -166,6 +166,20 @@ public class DelegatingExpCompiler implements ExpCompiler {
         return new WrapExp(e, this);
     }
 
+    /**
+     * Returns the expression that a delegating compiler wrapped, or the
+     * expression itself if it is not wrapped.
+     *
+     * @param e Expression, possibly wrapped
+     * @return Expression that is not wrapped
+     */
+    static Exp unwrap(Exp e) {
+        while (e instanceof WrapExp) {
+            e = ((WrapExp) e).e;
+        }
+        return e;
+    }
+
     /**
      * See {@link mondrian.calc.impl.DelegatingExpCompiler#wrap}.
      */
@@ -0,0 +1,74 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.calc.impl;
+
+import mondrian.calc.BatchCalc;
+import mondrian.calc.Calc;
+import mondrian.calc.CalcWriter;
+import mondrian.calc.ResultStyle;
+import mondrian.calc.TupleList;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Hierarchy;
+import mondrian.olap.fun.FunUtil;
+
+/**
+ * Base class for the classes that {@link CalcCodeGenerator} generates.
+ *
+ * <p>A generated calc evaluates the same expression as the calc it was
+ * generated from, and has the same type, dependencies and plan.
+ *
+ * <p>This class is public so that generated classes, which are loaded by
+ * a different class loader, can extend it.
+ */
+public abstract class GeneratedCalc
+    extends GenericCalc
+    implements BatchCalc
+{
+    private final Calc calc;
+
+    /**
+     * Creates a GeneratedCalc.
+     *
+     * @param calc Calc this calc was generated from
+     */
+    protected GeneratedCalc(AbstractCalc calc) {
+        super(calc.exp, calc.getCalcs());
+        this.calc = calc;
+    }
+
+    public boolean dependsOn(Hierarchy hierarchy) {
+        return calc.dependsOn(hierarchy);
+    }
+
+    public ResultStyle getResultStyle() {
+        return calc.getResultStyle();
+    }
+
+    public void accept(CalcWriter calcWriter) {
+        calc.accept(calcWriter);
+    }
+
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList tupleList,
+        double[] values)
+    {
+        if (calc instanceof BatchCalc) {
+            return ((BatchCalc) calc).evaluateDoubles(
+                evaluator, tupleList, values);
+        }
+        return FunUtil.evaluateEachDouble(evaluator, tupleList, this, values);
+    }
+}
+
+// End GeneratedCalc.java
@@ -59,7 +59,7 @@ public abstract class GenericCalc
         return (Member[]) evaluate(evaluator);
     }
 
-    private String msg(TypeEnum expectedType, Object o) {
+    private static String msg(TypeEnum expectedType, Object o) {
         final TypeEnum actualType = actualType(o);
         return "Expected value of type " + expectedType + "; got value '" + o
            + "' (" + (actualType == null ? o.getClass() : actualType) + ")";
@@ -111,7 +111,18 @@ public abstract class GenericCalc
     }
 
     public double evaluateDouble(Evaluator evaluator) {
-        final Object o = evaluate(evaluator);
+        return toDouble(evaluator, evaluate(evaluator));
+    }
+
+    /**
+     * Converts the value of a numeric expression to a double, as
+     * {@link #evaluateDouble(mondrian.olap.Evaluator)} does.
+     *
+     * @param evaluator Evaluator, used to report errors
+     * @param o Value, a {@link Number} or null
+     * @return Value as a double, or {@link FunUtil#DoubleNull} if null
+     */
+    protected static double toDouble(Evaluator evaluator, Object o) {
         try {
             final Number number = (Number) o;
             return numberToDouble(number);
@@ -13,8 +13,10 @@
 
 package mondrian.calc.impl;
 
+import mondrian.calc.BatchCalc;
 import mondrian.calc.Calc;
 import mondrian.calc.MemberCalc;
+import mondrian.calc.TupleList;
 import mondrian.olap.*;
 import mondrian.olap.type.ScalarType;
 import mondrian.olap.type.Type;
@@ -32,7 +34,10 @@ import mondrian.olap.type.Type;
  *
  * @author jhyde
  */
-public class MemberArrayValueCalc extends GenericCalc {
+public class MemberArrayValueCalc
+    extends GenericCalc
+    implements BatchCalc
+{
     private final MemberCalc[] memberCalcs;
     private final Member[] members;
     private final boolean nullCheck;
@@ -85,10 +90,27 @@ public class MemberArrayValueCalc extends GenericCalc {
         }
     }
 
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList tupleList,
+        double[] values)
+    {
+        return MemberValueCalc.evaluateDoubles(
+            this, memberCalcs, nullCheck, evaluator, tupleList, values);
+    }
+
     public Calc[] getCalcs() {
         return memberCalcs;
     }
 
+    /**
+     * Returns whether this calc checks for null values due to non-joining
+     * dimensions in a virtual cube.
+     */
+    boolean isNullCheck() {
+        return nullCheck;
+    }
+
     public boolean dependsOn(Hierarchy hierarchy) {
         if (super.dependsOn(hierarchy)) {
             return true;
@@ -13,12 +13,17 @@
 
 package mondrian.calc.impl;
 
+import mondrian.calc.BatchCalc;
 import mondrian.calc.Calc;
 import mondrian.calc.MemberCalc;
+import mondrian.calc.TupleList;
 import mondrian.olap.*;
+import mondrian.olap.fun.FunUtil;
 import mondrian.olap.type.ScalarType;
 import mondrian.olap.type.Type;
 
+import java.util.Arrays;
+
 /**
  * Expression which evaluates a few member expressions,
  * sets the dimensional context to the result of those expressions,
@@ -33,7 +38,10 @@ import mondrian.olap.type.Type;
  * @author jhyde
  * @since Sep 27, 2005
  */
-public class MemberValueCalc extends GenericCalc {
+public class MemberValueCalc
+    extends GenericCalc
+    implements BatchCalc
+{
     private final MemberCalc memberCalc;
     private final boolean nullCheck;
 
@@ -108,10 +116,93 @@ public class MemberValueCalc extends GenericCalc {
         }
     }
 
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList tupleList,
+        double[] values)
+    {
+        return evaluateDoubles(
+            this, new MemberCalc[] {memberCalc}, nullCheck, evaluator,
+            tupleList, values);
+    }
+
+    /**
+     * Evaluates a calc that sets the context to some members and yields the
+     * value of the current context, once for each tuple of a list.
+     *
+     * <p>If the members are constant, and the tuples do not contain measures
+     * or members of the same hierarchies, the members are set once, and the
+     * cells are read by {@link Evaluator#evaluateCurrentDoubles}. Otherwise
+     * the calc is evaluated one tuple at a time.
+     */
+    static int evaluateDoubles(
+        Calc calc,
+        MemberCalc[] memberCalcs,
+        boolean nullCheck,
+        Evaluator evaluator,
+        TupleList tupleList,
+        double[] values)
+    {
+        final Member[] members = new Member[memberCalcs.length];
+        for (int i = 0; i < memberCalcs.length; i++) {
+            if (!(memberCalcs[i] instanceof ConstantCalc)) {
+                return FunUtil.evaluateEachDouble(
+                    evaluator, tupleList, calc, values);
+            }
+            members[i] = memberCalcs[i].evaluateMember(evaluator);
+        }
+        if (!tupleList.isEmpty()) {
+            for (Member tupleMember : tupleList.get(0)) {
+                if (tupleMember.isMeasure()) {
+                    return FunUtil.evaluateEachDouble(
+                        evaluator, tupleList, calc, values);
+                }
+                for (Member member : members) {
+                    if (member != null
+                        && member.getHierarchy().equals(
+                            tupleMember.getHierarchy()))
+                    {
+                        return FunUtil.evaluateEachDouble(
+                            evaluator, tupleList, calc, values);
+                    }
+                }
+            }
+        }
+        final int savepoint = evaluator.savepoint();
+        try {
+            for (Member member : members) {
+                if (member == null || member.isNull()) {
+                    Arrays.fill(
+                        values, 0, tupleList.size(), FunUtil.DoubleNull);
+                    return 0;
+                }
+                evaluator.setContext(member);
+            }
+            if (nullCheck
+                && evaluator.needToReturnNullForUnrelatedDimension(members))
+            {
+                Arrays.fill(
+                    values, 0, tupleList.size(), FunUtil.DoubleNull);
+                return 0;
+            }
+            return evaluator.evaluateCurrentDoubles(tupleList, values);
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
+
     public Calc[] getCalcs() {
         return new MemberCalc[] {memberCalc};
     }
 
+    /**
+     * Returns whether this calc checks for null values due to non-joining
+     * dimensions in a virtual cube.
+     */
+    boolean isNullCheck() {
+        return nullCheck;
+    }
+
     public boolean dependsOn(Hierarchy hierarchy) {
         if (super.dependsOn(hierarchy)) {
             return true;
@@ -0,0 +1,486 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.calc.impl;
+
+import mondrian.calc.TupleCursor;
+import mondrian.calc.TupleIterator;
+import mondrian.calc.TupleList;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.resource.MondrianResource;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Implementation of {@link TupleList} that stores tuples end-to-end as
+ * <code>int</code> ordinals into one {@link MemberDictionary} per column.
+ *
+ * <p>A crossjoin of several hierarchies has many more tuples than there are
+ * distinct members in each column. Storing each slot as a 4-byte ordinal
+ * instead of an object reference, and holding each distinct member once in
+ * the dictionary of its column, makes a large list a fraction of the size
+ * of an {@link ArrayTupleList} or {@link ListTupleList}, and keeps it in a
+ * single primitive array that the garbage collector does not need to scan.
+ *
+ * <p>Copies made by {@link #cloneList(int)} share the dictionaries of this
+ * list, so that filtering or sorting a list does not re-encode its members.
+ *
+ * @see mondrian.olap.MondrianProperties#EnableOrdinalTupleLists
+ */
+public class OrdinalTupleList extends AbstractEndToEndTupleList {
+  private final int maxMembers;
+  private final MemberDictionary[] dictionaries;
+  private int[] data;
+  private int size;
+  private final int cjMaxSize = MondrianProperties.instance().ResultLimit.get();
+
+  /**
+   * Creates an empty OrdinalTupleList with a new dictionary for each column.
+   *
+   * @param arity           Arity
+   * @param initialCapacity Initial capacity
+   */
+  public OrdinalTupleList( int arity, int initialCapacity ) {
+    this( newDictionaries( arity ), new int[ initialCapacity * arity ], 0 );
+  }
+
+  /**
+   * Creates an empty OrdinalTupleList that encodes its members using the
+   * given dictionaries.
+   *
+   * @param dictionaries    Dictionary for each column
+   * @param initialCapacity Initial capacity
+   */
+  public OrdinalTupleList(
+    MemberDictionary[] dictionaries,
+    int initialCapacity ) {
+    this(
+      dictionaries, new int[ initialCapacity * dictionaries.length ], 0 );
+  }
+
+  private OrdinalTupleList(
+    MemberDictionary[] dictionaries,
+    int[] data,
+    int size ) {
+    super( dictionaries.length );
+    assert data.length % arity == 0;
+    this.dictionaries = dictionaries;
+    this.data = data;
+    this.size = size;
+    this.maxMembers = maxNumberOfMembers();
+  }
+
+  private static MemberDictionary[] newDictionaries( int arity ) {
+    final MemberDictionary[] dictionaries = new MemberDictionary[ arity ];
+    for ( int i = 0; i < arity; i++ ) {
+      dictionaries[ i ] = new MemberDictionary();
+    }
+    return dictionaries;
+  }
+
+  /**
+   * Same limit as {@link ArrayTupleList}: (tuple max * arity), or max int if
+   * {@link MondrianProperties#ResultLimit} is undefined.
+   */
+  private int maxNumberOfMembers() {
+    try {
+      return cjMaxSize <= 0 ? Integer.MAX_VALUE : Math.multiplyExact( cjMaxSize, arity );
+    } catch ( ArithmeticException overflow ) {
+      return Integer.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Returns the dictionary of a column. Lists which share a dictionary can
+   * compare members of that column by ordinal.
+   */
+  public MemberDictionary getDictionary( int column ) {
+    return dictionaries[ column ];
+  }
+
+  /**
+   * Returns the ordinal of the member at a given column and tuple.
+   */
+  public int ordinal( int slice, int index ) {
+    return data[ index * arity + slice ];
+  }
+
+  /**
+   * Appends a tuple given as ordinals in this list's dictionaries.
+   *
+   * @param ordinals Array of ordinals
+   * @param offset   Position of the first ordinal of the tuple
+   */
+  public void addOrdinals( int[] ordinals, int offset ) {
+    assert mutable;
+    ensureCapacity( size * arity + arity );
+    System.arraycopy( ordinals, offset, data, size * arity, arity );
+    ++size;
+  }
+
+  @Override
+  protected List<Member> backingList() {
+    return new AbstractList<Member>() {
+      @Override
+      public Member get( int index ) {
+        return dictionaries[ index % arity ].member( data[ index ] );
+      }
+
+      @Override
+      public Member set( int index, Member element ) {
+        final int column = index % arity;
+        final Member previous = dictionaries[ column ].member( data[ index ] );
+        data[ index ] = dictionaries[ column ].ordinal( element );
+        return previous;
+      }
+
+      @Override
+      public int size() {
+        return size * arity;
+      }
+    };
+  }
+
+  @Override
+  public Member get( int slice, int index ) {
+    return dictionaries[ slice ].member( data[ index * arity + slice ] );
+  }
+
+  @Override
+  public List<Member> get( int index ) {
+    final int startIndex = index * arity;
+    final List<Member> list =
+      new AbstractList<Member>() {
+        public Member get( int index ) {
+          return dictionaries[ index ].member( data[ startIndex + index ] );
+        }
+
+        public int size() {
+          return arity;
+        }
+      };
+    if ( mutable ) {
+      return Util.flatList( list );
+    }
+    return list;
+  }
+
+  @Override
+  public List<Member> set( int index, List<Member> element ) {
+    assert mutable;
+    for ( int i = 0, startIndex = index * arity; i < arity; i++ ) {
+      data[ startIndex + i ] = dictionaries[ i ].ordinal( element.get( i ) );
+    }
+    return null; // not compliant with List contract
+  }
+
+  @Override
+  public void addCurrent( TupleCursor tupleIter ) {
+    assert mutable;
+    int n = size * arity;
+    ensureCapacity( n + arity );
+    for ( int i = 0; i < arity; i++ ) {
+      data[ n++ ] = dictionaries[ i ].ordinal( tupleIter.member( i ) );
+    }
+    ++size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean add( List<Member> members ) {
+    assert mutable;
+    if ( members.size() != arity ) {
+      throw new IllegalArgumentException(
+        "Tuple length does not match arity" );
+    }
+    int n = size * arity;
+    ensureCapacity( n + arity );
+    for ( int i = 0; i < arity; i++ ) {
+      data[ n++ ] = dictionaries[ i ].ordinal( members.get( i ) );
+    }
+    ++size;
+    return true;
+  }
+
+  @Override
+  public void add( int index, List<Member> members ) {
+    addAll( index, Collections.singletonList( members ) );
+  }
+
+  @Override
+  public boolean addAll( int index, Collection<? extends List<Member>> c ) {
+    assert mutable;
+    final int size1 = c.size();
+    ensureCapacity( size * arity + size1 * arity );
+    int n = index * arity;
+    System.arraycopy(
+      data, n, data, n + size1 * arity, size * arity - n );
+    for ( List<Member> members : c ) {
+      if ( members.size() != arity ) {
+        throw new IllegalArgumentException(
+          "Tuple length does not match arity" );
+      }
+      for ( int i = 0; i < arity; i++ ) {
+        data[ n++ ] = dictionaries[ i ].ordinal( members.get( i ) );
+      }
+    }
+    size += size1;
+    return size1 > 0;
+  }
+
+  public void addTuple( Member... members ) {
+    assert mutable;
+    if ( members.length != arity ) {
+      throw new IllegalArgumentException(
+        "Tuple length does not match arity" );
+    }
+    int n = size * arity;
+    ensureCapacity( n + arity );
+    for ( int i = 0; i < arity; i++ ) {
+      data[ n++ ] = dictionaries[ i ].ordinal( members[ i ] );
+    }
+    ++size;
+  }
+
+  @Override
+  @SuppressWarnings( "squid:S1168" ) // null expected downstream.
+  public List<Member> remove( int index ) {
+    assert mutable;
+    final int n = index * arity;
+    System.arraycopy( data, n + arity, data, n, ( size - index - 1 ) * arity );
+    --size;
+    return null;
+  }
+
+  /**
+   * Sorts this list by rearranging its ordinals, without decoding and
+   * re-encoding the tuples. The sort is stable.
+   *
+   * <p>The tuple indexes are merge-sorted in an <code>int</code> array, and
+   * the comparator is given two reusable views of the tuples being compared,
+   * so sorting allocates no object per tuple. A view is valid only for the
+   * duration of one comparison.
+   */
+  @Override
+  public void sort( final Comparator<? super List<Member>> c ) {
+    assert mutable;
+    final Row left = new Row();
+    final Row right = new Row();
+    int[] src = new int[ size ];
+    int[] dst = new int[ size ];
+    for ( int i = 0; i < size; i++ ) {
+      src[ i ] = i;
+    }
+    for ( int width = 1; width < size; width *= 2 ) {
+      for ( int lo = 0; lo < size; lo += 2 * width ) {
+        final int mid = Math.min( lo + width, size );
+        final int hi = Math.min( lo + 2 * width, size );
+        int i = lo;
+        int j = mid;
+        int k = lo;
+        while ( i < mid && j < hi ) {
+          // Take from the right run only if strictly less, so that the
+          // sort is stable.
+          if ( c.compare( right.at( src[ j ] ), left.at( src[ i ] ) ) < 0 ) {
+            dst[ k++ ] = src[ j++ ];
+          } else {
+            dst[ k++ ] = src[ i++ ];
+          }
+        }
+        System.arraycopy( src, i, dst, k, mid - i );
+        System.arraycopy( src, j, dst, k + mid - i, hi - j );
+      }
+      final int[] t = src;
+      src = dst;
+      dst = t;
+    }
+    final int[] sorted = new int[ data.length ];
+    for ( int i = 0; i < size; i++ ) {
+      System.arraycopy( data, src[ i ] * arity, sorted, i * arity, arity );
+    }
+    data = sorted;
+  }
+
+  public List<Member> slice( final int column ) {
+    if ( column < 0 || column >= arity ) {
+      throw new IllegalArgumentException();
+    }
+    return new AbstractList<Member>() {
+      @Override
+      public Member get( int index ) {
+        return dictionaries[ column ].member( data[ index * arity + column ] );
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  public TupleList cloneList( int capacity ) {
+    if ( capacity < 0 ) {
+      // copy of this list with the same contents
+      return new OrdinalTupleList(
+        dictionaries, Arrays.copyOf( data, size * arity ), size );
+    } else {
+      // empty copy of this list with given capacity
+      return new OrdinalTupleList( dictionaries, capacity );
+    }
+  }
+
+  @Override
+  public TupleList fix() {
+    return cloneList( -1 );
+  }
+
+  public TupleIterator tupleIteratorInternal() {
+    return new AbstractTupleListIterator() {
+      @Override public void setContext( Evaluator evaluator ) {
+        for ( int i = 0, x = lastRet * arity; i < arity; i++ ) {
+          evaluator.setContext( dictionaries[ i ].member( data[ x + i ] ) );
+        }
+      }
+
+      @Override public Member member( int column ) {
+        return dictionaries[ column ].member(
+          data[ lastRet * arity + column ] );
+      }
+
+      @Override public void currentToArray( Member[] members, int offset ) {
+        for ( int i = 0, x = lastRet * arity; i < arity; i++ ) {
+          members[ offset + i ] = dictionaries[ i ].member( data[ x + i ] );
+        }
+      }
+    };
+  }
+
+  private void ensureCapacity( int minCapacity ) {
+    if ( minCapacity > maxMembers ) {
+      throw MondrianResource.instance().LimitExceededDuringCrossjoin.ex(
+        minCapacity / arity, cjMaxSize );
+    }
+    int oldCapacity = data.length;
+    if ( minCapacity > oldCapacity ) {
+      int newCapacity = ( oldCapacity * 3 ) / 2 + 1;
+      if ( newCapacity < minCapacity ) {
+        newCapacity = minCapacity;
+      }
+      // Up to next multiple of arity.
+      final int rem = newCapacity % arity;
+      newCapacity = Math.min( newCapacity + ( arity - rem ), maxMembers );
+
+      data = Arrays.copyOf( data, newCapacity );
+    }
+  }
+
+  /**
+   * Read-only view of a tuple, used while sorting, that can be moved to
+   * another tuple.
+   */
+  private class Row extends AbstractList<Member> {
+    private int start;
+
+    Row at( int index ) {
+      this.start = index * arity;
+      return this;
+    }
+
+    public Member get( int index ) {
+      return dictionaries[ index ].member( data[ start + index ] );
+    }
+
+    public int size() {
+      return arity;
+    }
+  }
+
+  /**
+   * Bidirectional mapping between the members of one column of a tuple list
+   * and dense <code>int</code> ordinals.
+   *
+   * <p>Ordinals are assigned in the order members are first seen, and never
+   * change. A dictionary is shared by the copies of a list (see
+   * {@link OrdinalTupleList#cloneList(int)}), which may be filled by
+   * different threads, so it is thread-safe. Looking up a member that is
+   * already present, in either direction, does not lock; only adding a
+   * member does.
+   */
+  public static class MemberDictionary {
+    /**
+     * Key that stands for a null member, which the map cannot hold.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    private final ConcurrentMap<Object, Integer> ordinals =
+      new ConcurrentHashMap<Object, Integer>();
+    private volatile Member[] members = new Member[ 16 ];
+    private int count;
+
+    /**
+     * Returns the ordinal of a member, adding it to the dictionary if it is
+     * not present.
+     */
+    public int ordinal( Member member ) {
+      final Object key = member == null ? NULL_KEY : member;
+      final Integer ordinal = ordinals.get( key );
+      if ( ordinal != null ) {
+        return ordinal;
+      }
+      synchronized ( this ) {
+        Integer newOrdinal = ordinals.get( key );
+        if ( newOrdinal == null ) {
+          newOrdinal = count++;
+          Member[] array = members;
+          if ( newOrdinal >= array.length ) {
+            array = Arrays.copyOf( array, array.length * 2 );
+          }
+          array[ newOrdinal ] = member;
+          // Volatile write publishes the new entry to readers of member();
+          // the map publishes it to readers of ordinal().
+          members = array;
+          ordinals.put( key, newOrdinal );
+        }
+        return newOrdinal;
+      }
+    }
+
+    /**
+     * Returns the member with a given ordinal.
+     */
+    public Member member( int ordinal ) {
+      return members[ ordinal ];
+    }
+
+    /**
+     * Returns the number of distinct members in the dictionary.
+     */
+    public synchronized int size() {
+      return count;
+    }
+  }
+}
+
+// End OrdinalTupleList.java
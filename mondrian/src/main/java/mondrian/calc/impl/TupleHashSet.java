@@ -0,0 +1,193 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.calc.impl;
+
+import mondrian.calc.TupleList;
+import mondrian.olap.Member;
+
+/**
+ * Hash set of tuples that are held in {@link TupleList}s, each identified by its list and its index in that list.
+ *
+ * <p>
+ * The set is an open-addressing hash table with linear probing. Each slot holds a reference to a list, the index of a
+ * tuple in that list, and the hash code of the tuple. Tuples are hashed and compared member by member, through
+ * {@link TupleList#get(int, int)}, so that neither adding nor looking up a tuple allocates a list. Members are compared
+ * by identity first and then by {@link Member#equals(Object)}, and hashed by {@link Member#hashCode()}, so that the set
+ * treats as duplicates the same tuples as a {@code HashSet<List<Member>>} would.
+ *
+ * <p>
+ * Tuples cannot be removed. The set does not copy tuples, so the lists must not be modified while the set is in use.
+ */
+public class TupleHashSet {
+  private static final int MIN_CAPACITY = 16;
+
+  private TupleList[] lists;
+  private int[] indexes;
+  private int[] hashes;
+  private int size;
+  private int mask;
+
+  /**
+   * Creates a set.
+   *
+   * @param expectedSize Number of tuples the set is expected to hold; the set grows if it holds more
+   */
+  public TupleHashSet( int expectedSize ) {
+    allocate( capacityFor( expectedSize ) );
+  }
+
+  /**
+   * Returns the number of tuples in the set.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Adds a tuple to the set, unless the set already contains an equal tuple.
+   *
+   * @param list  List that holds the tuple
+   * @param index Index of the tuple in the list
+   * @return Whether the tuple was added
+   */
+  public boolean add( TupleList list, int index ) {
+    final int hash = hash( list, index );
+    int slot = hash & mask;
+    while ( lists[ slot ] != null ) {
+      if ( hashes[ slot ] == hash && equal( list, index, lists[ slot ], indexes[ slot ] ) ) {
+        return false;
+      }
+      slot = ( slot + 1 ) & mask;
+    }
+    lists[ slot ] = list;
+    indexes[ slot ] = index;
+    hashes[ slot ] = hash;
+    if ( ++size > ( mask + 1 ) >>> 1 ) {
+      rehash();
+    }
+    return true;
+  }
+
+  /**
+   * Adds every tuple of a list to the set, in order, except those equal to a tuple already in the set.
+   *
+   * @param list List of tuples
+   */
+  public void addAll( TupleList list ) {
+    for ( int i = 0, n = list.size(); i < n; i++ ) {
+      add( list, i );
+    }
+  }
+
+  /**
+   * Returns whether the set contains a tuple equal to a given tuple.
+   *
+   * @param list  List that holds the tuple
+   * @param index Index of the tuple in the list
+   * @return Whether the set contains an equal tuple
+   */
+  public boolean contains( TupleList list, int index ) {
+    return find( list, index ) >= 0;
+  }
+
+  /**
+   * Returns the index of the tuple in the set that is equal to a given tuple, in the list that it was added from.
+   *
+   * @param list  List that holds the tuple
+   * @param index Index of the tuple in the list
+   * @return Index of the equal tuple in its own list, or -1 if the set contains no equal tuple
+   */
+  public int indexOf( TupleList list, int index ) {
+    final int slot = find( list, index );
+    return slot < 0 ? -1 : indexes[ slot ];
+  }
+
+  private int find( TupleList list, int index ) {
+    final int hash = hash( list, index );
+    int slot = hash & mask;
+    while ( lists[ slot ] != null ) {
+      if ( hashes[ slot ] == hash && equal( list, index, lists[ slot ], indexes[ slot ] ) ) {
+        return slot;
+      }
+      slot = ( slot + 1 ) & mask;
+    }
+    return -1;
+  }
+
+  private static int hash( TupleList list, int index ) {
+    int hash = 1;
+    for ( int i = 0, arity = list.getArity(); i < arity; i++ ) {
+      final Member member = list.get( i, index );
+      hash = 31 * hash + ( member == null ? 0 : member.hashCode() );
+    }
+    // Spread the high bits, because the slot is taken from the low bits.
+    return hash ^ ( hash >>> 16 );
+  }
+
+  /**
+   * Returns whether a tuple is equal to a tuple in the set. As in {@link java.util.HashSet}, members of the tuple being
+   * looked up are compared to those of the tuple in the set, not vice versa.
+   */
+  private static boolean equal( TupleList list0, int index0, TupleList list1, int index1 ) {
+    final int arity = list0.getArity();
+    if ( arity != list1.getArity() ) {
+      return false;
+    }
+    for ( int i = 0; i < arity; i++ ) {
+      final Member member0 = list0.get( i, index0 );
+      final Member member1 = list1.get( i, index1 );
+      if ( member0 != member1 && ( member0 == null || !member0.equals( member1 ) ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void rehash() {
+    final TupleList[] oldLists = lists;
+    final int[] oldIndexes = indexes;
+    final int[] oldHashes = hashes;
+    allocate( oldLists.length * 2 );
+    for ( int i = 0; i < oldLists.length; i++ ) {
+      if ( oldLists[ i ] != null ) {
+        int slot = oldHashes[ i ] & mask;
+        while ( lists[ slot ] != null ) {
+          slot = ( slot + 1 ) & mask;
+        }
+        lists[ slot ] = oldLists[ i ];
+        indexes[ slot ] = oldIndexes[ i ];
+        hashes[ slot ] = oldHashes[ i ];
+      }
+    }
+  }
+
+  private void allocate( int capacity ) {
+    lists = new TupleList[ capacity ];
+    indexes = new int[ capacity ];
+    hashes = new int[ capacity ];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Returns the smallest power of two that holds a number of tuples at a load factor of at most one half.
+   */
+  private static int capacityFor( int expectedSize ) {
+    int capacity = MIN_CAPACITY;
+    while ( capacity < ( 1 << 30 ) && capacity >>> 1 < expectedSize ) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+}
+
+// End TupleHashSet.java
@@ -13,7 +13,9 @@
 
 package mondrian.calc.impl;
 
+import mondrian.calc.BatchCalc;
 import mondrian.calc.Calc;
+import mondrian.calc.TupleList;
 import mondrian.olap.*;
 
 /**
@@ -25,7 +27,7 @@ import mondrian.olap.*;
  * @author jhyde
  * @since Sep 27, 2005
  */
-public class ValueCalc extends GenericCalc {
+public class ValueCalc extends GenericCalc implements BatchCalc {
     /**
      * Creates a ValueCalc.
      *
@@ -39,6 +41,14 @@ public class ValueCalc extends GenericCalc {
         return evaluator.evaluateCurrent();
     }
 
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList tupleList,
+        double[] values)
+    {
+        return evaluator.evaluateCurrentDoubles(tupleList, values);
+    }
+
     public boolean dependsOn(Hierarchy hierarchy) {
         return true;
     }
@@ -15,6 +15,7 @@ package mondrian.olap;
 
 import mondrian.calc.ParameterSlot;
 import mondrian.calc.TupleIterable;
+import mondrian.calc.TupleList;
 
 import java.util.*;
 
@@ -247,6 +248,24 @@ public interface Evaluator {
      */
     Object evaluateCurrent();
 
+    /**
+     * Calculates the value of the cell at the current context with the
+     * members of each tuple of a list set in turn, and stores the values as
+     * doubles. Equivalent to calling {@link #setContext(java.util.List)} and
+     * {@link #evaluateCurrent()} for each tuple, but the cells of stored
+     * measures may be looked up in bulk.
+     *
+     * <p>The context is the same on return as on entry.
+     *
+     * @param tupleList List of tuples
+     * @param values Array, at least as long as the list, to receive values
+     * @return 0 if all values are valid, a positive number if some cells
+     *   have not been loaded yet, or -1 if a value was not numeric
+     *
+     * @see mondrian.calc.BatchCalc#evaluateDoubles
+     */
+    int evaluateCurrentDoubles(TupleList tupleList, double[] values);
+
     /**
      * Returns the format string for this cell. This is computed by evaluating
      * the format expression in the current context, and therefore different
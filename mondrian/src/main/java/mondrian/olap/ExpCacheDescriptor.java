@@ -30,6 +30,7 @@ public class ExpCacheDescriptor {
     private final Exp exp;
     private int[] dependentHierarchyOrdinals;
     private final Calc calc;
+    private final boolean memoized;
 
     /**
      * Creates a descriptor with a given compiled expression.
@@ -39,8 +40,28 @@ public class ExpCacheDescriptor {
      * @param evaluator Evaluator
      */
     public ExpCacheDescriptor(Exp exp, Calc calc, Evaluator evaluator) {
+        this(exp, calc, evaluator, false);
+    }
+
+    /**
+     * Creates a descriptor with a given compiled expression, which may have
+     * been memoized automatically.
+     *
+     * @param exp Expression
+     * @param calc Compiled expression
+     * @param evaluator Evaluator
+     * @param memoized Whether the expression is memoized automatically,
+     *   rather than by an explicit call to the <code>Cache</code> function
+     */
+    public ExpCacheDescriptor(
+        Exp exp,
+        Calc calc,
+        Evaluator evaluator,
+        boolean memoized)
+    {
         this.calc = calc;
         this.exp = exp;
+        this.memoized = memoized;
         computeDepends(calc, evaluator);
     }
 
@@ -70,6 +91,7 @@ public class ExpCacheDescriptor {
             calc = compiler.compileAs(exp, null, ResultStyle.ANY_ONLY);
         }
         this.calc = calc;
+        this.memoized = false;
 
         // Compute list of dependent dimensions.
         computeDepends(calc, compiler.getEvaluator());
@@ -111,6 +133,16 @@ public class ExpCacheDescriptor {
         return dependentHierarchyOrdinals;
     }
 
+    /**
+     * Returns whether the expression is memoized automatically. The results
+     * of such an expression are keyed by this descriptor rather than by the
+     * expression, and are cached only while the evaluator's memoization
+     * budget lasts.
+     */
+    public boolean isMemoized() {
+        return memoized;
+    }
+
 }
 
 // End ExpCacheDescriptor.java
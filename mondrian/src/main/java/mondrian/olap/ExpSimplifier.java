@@ -0,0 +1,353 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package mondrian.olap;
+
+import mondrian.calc.*;
+import mondrian.mdx.*;
+import mondrian.olap.type.SetType;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Rewrites a validated expression into a simpler expression that returns
+ * the same value, so that the compiled expression does less work per cell.
+ *
+ * <p>The rewrites are:<ul>
+ * <li>calls to operators whose arguments are all literals are replaced by
+ *     their value, for example <code>2 * 3 + 1</code> becomes
+ *     <code>7</code>;</li>
+ * <li>calls to <code>StrToMember</code>, <code>StrToTuple</code> and
+ *     <code>StrToSet</code> with a literal string are replaced by the
+ *     members they resolve to; a set is replaced only if it has at most
+ *     {@link #MAX_FOLDED_SET_SIZE} tuples, so that a long list of members
+ *     is not copied into the expression;</li>
+ * <li><code>IIf</code> with a constant condition is replaced by the branch
+ *     that the condition selects;</li>
+ * <li><code>x + 0</code>, <code>0 + x</code> and <code>x - 0</code> are
+ *     replaced by <code>x</code> if <code>x</code> cannot be null, for
+ *     example <code>CoalesceEmpty(y, 0)</code>;</li>
+ * <li><code>x * 1</code>, <code>1 * x</code> and <code>x / 1</code> are
+ *     replaced by <code>x</code>;</li>
+ * <li><code>Sum({m})</code> and <code>Aggregate({m})</code>, where
+ *     <code>m</code> is a stored member, are replaced by
+ *     <code>m.Value</code>.</li>
+ * </ul>
+ *
+ * <p>The original expression is not modified; calls whose arguments change
+ * are copied.
+ *
+ * @see MondrianProperties#SimplifyExpressions
+ */
+class ExpSimplifier {
+    /**
+     * Maximum number of tuples of a constant set that is replaced by a set
+     * literal.
+     */
+    static final int MAX_FOLDED_SET_SIZE = 100;
+
+    private final ExpCompiler compiler;
+
+    private ExpSimplifier(ExpCompiler compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * Simplifies an expression, if
+     * {@link MondrianProperties#SimplifyExpressions} is set.
+     *
+     * @param exp Validated expression
+     * @param compiler Compiler that will compile the expression; its
+     *     evaluator is used to evaluate constant sub-expressions
+     * @return Simplified expression, or the expression itself
+     */
+    static Exp simplify(Exp exp, ExpCompiler compiler) {
+        if (exp == null
+            || !MondrianProperties.instance().SimplifyExpressions.get())
+        {
+            return exp;
+        }
+        return new ExpSimplifier(compiler).simplify(exp);
+    }
+
+    private Exp simplify(Exp exp) {
+        if (!(exp instanceof ResolvedFunCall)) {
+            return exp;
+        }
+        ResolvedFunCall call = (ResolvedFunCall) exp;
+        final Exp[] args = call.getArgs();
+        Exp[] newArgs = null;
+        for (int i = 0; i < args.length; i++) {
+            final Exp arg = simplify(args[i]);
+            if (arg != args[i]) {
+                if (newArgs == null) {
+                    newArgs = args.clone();
+                }
+                newArgs[i] = arg;
+            }
+        }
+        if (newArgs != null) {
+            call =
+                new ResolvedFunCall(call.getFunDef(), newArgs, call.getType());
+        }
+        final Exp simplified = simplifyCall(call);
+        return simplified == null ? call : simplified;
+    }
+
+    /**
+     * Returns a simpler expression equivalent to a call whose arguments have
+     * already been simplified, or null.
+     */
+    private Exp simplifyCall(ResolvedFunCall call) {
+        final String name = call.getFunName();
+        final int argCount = call.getArgCount();
+        if (isFoldable(call)) {
+            return fold(call);
+        }
+        if (name.equalsIgnoreCase("IIf") && argCount == 3) {
+            final Exp condition = call.getArg(0);
+            if (condition instanceof ResolvedFunCall
+                && isFoldable((ResolvedFunCall) condition))
+            {
+                final Object value = evaluate((ResolvedFunCall) condition);
+                if (value instanceof Boolean) {
+                    return replacement(
+                        call, call.getArg((Boolean) value ? 1 : 2));
+                }
+            }
+            return null;
+        }
+        if (call.getSyntax() == Syntax.Infix && argCount == 2) {
+            final Exp arg0 = call.getArg(0);
+            final Exp arg1 = call.getArg(1);
+            if (name.equals("+") || name.equals("-")) {
+                // null + 0 is 0, so x + 0 is x only if x is never null.
+                if (isNumber(arg1, 0) && isNeverNull(arg0)) {
+                    return replacement(call, arg0);
+                }
+                if (name.equals("+") && isNumber(arg0, 0)
+                    && isNeverNull(arg1))
+                {
+                    return replacement(call, arg1);
+                }
+            } else if (name.equals("*") || name.equals("/")) {
+                // null * 1 is null, so x * 1 is always x.
+                if (isNumber(arg1, 1)) {
+                    return replacement(call, arg0);
+                }
+                if (name.equals("*") && isNumber(arg0, 1)) {
+                    return replacement(call, arg1);
+                }
+            }
+            return null;
+        }
+        if ((name.equalsIgnoreCase("Sum")
+                || name.equalsIgnoreCase("Aggregate"))
+            && argCount == 1)
+        {
+            final Member member = getSingleMember(call.getArg(0));
+            if (member != null) {
+                return replacement(
+                    call,
+                    validate(
+                        new UnresolvedFunCall(
+                            "Value",
+                            Syntax.Property,
+                            new Exp[] {new MemberExpr(member)})));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether a call can be evaluated once, at compile time: it is an
+     * operator or a string-to-member conversion, and all of its arguments
+     * are constant.
+     */
+    private static boolean isFoldable(ResolvedFunCall call) {
+        final String name = call.getFunName();
+        switch (call.getSyntax()) {
+        case Infix:
+        case Prefix:
+            break;
+        default:
+            if (!name.equalsIgnoreCase("StrToMember")
+                && !name.equalsIgnoreCase("StrToTuple")
+                && !name.equalsIgnoreCase("StrToSet"))
+            {
+                return false;
+            }
+        }
+        for (Exp arg : call.getArgs()) {
+            if (!isConstant(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isConstant(Exp exp) {
+        // A member is not constant: as an operand, it stands for its value.
+        return exp instanceof Literal
+            || exp instanceof HierarchyExpr
+            || exp instanceof DimensionExpr
+            || exp instanceof ResolvedFunCall
+            && isFoldable((ResolvedFunCall) exp);
+    }
+
+    /**
+     * Replaces a constant call with its value, or returns null if the value
+     * cannot be written as an expression.
+     */
+    private Exp fold(ResolvedFunCall call) {
+        final Object value = evaluate(call);
+        if (value instanceof Double || value instanceof Integer) {
+            final double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return null;
+            }
+            return Literal.create(BigDecimal.valueOf(d));
+        } else if (value instanceof String) {
+            return Literal.createString((String) value);
+        } else if (value instanceof Member) {
+            return new MemberExpr((Member) value);
+        } else if (value instanceof Member[]) {
+            return validate(
+                new UnresolvedFunCall(
+                    "()", Syntax.Parentheses, toExps((Member[]) value)));
+        } else if (value instanceof TupleList) {
+            final TupleList tupleList = (TupleList) value;
+            if (tupleList.isEmpty()
+                || tupleList.size() > MAX_FOLDED_SET_SIZE)
+            {
+                return null;
+            }
+            final Exp[] exps = new Exp[tupleList.size()];
+            for (int i = 0; i < exps.length; i++) {
+                final List<Member> tuple = tupleList.get(i);
+                exps[i] =
+                    tuple.size() == 1
+                        ? new MemberExpr(tuple.get(0))
+                        : new UnresolvedFunCall(
+                            "()",
+                            Syntax.Parentheses,
+                            toExps(tuple.toArray(new Member[tuple.size()])));
+            }
+            return validate(
+                new UnresolvedFunCall("{}", Syntax.Braces, exps));
+        } else {
+            // Booleans have no literal; IIf evaluates its condition itself.
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates a constant call, or returns null if evaluation fails. For
+     * example, <code>StrToMember("[Bad]")</code> is left to fail at run time,
+     * as it would have without simplification.
+     */
+    private Object evaluate(ResolvedFunCall call) {
+        final Evaluator evaluator = compiler.getEvaluator();
+        try {
+            if (call.getType() instanceof SetType) {
+                return compiler.compileList(call).evaluateList(evaluator);
+            }
+            final Calc calc =
+                compiler.compileAs(call, null, ResultStyle.ANY_LIST);
+            if (calc instanceof TupleCalc) {
+                return ((TupleCalc) calc).evaluateTuple(evaluator);
+            }
+            return calc.evaluate(evaluator);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Exp validate(Exp exp) {
+        return compiler.getValidator().validate(exp, false);
+    }
+
+    /**
+     * Returns an expression to use in place of a call, or null if the
+     * replacement has a category that the caller of the call may not expect.
+     * A member or tuple may replace a scalar, because it stands for its value.
+     */
+    private static Exp replacement(ResolvedFunCall call, Exp exp) {
+        final int category = call.getCategory() & Category.Mask;
+        final int newCategory = exp.getCategory() & Category.Mask;
+        if (newCategory == category
+            || Category.isScalar(category)
+            && (newCategory == Category.Member
+                || newCategory == Category.Tuple
+                || newCategory == Category.Null
+                || category == Category.Value
+                && Category.isScalar(newCategory)))
+        {
+            return exp;
+        }
+        return null;
+    }
+
+    private static boolean isNumber(Exp exp, int n) {
+        return exp instanceof Literal
+            && exp.getCategory() == Category.Numeric
+            && ((Literal) exp).getValue() instanceof BigDecimal
+            && ((BigDecimal) ((Literal) exp).getValue()).compareTo(
+                BigDecimal.valueOf(n)) == 0;
+    }
+
+    private static boolean isNeverNull(Exp exp) {
+        if (exp instanceof Literal) {
+            return exp.getCategory() == Category.Numeric;
+        }
+        if (exp instanceof ResolvedFunCall) {
+            final ResolvedFunCall call = (ResolvedFunCall) exp;
+            return call.getFunName().equalsIgnoreCase("CoalesceEmpty")
+                && call.getCategory() == Category.Numeric
+                && isNeverNull(call.getArg(call.getArgCount() - 1));
+        }
+        return false;
+    }
+
+    /**
+     * Returns the member of a set expression of the form <code>{m}</code>,
+     * where <code>m</code> is a stored member, or null.
+     */
+    private static Member getSingleMember(Exp exp) {
+        if (exp instanceof ResolvedFunCall) {
+            final ResolvedFunCall call = (ResolvedFunCall) exp;
+            if (call.getFunName().equals("{}")
+                && call.getArgCount() == 1
+                && call.getArg(0) instanceof MemberExpr)
+            {
+                final Member member =
+                    ((MemberExpr) call.getArg(0)).getMember();
+                if (!member.isCalculated()) {
+                    return member;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Exp[] toExps(Member[] members) {
+        final Exp[] exps = new Exp[members.length];
+        for (int i = 0; i < members.length; i++) {
+            exps[i] = new MemberExpr(members[i]);
+        }
+        return exps;
+    }
+}
+
+// End ExpSimplifier.java
@@ -11,6 +11,7 @@
 
 package mondrian.olap;
 
+import mondrian.rolap.NativeDecisionHistory;
 import mondrian.rolap.RolapConnection;
 import mondrian.rolap.RolapResultShepherd;
 import mondrian.rolap.agg.AggregationManager;
@@ -224,6 +225,11 @@ public abstract class MondrianServer {
 
   public abstract AggregationManager getAggregationManager();
 
+  /**
+   * Returns the history of native and in-memory evaluations that this server uses to choose between them.
+   */
+  public abstract NativeDecisionHistory getNativeDecisionHistory();
+
   public abstract List<Statement> getStatements( String sessionId );
 
   public abstract Repository getRepository();
@@ -124,7 +124,11 @@ public class Query extends QueryPart {
    */
   private ResultStyle resultStyle = Util.Retrowoven ? ResultStyle.LIST : ResultStyle.ITERABLE;
 
-  private Map<String, Object> evalCache = new HashMap<String, Object>();
+  /**
+   * Cache of values computed during evaluation. Synchronized, because cells may be evaluated on several threads; see
+   * {@link MondrianProperties#CellEvaluationParallelism}.
+   */
+  private Map<String, Object> evalCache = Collections.synchronizedMap( new HashMap<String, Object>() );
 
   /**
    * List of aliased expressions defined in this query, and where they are defined. There might be more than one aliased
@@ -133,6 +137,11 @@ public class Query extends QueryPart {
   private final List<ScopedNamedSet> scopedNamedSets = new ArrayList<>();
   private boolean ownStatement;
 
+  /**
+   * Action that runs, instead of closing the statement, when this query is closed; or null.
+   */
+  private Runnable closeAction;
+
   /**
    * Creates a Query.
    */
@@ -1127,8 +1136,13 @@ public class Query extends QueryPart {
     List<ResultStyle> resultStyleList;
     resultStyleList = Collections.singletonList( resultStyle != null ? resultStyle : this.resultStyle );
     final ExpCompiler compiler = createCompiler( evaluator, validator, resultStyleList );
+    exp = ExpSimplifier.simplify( exp, compiler );
     if ( scalar ) {
-      return compiler.compileScalar( exp, false );
+      final Calc calc = compiler.compileScalar( exp, false );
+      if ( MondrianProperties.instance().GenerateCalcCode.get() ) {
+        return statement.getSchema().getCalcCodeGenerator().generate( calc );
+      }
+      return calc;
     } else {
       return compiler.compile( exp );
     }
@@ -1155,6 +1169,8 @@ public class Query extends QueryPart {
       compiler = RolapUtil.createProfilingCompiler( compiler );
     } else if ( expDeps > 0 ) {
       compiler = RolapUtil.createDependencyTestingCompiler( compiler );
+    } else if ( MondrianProperties.instance().EnableExpMemoization.get() ) {
+      compiler = RolapUtil.createMemoizingCompiler( compiler );
     }
     return compiler;
   }
@@ -1276,11 +1292,42 @@ public class Query extends QueryPart {
    * @deprecated This method will be removed in mondrian-4.0.
    */
   public void close() {
-    if ( ownStatement ) {
+    final Runnable action = closeAction;
+    if ( action != null ) {
+      closeAction = null;
+      action.run();
+    } else if ( ownStatement ) {
       statement.close();
     }
   }
 
+  /**
+   * Sets an action to run, once, instead of closing the statement, when this query is closed. For example, the action
+   * may return the query to a cache of compiled queries.
+   *
+   * @param closeAction
+   *          Action, or null
+   */
+  public void setCloseAction( Runnable closeAction ) {
+    this.closeAction = closeAction;
+  }
+
+  /**
+   * Prepares this query, after it has been closed, to be executed again as if it had just been parsed. Unsets the
+   * values of its statement-scoped parameters, and clears the values it has cached.
+   */
+  public void reset() {
+    for ( Parameter parameter : parameters ) {
+      if ( parameter.getScope() == Parameter.Scope.Statement && parameter.isSet() ) {
+        parameter.unsetValue();
+      }
+    }
+    evalCache.clear();
+    alertedNonNativeFunDefs.clear();
+    setResultStyle( ResultStyle.ITERABLE );
+    statement.setQueryTimeoutMillis( MondrianProperties.instance().QueryTimeout.get() * 1000L );
+  }
+
   public Statement getStatement() {
     return statement;
   }
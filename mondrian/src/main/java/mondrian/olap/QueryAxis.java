@@ -114,6 +114,7 @@ public class QueryAxis extends QueryPart {
             exp = normalizeSlicerExpression(exp);
             exp = exp.accept(compiler.getValidator());
         }
+        exp = ExpSimplifier.simplify(exp, compiler);
         switch (resultStyle) {
         case LIST:
             return compiler.compileList(exp, false);
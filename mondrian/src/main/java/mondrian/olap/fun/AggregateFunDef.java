@@ -19,7 +19,12 @@ import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 import mondrian.olap.Role.RollupPolicy;
 import mondrian.rolap.RolapAggregator;
+import mondrian.rolap.RolapCube;
 import mondrian.rolap.RolapEvaluator;
+import mondrian.rolap.RolapLevel;
+import mondrian.rolap.RolapStoredMeasure;
+import mondrian.rolap.RolapUtil;
+import mondrian.spi.Dialect;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -108,6 +113,13 @@ public class AggregateFunDef extends AbstractAggregateFunDef {
                 if (member != null) {
                     evaluator.setContext(member);
                 }
+                if (member != null || calc instanceof ValueCalc) {
+                    final Evaluator nativeEvaluator =
+                        pushNativeAggregation(evaluator, list);
+                    if (nativeEvaluator != null) {
+                        return nativeEvaluator.evaluateCurrent();
+                    }
+                }
                 return aggregate(calc, evaluator, list);
             } finally {
                 evaluator.restore(savepoint);
@@ -178,9 +190,13 @@ public class AggregateFunDef extends AbstractAggregateFunDef {
 
             boolean unlimitedIn  = false;
             if (evaluator instanceof RolapEvaluator) {
+                // A list long enough to be read from a VALUES table has no
+                // limit either.
+                final Dialect dialect =
+                    ((RolapEvaluator) evaluator).getDialect();
                 unlimitedIn =
-                    ((RolapEvaluator) evaluator).getDialect()
-                        .supportsUnlimitedValueList();
+                    dialect.supportsUnlimitedValueList()
+                    || RolapUtil.useInValuesTable(dialect, tupleList.size());
             }
             boolean tupleSizeWithinInListSize =
                 tupleList.size()
@@ -208,6 +224,104 @@ public class AggregateFunDef extends AbstractAggregateFunDef {
             return evaluator2.evaluateCurrent();
         }
 
+        /**
+         * Returns an evaluator that computes the aggregate of the current
+         * measure over a list of tuples as a single cell, or null if the
+         * aggregate must be computed tuple by tuple.
+         *
+         * <p>The cell request of that cell has a compound predicate that
+         * constrains it to the tuples of the list, like the request of a
+         * distinct-count measure or of a compound slicer, so one SQL
+         * statement computes the aggregate and the segment that holds it
+         * is cached for the predicate as a whole. This gives the same value
+         * as the rollup of the cells of the tuples only if the measure is
+         * stored and its aggregator is sum, count, min or max, and, for sum
+         * and count, if no fact row belongs to two tuples of the list.
+         *
+         * @see MondrianProperties#EnableNativeAggregate
+         */
+        private static Evaluator pushNativeAggregation(
+            Evaluator evaluator,
+            TupleList tupleList)
+        {
+            if (!MondrianProperties.instance().EnableNativeAggregate.get()
+                || tupleList.size() < 2
+                || !(evaluator instanceof RolapEvaluator)
+                || ((RolapCube) evaluator.getCube()).isVirtual())
+            {
+                return null;
+            }
+            final Member measure = evaluator.getMembers()[0];
+            if (!(measure instanceof RolapStoredMeasure)
+                || measure.isEvaluated())
+            {
+                return null;
+            }
+            final Object aggregator =
+                evaluator.getProperty(Property.AGGREGATION_TYPE.name, null);
+            if (aggregator != RolapAggregator.Sum
+                && aggregator != RolapAggregator.Count
+                && aggregator != RolapAggregator.Min
+                && aggregator != RolapAggregator.Max)
+            {
+                return null;
+            }
+            final Dialect dialect = ((RolapEvaluator) evaluator).getDialect();
+            if (tupleList.size()
+                > MondrianProperties.instance().MaxConstraints.get()
+                && !dialect.supportsUnlimitedValueList()
+                && !RolapUtil.useInValuesTable(dialect, tupleList.size()))
+            {
+                return null;
+            }
+            if (!canOptimize(evaluator, tupleList)
+                || !isPartition(tupleList))
+            {
+                return null;
+            }
+            final Evaluator evaluator2 =
+                evaluator.pushAggregation(tupleList);
+            // Calculated members elsewhere in the context would be evaluated
+            // over the whole aggregation rather than over each tuple.
+            for (Member member : evaluator2.getMembers()) {
+                if (member.isEvaluated()) {
+                    return null;
+                }
+            }
+            evaluator2.setNonEmpty(false);
+            return evaluator2;
+        }
+
+        /**
+         * Returns whether the tuples of a list are distinct and, position by
+         * position, stored members of the same level, so that no fact row
+         * belongs to two of them.
+         */
+        private static boolean isPartition(TupleList tupleList) {
+            final List<Member> first = tupleList.get(0);
+            final Set<List<Member>> tuples = new HashSet<List<Member>>();
+            for (List<Member> tuple : tupleList) {
+                for (int i = 0; i < tuple.size(); i++) {
+                    final Member member = tuple.get(i);
+                    final Level level = member.getLevel();
+                    if (member.isNull()
+                        || member.isMeasure()
+                        || member.isCalculated()
+                        || member.isEvaluated()
+                        || level != first.get(i).getLevel()
+                        || !(level instanceof RolapLevel)
+                        || ((RolapLevel) level).isParentChild())
+                    {
+                        return false;
+                    }
+                }
+                if (!tuples.add(new ArrayList<Member>(tuple))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         /**
          * Analyzes a list of tuples and determines if the list can
          * be safely optimized. If a member of the tuple list is on
@@ -30,6 +30,7 @@ import mondrian.calc.ListCalc;
 import mondrian.calc.MemberCalc;
 import mondrian.calc.StringCalc;
 import mondrian.calc.TupleList;
+import mondrian.calc.impl.AbstractBinaryDoubleCalc;
 import mondrian.calc.impl.AbstractBooleanCalc;
 import mondrian.calc.impl.AbstractDoubleCalc;
 import mondrian.calc.impl.AbstractIntegerCalc;
@@ -65,6 +66,9 @@ import mondrian.olap.fun.vba.Vba;
 import mondrian.olap.type.LevelType;
 import mondrian.olap.type.NullType;
 import mondrian.olap.type.Type;
+import mondrian.rolap.ParentChildIndex;
+import mondrian.rolap.RolapAggregator;
+import mondrian.rolap.RolapLevel;
 
 /**
  * <code>BuiltinFunTable</code> contains a list of all built-in MDX functions.
@@ -626,12 +630,6 @@ public class BuiltinFunTable extends FunTableImpl {
               final Calc valueFunCall ) {
               Member member =
                 evaluator.getPreviousContext( hierarchy );
-              List<Member> members = new ArrayList<>();
-              evaluator.getSchemaReader()
-                .getParentChildContributingChildren(
-                  member.getDataMember(),
-                  hierarchy,
-                  members );
               Aggregator aggregator =
                 (Aggregator) evaluator.getProperty(
                   Property.AGGREGATION_TYPE.name, null );
@@ -648,6 +646,31 @@ public class BuiltinFunTable extends FunTableImpl {
                   "Don't know how to rollup aggregator '"
                     + aggregator + "'" );
               }
+              List<Member> members = new ArrayList<>();
+              final ParentChildIndex index =
+                member.getLevel() instanceof RolapLevel
+                  && ( rollup == RolapAggregator.Sum
+                    || rollup == RolapAggregator.Min
+                    || rollup == RolapAggregator.Max )
+                  ? ( (RolapLevel) member.getLevel() )
+                      .getParentChildIndex( true )
+                  : null;
+              if ( index != null && index.contains( member ) ) {
+                // The rollup is associative, so aggregate the data
+                // members of the whole subtree at once. They are stored
+                // members, so their cells load in a single batch instead
+                // of one round-trip per level of the tree.
+                for ( Member descendant
+                  : index.getDescendants( member, true ) ) {
+                  members.add( descendant.getDataMember() );
+                }
+              } else {
+                evaluator.getSchemaReader()
+                  .getParentChildContributingChildren(
+                    member.getDataMember(),
+                    hierarchy,
+                    members );
+              }
               final int savepoint = evaluator.savepoint();
               try {
                 return rollup.aggregate( evaluator, new UnaryTupleList( members ), valueFunCall );
@@ -1304,25 +1327,7 @@ public class BuiltinFunTable extends FunTableImpl {
         public Calc compileCall( ResolvedFunCall call, ExpCompiler compiler ) {
           final DoubleCalc calc0 = compiler.compileDouble( call.getArg( 0 ) );
           final DoubleCalc calc1 = compiler.compileDouble( call.getArg( 1 ) );
-          return new AbstractDoubleCalc( call, new Calc[] { calc0, calc1 } ) {
-            public double evaluateDouble( Evaluator evaluator ) {
-              final double v0 = calc0.evaluateDouble( evaluator );
-              final double v1 = calc1.evaluateDouble( evaluator );
-              if ( v0 == DoubleNull ) {
-                if ( v1 == DoubleNull ) {
-                  return DoubleNull;
-                } else {
-                  return v1;
-                }
-              } else {
-                if ( v1 == DoubleNull ) {
-                  return v0;
-                } else {
-                  return v0 + v1;
-                }
-              }
-            }
-          };
+          return new PlusCalc( call, calc0, calc1 );
         }
       } );
 
@@ -1336,25 +1341,7 @@ public class BuiltinFunTable extends FunTableImpl {
         public Calc compileCall( ResolvedFunCall call, ExpCompiler compiler ) {
           final DoubleCalc calc0 = compiler.compileDouble( call.getArg( 0 ) );
           final DoubleCalc calc1 = compiler.compileDouble( call.getArg( 1 ) );
-          return new AbstractDoubleCalc( call, new Calc[] { calc0, calc1 } ) {
-            public double evaluateDouble( Evaluator evaluator ) {
-              final double v0 = calc0.evaluateDouble( evaluator );
-              final double v1 = calc1.evaluateDouble( evaluator );
-              if ( v0 == DoubleNull ) {
-                if ( v1 == DoubleNull ) {
-                  return DoubleNull;
-                } else {
-                  return -v1;
-                }
-              } else {
-                if ( v1 == DoubleNull ) {
-                  return v0;
-                } else {
-                  return v0 - v1;
-                }
-              }
-            }
-          };
+          return new MinusCalc( call, calc0, calc1 );
         }
       } );
 
@@ -1368,19 +1355,7 @@ public class BuiltinFunTable extends FunTableImpl {
         public Calc compileCall( ResolvedFunCall call, ExpCompiler compiler ) {
           final DoubleCalc calc0 = compiler.compileDouble( call.getArg( 0 ) );
           final DoubleCalc calc1 = compiler.compileDouble( call.getArg( 1 ) );
-          return new AbstractDoubleCalc( call, new Calc[] { calc0, calc1 } ) {
-            public double evaluateDouble( Evaluator evaluator ) {
-              final double v0 = calc0.evaluateDouble( evaluator );
-              final double v1 = calc1.evaluateDouble( evaluator );
-              // Multiply and divide return null if EITHER arg is
-              // null.
-              if ( v0 == DoubleNull || v1 == DoubleNull ) {
-                return DoubleNull;
-              } else {
-                return v0 * v1;
-              }
-            }
-          };
+          return new MultiplyCalc( call, calc0, calc1 );
         }
       } );
 
@@ -1407,38 +1382,9 @@ public class BuiltinFunTable extends FunTableImpl {
           // Null. This is only used by certain applications and does not
           // conform to MSAS behavior.
           if ( !isNullDenominatorProducesNull ) {
-            return new AbstractDoubleCalc(
-              call, new Calc[] { calc0, calc1 } ) {
-              public double evaluateDouble( Evaluator evaluator ) {
-                final double v0 = calc0.evaluateDouble( evaluator );
-                final double v1 = calc1.evaluateDouble( evaluator );
-                // Null in numerator always returns DoubleNull.
-                //
-                if ( v0 == DoubleNull ) {
-                  return DoubleNull;
-                } else if ( v1 == DoubleNull ) {
-                  // Null only in denominator returns Infinity.
-                  return Double.POSITIVE_INFINITY;
-                } else {
-                  return v0 / v1;
-                }
-              }
-            };
+            return new DivideCalc( call, calc0, calc1 );
           } else {
-            return new AbstractDoubleCalc(
-              call, new Calc[] { calc0, calc1 } ) {
-              public double evaluateDouble( Evaluator evaluator ) {
-                final double v0 = calc0.evaluateDouble( evaluator );
-                final double v1 = calc1.evaluateDouble( evaluator );
-                // Null in numerator or denominator returns
-                // DoubleNull.
-                if ( v0 == DoubleNull || v1 == DoubleNull ) {
-                  return DoubleNull;
-                } else {
-                  return v0 / v1;
-                }
-              }
-            };
+            return new DivideNullDenominatorCalc( call, calc0, calc1 );
           }
         }
       } );
@@ -1958,4 +1904,123 @@ public class BuiltinFunTable extends FunTableImpl {
     return instance;
   }
 
+  /**
+   * Compiled expression for the <code>+</code> operator. A null operand is
+   * ignored; the result is null only if both operands are null.
+   */
+  public static final class PlusCalc extends AbstractBinaryDoubleCalc {
+    PlusCalc( Exp exp, DoubleCalc calc0, DoubleCalc calc1 ) {
+      super( exp, calc0, calc1 );
+    }
+
+    protected double combine( double v0, double v1 ) {
+      if ( v0 == FunUtil.DoubleNull ) {
+        if ( v1 == FunUtil.DoubleNull ) {
+          return FunUtil.DoubleNull;
+        } else {
+          return v1;
+        }
+      } else {
+        if ( v1 == FunUtil.DoubleNull ) {
+          return v0;
+        } else {
+          return v0 + v1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Compiled expression for the binary <code>-</code> operator. A null
+   * operand counts as zero; the result is null only if both operands are
+   * null.
+   */
+  public static final class MinusCalc extends AbstractBinaryDoubleCalc {
+    MinusCalc( Exp exp, DoubleCalc calc0, DoubleCalc calc1 ) {
+      super( exp, calc0, calc1 );
+    }
+
+    protected double combine( double v0, double v1 ) {
+      if ( v0 == FunUtil.DoubleNull ) {
+        if ( v1 == FunUtil.DoubleNull ) {
+          return FunUtil.DoubleNull;
+        } else {
+          return -v1;
+        }
+      } else {
+        if ( v1 == FunUtil.DoubleNull ) {
+          return v0;
+        } else {
+          return v0 - v1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Compiled expression for the <code>*</code> operator. The result is null
+   * if either operand is null.
+   */
+  public static final class MultiplyCalc extends AbstractBinaryDoubleCalc {
+    MultiplyCalc( Exp exp, DoubleCalc calc0, DoubleCalc calc1 ) {
+      super( exp, calc0, calc1 );
+    }
+
+    protected double combine( double v0, double v1 ) {
+      // Multiply and divide return null if EITHER arg is
+      // null.
+      if ( v0 == FunUtil.DoubleNull || v1 == FunUtil.DoubleNull ) {
+        return FunUtil.DoubleNull;
+      } else {
+        return v0 * v1;
+      }
+    }
+  }
+
+  /**
+   * Compiled expression for the <code>/</code> operator, if
+   * {@link MondrianProperties#NullDenominatorProducesNull} is false. A null
+   * numerator gives null; a null denominator gives infinity.
+   */
+  public static final class DivideCalc extends AbstractBinaryDoubleCalc {
+    DivideCalc( Exp exp, DoubleCalc calc0, DoubleCalc calc1 ) {
+      super( exp, calc0, calc1 );
+    }
+
+    protected double combine( double v0, double v1 ) {
+      // Null in numerator always returns FunUtil.DoubleNull.
+      //
+      if ( v0 == FunUtil.DoubleNull ) {
+        return FunUtil.DoubleNull;
+      } else if ( v1 == FunUtil.DoubleNull ) {
+        // Null only in denominator returns Infinity.
+        return Double.POSITIVE_INFINITY;
+      } else {
+        return v0 / v1;
+      }
+    }
+  }
+
+  /**
+   * Compiled expression for the <code>/</code> operator, if
+   * {@link MondrianProperties#NullDenominatorProducesNull} is true. The
+   * result is null if either operand is null.
+   */
+  public static final class DivideNullDenominatorCalc
+    extends AbstractBinaryDoubleCalc {
+    DivideNullDenominatorCalc( Exp exp, DoubleCalc calc0, DoubleCalc calc1 ) {
+      super( exp, calc0, calc1 );
+    }
+
+    protected double combine( double v0, double v1 ) {
+      // Null in numerator or denominator returns
+      // FunUtil.DoubleNull.
+      if ( v0 == FunUtil.DoubleNull || v1 == FunUtil.DoubleNull ) {
+        return FunUtil.DoubleNull;
+      } else {
+        return v0 / v1;
+      }
+    }
+  }
+
 }
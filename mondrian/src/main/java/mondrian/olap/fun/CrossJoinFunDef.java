@@ -26,8 +26,9 @@ import mondrian.calc.impl.AbstractIterCalc;
 import mondrian.calc.impl.AbstractListCalc;
 import mondrian.calc.impl.AbstractTupleCursor;
 import mondrian.calc.impl.AbstractTupleIterable;
-import mondrian.calc.impl.DelegatingTupleList;
+import mondrian.calc.impl.CartesianProductTupleList;
 import mondrian.calc.impl.ListTupleList;
+import mondrian.calc.impl.OrdinalTupleList;
 import mondrian.mdx.MdxVisitorImpl;
 import mondrian.mdx.MemberExpr;
 import mondrian.mdx.ParameterExpr;
@@ -52,19 +53,21 @@ import mondrian.olap.type.SetType;
 import mondrian.olap.type.TupleType;
 import mondrian.olap.type.Type;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.CrossJoinCostModel;
 import mondrian.rolap.RolapEvaluator;
+import mondrian.rolap.SegmentOccupancyPruner;
 import mondrian.rolap.SqlConstraintUtils;
 import mondrian.server.Execution;
 import mondrian.server.Locus;
 import mondrian.util.CancellationChecker;
-import mondrian.util.CartesianProductList;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
-import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -206,9 +209,7 @@ public class CrossJoinFunDef extends FunDefBase {
       ResolvedFunCall call = (ResolvedFunCall) exp;
       // Use a native evaluator, if more efficient.
       // TODO: Figure this out at compile time.
-      SchemaReader schemaReader = evaluator.getSchemaReader();
-      NativeEvaluator nativeEvaluator =
-          schemaReader.getNativeSetEvaluator( call.getFunDef(), call.getArgs(), evaluator, this );
+      NativeEvaluator nativeEvaluator = getNativeEvaluator( evaluator, call, this );
       if ( nativeEvaluator != null ) {
         return (TupleIterable) nativeEvaluator.execute( ResultStyle.ITERABLE );
       }
@@ -218,7 +219,10 @@ public class CrossJoinFunDef extends FunDefBase {
       IterCalc calc2 = (IterCalc) calcs[1];
 
       TupleIterable o1 = calc1.evaluateIterable( evaluator );
-      if ( o1 instanceof TupleList ) {
+      // With cost-based planning, which lists to filter depends on both.
+      final boolean costBased =
+          o1 instanceof TupleList && MondrianProperties.instance().CostBasedCrossJoin.get();
+      if ( o1 instanceof TupleList && !costBased ) {
         TupleList l1 = (TupleList) o1;
         l1 = nonEmptyOptimizeList( evaluator, l1, call );
         if ( l1.isEmpty() ) {
@@ -228,7 +232,21 @@ public class CrossJoinFunDef extends FunDefBase {
       }
 
       TupleIterable o2 = calc2.evaluateIterable( evaluator );
-      if ( o2 instanceof TupleList ) {
+      if ( costBased && o2 instanceof TupleList ) {
+        final List<TupleList> lists =
+            nonEmptyOptimizeLists( evaluator, Arrays.asList( (TupleList) o1, (TupleList) o2 ), call );
+        if ( lists == null ) {
+          return TupleCollections.emptyList( getType().getArity() );
+        }
+        o1 = lists.get( 0 );
+        o2 = lists.get( 1 );
+      } else if ( costBased ) {
+        final TupleList l1 = nonEmptyOptimizeList( evaluator, (TupleList) o1, call );
+        if ( l1.isEmpty() ) {
+          return TupleCollections.emptyList( getType().getArity() );
+        }
+        o1 = l1;
+      } else if ( o2 instanceof TupleList ) {
         TupleList l2 = (TupleList) o2;
         l2 = nonEmptyOptimizeList( evaluator, l2, call );
         if ( l2.isEmpty() ) {
@@ -237,6 +255,13 @@ public class CrossJoinFunDef extends FunDefBase {
         o2 = l2;
       }
 
+      if ( o1 instanceof TupleList && o2 instanceof TupleList
+          && MondrianProperties.instance().LazyCrossJoinList.get() ) {
+        final List<TupleList> lists = Arrays.asList( (TupleList) o1, (TupleList) o2 );
+        if ( CartesianProductTupleList.productSize( lists ) >= 0 ) {
+          return new CartesianProductTupleList( lists );
+        }
+      }
       return makeIterable( o1, o2 );
     }
 
@@ -360,9 +385,7 @@ public class CrossJoinFunDef extends FunDefBase {
       ResolvedFunCall call = (ResolvedFunCall) exp;
       // Use a native evaluator, if more efficient.
       // TODO: Figure this out at compile time.
-      SchemaReader schemaReader = evaluator.getSchemaReader();
-      NativeEvaluator nativeEvaluator =
-          schemaReader.getNativeSetEvaluator( call.getFunDef(), call.getArgs(), evaluator, this );
+      NativeEvaluator nativeEvaluator = getNativeEvaluator( evaluator, call, this );
       if ( nativeEvaluator != null ) {
         return (TupleList) nativeEvaluator.execute( ResultStyle.LIST );
       }
@@ -380,16 +403,12 @@ public class CrossJoinFunDef extends FunDefBase {
       // check crossjoin
       Util.checkCJResultLimit( (long) l1.size() * l2.size() );
 
-      l1 = nonEmptyOptimizeList( evaluator, l1, call );
-      if ( l1.isEmpty() ) {
-        return TupleCollections.emptyList( l1.getArity() + l2.getArity() );
-      }
-      l2 = nonEmptyOptimizeList( evaluator, l2, call );
-      if ( l2.isEmpty() ) {
+      final List<TupleList> lists = nonEmptyOptimizeLists( evaluator, Arrays.asList( l1, l2 ), call );
+      if ( lists == null ) {
         return TupleCollections.emptyList( l1.getArity() + l2.getArity() );
       }
 
-      return makeList( l1, l2 );
+      return makeList( lists.get( 0 ), lists.get( 1 ) );
     }
 
     protected abstract TupleList makeList( TupleList l1, TupleList l2 );
@@ -401,24 +420,7 @@ public class CrossJoinFunDef extends FunDefBase {
     }
 
     protected TupleList makeList( final TupleList l1, final TupleList l2 ) {
-      final int arity = l1.getArity() + l2.getArity();
-      return new DelegatingTupleList( arity, new AbstractList<List<Member>>() {
-        final List<List<List<Member>>> lists = Arrays.<List<List<Member>>> asList( l1, l2 );
-        final Member[] members = new Member[arity];
-
-        final CartesianProductList cartesianProductList = new CartesianProductList<List<Member>>( lists );
-
-        @Override
-        public List<Member> get( int index ) {
-          cartesianProductList.getIntoArray( index, members );
-          return Util.flatListCopy( members );
-        }
-
-        @Override
-        public int size() {
-          return cartesianProductList.size();
-        }
-      } );
+      return new CartesianProductTupleList( Arrays.asList( l1, l2 ) );
     }
   }
 
@@ -450,6 +452,9 @@ public class CrossJoinFunDef extends FunDefBase {
     @SuppressWarnings( { "unchecked" } )
     protected TupleList makeList( final TupleList l1, final TupleList l2 ) {
       final int arity = l1.getArity() + l2.getArity();
+      if ( isOrdinal( arity ) ) {
+        return ordinalCrossJoin( Arrays.asList( l1, l2 ), arity, l1.size() * l2.size() );
+      }
       final List<Member> members = new ArrayList<Member>( arity * l1.size() * l2.size() );
       for ( List<Member> ma1 : l1 ) {
         for ( List<Member> ma2 : l2 ) {
@@ -485,27 +490,118 @@ public class CrossJoinFunDef extends FunDefBase {
       // instead of overflow exception try to further
       // optimize nonempty(crossjoin(a,b)) ==
       // nonempty(crossjoin(nonempty(a),nonempty(b))
-      final int missCount = evaluator.getMissCount();
-
-      list = nonEmptyList( evaluator, list, call );
-      size = list.size();
-      // list may be empty after nonEmpty optimization
-      if ( size == 0 ) {
-        return TupleCollections.emptyList( list.getArity() );
-      }
-      final int missCount2 = evaluator.getMissCount();
-      final int puntMissCountListSize = 1000;
-      if ( missCount2 > missCount && size > puntMissCountListSize ) {
-        // We've hit some cells which are not in the cache. They
-        // registered as non-empty, but we won't really know until
-        // we've populated the cache. The cartesian product is still
-        // huge, so let's quit now, and try again after the cache
-        // has been loaded.
-        // Return an empty list short circuits higher level
-        // evaluation poping one all the way to the top.
-        return TupleCollections.emptyList( list.getArity() );
+      return nonEmptyFilterList( evaluator, list, call, String.valueOf( ctag ) );
+    }
+    return list;
+  }
+
+  /**
+   * Returns a native evaluator for a crossjoin, or null if it cannot be evaluated natively. If
+   * {@link MondrianProperties#CostBasedCrossJoin} is set, also returns null for a non-empty crossjoin that
+   * {@link CrossJoinCostModel#preferInMemory} expects to be cheaper to evaluate in memory, as
+   * {@link NonEmptyCrossJoinFunDef} does.
+   *
+   * @param evaluator Evaluator
+   * @param call      Call to the crossjoin
+   * @param calc      Compiled crossjoin
+   * @return Native evaluator, or null
+   */
+  private static NativeEvaluator getNativeEvaluator( Evaluator evaluator, ResolvedFunCall call, Calc calc ) {
+    if ( evaluator.isNonEmpty() && MondrianProperties.instance().CostBasedCrossJoin.get()
+        && CrossJoinCostModel.preferInMemory( evaluator, call.getArgs() ) ) {
+      return null;
+    }
+    return evaluator.getSchemaReader().getNativeSetEvaluator( call.getFunDef(), call.getArgs(), evaluator, calc );
+  }
+
+  /**
+   * Applies {@link #nonEmptyOptimizeList} to each argument of a crossjoin, in order. If
+   * {@link MondrianProperties#CostBasedCrossJoin} is set, the arguments to filter are chosen by
+   * {@link CrossJoinCostModel} instead, considering all arguments at once.
+   *
+   * @param evaluator Evaluator
+   * @param lists     Arguments of the crossjoin
+   * @param call      Calling ResolvedFunCall used to determine what Measures to use
+   * @return Arguments, some of them without their empty tuples; or null if the crossjoin is empty
+   */
+  protected List<TupleList> nonEmptyOptimizeLists( Evaluator evaluator, List<TupleList> lists,
+      ResolvedFunCall call ) {
+    final List<TupleList> result = new ArrayList<TupleList>( lists );
+    if ( !MondrianProperties.instance().CostBasedCrossJoin.get() ) {
+      for ( int i = 0; i < result.size(); i++ ) {
+        result.set( i, nonEmptyOptimizeList( evaluator, result.get( i ), call ) );
+        if ( result.get( i ).isEmpty() ) {
+          return null;
+        }
+      }
+      return result;
+    }
+    for ( TupleList list : result ) {
+      if ( list.isEmpty() ) {
+        return null;
+      }
+    }
+    if ( !evaluator.isNonEmpty() ) {
+      return result;
+    }
+    final boolean[] filters = CrossJoinCostModel.planFilters( evaluator, result );
+    for ( int i = 0; i < result.size(); i++ ) {
+      // A tuple with a calculated member is never empty, so an argument
+      // cannot be filtered if another argument has calculated members.
+      if ( filters[i] && !othersContainCalcs( result, i ) ) {
+        result.set( i, nonEmptyFilterList( evaluator, result.get( i ), call, ctag + "-" + i ) );
+        if ( result.get( i ).isEmpty() ) {
+          return null;
+        }
+      }
+    }
+    return result;
+  }
+
+  private static boolean othersContainCalcs( List<TupleList> lists, int index ) {
+    for ( int i = 0; i < lists.size(); i++ ) {
+      if ( i == index ) {
+        continue;
+      }
+      final TupleList list = lists.get( i );
+      for ( int column = 0; column < list.getArity(); column++ ) {
+        for ( Member member : list.slice( column ) ) {
+          if ( member.isCalculated() ) {
+            return true;
+          }
+        }
       }
     }
+    return false;
+  }
+
+  /**
+   * Removes the empty tuples from an argument of a crossjoin, using {@link #nonEmptyList}.
+   *
+   * @param tag Key under which the contexts to check are cached; distinct for each set of hierarchies
+   * @return List without empty tuples, or an empty list if cells were missing and the crossjoin would still be large
+   */
+  private TupleList nonEmptyFilterList( Evaluator evaluator, TupleList list, ResolvedFunCall call, String tag ) {
+    final int missCount = evaluator.getMissCount();
+
+    list = nonEmptyList( evaluator, list, call, tag );
+    final int size = list.size();
+    // list may be empty after nonEmpty optimization
+    if ( size == 0 ) {
+      return TupleCollections.emptyList( list.getArity() );
+    }
+    final int missCount2 = evaluator.getMissCount();
+    final int puntMissCountListSize = 1000;
+    if ( missCount2 > missCount && size > puntMissCountListSize ) {
+      // We've hit some cells which are not in the cache. They
+      // registered as non-empty, but we won't really know until
+      // we've populated the cache. The cartesian product is still
+      // huge, so let's quit now, and try again after the cache
+      // has been loaded.
+      // Return an empty list short circuits higher level
+      // evaluation poping one all the way to the top.
+      return TupleCollections.emptyList( list.getArity() );
+    }
     return list;
   }
 
@@ -536,6 +632,9 @@ public class CrossJoinFunDef extends FunDefBase {
     // large - which means we're allocating a huge array which we might
     // pare down later by applying NON EMPTY constraints - which is a
     // concern.
+    if ( isOrdinal( arity ) ) {
+      return ordinalCrossJoin( lists, arity, (int) size );
+    }
     List<Member> result = new ArrayList<Member>( (int) size * arity );
 
     final Member[] partialArray = new Member[arity];
@@ -544,6 +643,54 @@ public class CrossJoinFunDef extends FunDefBase {
     return new ListTupleList( arity, result );
   }
 
+  private static boolean isOrdinal( int arity ) {
+    return arity > 1 && MondrianProperties.instance().EnableOrdinalTupleLists.get();
+  }
+
+  /**
+   * Computes the cartesian product of lists into an {@link OrdinalTupleList}. Each input list is encoded once, so
+   * that building the product copies ordinals rather than looking up members.
+   */
+  private static TupleList ordinalCrossJoin( List<TupleList> lists, int arity, int size ) {
+    final OrdinalTupleList result = new OrdinalTupleList( arity, size );
+    final int[][] encoded = new int[lists.size()][];
+    int column = 0;
+    for ( int i = 0; i < lists.size(); i++ ) {
+      final TupleList list = lists.get( i );
+      final int listArity = list.getArity();
+      final int[] ordinals = new int[list.size() * listArity];
+      int n = 0;
+      final TupleCursor cursor = list.tupleCursor();
+      while ( cursor.forward() ) {
+        for ( int j = 0; j < listArity; j++ ) {
+          ordinals[n++] = result.getDictionary( column + j ).ordinal( cursor.member( j ) );
+        }
+      }
+      encoded[i] = ordinals;
+      column += listArity;
+    }
+    final Execution execution = Locus.isEmpty() ? null : Locus.peek().execution;
+    ordinalProductRecurse( 0, lists, encoded, new int[arity], 0, result, execution );
+    return result;
+  }
+
+  private static void ordinalProductRecurse( int i, List<TupleList> lists, int[][] encoded, int[] partial,
+      int partialSize, OrdinalTupleList result, Execution execution ) {
+    final int listArity = lists.get( i ).getArity();
+    final int[] ordinals = encoded[i];
+    final boolean last = i == lists.size() - 1;
+    int currentIteration = 0;
+    for ( int n = 0; n < ordinals.length; n += listArity ) {
+      CancellationChecker.checkCancelOrTimeout( currentIteration++, execution );
+      System.arraycopy( ordinals, n, partial, partialSize, listArity );
+      if ( last ) {
+        result.addOrdinals( partial, 0 );
+      } else {
+        ordinalProductRecurse( i + 1, lists, encoded, partial, partialSize + listArity, result, execution );
+      }
+    }
+  }
+
   private static void cartesianProductRecurse( int i, List<TupleList> lists, List<Member> partial,
       Member[] partialArray, int partialSize, List<Member> result ) {
     final TupleList tupleList = lists.get( i );
@@ -685,19 +832,31 @@ public class CrossJoinFunDef extends FunDefBase {
    * @return List of elements from the input parameter list that have evaluated to non-null.
    */
   protected TupleList nonEmptyList( Evaluator evaluator, TupleList list, ResolvedFunCall call ) {
+    return nonEmptyList( evaluator, list, call, String.valueOf( ctag ) );
+  }
+
+  /**
+   * Returns a list of the elements of a list that are not empty, as {@link #nonEmptyList(Evaluator, TupleList,
+   * ResolvedFunCall)} does, caching the contexts in which to check them under a given key.
+   *
+   * @param tag Key under which the contexts to check are cached; distinct for each set of hierarchies
+   */
+  protected TupleList nonEmptyList( Evaluator evaluator, TupleList list, ResolvedFunCall call, String tag ) {
     if ( list.isEmpty() ) {
       return list;
     }
 
-    TupleList result = TupleCollections.createList( list.getArity(), ( list.size() + 2 ) >> 1 );
+    TupleList result =
+        list instanceof OrdinalTupleList ? list.cloneList( ( list.size() + 2 ) >> 1 ) : TupleCollections
+            .createCompactList( list.getArity(), ( list.size() + 2 ) >> 1 );
 
     // Get all of the Measures
     final Query query = evaluator.getQuery();
 
-    final String measureSetKey = "MEASURE_SET-" + ctag;
+    final String measureSetKey = "MEASURE_SET-" + tag;
     Set<Member> measureSet = Util.cast( (Set) query.getEvalCache( measureSetKey ) );
 
-    final String memberSetKey = "MEMBER_SET-" + ctag;
+    final String memberSetKey = "MEMBER_SET-" + tag;
     Set<Member> memberSet = Util.cast( (Set) query.getEvalCache( memberSetKey ) );
     // If not in query cache, then create and place into cache.
     // This information is used for each iteration so it makes
@@ -738,10 +897,10 @@ public class CrossJoinFunDef extends FunDefBase {
       query.putEvalCache( memberSetKey, memberSet );
     }
 
-    final String allMemberListKey = "ALL_MEMBER_LIST-" + ctag;
+    final String allMemberListKey = "ALL_MEMBER_LIST-" + tag;
     List<Member> allMemberList = Util.cast( (List) query.getEvalCache( allMemberListKey ) );
 
-    final String nonAllMembersKey = "NON_ALL_MEMBERS-" + ctag;
+    final String nonAllMembersKey = "NON_ALL_MEMBERS-" + tag;
     Member[][] nonAllMembers = (Member[][]) query.getEvalCache( nonAllMembersKey );
     if ( nonAllMembers == null ) {
       //
@@ -865,14 +1024,37 @@ public class CrossJoinFunDef extends FunDefBase {
     final int savepoint = evaluator.savepoint();
     try {
       evaluator.setContext( allMemberList );
+      // Skip the tuples that the segments loaded so far show to be empty.
+      // Members referenced by calculated measures, and hierarchies without
+      // an All member, give a tuple more than one cell, so they are left to
+      // the loop below.
+      //
+      // Only segments already in this statement's local cache are used. A
+      // cold query has none on its first pass, so nothing is pruned until
+      // the segments requested by that pass have been loaded and the axis
+      // is evaluated again.
+      final Execution execution = query.getStatement().getCurrentExecution();
+      BitSet emptyTuples = null;
+      if ( memberSet.isEmpty() && nonAllMembers.length == 0
+          && MondrianProperties.instance().SegmentOccupancyPruning.get() ) {
+        final Set<Member> measures =
+            measureSet.isEmpty() ? Collections.singleton( evaluator.getMembers()[0] ) : measureSet;
+        emptyTuples = SegmentOccupancyPruner.findEmptyTuples( evaluator, list, measures );
+        if ( emptyTuples != null && execution != null ) {
+          execution.addPrunedTupleCount( emptyTuples.cardinality() );
+        }
+      }
       // Iterate over elements of the input list. If for any
       // combination of
       // Measure and non-All Members evaluation is non-null, then
       // add it to the result List.
       final TupleCursor cursor = list.tupleCursor();
       int currentIteration = 0;
-      Execution execution = query.getStatement().getCurrentExecution();
       while ( cursor.forward() ) {
+        if ( emptyTuples != null && emptyTuples.get( currentIteration ) ) {
+          ++currentIteration;
+          continue;
+        }
         cursor.setContext( evaluator );
         for ( Member member : memberSet ) {
           // memberSet contains members referenced within measures.
@@ -24,6 +24,7 @@ import mondrian.calc.impl.UnaryTupleList;
 import mondrian.mdx.HierarchyExpr;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.mdx.UnresolvedFunCall;
+import mondrian.olap.Access;
 import mondrian.olap.Evaluator;
 import mondrian.olap.Exp;
 import mondrian.olap.FunDef;
@@ -40,6 +41,8 @@ import mondrian.olap.type.SetType;
 import mondrian.olap.type.TupleType;
 import mondrian.olap.type.Type;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.ParentChildIndex;
+import mondrian.rolap.RolapLevel;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -224,6 +227,25 @@ class DescendantsFunDef extends FunDefBase {
     final boolean self,
     final boolean after,
     final Evaluator context ) {
+    final ParentChildIndex index =
+      getParentChildIndex(
+        schemaReader, member.getLevel(),
+        context.isNonEmpty() ? context : null );
+    if ( index != null && index.contains( member ) ) {
+      // The subtree is a contiguous range of the index; classify each
+      // member by its distance from 'member'.
+      final int depth = index.getDepth( member );
+      for ( Member descendant : index.getDescendants( member, true ) ) {
+        final int distance =
+          index.getDepth( descendant ) - depth;
+        if ( distance < depthLimitFinal ? before
+          : distance == depthLimitFinal ? self
+          : after ) {
+          result.add( descendant );
+        }
+      }
+      return;
+    }
     List<Member> children = new ArrayList<Member>();
     children.add( member );
     for ( int depth = 0;; ++depth ) {
@@ -266,6 +288,20 @@ class DescendantsFunDef extends FunDefBase {
     final List<Member> result,
     final SchemaReader schemaReader,
     final int depthLimit ) {
+    final ParentChildIndex index =
+      getParentChildIndex( schemaReader, member.getLevel(), null );
+    if ( index != null && index.contains( member ) ) {
+      if ( index.isLeaf( member ) ) {
+        if ( depthLimit >= 0 ) {
+          result.add( member );
+        }
+      } else {
+        result.addAll(
+          index.getDescendants(
+            member, 1, depthLimit < 0 ? -1 : depthLimit + 1, true ) );
+      }
+      return;
+    }
     if ( !schemaReader.isDrillable( member ) ) {
       if ( depthLimit >= 0 ) {
         result.add( member );
@@ -337,6 +373,11 @@ class DescendantsFunDef extends FunDefBase {
     // example, the children of USA include WA (a state) and Washington
     // (a city). This is why we repeat the before/self/after logic for
     // each member.
+    if ( descendantsByIndex(
+      schemaReader, ancestor, level, result, before, self, after, leaves,
+      context ) ) {
+      return;
+    }
     final int levelDepth = level.getDepth();
     List<Member> members = Collections.singletonList( ancestor );
     // Each pass, "fertileMembers" has the same contents as "members",
@@ -398,6 +439,88 @@ class DescendantsFunDef extends FunDefBase {
     }
   }
 
+  /**
+   * Finds the descendants of a member at a parent-child level using the level's closure index, and adds them to a
+   * result list, if they are the whole subtree or its leaves.
+   *
+   * <p>
+   * All members of a parent-child level have the same level depth. Reading children, SELF yields only the members
+   * where the walk first reaches <code>level</code> (the ancestor itself, or the roots below the All member), and no
+   * member lies after <code>level</code>; but with SELF and AFTER together every member of the subtree is at
+   * <code>level</code>, and is output. The index answers that case and LEAVES; the others read no more than one level
+   * of children, and are left to the caller.
+   *
+   * @return whether the index was used; if false, the caller must find the descendants by reading children
+   */
+  private static boolean descendantsByIndex(
+    SchemaReader schemaReader,
+    Member ancestor,
+    Level level,
+    List<Member> result,
+    boolean before,
+    boolean self,
+    boolean after,
+    boolean leaves,
+    Evaluator context ) {
+    if ( !leaves && !( self && after ) ) {
+      return false;
+    }
+    final ParentChildIndex index =
+      getParentChildIndex( schemaReader, level, context );
+    if ( index == null ) {
+      return false;
+    }
+    if ( ancestor.getLevel() == level && index.contains( ancestor ) ) {
+      result.addAll(
+        leaves
+          ? index.getDescendants( ancestor, 0, -1, true )
+          : index.getDescendants( ancestor, true ) );
+      return true;
+    }
+    if ( ancestor.isAll()
+      && ancestor.getHierarchy() == level.getHierarchy()
+      && level.getParentLevel() == ancestor.getLevel() ) {
+      if ( before ) {
+        result.add( ancestor );
+      }
+      for ( Member root : schemaReader.getMemberChildren( ancestor ) ) {
+        if ( index.contains( root ) ) {
+          result.addAll(
+            leaves
+              ? index.getDescendants( root, 0, -1, true )
+              : index.getDescendants( root, true ) );
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the closure index of a parent-child level, or null if descendants at that level must be found by reading
+   * children. The index is used only if the parent-child level is the last level of its hierarchy, the role can see
+   * the whole hierarchy, and no non-empty filtering applies.
+   *
+   * @param schemaReader Schema reader
+   * @param level        Level
+   * @param context      Evaluation context if the result should be filtered, otherwise null
+   * @return Closure index, or null
+   */
+  private static ParentChildIndex getParentChildIndex(
+    SchemaReader schemaReader,
+    Level level,
+    Evaluator context ) {
+    if ( context != null
+      || !( level instanceof RolapLevel )
+      || !( (RolapLevel) level ).isParentChild()
+      || level.getChildLevel() != null
+      || schemaReader.getRole().getAccess( level.getHierarchy() )
+      != Access.ALL ) {
+      return null;
+    }
+    return ( (RolapLevel) level ).getParentChildIndex( true );
+  }
+
   /**
    * Enumeration of the flags allowed to the <code>DESCENDANTS</code> function.
    */
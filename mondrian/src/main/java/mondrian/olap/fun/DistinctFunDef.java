@@ -15,11 +15,9 @@ package mondrian.olap.fun;
 
 import mondrian.calc.*;
 import mondrian.calc.impl.AbstractListCalc;
+import mondrian.calc.impl.TupleHashSet;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.Evaluator;
-import mondrian.olap.Member;
-
-import java.util.*;
 
 /**
  * Definition of the <code>Distinct</code> MDX function.
@@ -56,11 +54,12 @@ class DistinctFunDef extends FunDefBase {
 
         public TupleList evaluateList(Evaluator evaluator) {
             TupleList list = listCalc.evaluateList(evaluator);
-            Set<List<Member>> set = new HashSet<List<Member>>(list.size());
+            TupleHashSet set = new TupleHashSet(list.size());
             TupleList result = list.cloneList(list.size());
-            for (List<Member> element : list) {
-                if (set.add(element)) {
-                    result.add(element);
+            TupleCursor cursor = list.tupleCursor();
+            for (int i = 0; cursor.forward(); i++) {
+                if (set.add(list, i)) {
+                    result.addCurrent(cursor);
                 }
             }
             return result;
@@ -16,6 +16,7 @@ import mondrian.calc.*;
 import mondrian.calc.impl.*;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
+import mondrian.rolap.ChunkedSetEvaluator;
 import mondrian.server.Execution;
 import mondrian.server.Locus;
 import mondrian.util.CancellationChecker;
@@ -104,11 +105,101 @@ class FilterFunDef extends FunDefBase {
         }
     }
 
+    /**
+     * Adds to <code>result</code> the tuples of <code>list</code> for which
+     * a condition is true, in order.
+     *
+     * <p>If the list is large enough, and
+     * {@link MondrianProperties#SetEvaluationParallelism} is greater than 1,
+     * the list is split into chunks that are filtered in parallel, each with
+     * its own evaluator and its own compilation of the condition, and the
+     * tuples that pass are added chunk by chunk.
+     *
+     * @param evaluator Evaluator
+     * @param list List of tuples
+     * @param bcalc Condition
+     * @param condition Expression of the condition
+     * @param result List to which to add tuples
+     * @return <code>result</code>
+     */
+    private static TupleList filter(
+        Evaluator evaluator,
+        TupleList list,
+        BooleanCalc bcalc,
+        final Exp condition,
+        TupleList result)
+    {
+        final int chunkCount =
+            ChunkedSetEvaluator.getChunkCount(evaluator, list.size());
+        if (chunkCount <= 1) {
+            return filterChunk(evaluator, list, bcalc, result);
+        }
+        final List<TupleList> chunkResults =
+            ChunkedSetEvaluator.evaluate(
+                evaluator,
+                list,
+                chunkCount,
+                new ChunkedSetEvaluator.ChunkFunctionFactory<TupleList>() {
+                    public ChunkedSetEvaluator.ChunkFunction<TupleList> create(
+                        ExpCompiler compiler)
+                    {
+                        final BooleanCalc chunkCalc =
+                            compiler.compileBoolean(condition);
+                        return new ChunkedSetEvaluator
+                            .ChunkFunction<TupleList>()
+                        {
+                            public TupleList apply(
+                                Evaluator evaluator,
+                                TupleList chunk)
+                            {
+                                return filterChunk(
+                                    evaluator, chunk, chunkCalc,
+                                    TupleCollections.createList(
+                                        chunk.getArity()));
+                            }
+                        };
+                    }
+                });
+        for (TupleList chunkResult : chunkResults) {
+            result.addAll(chunkResult);
+        }
+        return result;
+    }
+
+    private static TupleList filterChunk(
+        Evaluator evaluator,
+        TupleList list,
+        BooleanCalc bcalc,
+        TupleList result)
+    {
+        final TupleCursor cursor = list.tupleCursor();
+        int currentIteration = 0;
+        Execution execution =
+            evaluator.getQuery().getStatement().getCurrentExecution();
+        while (cursor.forward()) {
+            CancellationChecker.checkCancelOrTimeout(
+                currentIteration++, execution);
+            cursor.setContext(evaluator);
+            if (bcalc.evaluateBoolean(evaluator)) {
+                result.addCurrent(cursor);
+            }
+        }
+        return result;
+    }
+
     private static abstract class BaseIterCalc extends AbstractIterCalc {
         protected BaseIterCalc(ResolvedFunCall call, Calc[] calcs) {
             super(call, calcs);
         }
 
+        /**
+         * Returns the condition, which is compiled again for each chunk if the
+         * list is filtered in parallel.
+         */
+        protected Exp getCondition() {
+            return ((ResolvedFunCall) exp).getArg(1);
+        }
+
         public TupleIterable evaluateIterable(Evaluator evaluator) {
             evaluator.getTiming().markStart(TIMING_NAME);
             try {
@@ -154,24 +245,16 @@ class FilterFunDef extends FunDefBase {
 
                 TupleList list = lcalc.evaluateList(evaluator);
 
-                // make list mutable; guess selectivity .5
+                // make list mutable; guess selectivity .5. An ordinal
+                // list is copied so that the result shares its dictionaries.
                 TupleList result =
-                    TupleCollections.createList(
-                        list.getArity(), list.size() / 2);
+                    list instanceof OrdinalTupleList
+                        ? list.cloneList(list.size() / 2)
+                        : TupleCollections.createCompactList(
+                            list.getArity(), list.size() / 2);
                 evaluator.setNonEmpty(false);
-                TupleCursor cursor = list.tupleCursor();
-                int currentIteration = 0;
-                Execution execution =
-                    evaluator.getQuery().getStatement().getCurrentExecution();
-                while (cursor.forward()) {
-                    CancellationChecker.checkCancelOrTimeout(
-                        currentIteration++, execution);
-                    cursor.setContext(evaluator);
-                    if (bcalc.evaluateBoolean(evaluator)) {
-                        result.addCurrent(cursor);
-                    }
-                }
-                return result;
+                return filter(
+                    evaluator, list, bcalc, getCondition(), result);
             } finally {
                 evaluator.restore(savepoint);
                 evaluator.getTiming().markEnd(TIMING_NAME);
@@ -197,19 +280,8 @@ class FilterFunDef extends FunDefBase {
             final int savepoint = evaluator.savepoint();
             try {
                 evaluator.setNonEmpty(false);
-                TupleCursor cursor = members.tupleCursor();
-                int currentIteration = 0;
-                Execution execution =
-                    evaluator.getQuery().getStatement().getCurrentExecution();
-                while (cursor.forward()) {
-                    CancellationChecker.checkCancelOrTimeout(
-                        currentIteration++, execution);
-                    cursor.setContext(evaluator);
-                    if (bcalc.evaluateBoolean(evaluator)) {
-                        result.addCurrent(cursor);
-                    }
-                }
-                return result;
+                return filter(
+                    evaluator, members, bcalc, getCondition(), result);
             } finally {
                 evaluator.restore(savepoint);
             }
@@ -297,6 +369,14 @@ class FilterFunDef extends FunDefBase {
             super(call, calcs);
         }
 
+        /**
+         * Returns the condition, which is compiled again for each chunk if the
+         * list is filtered in parallel.
+         */
+        protected Exp getCondition() {
+            return ((ResolvedFunCall) exp).getArg(1);
+        }
+
         public TupleList evaluateList(Evaluator evaluator) {
             ResolvedFunCall call = (ResolvedFunCall) exp;
             // Use a native evaluator, if more efficient.
@@ -338,19 +418,8 @@ class FilterFunDef extends FunDefBase {
             final int savepoint = evaluator.savepoint();
             try {
                 evaluator.setNonEmpty(false);
-                final TupleCursor cursor = members0.tupleCursor();
-                int currentIteration = 0;
-                Execution execution =
-                    evaluator.getQuery().getStatement().getCurrentExecution();
-                while (cursor.forward()) {
-                    CancellationChecker.checkCancelOrTimeout(
-                        currentIteration++, execution);
-                    cursor.setContext(evaluator);
-                    if (bcalc.evaluateBoolean(evaluator)) {
-                        result.addCurrent(cursor);
-                    }
-                }
-                return result;
+                return filter(
+                    evaluator, members0, bcalc, getCondition(), result);
             } finally {
                 evaluator.restore(savepoint);
             }
@@ -377,19 +446,8 @@ class FilterFunDef extends FunDefBase {
                 // for capacity planning, guess selectivity = .5
                 TupleList result = members0.cloneList(members0.size() / 2);
                 evaluator.setNonEmpty(false);
-                final TupleCursor cursor = members0.tupleCursor();
-                int currentIteration = 0;
-                Execution execution = evaluator.getQuery()
-                    .getStatement().getCurrentExecution();
-                while (cursor.forward()) {
-                    CancellationChecker.checkCancelOrTimeout(
-                        currentIteration++, execution);
-                    cursor.setContext(evaluator);
-                    if (bcalc.evaluateBoolean(evaluator)) {
-                        result.addCurrent(cursor);
-                    }
-                }
-                return result;
+                return filter(
+                    evaluator, members0, bcalc, getCondition(), result);
             } finally {
                 evaluator.restore(savepoint);
                 evaluator.getTiming().markEnd(TIMING_NAME);
@@ -12,6 +12,7 @@
 
 package mondrian.olap.fun;
 
+import mondrian.calc.BatchCalc;
 import mondrian.calc.Calc;
 import mondrian.calc.DoubleCalc;
 import mondrian.calc.ResultStyle;
@@ -54,7 +55,10 @@ import mondrian.olap.type.TupleType;
 import mondrian.olap.type.Type;
 import mondrian.olap.type.TypeUtil;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.ParentChildIndex;
 import mondrian.rolap.RolapHierarchy;
+import mondrian.rolap.RolapLevel;
+import mondrian.rolap.RolapMember;
 import mondrian.rolap.RolapUtil;
 import mondrian.server.Execution;
 import mondrian.util.CancellationChecker;
@@ -68,7 +72,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 
 import static mondrian.olap.fun.sort.Sorter.hierarchizeTupleList;
 
@@ -270,26 +273,6 @@ public class FunUtil extends Util {
     }
   }
 
-  /**
-   * Adds every element of {@code right} which is not in {@code set} to both {@code set} and {@code left}.
-   */
-  static void addUnique(
-    TupleList left,
-    TupleList right,
-    Set<List<Member>> set ) {
-    assert left != null;
-    assert right != null;
-    if ( right.isEmpty() ) {
-      return;
-    }
-    for ( int i = 0, n = right.size(); i < n; i++ ) {
-      List<Member> o = right.get( i );
-      if ( set.add( o ) ) {
-        left.add( o );
-      }
-    }
-  }
-
   /**
    * Returns the default hierarchy of a dimension, or null if there is no default.
    *
@@ -387,6 +370,17 @@ public class FunUtil extends Util {
    * @param strict if true, a member is not an ancestor of itself
    */
   public static boolean isAncestorOf( Member m0, Member m1, boolean strict ) {
+    if ( m0 instanceof RolapMember
+      && m1 instanceof RolapMember
+      && m0.getLevel() == m1.getLevel() ) {
+      // Within a parent-child level, use the closure index if it has
+      // already been built.
+      final ParentChildIndex index =
+        ( (RolapLevel) m0.getLevel() ).getParentChildIndex( false );
+      if ( index != null && index.contains( m0 ) && index.contains( m1 ) ) {
+        return index.isAncestor( m0, m1, strict );
+      }
+    }
     if ( strict ) {
       if ( m1 == null ) {
         return false;
@@ -982,6 +976,23 @@ public class FunUtil extends Util {
     Evaluator evaluator,
     TupleList members,
     Calc exp ) {
+    if ( isBatchEvaluated( exp ) ) {
+      final double[] values = new double[ members.size() ];
+      final int notReady = evaluateDoubles( evaluator, members, exp, values );
+      if ( notReady > 0 ) {
+        return Double.NaN;
+      } else if ( notReady == 0 ) {
+        double sum = 0.0;
+        boolean empty = true;
+        for ( double value : values ) {
+          if ( value != DoubleNull ) {
+            sum += value;
+            empty = false;
+          }
+        }
+        return empty ? DoubleNull : sum;
+      }
+    }
     SetWrapper sw = evaluateSet( evaluator, members, exp );
     if ( sw.errorCount > 0 ) {
       return Double.NaN;
@@ -1060,6 +1071,28 @@ public class FunUtil extends Util {
     assert calc != null;
     assert calc.getType() instanceof ScalarType;
 
+    if ( members instanceof TupleList && isBatchEvaluated( calc ) ) {
+      final TupleList list = (TupleList) members;
+      final double[] values = new double[ list.size() ];
+      final int notReady = evaluateDoubles( evaluator, list, calc, values );
+      if ( notReady > 0 ) {
+        // Callers do not look at the values if there are errors.
+        final SetWrapper retval = new SetWrapper();
+        retval.errorCount = notReady;
+        return retval;
+      } else if ( notReady == 0 ) {
+        final SetWrapper retval = new SetWrapper();
+        for ( double value : values ) {
+          if ( value == DoubleNull ) {
+            retval.nullCount++;
+          } else {
+            retval.v.add( value );
+          }
+        }
+        return retval;
+      }
+    }
+
     // todo: treat constant exps as evaluateMembers() does
     SetWrapper retval = new SetWrapper();
     final TupleCursor cursor = members.tupleCursor();
@@ -1087,6 +1120,80 @@ public class FunUtil extends Util {
     return retval;
   }
 
+  /**
+   * Returns whether an expression that is aggregated over a list of tuples is evaluated in one call for the whole list.
+   * True if {@link MondrianProperties#EnableBatchEvaluation} is set and the expression implements {@link BatchCalc}.
+   */
+  private static boolean isBatchEvaluated( Calc calc ) {
+    return calc instanceof BatchCalc
+      && MondrianProperties.instance().EnableBatchEvaluation.get();
+  }
+
+  /**
+   * Evaluates a numeric expression for each tuple of a list, and stores the values in an array. Null values are stored
+   * as {@link #DoubleNull}.
+   *
+   * <p>If the expression implements {@link BatchCalc}, it is evaluated in one call for the whole list; otherwise it is
+   * evaluated once per tuple. The context of the evaluator is the same on return as on entry.
+   *
+   * @param evaluator Evaluator
+   * @param list      List of tuples
+   * @param calc      Expression
+   * @param values    Array, at least as long as the list, to receive values
+   * @return 0 if all values are valid, a positive number if some values depend on cells that have not been loaded yet,
+   *   or -1 if a value was not numeric
+   * @see BatchCalc#evaluateDoubles(Evaluator, TupleList, double[])
+   */
+  public static int evaluateDoubles(
+    Evaluator evaluator,
+    TupleList list,
+    Calc calc,
+    double[] values ) {
+    if ( calc instanceof BatchCalc ) {
+      return ( (BatchCalc) calc ).evaluateDoubles( evaluator, list, values );
+    }
+    return evaluateEachDouble( evaluator, list, calc, values );
+  }
+
+  /**
+   * Evaluates a numeric expression once for each tuple of a list, and stores the values in an array, as {@link
+   * #evaluateDoubles(Evaluator, TupleList, Calc, double[])} does. Implementations of {@link BatchCalc} call this method
+   * when they cannot evaluate the list in one call.
+   */
+  public static int evaluateEachDouble(
+    Evaluator evaluator,
+    TupleList list,
+    Calc calc,
+    double[] values ) {
+    final int savepoint = evaluator.savepoint();
+    try {
+      int notReady = 0;
+      int i = 0;
+      final TupleCursor cursor = list.tupleCursor();
+      final Execution execution =
+        evaluator.getQuery().getStatement().getCurrentExecution();
+      while ( cursor.forward() ) {
+        CancellationChecker.checkCancelOrTimeout( i, execution );
+        cursor.setContext( evaluator );
+        final Object o = calc.evaluate( evaluator );
+        if ( o == null || o == Util.nullValue ) {
+          values[ i ] = DoubleNull;
+        } else if ( o == RolapUtil.valueNotReadyException ) {
+          values[ i ] = DoubleNull;
+          ++notReady;
+        } else if ( o instanceof Number ) {
+          values[ i ] = ( (Number) o ).doubleValue();
+        } else {
+          return -1;
+        }
+        ++i;
+      }
+      return notReady;
+    } finally {
+      evaluator.restore( savepoint );
+    }
+  }
+
   /**
    * Evaluates one or more expressions against the member list returning a SetWrapper array. Where this differs very
    * significantly from the above evaluateSet methods is how it count null values and Throwables; this method adds nulls
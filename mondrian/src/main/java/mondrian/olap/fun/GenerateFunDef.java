@@ -17,6 +17,7 @@ import mondrian.calc.impl.*;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 import mondrian.olap.type.*;
+import mondrian.rolap.ChunkedSetEvaluator;
 import mondrian.server.Execution;
 import mondrian.server.Locus;
 import mondrian.util.CancellationChecker;
@@ -117,7 +118,27 @@ class GenerateFunDef extends FunDefBase {
                 evaluator.restore(savepoint);
                 TupleList result = TupleCollections.createList(arityOut);
                 Execution execution = Locus.peek().execution;
-                if (all) {
+                final int chunkCount =
+                    iterable1 instanceof TupleList
+                        ? ChunkedSetEvaluator.getChunkCount(
+                            evaluator, ((TupleList) iterable1).size())
+                        : 1;
+                if (chunkCount > 1) {
+                    final List<TupleList> chunkResults =
+                        generateChunks(
+                            evaluator, (TupleList) iterable1, chunkCount);
+                    if (all) {
+                        for (TupleList chunkResult : chunkResults) {
+                            result.addAll(chunkResult);
+                        }
+                    } else {
+                        final Set<List<Member>> emitted =
+                            new HashSet<List<Member>>();
+                        for (TupleList chunkResult : chunkResults) {
+                            addDistinctTuples(result, chunkResult, emitted);
+                        }
+                    }
+                } else if (all) {
                     final TupleCursor cursor = iterable1.tupleCursor();
                     int rowCount = 0;
                     while (cursor.forward()) {
@@ -149,6 +170,72 @@ class GenerateFunDef extends FunDefBase {
             }
         }
 
+        /**
+         * Evaluates the set for each tuple of a list, splitting the list into
+         * chunks that are evaluated in parallel.
+         *
+         * <p>Each chunk compiles its own copy of the set expression, and
+         * returns the tuples it generated, in order; unless ALL
+         * is specified, without duplicates within the chunk. The caller
+         * concatenates the chunks, removing duplicates across chunks.
+         *
+         * @param evaluator Evaluator
+         * @param list List of tuples to evaluate the set for
+         * @param chunkCount Number of chunks
+         * @return Tuples generated by each chunk
+         */
+        private List<TupleList> generateChunks(
+            Evaluator evaluator,
+            TupleList list,
+            int chunkCount)
+        {
+            return ChunkedSetEvaluator.evaluate(
+                evaluator,
+                list,
+                chunkCount,
+                new ChunkedSetEvaluator.ChunkFunctionFactory<TupleList>() {
+                    public ChunkedSetEvaluator.ChunkFunction<TupleList> create(
+                        ExpCompiler compiler)
+                    {
+                        final ListCalc chunkCalc =
+                            compiler.compileList(
+                                ((ResolvedFunCall) exp).getArg(1));
+                        return new ChunkedSetEvaluator
+                            .ChunkFunction<TupleList>()
+                        {
+                            public TupleList apply(
+                                Evaluator evaluator,
+                                TupleList chunk)
+                            {
+                                final TupleList result =
+                                    TupleCollections.createList(arityOut);
+                                final Set<List<Member>> emitted =
+                                    all ? null : new HashSet<List<Member>>();
+                                final Execution execution =
+                                    evaluator.getQuery().getStatement()
+                                        .getCurrentExecution();
+                                final TupleCursor cursor = chunk.tupleCursor();
+                                int rowCount = 0;
+                                while (cursor.forward()) {
+                                    CancellationChecker.checkCancelOrTimeout(
+                                        rowCount++, execution);
+                                    cursor.setContext(evaluator);
+                                    final TupleList result2 =
+                                        chunkCalc.evaluateList(evaluator);
+                                    if (all) {
+                                        result.addAll(result2);
+                                    } else {
+                                        addDistinctTuples(
+                                            result, result2, emitted);
+                                    }
+                                }
+                                return result;
+                            }
+                        };
+                    }
+                });
+        }
+
         private static void addDistinctTuples(
             TupleList result,
             TupleList result2,
@@ -19,6 +19,7 @@ import mondrian.calc.impl.ConstantCalc;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.Evaluator;
 import mondrian.olap.FunDef;
+import mondrian.olap.MondrianProperties;
 
 /**
  * Definition of the <code>Head</code> and <code>Tail</code>
@@ -52,6 +53,9 @@ class HeadTailFunDef extends FunDefBase {
     }
 
     public Calc compileCall(ResolvedFunCall call, ExpCompiler compiler) {
+        if (head && MondrianProperties.instance().StreamingTopBottom.get()) {
+            return compileStreamingHead(call, compiler);
+        }
         final ListCalc listCalc =
             compiler.compileList(call.getArg(0));
         final IntegerCalc integerCalc =
@@ -93,6 +97,36 @@ class HeadTailFunDef extends FunDefBase {
         }
     }
 
+    /**
+     * Compiles a call to <code>Head</code> that reads its set as an
+     * iterable, and stops after the tuples it returns.
+     *
+     * @see MondrianProperties#StreamingTopBottom
+     */
+    private Calc compileStreamingHead(
+        ResolvedFunCall call,
+        ExpCompiler compiler)
+    {
+        final IterCalc iterCalc = compiler.compileIter(call.getArg(0));
+        final IntegerCalc integerCalc =
+            call.getArgCount() > 1
+            ? compiler.compileInteger(call.getArg(1))
+            : ConstantCalc.constantInteger(1);
+        return new AbstractListCalc(call, new Calc[] {iterCalc, integerCalc})
+        {
+            public TupleList evaluateList(Evaluator evaluator) {
+                final int savepoint = evaluator.savepoint();
+                try {
+                    evaluator.setNonEmpty(false);
+                    int count = integerCalc.evaluateInteger(evaluator);
+                    return head(count, iterCalc.evaluateIterable(evaluator));
+                } finally {
+                    evaluator.restore(savepoint);
+                }
+            }
+        };
+    }
+
     static TupleList tail(final int count, final TupleList members) {
         assert members != null;
         final int memberCount = members.size();
@@ -112,6 +146,23 @@ class HeadTailFunDef extends FunDefBase {
         }
         return members.subList(0, Math.min(count, members.size()));
     }
+
+    /**
+     * Returns the first {@code count} tuples of an iterable. If the iterable
+     * is not a list, reads no further than those tuples.
+     */
+    static TupleList head(final int count, final TupleIterable iterable) {
+        if (iterable instanceof TupleList) {
+            return head(count, (TupleList) iterable);
+        }
+        final TupleList result =
+            TupleCollections.createList(iterable.getArity());
+        final TupleCursor cursor = iterable.tupleCursor();
+        while (result.size() < count && cursor.forward()) {
+            result.addCurrent(cursor);
+        }
+        return result;
+    }
 }
 
 // End HeadTailFunDef.java
@@ -15,6 +15,7 @@ package mondrian.olap.fun;
 
 import mondrian.calc.*;
 import mondrian.calc.impl.AbstractListCalc;
+import mondrian.calc.impl.TupleHashSet;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 
@@ -66,34 +67,37 @@ class IntersectFunDef extends FunDefBase
                     return rightList;
                 }
 
-                // Set of members from the right side of the intersect.
-                // We use a RetrievableSet because distinct keys
-                // (regular members and visual totals members) compare
-                // identical using hashCode and equals, we want to retrieve
-                // the actual key, and java.util.Set only has containsKey.
-                RetrievableSet<List<Member>> rightSet =
-                    new RetrievableHashSet<List<Member>>(
-                        rightList.size() * 3 / 2);
-                for (List<Member> tuple : rightList) {
-                    rightSet.add(tuple);
+                // Set of tuples from the right side of the intersect.
+                // Distinct keys (regular members and visual totals members)
+                // compare identical using hashCode and equals, and we want to
+                // retrieve the actual key, so we look up its index in the
+                // right list. Tuples are added last to first so that, of
+                // equal tuples, the last one is retrieved.
+                final TupleHashSet rightSet =
+                    new TupleHashSet(rightList.size());
+                for (int i = rightList.size() - 1; i >= 0; i--) {
+                    rightSet.add(rightList, i);
                 }
 
                 final TupleList result =
                     TupleCollections.createList(
                         arity, Math.min(leftList.size(), rightList.size()));
-                final Set<List<Member>> resultSet =
-                    all ? null : new HashSet<List<Member>>();
-                for (List<Member> leftTuple : leftList) {
-                    List<Member> rightKey = rightSet.getKey(leftTuple);
-                    if (rightKey == null) {
+                final TupleHashSet resultSet =
+                    all
+                        ? null
+                        : new TupleHashSet(
+                            Math.min(leftList.size(), rightList.size()));
+                for (int i = 0, n = leftList.size(); i < n; i++) {
+                    final int rightIndex = rightSet.indexOf(leftList, i);
+                    if (rightIndex < 0) {
                         continue;
                     }
-                    if (resultSet != null && !resultSet.add(leftTuple)) {
+                    if (resultSet != null && !resultSet.add(leftList, i)) {
                         continue;
                     }
                     result.add(
                         copyTupleWithVisualTotalsMembersOverriding(
-                            leftTuple, rightKey));
+                            leftList.get(i), rightList.get(rightIndex)));
                 }
                 return result;
             }
@@ -136,54 +140,6 @@ class IntersectFunDef extends FunDefBase
             }
         };
     }
-
-    /**
-     * Interface similar to the Set interface that allows key values to be
-     * returned.
-     *
-     * <p>Useful if multiple objects can compare equal (using
-     * {@link Object#equals(Object)} and {@link Object#hashCode()}, per the
-     * set contract) and you wish to distinguish them after they have been added
-     * to the set.
-     *
-     * @param <E> element type
-     */
-    private interface RetrievableSet<E> {
-        /**
-         * Returns the key in this set that compares equal to a given object,
-         * or null if there is no such key.
-         *
-         * @param e Key value
-         * @return Key in the set equal to given key value
-         */
-        E getKey(E e);
-
-        /**
-         * Analogous to {@link Set#add(Object)}.
-         *
-         * @param e element to be added to this set
-         * @return <tt>true</tt> if this set did not already contain the
-         *         specified element
-         */
-        boolean add(E e);
-    }
-
-    private static class RetrievableHashSet<E>
-        extends HashMap<E, E>
-        implements RetrievableSet<E>
-    {
-        public RetrievableHashSet(int initialCapacity) {
-            super(initialCapacity);
-        }
-
-        public E getKey(E e) {
-            return super.get(e);
-        }
-
-        public boolean add(E e) {
-            return super.put(e, e) == null;
-        }
-    }
 }
 
 // End IntersectFunDef.java
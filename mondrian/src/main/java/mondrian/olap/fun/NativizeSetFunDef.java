@@ -20,6 +20,7 @@ import mondrian.mdx.*;
 import mondrian.olap.*;
 import mondrian.olap.type.Type;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.NativeDecisionHistory;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -295,10 +296,33 @@ public class NativizeSetFunDef extends FunDefBase {
             if (simplifiedList.isEmpty()) {
                 return simplifiedList;
             }
-            if (!isHighCardinality(evaluator, simplifiedList)) {
-                return evaluateNonNative(evaluator);
+            final boolean highCardinality =
+                isHighCardinality(evaluator, simplifiedList);
+            final NativeDecisionHistory history =
+                NativeDecisionHistory.of(evaluator);
+            if (history == null) {
+                if (!highCardinality) {
+                    return evaluateNonNative(evaluator);
+                }
+                return evaluateNative(evaluator, simplifiedList);
             }
-            return evaluateNative(evaluator, simplifiedList);
+
+            // Let the history of this shape of expression override the
+            // cardinality threshold, and record how long this evaluation
+            // takes.
+            final String shape =
+                NativeDecisionHistory.shape(
+                    evaluator, getName(), new Exp[] {originalExp});
+            final boolean isNative =
+                history.chooseNative(shape, highCardinality);
+            final NativeDecisionHistory.Sample sample =
+                history.start(evaluator, shape, isNative);
+            final TupleList list =
+                isNative
+                    ? evaluateNative(evaluator, simplifiedList)
+                    : evaluateNonNative(evaluator);
+            sample.end(list.size());
+            return list;
         }
 
         private TupleList evaluateSimplifiedList(Evaluator evaluator) {
@@ -16,8 +16,12 @@ import mondrian.calc.*;
 import mondrian.calc.impl.AbstractListCalc;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
+import mondrian.rolap.CrossJoinCostModel;
 import mondrian.rolap.RolapEvaluator;
 
+import java.util.Arrays;
+import java.util.List;
+
 
 /**
  * Definition of the <code>NonEmptyCrossJoin</code> MDX function.
@@ -73,9 +77,19 @@ public class NonEmptyCrossJoinFunDef extends CrossJoinFunDef {
                         }
                     }
 
+                    // A small crossjoin is cheaper to evaluate in memory
+                    // than by a SQL statement over the fact table.
+                    final boolean costBased =
+                        MondrianProperties.instance().CostBasedCrossJoin
+                            .get();
                     NativeEvaluator nativeEvaluator =
-                        schemaReader.getNativeSetEvaluator(
-                            call.getFunDef(), call.getArgs(), evaluator, this);
+                        costBased
+                        && CrossJoinCostModel.preferInMemory(
+                            evaluator, call.getArgs())
+                            ? null
+                            : schemaReader.getNativeSetEvaluator(
+                                call.getFunDef(), call.getArgs(), evaluator,
+                                this);
                     if (nativeEvaluator != null) {
                         evaluator.restore(savepoint);
                         return
@@ -83,12 +97,23 @@ public class NonEmptyCrossJoinFunDef extends CrossJoinFunDef {
                                 ResultStyle.LIST);
                     }
 
-                    final TupleList list1 = listCalc1.evaluateList(evaluator);
+                    TupleList list1 = listCalc1.evaluateList(evaluator);
                     if (list1.isEmpty()) {
                         evaluator.restore(savepoint);
                         return list1;
                     }
-                    final TupleList list2 = listCalc2.evaluateList(evaluator);
+                    TupleList list2 = listCalc2.evaluateList(evaluator);
+                    if (costBased) {
+                        final List<TupleList> lists =
+                            nonEmptyOptimizeLists(
+                                evaluator, Arrays.asList(list1, list2), call);
+                        if (lists == null) {
+                            return TupleCollections.emptyList(
+                                getType().getArity());
+                        }
+                        list1 = lists.get(0);
+                        list2 = lists.get(1);
+                    }
                     TupleList result = mutableCrossJoin(list1, list2);
 
                     // remove any remaining empty crossings from the result
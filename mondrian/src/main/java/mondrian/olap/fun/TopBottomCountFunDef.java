@@ -16,9 +16,12 @@ package mondrian.olap.fun;
 import mondrian.calc.Calc;
 import mondrian.calc.ExpCompiler;
 import mondrian.calc.IntegerCalc;
+import mondrian.calc.IterCalc;
 import mondrian.calc.ListCalc;
 import mondrian.calc.ResultStyle;
 import mondrian.calc.TupleCollections;
+import mondrian.calc.TupleCursor;
+import mondrian.calc.TupleIterable;
 import mondrian.calc.TupleList;
 import mondrian.calc.impl.AbstractListCalc;
 import mondrian.calc.impl.DelegatingTupleList;
@@ -29,11 +32,13 @@ import mondrian.olap.Exp;
 import mondrian.olap.FunDef;
 import mondrian.olap.Hierarchy;
 import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.NativeEvaluator;
 import mondrian.olap.SchemaReader;
 import mondrian.olap.fun.sort.Sorter;
 
 import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 import static mondrian.olap.fun.sort.Sorter.partiallySortTuples;
@@ -76,6 +81,9 @@ class TopBottomCountFunDef extends FunDefBase {
   }
 
   public Calc compileCall( final ResolvedFunCall call, ExpCompiler compiler ) {
+    if ( MondrianProperties.instance().StreamingTopBottom.get() ) {
+      return compileStreaming( call, compiler );
+    }
     // Compile the member list expression. Ask for a mutable list, because
     // we're going to sort it later.
     final ListCalc listCalc =
@@ -195,6 +203,82 @@ class TopBottomCountFunDef extends FunDefBase {
       }
     };
   }
+
+  /**
+   * Compiles a call that reads its set as an iterable, and keeps only the tuples it will return, so that a large set,
+   * such as a crossjoin, is not materialized.
+   *
+   * @see MondrianProperties#StreamingTopBottom
+   */
+  private Calc compileStreaming( final ResolvedFunCall call, ExpCompiler compiler ) {
+    final IterCalc iterCalc = compiler.compileIter( call.getArg( 0 ) );
+    final IntegerCalc integerCalc =
+      compiler.compileInteger( call.getArg( 1 ) );
+    final Calc orderCalc =
+      call.getArgCount() > 2
+        ? compiler.compileScalar( call.getArg( 2 ), true )
+        : null;
+    final int arity = call.getType().getArity();
+    return new AbstractListCalc(
+      call,
+      new Calc[] { iterCalc, integerCalc, orderCalc } ) {
+      public TupleList evaluateList( Evaluator evaluator ) {
+        SchemaReader schemaReader = evaluator.getSchemaReader();
+        NativeEvaluator nativeEvaluator =
+          schemaReader.getNativeSetEvaluator(
+            call.getFunDef(), call.getArgs(), evaluator, this );
+        if ( nativeEvaluator != null ) {
+          return
+            (TupleList) nativeEvaluator.execute( ResultStyle.LIST );
+        }
+
+        int n = integerCalc.evaluateInteger( evaluator );
+        if ( n <= 0 || n == mondrian.olap.fun.FunUtil.IntegerNull ) {
+          return TupleCollections.emptyList( arity );
+        }
+
+        final TupleIterable iterable = iterCalc.evaluateIterable( evaluator );
+        if ( orderCalc == null ) {
+          return top ? HeadTailFunDef.head( n, iterable ) : tail( iterable, n );
+        }
+        final int savepoint = evaluator.savepoint();
+        try {
+          return Sorter.partiallySortIterable(
+            evaluator.push(), iterable, orderCalc, n, top );
+        } finally {
+          evaluator.restore( savepoint );
+        }
+      }
+
+      public boolean dependsOn( Hierarchy hierarchy ) {
+        return anyDependsButFirst( getCalcs(), hierarchy );
+      }
+    };
+  }
+
+  /**
+   * Returns the last {@code n} tuples of an iterable, keeping only {@code n} tuples at a time.
+   */
+  private static TupleList tail( TupleIterable iterable, int n ) {
+    if ( iterable instanceof TupleList ) {
+      final TupleList list = (TupleList) iterable;
+      return list.size() <= n ? list : list.subList( list.size() - n, list.size() );
+    }
+    final int arity = iterable.getArity();
+    final Member[] ring = new Member[ n * arity ];
+    final TupleCursor cursor = iterable.tupleCursor();
+    int count = 0;
+    while ( cursor.forward() ) {
+      cursor.currentToArray( ring, ( count++ % n ) * arity );
+    }
+    final int size = Math.min( count, n );
+    final TupleList result = TupleCollections.createList( arity, size );
+    for ( int i = count - size; i < count; i++ ) {
+      final int offset = ( i % n ) * arity;
+      result.addTuple( Arrays.copyOfRange( ring, offset, offset + arity ) );
+    }
+    return result;
+  }
 }
 
 // End TopBottomCountFunDef.java
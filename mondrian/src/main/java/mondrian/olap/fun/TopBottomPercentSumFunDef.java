@@ -16,6 +16,7 @@ import mondrian.calc.Calc;
 import mondrian.calc.DoubleCalc;
 import mondrian.calc.ExpCompiler;
 import mondrian.calc.ListCalc;
+import mondrian.calc.TupleCursor;
 import mondrian.calc.TupleList;
 import mondrian.calc.impl.AbstractListCalc;
 import mondrian.mdx.ResolvedFunCall;
@@ -24,8 +25,12 @@ import mondrian.olap.Exp;
 import mondrian.olap.FunDef;
 import mondrian.olap.Hierarchy;
 import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
+import mondrian.olap.fun.sort.SortKeyHeap;
 import mondrian.olap.fun.sort.Sorter;
+import mondrian.server.Execution;
+import mondrian.util.CancellationChecker;
 
 import java.util.List;
 import java.util.Map;
@@ -130,6 +135,9 @@ class TopBottomPercentSumFunDef extends FunDefBase {
       if ( list.isEmpty() ) {
         return list;
       }
+      if ( MondrianProperties.instance().StreamingTopBottom.get() ) {
+        return evaluateStreaming( evaluator, list, target );
+      }
       Map<List<Member>, Object> mapMemberToValue =
         Sorter.evaluateTuples( evaluator, calc, list );
       final int savepoint = evaluator.savepoint();
@@ -182,6 +190,59 @@ class TopBottomPercentSumFunDef extends FunDefBase {
       return list;
     }
 
+    /**
+     * Evaluates the expression once per tuple into a {@link SortKeyHeap}, then takes tuples from the heap in order
+     * until the running total reaches the target. Tuples after the cut-off are never sorted.
+     *
+     * @see MondrianProperties#StreamingTopBottom
+     */
+    private TupleList evaluateStreaming( Evaluator evaluator, TupleList list, double target ) {
+      final int memberCount = list.size();
+      final SortKeyHeap heap = new SortKeyHeap( memberCount, top, false );
+      final Execution execution = evaluator.getQuery().getStatement().getCurrentExecution();
+      double total = 0;
+      int nullCount = 0;
+      final int savepoint = evaluator.savepoint();
+      try {
+        evaluator.setNonEmpty( false );
+        final TupleCursor cursor = list.tupleCursor();
+        for ( int i = 0; cursor.forward(); i++ ) {
+          CancellationChecker.checkCancelOrTimeout( i, execution );
+          cursor.setContext( evaluator );
+          final int slot = heap.add( calc.evaluate( evaluator ), i );
+          if ( heap.isNull( slot ) ) {
+            nullCount++;
+          } else {
+            total += heap.getNumber( slot );
+          }
+        }
+      } finally {
+        evaluator.restore( savepoint );
+      }
+
+      // MSAS exhibits the following behavior. If the value of all members
+      // is null, then the first (or last) member of the set is returned
+      // for percent operations.
+      if ( percent && nullCount == memberCount && !( target <= 0 ) ) {
+        return top
+          ? list.subList( 0, 1 )
+          : list.subList( memberCount - 1, memberCount );
+      }
+      final TupleList result = list.cloneList( 0 );
+      double runningTotal = 0;
+      // Written so that a NaN running total, as when the total is 0, never
+      // reaches the target.
+      while ( !( runningTotal >= target ) && heap.size() > 0 ) {
+        final int slot = heap.poll();
+        result.add( list.get( heap.getOrdinal( slot ) ) );
+        if ( !heap.isNull( slot ) ) {
+          final double value = heap.getNumber( slot );
+          runningTotal += percent ? value / total * (double) 100 : value;
+        }
+      }
+      return result;
+    }
+
     public boolean dependsOn( Hierarchy hierarchy ) {
       return anyDependsButFirst( getCalcs(), hierarchy );
     }
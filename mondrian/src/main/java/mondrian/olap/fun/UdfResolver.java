@@ -116,6 +116,17 @@ public class UdfResolver implements Resolver {
         return reservedWords == null ? emptyStringArray : reservedWords;
     }
 
+    /**
+     * Returns whether a function definition is that of a user-defined
+     * function.
+     *
+     * @param funDef Function definition
+     * @return whether funDef was created by a UdfResolver
+     */
+    public static boolean isUserDefined(FunDef funDef) {
+        return funDef instanceof UdfFunDef;
+    }
+
     /**
      * Adapter which converts a {@link UserDefinedFunction} into a
      * {@link FunDef}.
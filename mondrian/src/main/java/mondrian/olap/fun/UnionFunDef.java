@@ -15,11 +15,10 @@ package mondrian.olap.fun;
 
 import mondrian.calc.*;
 import mondrian.calc.impl.AbstractListCalc;
+import mondrian.calc.impl.TupleHashSet;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 
-import java.util.*;
-
 /**
  * Definition of the <code>Union</code> MDX function.
  *
@@ -75,13 +74,31 @@ class UnionFunDef extends FunDefBase {
             result.addAll(list1);
             return result;
         } else {
-            Set<List<Member>> added = new HashSet<List<Member>>();
+            TupleHashSet added =
+                new TupleHashSet(list0.size() + list1.size());
             TupleList result = TupleCollections.createList(list0.getArity());
-            FunUtil.addUnique(result, list0, added);
-            FunUtil.addUnique(result, list1, added);
+            addUnique(result, list0, added);
+            addUnique(result, list1, added);
             return result;
         }
     }
+
+    /**
+     * Adds every tuple of {@code right} which is not in {@code set} to both
+     * {@code set} and {@code left}.
+     */
+    private static void addUnique(
+        TupleList left,
+        TupleList right,
+        TupleHashSet set)
+    {
+        final TupleCursor cursor = right.tupleCursor();
+        for (int i = 0; cursor.forward(); i++) {
+            if (set.add(right, i)) {
+                left.addCurrent(cursor);
+            }
+        }
+    }
 }
 
 // End UnionFunDef.java
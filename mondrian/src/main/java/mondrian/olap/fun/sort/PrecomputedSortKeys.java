@@ -0,0 +1,357 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.olap.fun.sort;
+
+import com.google.common.annotations.VisibleForTesting;
+import mondrian.calc.Calc;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.rolap.RolapUtil;
+import mondrian.server.Execution;
+import mondrian.util.CancellationChecker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sort keys of a list of members or tuples, evaluated once per item into arrays.
+ *
+ * <p>
+ * Each key that orders items by value ({@link Sorter.Flag#BASC} and {@link Sorter.Flag#BDESC}) is evaluated once for
+ * each item, and its values are stored in parallel arrays: a rank that orders values that are not ready before nulls
+ * before other values, and either a {@code double} per item, if all values are numbers, or the values themselves. The
+ * items are then sorted as a permutation of their indexes, comparing keys by index, so that a comparison does not
+ * evaluate an expression, look a value up in a map or unbox a number.
+ *
+ * <p>
+ * Keys that order items hierarchically need the evaluator during the sort, and are kept as comparators. If all keys
+ * are evaluated values and the list has at least {@link MondrianProperties#ParallelSortThreshold} items, the
+ * permutation is sorted by a parallel merge sort on the common fork-join pool.
+ *
+ * <p>
+ * The sort is stable.
+ *
+ * @param <T> Item type: a {@link Member} or a tuple
+ * @see MondrianProperties#PrecomputeSortKeys
+ */
+abstract class PrecomputedSortKeys<T> {
+  private static final byte RANK_NOT_READY = 0;
+  private static final byte RANK_NULL = 1;
+  private static final byte RANK_VALUE = 2;
+
+  /**
+   * Ranges of at most this many items are sorted by insertion sort.
+   */
+  private static final int INSERTION_SORT_SIZE = 16;
+
+  /**
+   * Ranges of at most this many items are not split into parallel tasks.
+   */
+  private static final int MIN_PARALLEL_SORT_SIZE = 8192;
+
+  final List<T> items;
+  private final List<IndexComparator> keys = new ArrayList<>();
+  private boolean parallelSafe = true;
+
+  private PrecomputedSortKeys( List<T> items ) {
+    this.items = items;
+  }
+
+  /**
+   * Creates sort keys for a list of members.
+   *
+   * @param members Members; must allow random access
+   */
+  static PrecomputedSortKeys<Member> forMembers( List<Member> members ) {
+    return new PrecomputedSortKeys<Member>( members ) {
+      Object evaluate( Evaluator evaluator, Calc calc, Member member ) {
+        evaluator.setContext( member );
+        return calc.evaluate( evaluator );
+      }
+    };
+  }
+
+  /**
+   * Creates sort keys for a list of tuples.
+   *
+   * <p>
+   * A tuple is evaluated in the context of the members of the hierarchies the key depends on, and tuples that have the
+   * same members of those hierarchies share the value. For example, sorting a crossjoin of three hierarchies by a
+   * measure of one of them evaluates the measure once for each member of that hierarchy.
+   *
+   * @param tuples Tuples; must allow random access
+   */
+  static PrecomputedSortKeys<List<Member>> forTuples( List<List<Member>> tuples ) {
+    return new PrecomputedSortKeys<List<Member>>( tuples ) {
+      private Calc calc;
+      private int[] dependentIndexes;
+      private final Map<List<Member>, Object> valueMap = new HashMap<>();
+
+      Object evaluate( Evaluator evaluator, Calc calc, List<Member> tuple ) {
+        if ( calc != this.calc ) {
+          this.calc = calc;
+          this.dependentIndexes = dependentIndexes( calc, tuple );
+          this.valueMap.clear();
+        }
+        if ( dependentIndexes.length == tuple.size() ) {
+          evaluator.setContext( tuple );
+          return calc.evaluate( evaluator );
+        }
+        final Member[] members = new Member[ dependentIndexes.length ];
+        for ( int i = 0; i < members.length; i++ ) {
+          members[ i ] = tuple.get( dependentIndexes[ i ] );
+        }
+        final List<Member> key = Arrays.asList( members );
+        Object value = valueMap.get( key );
+        if ( value == null ) {
+          evaluator.setContext( key );
+          value = calc.evaluate( evaluator );
+          valueMap.put( key, value == null ? Util.nullValue : value );
+        }
+        return value;
+      }
+    };
+  }
+
+  private static int[] dependentIndexes( Calc calc, List<Member> tuple ) {
+    int[] indexes = new int[ tuple.size() ];
+    int count = 0;
+    for ( int i = 0; i < tuple.size(); i++ ) {
+      if ( calc.dependsOn( tuple.get( i ).getHierarchy() ) ) {
+        indexes[ count++ ] = i;
+      }
+    }
+    return Arrays.copyOf( indexes, count );
+  }
+
+  /**
+   * Evaluates a key for an item.
+   */
+  abstract Object evaluate( Evaluator evaluator, Calc calc, T item );
+
+  /**
+   * Adds a key that orders items by the value of an expression, and evaluates it for every item.
+   *
+   * <p>
+   * Does not preserve the context of the evaluator.
+   *
+   * @param evaluator Evaluator
+   * @param calc      Expression to sort on
+   * @param desc      Whether to sort descending
+   */
+  void addValueKey( Evaluator evaluator, Calc calc, boolean desc ) {
+    final int size = items.size();
+    final Object[] values = new Object[ size ];
+    final Execution execution = evaluator.getQuery().getStatement().getCurrentExecution();
+    for ( int i = 0; i < size; i++ ) {
+      CancellationChecker.checkCancelOrTimeout( i, execution );
+      values[ i ] = evaluate( evaluator, calc, items.get( i ) );
+    }
+    keys.add( valueComparator( values, desc ) );
+  }
+
+  /**
+   * Adds a key that compares items using a comparator. The comparator is called during the sort, so the sort will not
+   * be parallel.
+   *
+   * @param comparator Comparator
+   */
+  void addComparatorKey( final Comparator<? super T> comparator ) {
+    parallelSafe = false;
+    keys.add( ( i, j ) -> comparator.compare( items.get( i ), items.get( j ) ) );
+  }
+
+  /**
+   * Sorts the items by the keys.
+   *
+   * @return Items in sorted order, as a new list
+   */
+  List<T> sort() {
+    final int[] order = sortIndexes( MondrianProperties.instance().ParallelSortThreshold.get() );
+    final List<T> sorted = new ArrayList<>( order.length );
+    for ( int index : order ) {
+      sorted.add( items.get( index ) );
+    }
+    return sorted;
+  }
+
+  /**
+   * Returns the indexes of the items in sorted order.
+   *
+   * @param parallelThreshold Minimum number of items to sort in parallel; 0 to sort sequentially
+   */
+  @VisibleForTesting
+  int[] sortIndexes( int parallelThreshold ) {
+    final int size = items.size();
+    final int[] order = new int[ size ];
+    for ( int i = 0; i < size; i++ ) {
+      order[ i ] = i;
+    }
+    final int[] work = order.clone();
+    if ( parallelSafe && parallelThreshold > 0 && size >= parallelThreshold ) {
+      final int chunk =
+        Math.max( MIN_PARALLEL_SORT_SIZE, size / ( ForkJoinPool.getCommonPoolParallelism() * 4 ) );
+      ForkJoinPool.commonPool().invoke( new SortTask( work, order, 0, size, chunk ) );
+    } else {
+      mergeSort( work, order, 0, size );
+    }
+    return order;
+  }
+
+  private int compare( int i, int j ) {
+    for ( IndexComparator key : keys ) {
+      final int c = key.compare( i, j );
+      if ( c != 0 ) {
+        return c;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Sorts {@code dest[lo, hi)}; {@code src[lo, hi)} must contain the same indexes, and is overwritten.
+   */
+  private void mergeSort( int[] src, int[] dest, int lo, int hi ) {
+    if ( hi - lo <= INSERTION_SORT_SIZE ) {
+      insertionSort( dest, lo, hi );
+      return;
+    }
+    final int mid = ( lo + hi ) >>> 1;
+    mergeSort( dest, src, lo, mid );
+    mergeSort( dest, src, mid, hi );
+    merge( src, dest, lo, mid, hi );
+  }
+
+  private void insertionSort( int[] a, int lo, int hi ) {
+    for ( int i = lo + 1; i < hi; i++ ) {
+      final int index = a[ i ];
+      int j = i;
+      while ( j > lo && compare( a[ j - 1 ], index ) > 0 ) {
+        a[ j ] = a[ j - 1 ];
+        --j;
+      }
+      a[ j ] = index;
+    }
+  }
+
+  /**
+   * Merges the sorted ranges {@code src[lo, mid)} and {@code src[mid, hi)} into {@code dest[lo, hi)}. On ties, the
+   * index from the first range comes first, so the sort is stable.
+   */
+  private void merge( int[] src, int[] dest, int lo, int mid, int hi ) {
+    if ( compare( src[ mid - 1 ], src[ mid ] ) <= 0 ) {
+      System.arraycopy( src, lo, dest, lo, hi - lo );
+      return;
+    }
+    int p = lo;
+    int q = mid;
+    for ( int i = lo; i < hi; i++ ) {
+      if ( q >= hi || p < mid && compare( src[ p ], src[ q ] ) <= 0 ) {
+        dest[ i ] = src[ p++ ];
+      } else {
+        dest[ i ] = src[ q++ ];
+      }
+    }
+  }
+
+  /**
+   * Creates a comparator over the values of a key.
+   */
+  private static IndexComparator valueComparator( Object[] values, boolean desc ) {
+    final byte[] ranks = new byte[ values.length ];
+    boolean numeric = true;
+    for ( int i = 0; i < values.length; i++ ) {
+      final Object value = values[ i ];
+      // valueNotReadyException is a number; compare by identity first.
+      if ( value == RolapUtil.valueNotReadyException ) {
+        ranks[ i ] = RANK_NOT_READY;
+      } else if ( value == null || value == Util.nullValue ) {
+        ranks[ i ] = RANK_NULL;
+      } else {
+        ranks[ i ] = RANK_VALUE;
+        numeric &= value instanceof Number;
+      }
+    }
+    final int descMask = desc ? -1 : 1;
+    if ( numeric ) {
+      final double[] numbers = new double[ values.length ];
+      for ( int i = 0; i < values.length; i++ ) {
+        if ( ranks[ i ] == RANK_VALUE ) {
+          numbers[ i ] = ( (Number) values[ i ] ).doubleValue();
+        }
+      }
+      return ( i, j ) -> {
+        final int c = Byte.compare( ranks[ i ], ranks[ j ] );
+        if ( c != 0 || ranks[ i ] != RANK_VALUE ) {
+          return descMask * c;
+        }
+        return descMask * Sorter.compareValues( numbers[ i ], numbers[ j ] );
+      };
+    }
+    return ( i, j ) -> {
+      final int c = Byte.compare( ranks[ i ], ranks[ j ] );
+      if ( c != 0 || ranks[ i ] != RANK_VALUE ) {
+        return descMask * c;
+      }
+      return descMask * Sorter.compareValues( values[ i ], values[ j ] );
+    };
+  }
+
+  /**
+   * Compares two items by their indexes.
+   */
+  private interface IndexComparator {
+    int compare( int i, int j );
+  }
+
+  /**
+   * Task that sorts a range of indexes, sorting each half in a sub-task if the range is large.
+   */
+  private class SortTask extends RecursiveAction {
+    private final int[] src;
+    private final int[] dest;
+    private final int lo;
+    private final int hi;
+    private final int chunk;
+
+    SortTask( int[] src, int[] dest, int lo, int hi, int chunk ) {
+      this.src = src;
+      this.dest = dest;
+      this.lo = lo;
+      this.hi = hi;
+      this.chunk = chunk;
+    }
+
+    protected void compute() {
+      if ( hi - lo <= chunk ) {
+        mergeSort( src, dest, lo, hi );
+        return;
+      }
+      final int mid = ( lo + hi ) >>> 1;
+      invokeAll(
+        new SortTask( dest, src, lo, mid, chunk ),
+        new SortTask( dest, src, mid, hi, chunk ) );
+      merge( src, dest, lo, mid, hi );
+    }
+  }
+}
+
+// End PrecomputedSortKeys.java
@@ -0,0 +1,287 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.olap.fun.sort;
+
+import mondrian.olap.Util;
+import mondrian.rolap.RolapUtil;
+
+/**
+ * Binary heap of slots, ordered by a sort key and then by the ordinal of the item in the slot.
+ *
+ * <p>
+ * Keys are held in primitive arrays, indexed by slot: a rank that orders values that are not ready before nulls
+ * before numbers before other values, and the value of each number. Other values, such as strings, dates and
+ * booleans, are kept in an object array that is created when the first of them is added. Ties are broken by ordinal,
+ * so that taking items from the heap is a stable sort. Keys are compared as
+ * {@link Sorter#compareValues(Object, Object)} compares cell values.
+ *
+ * <p>
+ * If {@code worstFirst} is true, the top of the heap is the item that sorts last. Such a heap keeps the first
+ * <i>n</i> items of a stream: when full, an item replaces the top only if it sorts before it. If {@code worstFirst}
+ * is false, the top of the heap is the item that sorts first, and polling the heap returns the items in sorted order,
+ * without sorting items that are never polled.
+ *
+ * <p>
+ * The caller keeps the items themselves, indexed by slot.
+ */
+public class SortKeyHeap {
+  private static final byte RANK_NOT_READY = 0;
+  private static final byte RANK_NULL = 1;
+  private static final byte RANK_NUMBER = 2;
+  private static final byte RANK_OTHER = 3;
+
+  private final int descMask;
+  private final int worstMask;
+  private final byte[] ranks;
+  private final double[] keys;
+  private final int[] ordinals;
+  private Object[] others;
+  private final int[] heap;
+  private int size;
+  private int slotCount;
+
+  /**
+   * Creates a heap.
+   *
+   * @param capacity   Maximum number of items, and number of slots
+   * @param desc       Whether items sort in descending order of key
+   * @param worstFirst Whether the top of the heap is the item that sorts last, rather than first
+   */
+  public SortKeyHeap( int capacity, boolean desc, boolean worstFirst ) {
+    this.descMask = desc ? -1 : 1;
+    this.worstMask = worstFirst ? -1 : 1;
+    this.ranks = new byte[ capacity ];
+    this.keys = new double[ capacity ];
+    this.ordinals = new int[ capacity ];
+    this.heap = new int[ capacity ];
+  }
+
+  /**
+   * Returns the number of items in the heap.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns whether the heap holds as many items as it has slots.
+   */
+  public boolean isFull() {
+    return size == heap.length;
+  }
+
+  /**
+   * Adds an item to the heap, in the next unused slot. Each slot is used once, so at most {@code capacity} items can be
+   * added, however many are polled.
+   *
+   * @param value   Sort key: a number, a string, date or boolean, null, {@link Util#nullValue} or
+   *                {@link RolapUtil#valueNotReadyException}
+   * @param ordinal Ordinal of the item in its list
+   * @return Slot of the item
+   */
+  public int add( Object value, int ordinal ) {
+    assert slotCount < heap.length;
+    final int slot = slotCount++;
+    setKey( slot, value, ordinal );
+    heap[ size ] = slot;
+    siftUp( size++ );
+    return slot;
+  }
+
+  /**
+   * Returns the slot of the item at the top of the heap, which must not be empty.
+   */
+  public int peek() {
+    assert size > 0;
+    return heap[ 0 ];
+  }
+
+  /**
+   * Removes the item at the top of the heap, which must not be empty, and returns its slot. The slot keeps its key.
+   */
+  public int poll() {
+    assert size > 0;
+    final int slot = heap[ 0 ];
+    heap[ 0 ] = heap[ --size ];
+    heap[ size ] = slot;
+    if ( size > 0 ) {
+      siftDown( 0 );
+    }
+    return slot;
+  }
+
+  /**
+   * If an item sorts before the item at the top of the heap, replaces the top item with it, reusing its slot.
+   *
+   * <p>In a full {@code worstFirst} heap, this keeps the item if it sorts
+   * before the worst item kept, and discards the worst item.
+   *
+   * @param value   Sort key
+   * @param ordinal Ordinal of the item in its list
+   * @return Slot that now holds the item, or -1 if the item was not added
+   */
+  public int replaceTopIfBefore( Object value, int ordinal ) {
+    assert size > 0;
+    final byte rank = rank( value );
+    final double key = rank == RANK_NUMBER ? ( (Number) value ).doubleValue() : 0d;
+    final int top = heap[ 0 ];
+    if ( compare( rank, key, value, ordinal, top ) >= 0 ) {
+      return -1;
+    }
+    setKey( top, value, ordinal );
+    siftDown( 0 );
+    return top;
+  }
+
+  /**
+   * Returns the slots of the items in the heap in sorted order, and empties the heap.
+   */
+  public int[] drainSorted() {
+    final int[] slots = new int[ size ];
+    if ( worstMask > 0 ) {
+      for ( int i = 0; i < slots.length; i++ ) {
+        slots[ i ] = poll();
+      }
+    } else {
+      for ( int i = slots.length - 1; i >= 0; i-- ) {
+        slots[ i ] = poll();
+      }
+    }
+    return slots;
+  }
+
+  /**
+   * Returns whether the key of a slot is a number, as opposed to null, a value that is not ready yet or a value of
+   * another type.
+   */
+  public boolean isNumber( int slot ) {
+    return ranks[ slot ] == RANK_NUMBER;
+  }
+
+  /**
+   * Returns whether the key of a slot is null.
+   */
+  public boolean isNull( int slot ) {
+    return ranks[ slot ] == RANK_NULL;
+  }
+
+  /**
+   * Returns the numeric key of a slot, or 0 if the key is not a number.
+   */
+  public double getNumber( int slot ) {
+    return keys[ slot ];
+  }
+
+  /**
+   * Returns the ordinal of the item in a slot.
+   */
+  public int getOrdinal( int slot ) {
+    return ordinals[ slot ];
+  }
+
+  private void setKey( int slot, Object value, int ordinal ) {
+    final byte rank = rank( value );
+    ranks[ slot ] = rank;
+    keys[ slot ] = rank == RANK_NUMBER ? ( (Number) value ).doubleValue() : 0d;
+    ordinals[ slot ] = ordinal;
+    if ( rank == RANK_OTHER ) {
+      if ( others == null ) {
+        others = new Object[ ranks.length ];
+      }
+      others[ slot ] = value;
+    } else if ( others != null ) {
+      others[ slot ] = null;
+    }
+  }
+
+  private static byte rank( Object value ) {
+    // valueNotReadyException is a number; compare by identity first.
+    if ( value == RolapUtil.valueNotReadyException ) {
+      return RANK_NOT_READY;
+    } else if ( value == null || value == Util.nullValue ) {
+      return RANK_NULL;
+    } else if ( value instanceof Number ) {
+      return RANK_NUMBER;
+    } else {
+      return RANK_OTHER;
+    }
+  }
+
+  /**
+   * Compares a key with the key of a slot, in sort order.
+   */
+  private int compare( byte rank, double key, Object value, int ordinal, int slot ) {
+    int c = Byte.compare( rank, ranks[ slot ] );
+    if ( c == 0 && rank == RANK_NUMBER ) {
+      c = Sorter.compareValues( key, keys[ slot ] );
+    } else if ( c == 0 && rank == RANK_OTHER ) {
+      c = compareOthers( value, others[ slot ] );
+    }
+    if ( c != 0 ) {
+      return descMask * c;
+    }
+    return Integer.compare( ordinal, ordinals[ slot ] );
+  }
+
+  /**
+   * Compares two values that are neither numbers nor nulls. Booleans sort false first; other values are compared by
+   * {@link Sorter#compareValues(Object, Object)}.
+   */
+  private static int compareOthers( Object value0, Object value1 ) {
+    if ( value0 instanceof Boolean && value1 instanceof Boolean ) {
+      return Boolean.compare( (Boolean) value0, (Boolean) value1 );
+    }
+    return Sorter.compareValues( value0, value1 );
+  }
+
+  /**
+   * Returns whether the item in slot {@code a} belongs above the item in slot {@code b}.
+   */
+  private boolean above( int a, int b ) {
+    return worstMask * compare( ranks[ a ], keys[ a ], others == null ? null : others[ a ], ordinals[ a ], b ) < 0;
+  }
+
+  private void siftUp( int i ) {
+    final int slot = heap[ i ];
+    while ( i > 0 ) {
+      final int parent = ( i - 1 ) >>> 1;
+      if ( !above( slot, heap[ parent ] ) ) {
+        break;
+      }
+      heap[ i ] = heap[ parent ];
+      i = parent;
+    }
+    heap[ i ] = slot;
+  }
+
+  private void siftDown( int i ) {
+    final int slot = heap[ i ];
+    while ( true ) {
+      int child = 2 * i + 1;
+      if ( child >= size ) {
+        break;
+      }
+      if ( child + 1 < size && above( heap[ child + 1 ], heap[ child ] ) ) {
+        ++child;
+      }
+      if ( !above( heap[ child ], slot ) ) {
+        break;
+      }
+      heap[ i ] = heap[ child ];
+      i = child;
+    }
+    heap[ i ] = slot;
+  }
+}
+
+// End SortKeyHeap.java
@@ -19,9 +19,11 @@ import mondrian.calc.TupleCursor;
 import mondrian.calc.TupleIterable;
 import mondrian.calc.TupleList;
 import mondrian.calc.impl.DelegatingTupleList;
+import mondrian.calc.impl.OrdinalTupleList;
 import mondrian.olap.Dimension;
 import mondrian.olap.Evaluator;
 import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
 import mondrian.olap.fun.MemberOrderKeyFunDef;
 import mondrian.olap.type.ScalarType;
@@ -175,6 +177,9 @@ public class Sorter {
     if ( ( memberList != null ) && ( memberList.size() <= 1 ) ) {
       return memberList;
     }
+    if ( brk && MondrianProperties.instance().PrecomputeSortKeys.get() ) {
+      return sortMembersByValue( evaluator, memberIter, memberList, exp, desc );
+    }
 
     evaluator.getTiming().markStart( SORT_EVAL_TIMING_NAME );
     boolean timingEval = true;
@@ -215,6 +220,50 @@ public class Sorter {
     }
   }
 
+  /**
+   * Sorts a list of members by the value of an expression, evaluating the expression once per member into an array.
+   *
+   * @see PrecomputedSortKeys
+   */
+  private static List<Member> sortMembersByValue(
+    Evaluator evaluator,
+    Iterable<Member> memberIter,
+    List<Member> memberList,
+    Calc exp,
+    boolean desc ) {
+    if ( memberList == null ) {
+      memberList = new ArrayList<>();
+      for ( Member member : memberIter ) {
+        memberList.add( member );
+      }
+    }
+    final PrecomputedSortKeys<Member> keys = PrecomputedSortKeys.forMembers( memberList );
+    evaluator.getTiming().markStart( SORT_EVAL_TIMING_NAME );
+    final int savepoint = evaluator.savepoint();
+    try {
+      keys.addValueKey( evaluator, exp, desc );
+    } finally {
+      evaluator.restore( savepoint );
+      evaluator.getTiming().markEnd( SORT_EVAL_TIMING_NAME );
+    }
+    evaluator.getTiming().markStart( SORT_TIMING_NAME );
+    try {
+      return copyInto( keys.sort(), memberList );
+    } finally {
+      evaluator.getTiming().markEnd( SORT_TIMING_NAME );
+    }
+  }
+
+  /**
+   * Replaces the contents of a list, in place, with the items of a list that has the same size.
+   */
+  private static <T> List<T> copyInto( List<T> sorted, List<T> list ) {
+    for ( int i = 0; i < sorted.size(); i++ ) {
+      list.set( i, sorted.get( i ) );
+    }
+    return list;
+  }
+
   public static boolean listEquals( List<Member> a1, List<Member> a2 ) {
     for ( int i = 0; i < a1.size(); i++ ) {
       if ( !Objects.equals( a1.get( i ), a2.get( i ) ) ) {
@@ -248,6 +297,27 @@ public class Sorter {
       }
     }
 
+    if ( MondrianProperties.instance().PrecomputeSortKeys.get() ) {
+      final PrecomputedSortKeys<Member> keys = PrecomputedSortKeys.forMembers( memberList );
+      for ( SortKeySpec key : keySpecList ) {
+        final boolean desc = key.getDirection().descending;
+        if ( key.getDirection().brk ) {
+          final int savepoint = evaluator.savepoint();
+          try {
+            keys.addValueKey( evaluator, key.getKey(), desc );
+          } finally {
+            evaluator.restore( savepoint );
+          }
+        } else {
+          final MemberComparator comp =
+            new MemberComparator.HierarchicalMemberComparator( evaluator, key.getKey(), desc );
+          comp.preloadValues( memberList );
+          keys.addComparatorKey( comp.wrap() );
+        }
+      }
+      return copyInto( keys.sort(), memberList );
+    }
+
     ComparatorChain chain = new ComparatorChain();
     for ( SortKeySpec key : keySpecList ) {
       boolean brk = key.getDirection().brk;
@@ -315,13 +385,19 @@ public class Sorter {
       tupleArrayList = tupleList;
     }
 
-    @SuppressWarnings( { "unchecked" } )
-    List<Member>[] tuples =
-      tupleArrayList.toArray( new List[ tupleArrayList.size() ] );
-    final DelegatingTupleList result =
-      new DelegatingTupleList(
-        tupleIterable.getArity(),
-        Arrays.asList( tuples ) );
+    if ( brk && MondrianProperties.instance().PrecomputeSortKeys.get() ) {
+      final PrecomputedSortKeys<List<Member>> keys =
+        PrecomputedSortKeys.forTuples( toRandomAccess( tupleArrayList ) );
+      final int savepoint = evaluator.savepoint();
+      try {
+        keys.addValueKey( evaluator, exp, desc );
+      } finally {
+        evaluator.restore( savepoint );
+      }
+      final TupleList result = new DelegatingTupleList( tupleIterable.getArity(), keys.sort() );
+      logTuples( result, "Sorter.sortTuples" );
+      return result;
+    }
 
     Comparator<List<Member>> comparator;
     if ( brk ) {
@@ -335,13 +411,41 @@ public class Sorter {
         new HierarchicalTupleComparator( evaluator, exp, arity, desc );
 
     }
+
+    if ( tupleArrayList instanceof OrdinalTupleList ) {
+      // Sort a copy of the ordinals; the tuples stay encoded.
+      final TupleList result = tupleList == null
+        ? (TupleList) tupleArrayList
+        : tupleList.cloneList( -1 );
+      result.sort( comparator );
+      logTuples( result, "Sorter.sortTuples" );
+      return result;
+    }
+
+    @SuppressWarnings( { "unchecked" } )
+    List<Member>[] tuples =
+      tupleArrayList.toArray( new List[ tupleArrayList.size() ] );
+    final DelegatingTupleList result =
+      new DelegatingTupleList(
+        tupleIterable.getArity(),
+        Arrays.asList( tuples ) );
     Arrays.sort( tuples, comparator );
     logTuples( tupleList, "Sorter.sortTuples" );
     return result;
   }
 
+  /**
+   * Copies the tuples of a list into an array, so that getting a tuple by index does not create a tuple.
+   */
+  private static List<List<Member>> toRandomAccess( List<List<Member>> tupleList ) {
+    @SuppressWarnings( { "unchecked" } )
+    List<Member>[] tuples = tupleList.toArray( new List[ tupleList.size() ] );
+    return Arrays.asList( tuples );
+  }
+
   private static TupleList iterableToList( Evaluator evaluator, TupleCursor cursor ) {
-    TupleList tupleArrayList = TupleCollections.createList( cursor.getArity() );
+    TupleList tupleArrayList =
+      TupleCollections.createCompactList( cursor.getArity(), 10 );
     int currentIteration = 0;
     Execution execution = evaluator.getQuery().getStatement().getCurrentExecution();
     while ( cursor.forward() ) {
@@ -415,6 +519,16 @@ public class Sorter {
       return tupleList;
     }
 
+    if ( MondrianProperties.instance().PrecomputeSortKeys.get() ) {
+      final PrecomputedSortKeys<List<Member>> keys = PrecomputedSortKeys.forTuples( toRandomAccess( tupleList ) );
+      for ( SortKeySpec key : keySpecList ) {
+        applySortSpecToKeys( evaluator, arity, keys, key );
+      }
+      final TupleList result = new DelegatingTupleList( arity, keys.sort() );
+      logTuples( result, "Sorter.sortTuples" );
+      return result;
+    }
+
     ComparatorChain chain = new ComparatorChain();
     for ( SortKeySpec key : keySpecList ) {
       applySortSpecToComparator( evaluator, arity, chain, key );
@@ -446,6 +560,33 @@ public class Sorter {
     }
   }
 
+  /**
+   * Adds a sort key to a set of precomputed keys. Breaking keys are evaluated now; hierarchical keys use the same
+   * comparators as {@link #applySortSpecToComparator}.
+   */
+  private static void applySortSpecToKeys( Evaluator evaluator, int arity, PrecomputedSortKeys<List<Member>> keys,
+                                           SortKeySpec key ) {
+    boolean brk = key.getDirection().brk;
+    boolean orderByKey =
+      key.getKey().isWrapperFor( MemberOrderKeyFunDef.CalcImpl.class );
+    boolean direction = key.getDirection().descending;
+    if ( brk ) {
+      final int savepoint = evaluator.savepoint();
+      try {
+        keys.addValueKey( evaluator, key.getKey(), direction );
+      } finally {
+        evaluator.restore( savepoint );
+      }
+    } else if ( orderByKey ) {
+      Comparator<List<Member>> comp =
+        new HierarchicalTupleKeyComparator( evaluator, key.getKey(), arity );
+      keys.addComparatorKey( direction ? Collections.reverseOrder( comp ) : comp );
+    } else {
+      keys.addComparatorKey(
+        new HierarchicalTupleComparator( evaluator, key.getKey(), arity, direction ) );
+    }
+  }
+
   private static void logTuples( TupleList tupleList, String description ) {
     if ( LOGGER.isDebugEnabled() ) {
       StringBuilder sb = new StringBuilder( description + ": " );
@@ -489,6 +630,56 @@ public class Sorter {
     return stablePartialSort( list, comp, limit );
   }
 
+  /**
+   * Finds the top (or bottom) tuples of an iterable by the value of an applied expression, in one pass.
+   *
+   * <p>Unlike {@link #partiallySortTuples}, does not need the tuples in a
+   * list. Only the {@code limit} best tuples seen so far are kept, with their sort keys in a {@link SortKeyHeap}, so a
+   * large iterable, such as a crossjoin, is never materialized. The result is the same as that of {@link
+   * #partiallySortTuples}: ties keep the order of the iterable.
+   *
+   * <p>NOTE: Does not preserve the contents of the validator.
+   *
+   * @param evaluator     Evaluator
+   * @param tupleIterable Tuples
+   * @param exp           a Calc applied to each tuple to find its sort-key
+   * @param limit         maximum count of tuples to return; must be positive
+   * @param desc          true to sort descending (and find TopCount), false to sort ascending (and find BottomCount).
+   * @return the top or bottom tuples, as a new list.
+   */
+  public static TupleList partiallySortIterable(
+    Evaluator evaluator,
+    TupleIterable tupleIterable,
+    Calc exp,
+    int limit,
+    boolean desc ) {
+    assert limit > 0;
+    final int arity = tupleIterable.getArity();
+    final SortKeyHeap heap = new SortKeyHeap( limit, desc, true );
+    final Member[] members = new Member[ limit * arity ];
+    final Execution execution = evaluator.getQuery().getStatement().getCurrentExecution();
+    final TupleCursor cursor = tupleIterable.tupleCursor();
+    int ordinal = 0;
+    while ( cursor.forward() ) {
+      CancellationChecker.checkCancelOrTimeout( ordinal, execution );
+      cursor.setContext( evaluator );
+      final Object value = exp.evaluate( evaluator );
+      final int slot = heap.isFull()
+        ? heap.replaceTopIfBefore( value, ordinal )
+        : heap.add( value, ordinal );
+      if ( slot >= 0 ) {
+        cursor.currentToArray( members, slot * arity );
+      }
+      ++ordinal;
+    }
+    final TupleList result = TupleCollections.createList( arity, heap.size() );
+    for ( int slot : heap.drainSorted() ) {
+      result.addTuple( Arrays.copyOfRange( members, slot * arity, ( slot + 1 ) * arity ) );
+    }
+    logTuples( result, "Sorter.partiallySortIterable" );
+    return result;
+  }
+
   /**
    * Sorts a list of members into hierarchical order. The members must belong to the same dimension.
    *
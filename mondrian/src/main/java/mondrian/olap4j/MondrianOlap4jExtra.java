@@ -24,6 +24,7 @@ import mondrian.olap.Query;
 import mondrian.olap.Util;
 import mondrian.olap.Util.PropertyList;
 import mondrian.olap.fun.FunInfo;
+import mondrian.rolap.MemberPropertyStore;
 import mondrian.rolap.RolapAggregator;
 import mondrian.rolap.RolapConnection;
 import mondrian.rolap.RolapConnectionProperties;
@@ -228,6 +229,16 @@ class MondrianOlap4jExtra implements XmlaHandler.XmlaExtra {
     }
   }
 
+  public void loadMemberProperties( List<Member> members ) {
+    final List<mondrian.olap.Member> mondrianMembers = new ArrayList<mondrian.olap.Member>( members.size() );
+    for ( Member member : members ) {
+      if ( member instanceof MondrianOlap4jMember ) {
+        mondrianMembers.add( ( (MondrianOlap4jMember) member ).member );
+      }
+    }
+    MemberPropertyStore.loadProperties( mondrianMembers );
+  }
+
   public boolean shouldReturnCellProperty( CellSet cellSet, org.olap4j.metadata.Property cellProperty,
                                            boolean evenEmpty ) {
     MondrianOlap4jCellSet olap4jCellSet = (MondrianOlap4jCellSet) cellSet;
@@ -209,6 +209,17 @@ public class CacheControlImpl implements CacheControl {
         }
     }
 
+    /**
+     * Removes the compiled queries of this connection's schema from the query
+     * plan cache. Called when members change; compiled queries do not depend
+     * on cells, so flushing cells does not call it.
+     */
+    private void flushQueryPlans() {
+        if (connection != null && connection.getSchema() != null) {
+            connection.getSchema().getQueryPlanCache().clear();
+        }
+    }
+
     /**
      * Flushes a list of cell regions.
      *
@@ -628,6 +639,8 @@ public class CacheControlImpl implements CacheControl {
         synchronized (MEMBER_CACHE_LOCK) {
             // firstly clear all cache associated with native sets
             connection.getSchema().getNativeRegistry().flushAllNativeSetCache();
+            flushQueryPlans();
+            RolapResultCache.instance().flush(connection.getSchema());
             final List<CellRegion> cellRegionList = new ArrayList<CellRegion>();
             ((MemberSetPlus) memberSet).accept(
                 new MemberSetVisitorImpl() {
@@ -832,6 +845,10 @@ public class CacheControlImpl implements CacheControl {
                 final List<CellRegion> cellRegionList =
                     new ArrayList<CellRegion>();
                 ((MemberEditCommandPlus) cmd).execute(cellRegionList);
+                flushQueryPlans();
+                if (connection != null) {
+                    RolapResultCache.instance().flush(connection.getSchema());
+                }
 
                 // Flush the cells touched by the regions
                 for (CellRegion memberRegion : cellRegionList) {
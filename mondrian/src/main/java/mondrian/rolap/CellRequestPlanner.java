@@ -0,0 +1,132 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.calc.Calc;
+import mondrian.calc.impl.AbstractCalc;
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.ResultLimitExceededException;
+import mondrian.olap.type.ScalarType;
+import mondrian.rolap.agg.CellRequestQuantumExceededException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Predicts the cell requests of calculated members, so that they can be
+ * loaded in one batch before the cells of a query are evaluated.
+ *
+ * <p>While an evaluator's root is planning (see
+ * {@link RolapEvaluatorRoot#planningDepth}), {@link RolapEvaluator#evaluateCurrent()}
+ * does not evaluate the formula of the calculated member in context; it calls
+ * {@link #plan(Calc, RolapEvaluator)}, which evaluates each operand of the
+ * formula separately. Operands of arithmetic, comparisons and conditionals
+ * such as <code>IIf</code>, <code>Case</code> and <code>CoalesceEmpty</code>
+ * are all evaluated, whichever branch the data would select, so the cells
+ * each of them needs are requested in the first pass rather than in later
+ * ones. Operands that change the context, such as tuples,
+ * <code>ParallelPeriod</code>, <code>Ytd</code> and <code>Aggregate</code>,
+ * are evaluated as they are, and when they reach another calculated member,
+ * its formula is planned in turn.
+ *
+ * <p>The values computed while planning are discarded. Requests for cells
+ * whose coordinates depend on other cells' values may be predicted wrongly;
+ * such requests are made again when the cells are evaluated. An operand that
+ * fails while it is planned is skipped; if the failure is real, it recurs
+ * when the cells are evaluated.
+ *
+ * @see MondrianProperties#PlanCellRequests
+ */
+class CellRequestPlanner {
+  private static final Logger LOGGER =
+    LogManager.getLogger( CellRequestPlanner.class );
+
+  private CellRequestPlanner() {
+  }
+
+  /**
+   * Predicts the cell requests of the formula of a calculated member, in the
+   * current context of an evaluator.
+   *
+   * @param calc      Compiled formula
+   * @param evaluator Evaluator whose root is planning
+   * @return null; the value of the member is not computed
+   */
+  static Object plan( Calc calc, RolapEvaluator evaluator ) {
+    final RolapEvaluatorRoot root = evaluator.root;
+    if ( root.planningDepth
+      >= MondrianProperties.instance().MaxEvalDepth.get() ) {
+      // Probably a recursive member whose termination depends on data.
+      return null;
+    }
+    ++root.planningDepth;
+    try {
+      planCalc( calc, evaluator );
+    } finally {
+      --root.planningDepth;
+    }
+    return null;
+  }
+
+  private static void planCalc( Calc calc, RolapEvaluator evaluator ) {
+    if ( isScalarOperator( calc ) ) {
+      for ( Calc operand : ( (AbstractCalc) calc ).getCalcs() ) {
+        planCalc( operand, evaluator );
+      }
+      return;
+    }
+    final int savepoint = evaluator.savepoint();
+    try {
+      calc.evaluate( evaluator );
+    } catch ( CellRequestQuantumExceededException e ) {
+      throw e;
+    } catch ( ResultLimitExceededException e ) {
+      // Cancellation, timeout and resource limits end the query.
+      throw e;
+    } catch ( EvaluationPool.QueryThreadRequiredException e ) {
+      throw e;
+    } catch ( RuntimeException e ) {
+      // The operand needs values which have not been loaded yet, for
+      // example a member derived from a cell value, or it fails outright.
+      // Either way, planning is only a prediction: its requests, or its
+      // error, will be made when the cells are evaluated.
+      LOGGER.debug( "Could not plan cell requests of " + calc, e );
+    } finally {
+      evaluator.restore( savepoint );
+    }
+  }
+
+  /**
+   * Returns whether a calc combines scalar operands evaluated in the same
+   * context as itself, so that its operands can be planned instead of the
+   * calc.
+   */
+  private static boolean isScalarOperator( Calc calc ) {
+    if ( !( calc instanceof AbstractCalc )
+      || !( calc.getType() instanceof ScalarType ) ) {
+      return false;
+    }
+    final Calc[] operands = ( (AbstractCalc) calc ).getCalcs();
+    if ( operands.length == 0 ) {
+      return false;
+    }
+    for ( Calc operand : operands ) {
+      if ( operand == null || !( operand.getType() instanceof ScalarType ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
+
+// End CellRequestPlanner.java
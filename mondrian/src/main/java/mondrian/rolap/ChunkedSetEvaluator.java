@@ -0,0 +1,212 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.calc.ExpCompiler;
+import mondrian.calc.TupleList;
+import mondrian.olap.Evaluator;
+import mondrian.olap.MondrianProperties;
+import mondrian.rolap.agg.CellRequestQuantumExceededException;
+import mondrian.server.Locus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates a function of each chunk of a large list of tuples on an {@link EvaluationPool}.
+ *
+ * <p>
+ * Each chunk has its own evaluator, forked from the caller's with a root of its own, its own
+ * {@link FastBatchingCellReader}, and a copy of the calling thread's local segment cache. The root starts with its own
+ * compilation of the expressions the caller's root has compiled, and with the named sets it has evaluated. Each chunk
+ * also compiles its own copy of the function's expressions, because a compiled expression may hold state. All of this
+ * is done on the calling thread, before the chunks start. When all chunks are done, the cell requests they recorded
+ * are merged into the caller's reader, in chunk order, so that the cells that were missing in any chunk are loaded in
+ * one batch, as if the list had been evaluated on one thread.
+ *
+ * <p>
+ * If a chunk needs something that only the calling thread may do, such as evaluating a named set or compiling the
+ * formula of a calculated member, the chunks are evaluated again, one after another, on the calling thread.
+ *
+ * @see MondrianProperties#SetEvaluationParallelism
+ */
+public class ChunkedSetEvaluator {
+  private ChunkedSetEvaluator() {
+  }
+
+  /**
+   * Returns the number of chunks into which to split a list, or 1 to evaluate it on the current thread.
+   *
+   * <p>
+   * A list is split only if {@link MondrianProperties#SetEvaluationParallelism} is greater than 1, it has at least
+   * {@link MondrianProperties#ParallelSetThreshold} tuples, and the evaluator reads cells in batches. Profiling and
+   * dependency-testing evaluators, and lists that are evaluated on a thread of a fork-join pool (for example, by a
+   * stripe of cells or by another chunk), are always evaluated on the current thread.
+   *
+   * @param evaluator Evaluator
+   * @param size      Number of tuples in the list
+   * @return Number of chunks
+   */
+  public static int getChunkCount( Evaluator evaluator, int size ) {
+    final MondrianProperties properties = MondrianProperties.instance();
+    final int parallelism = properties.SetEvaluationParallelism.get();
+    if ( parallelism <= 1 || size < Math.max( 2, properties.ParallelSetThreshold.get() )
+        || evaluator.getClass() != RolapEvaluator.class
+        || !( ( (RolapEvaluator) evaluator ).cellReader instanceof FastBatchingCellReader )
+        || ForkJoinTask.inForkJoinPool() ) {
+      return 1;
+    }
+    return Math.min( size, parallelism * 4 );
+  }
+
+  /**
+   * Splits a list into chunks, applies a function to each chunk in parallel, and returns the results in chunk order.
+   *
+   * @param evaluator  Evaluator; {@link #getChunkCount} must have returned more than 1 for it
+   * @param list       List of tuples
+   * @param chunkCount Number of chunks
+   * @param factory    Creates the function to apply to each chunk
+   * @param <T>        Result type
+   * @return Result of each chunk
+   * @throws CellRequestQuantumExceededException if any chunk's reader reached the cell request limit
+   */
+  public static <T> List<T> evaluate( Evaluator evaluator, TupleList list, int chunkCount,
+      ChunkFunctionFactory<T> factory ) {
+    final RolapEvaluator parent = (RolapEvaluator) evaluator;
+    final FastBatchingCellReader reader = (FastBatchingCellReader) parent.cellReader;
+    final int size = list.size();
+    final List<ChunkTask<T>> tasks = new ArrayList<ChunkTask<T>>( chunkCount );
+    for ( int i = 0; i < chunkCount; i++ ) {
+      final TupleList chunk =
+          list.subList( (int) ( (long) size * i / chunkCount ), (int) ( (long) size * ( i + 1 ) / chunkCount ) );
+      tasks.add( new ChunkTask<T>( parent, reader, chunk,
+          factory.create( evaluator.getQuery().createCompiler() ) ) );
+    }
+    EvaluationPool.invoke( MondrianProperties.instance().SetEvaluationParallelism.get(), tasks );
+
+    boolean quantumExceeded = false;
+    boolean queryThreadRequired = false;
+    final List<T> results = new ArrayList<T>( chunkCount );
+    for ( ChunkTask<T> task : tasks ) {
+      reader.merge( (FastBatchingCellReader) task.evaluator.cellReader );
+      parent.root.expResultCacheHitCount += task.evaluator.root.expResultCacheHitCount;
+      parent.root.expResultCacheMissCount += task.evaluator.root.expResultCacheMissCount;
+      quantumExceeded |= task.quantumExceeded;
+      queryThreadRequired |= task.queryThreadRequired;
+      results.add( task.result );
+    }
+    if ( queryThreadRequired ) {
+      // A chunk needed a named set, or an expression that its root had not
+      // compiled. Evaluate the chunks on this thread, which may do both.
+      results.clear();
+      final int savepoint = parent.savepoint();
+      for ( ChunkTask<T> task : tasks ) {
+        try {
+          results.add( task.function.apply( parent, task.chunk ) );
+        } finally {
+          parent.restore( savepoint );
+        }
+      }
+      return results;
+    }
+    if ( quantumExceeded ) {
+      throw CellRequestQuantumExceededException.INSTANCE;
+    }
+    parent.root.execution.addParallelChunkCount( chunkCount );
+    return results;
+  }
+
+  /**
+   * Creates the function that evaluates one chunk.
+   *
+   * @param <T> Result type
+   */
+  public interface ChunkFunctionFactory<T> {
+    /**
+     * Creates the function for one chunk. Called on the thread that is evaluating the list, once for each chunk. The
+     * function must compile, with <code>compiler</code>, its own copy of any expression it evaluates, rather than use
+     * a compiled expression that another chunk or the caller may be using at the same time.
+     *
+     * @param compiler Compiler
+     * @return Function of a chunk
+     */
+    ChunkFunction<T> create( ExpCompiler compiler );
+  }
+
+  /**
+   * Function of a chunk of a list of tuples.
+   *
+   * @param <T> Result type
+   */
+  public interface ChunkFunction<T> {
+    /**
+     * Evaluates a chunk.
+     *
+     * @param evaluator Evaluator of the chunk; it is not used after the call, so its context need not be restored
+     * @param chunk     Tuples of the chunk
+     * @return Result
+     */
+    T apply( Evaluator evaluator, TupleList chunk );
+  }
+
+  /**
+   * Task that applies a function to one chunk.
+   */
+  private static class ChunkTask<T> extends RecursiveAction {
+    private final RolapEvaluator evaluator;
+    private final TupleList chunk;
+    private final ChunkFunction<T> function;
+    private final Map<RolapStar, RolapStar.Bar> bars = new HashMap<RolapStar, RolapStar.Bar>();
+    private boolean quantumExceeded;
+    private boolean queryThreadRequired;
+    private T result;
+
+    ChunkTask( RolapEvaluator parent, FastBatchingCellReader reader, TupleList chunk, ChunkFunction<T> function ) {
+      for ( RolapStar star : parent.root.cube.getSchema().getStars() ) {
+        bars.put( star, star.forkLocalBar() );
+      }
+      this.evaluator = parent.fork( parent.root.fork() );
+      this.evaluator.setCellReader( reader.fork() );
+      this.chunk = chunk;
+      this.function = function;
+    }
+
+    protected void compute() {
+      for ( Map.Entry<RolapStar, RolapStar.Bar> entry : bars.entrySet() ) {
+        entry.getKey().setLocalBar( entry.getValue() );
+      }
+      final Locus locus = new Locus( evaluator.root.execution, null, "Evaluating set" );
+      Locus.push( locus );
+      try {
+        result = function.apply( evaluator, chunk );
+      } catch ( CellRequestQuantumExceededException e ) {
+        // The chunk's reader is full. Its requests are loaded in the
+        // next phase, and the set is evaluated again.
+        quantumExceeded = true;
+      } catch ( EvaluationPool.QueryThreadRequiredException e ) {
+        queryThreadRequired = true;
+      } finally {
+        Locus.pop( locus );
+        for ( RolapStar star : bars.keySet() ) {
+          star.setLocalBar( null );
+        }
+      }
+    }
+  }
+}
+
+// End ChunkedSetEvaluator.java
@@ -0,0 +1,229 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.calc.TupleList;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Exp;
+import mondrian.olap.Level;
+import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.SchemaReader;
+import mondrian.olap.type.MemberType;
+import mondrian.olap.type.SetType;
+import mondrian.olap.type.TupleType;
+import mondrian.olap.type.Type;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Estimates the cost of evaluating a non-empty crossjoin, and plans how to evaluate it.
+ *
+ * <p>
+ * Costs are counted in cell evaluations. The density of an argument, the fraction of its tuples that have at least
+ * one fact row, is estimated by assuming that the rows of the fact table are spread uniformly and independently over
+ * the combinations of the argument's levels: if there are <i>F</i> rows and <i>N</i> combinations, the density is
+ * 1 - e<sup>-F/N</sup>. The number of rows comes from the star's {@link RolapStatisticsCache}, and the number of
+ * combinations from the cardinalities of the levels, as the schema reader knows them from the schema or the member
+ * cache, without reading members.
+ *
+ * <p>
+ * The arguments of a crossjoin are considered from the sparsest to the densest. Removing the empty tuples of an
+ * argument costs one evaluation per tuple, and saves the evaluation of the tuples of the product that it removes, so
+ * an argument is filtered if that saving, given the arguments already filtered, is greater than its size. The caller
+ * builds the product of the filtered arguments in their original order, so the order of the result does not change.
+ *
+ * @see MondrianProperties#CostBasedCrossJoin
+ */
+public class CrossJoinCostModel {
+  /**
+   * Cost of executing a SQL statement, in cell evaluations.
+   */
+  static final double SQL_STATEMENT_COST = 1000d;
+
+  /**
+   * Cost of reading a fact row in a SQL statement, in cell evaluations.
+   */
+  static final double FACT_ROW_COST = 0.01d;
+
+  private CrossJoinCostModel() {
+  }
+
+  /**
+   * Decides which arguments of a non-empty crossjoin to filter before forming their product.
+   *
+   * @param evaluator Evaluator
+   * @param lists     Arguments
+   * @return For each argument, whether to remove its empty tuples first
+   */
+  public static boolean[] planFilters( Evaluator evaluator, List<TupleList> lists ) {
+    final double factRowCount = getFactRowCount( evaluator );
+    final double[] sizes = new double[ lists.size() ];
+    final double[] densities = new double[ lists.size() ];
+    for ( int i = 0; i < sizes.length; i++ ) {
+      final TupleList list = lists.get( i );
+      sizes[ i ] = list.size();
+      densities[ i ] =
+          factRowCount < 0 || list.isEmpty()
+              ? 1d
+              : density( factRowCount, Math.max( sizes[ i ], getDomainSize( evaluator.getSchemaReader(), list ) ) );
+    }
+    return plan( sizes, densities );
+  }
+
+  /**
+   * Returns whether a non-empty crossjoin of some arguments is expected to be cheaper to evaluate in memory, by
+   * evaluating the cells of its tuples, than in SQL. Returns false if the cardinality of the arguments is not known.
+   *
+   * @param evaluator Evaluator
+   * @param args      Arguments of the crossjoin
+   * @return Whether to evaluate the crossjoin in memory
+   */
+  public static boolean preferInMemory( Evaluator evaluator, Exp[] args ) {
+    final double factRowCount = getFactRowCount( evaluator );
+    if ( factRowCount < 0 ) {
+      return false;
+    }
+    final SchemaReader schemaReader = evaluator.getSchemaReader();
+    final double[] sizes = new double[ args.length ];
+    final double[] densities = new double[ args.length ];
+    for ( int i = 0; i < args.length; i++ ) {
+      sizes[ i ] = getDomainSize( schemaReader, args[ i ].getType() );
+      if ( sizes[ i ] <= 0 ) {
+        return false;
+      }
+      densities[ i ] = density( factRowCount, sizes[ i ] );
+    }
+    return cost( sizes, densities, plan( sizes, densities ) ) < SQL_STATEMENT_COST + factRowCount * FACT_ROW_COST;
+  }
+
+  /**
+   * Decides which arguments to filter, given their sizes and densities.
+   *
+   * @param sizes     Number of tuples in each argument
+   * @param densities Fraction of the tuples of each argument that are not empty
+   * @return For each argument, whether to remove its empty tuples before forming the product
+   */
+  static boolean[] plan( double[] sizes, final double[] densities ) {
+    final Integer[] order = new Integer[ sizes.length ];
+    for ( int i = 0; i < order.length; i++ ) {
+      order[ i ] = i;
+    }
+    Arrays.sort( order, new Comparator<Integer>() {
+      public int compare( Integer o1, Integer o2 ) {
+        return Double.compare( densities[ o1 ], densities[ o2 ] );
+      }
+    } );
+    final double[] remaining = sizes.clone();
+    final boolean[] filters = new boolean[ sizes.length ];
+    for ( int i : order ) {
+      double others = 1d;
+      for ( int j = 0; j < remaining.length; j++ ) {
+        if ( j != i ) {
+          others *= remaining[ j ];
+        }
+      }
+      final double saving = ( 1d - densities[ i ] ) * remaining[ i ] * others;
+      if ( saving > remaining[ i ] ) {
+        filters[ i ] = true;
+        remaining[ i ] *= densities[ i ];
+      }
+    }
+    return filters;
+  }
+
+  /**
+   * Returns the expected number of cell evaluations of a plan: one for each tuple of each filtered argument, and one
+   * for each tuple of the product of the filtered arguments.
+   */
+  static double cost( double[] sizes, double[] densities, boolean[] filters ) {
+    double cost = 0d;
+    double product = 1d;
+    for ( int i = 0; i < sizes.length; i++ ) {
+      if ( filters[ i ] ) {
+        cost += sizes[ i ];
+        product *= sizes[ i ] * densities[ i ];
+      } else {
+        product *= sizes[ i ];
+      }
+    }
+    return cost + product;
+  }
+
+  static double density( double factRowCount, double domainSize ) {
+    return 1d - Math.exp( -factRowCount / domainSize );
+  }
+
+  /**
+   * Returns the number of rows in the fact table of the current measure's cube, or -1 if it is not known, for
+   * example because the cube is virtual.
+   */
+  private static double getFactRowCount( Evaluator evaluator ) {
+    final Member measure = evaluator.getMembers()[ 0 ];
+    final RolapCube cube =
+        measure instanceof RolapStoredMeasure
+            ? ( (RolapStoredMeasure) measure ).getCube()
+            : (RolapCube) evaluator.getCube();
+    final RolapStar star = cube.getStar();
+    if ( star == null ) {
+      return -1;
+    }
+    final RolapStar.Table factTable = star.getFactTable();
+    return star.getStatisticsCache().getRelationCardinality( factTable.getRelation(), factTable.getAlias(), -1 );
+  }
+
+  /**
+   * Returns the number of combinations of the levels of the first tuple of a list, or the size of the list if the
+   * cardinality of a level is not known.
+   */
+  private static double getDomainSize( SchemaReader schemaReader, TupleList list ) {
+    double size = 1d;
+    for ( Member member : list.get( 0 ) ) {
+      final int cardinality = schemaReader.getLevelCardinality( member.getLevel(), true, false );
+      if ( cardinality <= 0 ) {
+        return list.size();
+      }
+      size *= cardinality;
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of combinations of the levels of a set type, or -1 if a level or its cardinality is not known.
+   */
+  private static double getDomainSize( SchemaReader schemaReader, Type type ) {
+    if ( !( type instanceof SetType ) ) {
+      return -1;
+    }
+    final Type elementType = ( (SetType) type ).getElementType();
+    final Type[] types =
+        elementType instanceof TupleType ? ( (TupleType) elementType ).elementTypes : new Type[] { elementType };
+    double size = 1d;
+    for ( Type memberType : types ) {
+      final Level level = memberType instanceof MemberType ? memberType.getLevel() : null;
+      if ( level == null ) {
+        return -1;
+      }
+      final int cardinality = schemaReader.getLevelCardinality( level, true, false );
+      if ( cardinality <= 0 ) {
+        return -1;
+      }
+      size *= cardinality;
+    }
+    return size;
+  }
+}
+
+// End CrossJoinCostModel.java
@@ -0,0 +1,95 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fork-join pools on which parts of a query are evaluated in parallel: stripes of cells and groups of axes (see
+ * {@link RolapResult}), and chunks of sets (see {@link ChunkedSetEvaluator}).
+ *
+ * <p>
+ * There is one pool for each degree of parallelism that has been asked for. Pools are never shut down, so a query
+ * running on a pool is not affected when another query asks for a different parallelism. The threads of a pool that
+ * is no longer used end after they have been idle for a while.
+ *
+ * <p>
+ * A task on a pool has its own evaluator root and cell reader. Named sets, parameter values and the loading of
+ * segments belong to the thread that executes the query; a task that needs one of them throws
+ * {@link QueryThreadRequiredException}, and the query thread then does the task's work itself.
+ */
+final class EvaluationPool {
+  private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+  private static final ForkJoinPool.ForkJoinWorkerThreadFactory THREAD_FACTORY = EvaluationThread::new;
+
+  private EvaluationPool() {
+  }
+
+  /**
+   * Runs tasks on the pool with a given parallelism, and waits for them to finish.
+   *
+   * @param parallelism
+   *          Number of threads of the pool
+   * @param tasks
+   *          Tasks
+   */
+  static void invoke( int parallelism, final List<? extends ForkJoinTask<?>> tasks ) {
+    POOLS.computeIfAbsent( parallelism, p -> new ForkJoinPool( p, THREAD_FACTORY, null, false ) ).invoke(
+        new RecursiveAction() {
+          protected void compute() {
+            invokeAll( tasks );
+          }
+        } );
+  }
+
+  /**
+   * Returns whether the current thread is a thread of one of the pools.
+   */
+  static boolean isPoolThread() {
+    return Thread.currentThread() instanceof EvaluationThread;
+  }
+
+  /**
+   * Thread of an evaluation pool.
+   */
+  private static class EvaluationThread extends ForkJoinWorkerThread {
+    EvaluationThread( ForkJoinPool pool ) {
+      super( pool );
+      setName( "mondrian.rolap.EvaluationPool_" + THREAD_COUNT.incrementAndGet() );
+    }
+  }
+
+  /**
+   * Signals that a task on an evaluation pool needs to do work that only the thread executing the query may do, such
+   * as evaluating a named set. Like {@link mondrian.rolap.agg.CellRequestQuantumExceededException}, it aborts the task;
+   * the code that invoked the task catches it and does the work on its own thread.
+   */
+  static final class QueryThreadRequiredException extends RuntimeException {
+    static final QueryThreadRequiredException INSTANCE = new QueryThreadRequiredException();
+
+    private QueryThreadRequiredException() {
+    }
+  }
+}
+
+// End EvaluationPool.java
@@ -84,6 +84,13 @@ public class FastBatchingCellReader implements CellReader {
 
     private final List<CellRequest> cellRequests = new ArrayList<CellRequest>();
 
+    /**
+     * Timed evaluations that recorded cell requests in this reader; each is
+     * charged its share of the time it takes to load the next batch.
+     */
+    private final List<NativeDecisionHistory.Sample> pendingSamples =
+        new ArrayList<NativeDecisionHistory.Sample>();
+
     private final Execution execution;
 
     /**
@@ -115,6 +122,20 @@ public class FastBatchingCellReader implements CellReader {
     }
 
     public Object get(RolapEvaluator evaluator) {
+        return get(evaluator, null);
+    }
+
+    /**
+     * Returns the value of the cell at the current context, as
+     * {@link #get(RolapEvaluator)} does. If <code>hint</code> is not null,
+     * the cell is looked up first in the segment that held the previous cell
+     * read with the same hint.
+     *
+     * @param evaluator Evaluator
+     * @param hint Segment of the previous cell of a batch, or null
+     * @return Cell value
+     */
+    Object get(RolapEvaluator evaluator, RolapStar.CellLookupHint hint) {
         final CellRequest request =
             RolapAggregationManager.makeRequest(evaluator);
 
@@ -124,7 +145,11 @@ public class FastBatchingCellReader implements CellReader {
 
         // Try to retrieve a cell and simultaneously pin the segment which
         // contains it.
-        final Object o = aggMgr.getCellFromCache(request, pinnedSegments);
+        final Object o =
+            hint == null
+                ? aggMgr.getCellFromCache(request, pinnedSegments)
+                : request.getMeasure().getStar().getCellFromCache(
+                    request, pinnedSegments, hint);
 
         assert o != Boolean.TRUE : "getCellFromCache no longer returns TRUE";
         if (o != null) {
@@ -180,6 +205,48 @@ public class FastBatchingCellReader implements CellReader {
         }
     }
 
+    /**
+     * Creates an empty reader for the same execution and cube as this one,
+     * whose requests can later be {@link #merge merged} into this reader.
+     *
+     * @return New reader
+     */
+    FastBatchingCellReader fork() {
+        return new FastBatchingCellReader(execution, cube, aggMgr);
+    }
+
+    /**
+     * Moves the cell requests recorded by another reader into this reader,
+     * so that they are loaded in this reader's next batch.
+     *
+     * <p>Used when cells are evaluated on several threads, each with its own
+     * reader.
+     *
+     * @param reader Reader whose requests to take; it is left empty
+     */
+    void merge(FastBatchingCellReader reader) {
+        assert reader.cube == cube;
+        cellRequests.addAll(reader.cellRequests);
+        ((AggregationManager.PinSetImpl) pinnedSegments).addAll(
+            (AggregationManager.PinSetImpl) reader.pinnedSegments);
+        hitCount += reader.hitCount;
+        missCount += reader.missCount;
+        dirty |= reader.dirty;
+        pendingSamples.addAll(reader.pendingSamples);
+        reader.cellRequests.clear();
+        reader.pendingSamples.clear();
+    }
+
+    /**
+     * Adds a timed evaluation that recorded cell requests in this reader. It is
+     * charged its share of the time it takes to load the next batch.
+     *
+     * @param sample Timed evaluation
+     */
+    void addPendingSample(NativeDecisionHistory.Sample sample) {
+        pendingSamples.add(sample);
+    }
+
     /**
      * Returns whether this reader has told a lie. This is the case if there
      * are pending batches to load or if {@link #setDirty(boolean)} has been
@@ -229,6 +296,8 @@ public class FastBatchingCellReader implements CellReader {
         if (!isDirty()) {
             return false;
         }
+        final long startNanos = System.nanoTime();
+        final int requestCount = cellRequests.size();
 
         // List of futures yielding segments populated by SQL statements. If
         // loading requires several iterations, we just append to the list. We
@@ -444,6 +513,11 @@ public class FastBatchingCellReader implements CellReader {
 
         dirty = false;
         cellRequests.clear();
+        final long loadNanos = System.nanoTime() - startNanos;
+        for (NativeDecisionHistory.Sample sample : pendingSamples) {
+            sample.charge(loadNanos, requestCount);
+        }
+        pendingSamples.clear();
         return true;
     }
 
@@ -0,0 +1,444 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.calc.TupleCollections;
+import mondrian.calc.TupleCursor;
+import mondrian.calc.TupleIterator;
+import mondrian.calc.TupleList;
+import mondrian.calc.impl.AbstractTupleCursor;
+import mondrian.calc.impl.AbstractTupleIterable;
+import mondrian.calc.impl.UnaryTupleList;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Member;
+import mondrian.rolap.aggmatcher.AggStar;
+import mondrian.rolap.sql.MemberChildrenConstraint;
+import mondrian.rolap.sql.SqlQuery;
+import mondrian.rolap.sql.TupleConstraint;
+import mondrian.spi.Dialect;
+
+import javax.sql.DataSource;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterable over the members of a level that reads them from SQL in ordered
+ * chunks, using keyset pagination.
+ *
+ * <p>Each chunk is read by a statement that returns at most
+ * <code>chunkSize</code> rows, sorted by the keys of the level and its
+ * ancestors, and restricted to the rows that sort after the last member of
+ * the previous chunk. For example, the chunk after the member
+ * <code>[USA].[CA].[San Francisco]</code> of the City level of Customers is
+ * read with the predicate
+ *
+ * <blockquote><pre>("country" &gt; 'USA' or "country" is null
+ *   or ("country" = 'USA' and ("state_province" &gt; 'CA'
+ *     or "state_province" is null
+ *     or ("state_province" = 'CA' and ("city" &gt; 'San Francisco'
+ *       or "city" is null)))))</pre></blockquote>
+ *
+ * <p>which matches the order (nulls last) of the member query. Unlike an
+ * offset, the predicate lets the database seek straight to the next chunk,
+ * and no row is read twice. Only the current chunk is held, so iterating over
+ * a level takes memory proportional to the chunk size, not the level size.
+ *
+ * <p>Children lists are not cached from chunked reads, because a chunk may
+ * end in the middle of a parent's children.
+ *
+ * <p>Set functions that iterate over the set stream through it. An axis
+ * holds its members, because positions and cell coordinates index into it,
+ * but {@link RolapResult} wraps the iterable in {@link #toList()}, which reads
+ * chunks only as the axis is accessed. The high-cardinality axis path walks
+ * the list with a cursor, in chunks of
+ * {@link mondrian.olap.MondrianProperties#HighCardChunkSize} tuples, so cells
+ * are evaluated as soon as the first chunk has been read. Anything that asks
+ * for the size of the axis still reads the whole level.
+ *
+ * @see mondrian.olap.MondrianProperties#HighCardKeysetChunkSize
+ */
+abstract class KeysetMemberIterable extends AbstractTupleIterable {
+  private final TupleConstraint constraint;
+  private final RolapLevel level;
+  private final DataSource dataSource;
+  private final int chunkSize;
+
+  /**
+   * Creates a KeysetMemberIterable.
+   *
+   * @param constraint Constraint on the members
+   * @param level      Level; must satisfy {@link #isSupported(RolapLevel)}
+   * @param dataSource Data source
+   * @param chunkSize  Maximum number of members to read per statement
+   */
+  KeysetMemberIterable(
+    TupleConstraint constraint,
+    RolapLevel level,
+    DataSource dataSource,
+    int chunkSize ) {
+    super( 1 );
+    assert isSupported( level );
+    assert chunkSize > 0;
+    this.constraint = constraint;
+    this.level = level;
+    this.dataSource = dataSource;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Returns whether the members of a level can be read in keyset order: the
+   * level is not parent-child, and it and each of its ancestor levels is
+   * sorted by its key.
+   */
+  static boolean isSupported( RolapLevel level ) {
+    if ( level.isAll() || level.isParentChild() ) {
+      return false;
+    }
+    final RolapLevel[] levels = (RolapLevel[]) level.getHierarchy().getLevels();
+    for ( int i = 0; i <= level.getDepth(); i++ ) {
+      final RolapLevel currLevel = levels[ i ];
+      if ( currLevel.isAll() ) {
+        continue;
+      }
+      if ( currLevel.getParentExp() != null
+        || !currLevel.getKeyExp().equals( currLevel.getOrdinalExp() ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds the target level to a reader.
+   */
+  protected abstract void addLevel( SqlTupleReader reader );
+
+  /**
+   * Filters a chunk before it is returned, for example to remove members the
+   * current role cannot see. The default implementation returns the chunk
+   * unchanged.
+   */
+  protected TupleList filter( TupleList chunk ) {
+    return chunk;
+  }
+
+  public TupleCursor tupleCursor() {
+    return new AbstractTupleCursor( 1 ) {
+      private TupleList chunk = TupleCollections.emptyList( 1 );
+      private int index = -1;
+      private RolapMember last;
+      private boolean exhausted;
+
+      public boolean forward() {
+        while ( ++index >= chunk.size() ) {
+          if ( exhausted ) {
+            return false;
+          }
+          final TupleList read = readChunk( last );
+          exhausted = read.size() < chunkSize;
+          if ( !read.isEmpty() ) {
+            last = (RolapMember) read.get( 0, read.size() - 1 );
+          }
+          // Release the previous chunk before moving on.
+          chunk = filter( read );
+          index = -1;
+        }
+        return true;
+      }
+
+      public List<Member> current() {
+        return chunk.get( index );
+      }
+
+      @Override
+      public Member member( int column ) {
+        return chunk.get( column, index );
+      }
+    };
+  }
+
+  /**
+   * Returns a list of the members that reads chunks as they are first
+   * accessed. {@link TupleList#get}, {@link TupleList#isEmpty} and the
+   * list's cursors read only as far as they need to; {@link TupleList#size}
+   * and modifications read every chunk.
+   */
+  TupleList toList() {
+    return new LazyTupleList( new LazyMemberList( tupleCursor() ) );
+  }
+
+  private TupleList readChunk( RolapMember last ) {
+    final SqlTupleReader reader =
+      new SqlTupleReader( new KeysetConstraint( constraint, level, last ) );
+    reader.setMaxRows( chunkSize );
+    addLevel( reader );
+    return reader.readMembers( dataSource, null, null );
+  }
+
+  /**
+   * List of members that is filled from a cursor on demand.
+   */
+  private static class LazyMemberList extends AbstractList<Member> {
+    private final TupleCursor cursor;
+    private final List<Member> members = new ArrayList<Member>();
+    private boolean exhausted;
+
+    LazyMemberList( TupleCursor cursor ) {
+      this.cursor = cursor;
+    }
+
+    /**
+     * Reads members until there is one at a given index or the cursor is
+     * exhausted, and returns whether there is a member at that index.
+     */
+    boolean has( int index ) {
+      while ( members.size() <= index && !exhausted ) {
+        if ( cursor.forward() ) {
+          members.add( cursor.member( 0 ) );
+        } else {
+          exhausted = true;
+        }
+      }
+      return index < members.size();
+    }
+
+    public Member get( int index ) {
+      if ( index < 0 || !has( index ) ) {
+        throw new IndexOutOfBoundsException( "index " + index );
+      }
+      return members.get( index );
+    }
+
+    public int size() {
+      has( Integer.MAX_VALUE );
+      return members.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return !has( 0 );
+    }
+
+    @Override
+    public Member set( int index, Member element ) {
+      get( index );
+      return members.set( index, element );
+    }
+
+    @Override
+    public void add( int index, Member element ) {
+      has( Integer.MAX_VALUE );
+      members.add( index, element );
+      ++modCount;
+    }
+
+    @Override
+    public Member remove( int index ) {
+      has( Integer.MAX_VALUE );
+      ++modCount;
+      return members.remove( index );
+    }
+  }
+
+  /**
+   * Unary tuple list over a {@link LazyMemberList}, whose iterators do not
+   * ask for the size of the list.
+   */
+  private static class LazyTupleList extends UnaryTupleList {
+    private final LazyMemberList members;
+
+    LazyTupleList( LazyMemberList members ) {
+      super( members );
+      this.members = members;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return members.isEmpty();
+    }
+
+    @Override
+    public TupleIterator tupleIterator() {
+      return new LazyIterator();
+    }
+
+    private class LazyIterator
+      extends AbstractTupleCursor
+      implements TupleIterator {
+      private int index = -1;
+
+      LazyIterator() {
+        super( 1 );
+      }
+
+      public boolean forward() {
+        if ( !members.has( index + 1 ) ) {
+          return false;
+        }
+        ++index;
+        return true;
+      }
+
+      public List<Member> current() {
+        return get( index );
+      }
+
+      @Override
+      public Member member( int column ) {
+        assert column == 0;
+        return members.get( index );
+      }
+
+      public boolean hasNext() {
+        return members.has( index + 1 );
+      }
+
+      public List<Member> next() {
+        if ( !forward() ) {
+          throw new NoSuchElementException();
+        }
+        return current();
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException( "remove" );
+      }
+    }
+  }
+
+  /**
+   * Constraint that restricts a level members query to the rows after a
+   * given member, and otherwise behaves like the constraint it wraps.
+   */
+  private static class KeysetConstraint implements TupleConstraint {
+    private final TupleConstraint constraint;
+    private final RolapLevel level;
+    private final RolapMember last;
+
+    KeysetConstraint(
+      TupleConstraint constraint,
+      RolapLevel level,
+      RolapMember last ) {
+      this.constraint = constraint;
+      this.level = level;
+      this.last = last;
+    }
+
+    public void addConstraint(
+      SqlQuery sqlQuery,
+      RolapCube baseCube,
+      AggStar aggStar ) {
+      constraint.addConstraint( sqlQuery, baseCube, aggStar );
+      if ( last == null ) {
+        return;
+      }
+
+      // Same hierarchy as SqlTupleReader.addLevelMemberSql uses.
+      RolapHierarchy hierarchy = level.getHierarchy();
+      if ( baseCube != null && hierarchy instanceof RolapCubeHierarchy
+        && !( (RolapCubeHierarchy) hierarchy ).getCube().equals( baseCube ) ) {
+        hierarchy = baseCube.findBaseCubeHierarchy( hierarchy );
+      }
+      final RolapLevel[] levels = (RolapLevel[]) hierarchy.getLevels();
+      final List<RolapLevel> keyLevels = new ArrayList<RolapLevel>();
+      for ( int i = 0; i <= level.getDepth(); i++ ) {
+        if ( !levels[ i ].isAll() ) {
+          keyLevels.add( levels[ i ] );
+        }
+      }
+
+      // Keys of the last member and its ancestors, outermost first.
+      final Object[] keys = new Object[ keyLevels.size() ];
+      RolapMember member = last;
+      for ( int i = keys.length - 1; i >= 0; i-- ) {
+        keys[ i ] = member.getKey();
+        member = member.getParentMember();
+      }
+
+      sqlQuery.addWhere(
+        after( sqlQuery, keyLevels, Arrays.asList( keys ), 0 ) );
+    }
+
+    /**
+     * Generates a predicate that holds for rows whose keys, from position
+     * <code>i</code> on, sort after the given keys, with nulls last.
+     */
+    private static String after(
+      SqlQuery sqlQuery,
+      List<RolapLevel> levels,
+      List<Object> keys,
+      int i ) {
+      final RolapLevel currLevel = levels.get( i );
+      final String keySql = currLevel.getKeyExp().getExpression( sqlQuery );
+      final Object key = keys.get( i );
+      final boolean innermost = i == levels.size() - 1;
+      final StringBuilder buf = new StringBuilder( "(" );
+      if ( key == RolapUtil.sqlNullValue ) {
+        // Nulls sort last, so only rows which are null at this position
+        // can follow.
+        if ( innermost ) {
+          return "1 = 0";
+        }
+        buf.append( keySql ).append( " is null and " )
+          .append( after( sqlQuery, levels, keys, i + 1 ) );
+      } else {
+        final Dialect dialect = sqlQuery.getDialect();
+        buf.append( keySql ).append( " > " );
+        dialect.quote( buf, key, currLevel.getDatatype() );
+        buf.append( " or " ).append( keySql ).append( " is null" );
+        if ( !innermost ) {
+          buf.append( " or (" ).append( keySql ).append( " = " );
+          dialect.quote( buf, key, currLevel.getDatatype() );
+          buf.append( " and " )
+            .append( after( sqlQuery, levels, keys, i + 1 ) )
+            .append( ")" );
+        }
+      }
+      return buf.append( ")" ).toString();
+    }
+
+    public void addLevelConstraint(
+      SqlQuery sqlQuery,
+      RolapCube baseCube,
+      AggStar aggStar,
+      RolapLevel level ) {
+      constraint.addLevelConstraint( sqlQuery, baseCube, aggStar, level );
+    }
+
+    public MemberChildrenConstraint getMemberChildrenConstraint(
+      RolapMember parent ) {
+      // A chunk may hold only some of a parent's children.
+      return null;
+    }
+
+    public Evaluator getEvaluator() {
+      return constraint.getEvaluator();
+    }
+
+    public boolean supportsAggTables() {
+      // The predicate is written against the dimension tables.
+      return false;
+    }
+
+    public Object getCacheKey() {
+      return Arrays.asList(
+        constraint.getCacheKey(),
+        last == null ? null : last.getUniqueName() );
+    }
+  }
+}
+
+// End KeysetMemberIterable.java
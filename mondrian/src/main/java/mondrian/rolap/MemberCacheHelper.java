@@ -254,9 +254,11 @@ public class MemberCacheHelper implements MemberCache {
         mapKeyToMember.clear();
         mapLevelToMembers.clear();
         mapParentToNamedChildren.clear();
-        // We also need to clear the approxRowCount of each level.
+        // We also need to clear the approxRowCount of each level, and what
+        // has been derived from its members.
         for (Level level : rolapHierarchy.getLevels()) {
             ((RolapLevel)level).setApproxRowCount(Integer.MIN_VALUE);
+            ((RolapLevel)level).flushMemberCache(null);
         }
     }
 
@@ -279,6 +281,9 @@ public class MemberCacheHelper implements MemberCache {
         // for member's level and all child levels.
         // Important: Do this even if the member is apparently not in the cache.
         flushEntriesFromMapLevelToMembers( (MemberKey) key );
+        final RolapLevel level = ( (MemberKey) key ).getLevel();
+        ( level == null ? (RolapLevel) rolapHierarchy.getLevels()[0] : level )
+            .flushMemberCache( ( (MemberKey) key ).getValue() );
 
         final RolapMember member = getMember(key);
         if (member == null) {
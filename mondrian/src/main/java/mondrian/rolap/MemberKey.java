@@ -52,6 +52,15 @@ class MemberKey {
         return h;
     }
 
+    /**
+     * Returns the key value of the member that this key represents.
+     *
+     * @return Key value
+     */
+    public Object getValue() {
+        return value;
+    }
+
     /**
      * Returns the level of the member that this key represents.
      *
@@ -0,0 +1,447 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.olap.Member;
+import mondrian.olap.MondrianDef;
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.rolap.sql.SqlQuery;
+import mondrian.server.Execution;
+import mondrian.server.Locus;
+import mondrian.server.monitor.SqlStatementEvent;
+import mondrian.spi.Dialect;
+import mondrian.util.Pair;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Columnar store of the property values of the members of a level, loaded
+ * lazily and in batches.
+ *
+ * <p>When {@link MondrianProperties#LazyMemberProperties} is enabled, the
+ * SQL which reads the members of a level does not read the level's property
+ * columns (see {@link RolapLevel#getSqlProperties()}). Instead, the first
+ * time a property of a member is requested, one SQL statement reads the
+ * properties of a whole batch of members: the members passed to
+ * {@link #loadProperties(Iterable)}, or else the members of the level that
+ * have been read since the last load.
+ *
+ * <p>Values are held in one array per property, indexed by a row number
+ * assigned to each member key, rather than in a map per member.
+ *
+ * <p>The SQL is run without holding the store's lock. A thread that loads a
+ * key marks it as being loaded; another thread that needs the same key waits
+ * for that load to finish instead of reading the key again, and threads that
+ * need other keys are not blocked.
+ *
+ * @see RolapLevel#getMemberPropertyStore()
+ */
+public class MemberPropertyStore {
+  private static final Object[] NO_VALUES = new Object[ 0 ];
+
+  private final RolapLevel level;
+  private final RolapProperty[] properties;
+
+  /**
+   * Row number of each member key that has been loaded.
+   */
+  private final Map<Object, Integer> rows = new HashMap<Object, Integer>();
+
+  /**
+   * Values of each property, indexed by row number.
+   */
+  private final Object[][] columns;
+
+  private int rowCount;
+
+  /**
+   * Members which have been read but whose properties are not loaded yet.
+   * Bounded, so that a level whose properties are never requested does not
+   * keep its members alive.
+   */
+  private final Deque<RolapMember> pending = new ArrayDeque<RolapMember>();
+
+  /**
+   * Keys whose properties are being read by some thread, and the latch that
+   * is released when that thread has finished.
+   */
+  private final Map<Object, CountDownLatch> loading =
+    new HashMap<Object, CountDownLatch>();
+
+  /**
+   * Incremented when values are discarded, so that a load which started
+   * before does not publish values that may be stale.
+   */
+  private int generation;
+
+  MemberPropertyStore( RolapLevel level ) {
+    this.level = level;
+    this.properties = level.getProperties();
+    this.columns = new Object[ properties.length ][];
+    for ( int i = 0; i < columns.length; i++ ) {
+      columns[ i ] = NO_VALUES;
+    }
+  }
+
+  /**
+   * Loads the properties of the given members, issuing one SQL statement
+   * per level (or per {@link MondrianProperties#MaxConstraints} members)
+   * for members whose properties have not been loaded yet.
+   *
+   * <p>Members of levels whose properties are not loaded lazily are
+   * ignored.
+   *
+   * @param members Members
+   */
+  public static void loadProperties( Iterable<? extends Member> members ) {
+    final Map<MemberPropertyStore, List<RolapMember>> batches =
+      new LinkedHashMap<MemberPropertyStore, List<RolapMember>>();
+    for ( Member member : members ) {
+      final RolapMember rolapMember = unwrap( member );
+      if ( rolapMember == null ) {
+        continue;
+      }
+      final MemberPropertyStore store =
+        rolapMember.getLevel().getMemberPropertyStore();
+      if ( store == null ) {
+        continue;
+      }
+      List<RolapMember> batch = batches.get( store );
+      if ( batch == null ) {
+        batch = new ArrayList<RolapMember>();
+        batches.put( store, batch );
+      }
+      batch.add( rolapMember );
+    }
+    for ( Map.Entry<MemberPropertyStore, List<RolapMember>> entry
+      : batches.entrySet() ) {
+      entry.getKey().load( entry.getValue() );
+    }
+  }
+
+  private static RolapMember unwrap( Member member ) {
+    if ( member instanceof RolapCubeMember ) {
+      member = ( (RolapCubeMember) member ).getRolapMember();
+    }
+    if ( !( member instanceof RolapMember )
+      || member.isCalculated()
+      || member.isAll()
+      || member.isNull() ) {
+      return null;
+    }
+    return (RolapMember) member;
+  }
+
+  /**
+   * Records that a member of this level has been read, so that its
+   * properties are loaded in the same batch as the first member whose
+   * properties are requested.
+   */
+  synchronized void register( RolapMember member ) {
+    if ( pending.size() >= batchSize() ) {
+      pending.removeFirst();
+    }
+    pending.addLast( member );
+  }
+
+  /**
+   * Discards all loaded property values, so that they are read again when
+   * next requested. Called when the member cache of the level is flushed.
+   */
+  synchronized void clear() {
+    rows.clear();
+    pending.clear();
+    ++generation;
+    rowCount = 0;
+    for ( int i = 0; i < columns.length; i++ ) {
+      columns[ i ] = NO_VALUES;
+    }
+  }
+
+  /**
+   * Discards the loaded property values of one member.
+   *
+   * @param key Member key
+   */
+  synchronized void remove( Object key ) {
+    rows.remove( key );
+    ++generation;
+  }
+
+  /**
+   * Returns the value of a property of a member, loading the properties of
+   * the pending batch if the member has not been loaded yet.
+   *
+   * @param member   Member of this level
+   * @param property Ordinal of the property in {@link RolapLevel#getProperties()}
+   * @return Property value
+   */
+  Object getPropertyValue( RolapMember member, int property ) {
+    List<RolapMember> batch;
+    synchronized ( this ) {
+      final Integer row = rows.get( member.getKey() );
+      if ( row != null ) {
+        return columns[ property ][ row ];
+      }
+      batch = new ArrayList<RolapMember>( pending );
+    }
+    batch.add( member );
+    while ( true ) {
+      load( batch );
+      synchronized ( this ) {
+        final Integer row = rows.get( member.getKey() );
+        if ( row != null ) {
+          return columns[ property ][ row ];
+        }
+      }
+      // The values were discarded while they were being read, or the
+      // thread that was reading them failed. Read them again.
+      batch = Collections.singletonList( member );
+    }
+  }
+
+  /**
+   * Loads the properties of the members whose properties have not been
+   * loaded yet, and waits for any of them that another thread is loading.
+   */
+  private void load( List<RolapMember> members ) {
+    final List<Object> keys = new ArrayList<Object>();
+    final Set<CountDownLatch> others = new HashSet<CountDownLatch>();
+    final CountDownLatch latch = new CountDownLatch( 1 );
+    final int loadGeneration;
+    synchronized ( this ) {
+      for ( RolapMember member : members ) {
+        final Object key = member.getKey();
+        if ( rows.containsKey( key ) ) {
+          continue;
+        }
+        final CountDownLatch other = loading.get( key );
+        if ( other != null ) {
+          // Another thread is reading the key; or this one is, if the
+          // member occurs twice in the list.
+          if ( other != latch ) {
+            others.add( other );
+          }
+          continue;
+        }
+        loading.put( key, latch );
+        keys.add( key );
+      }
+      pending.clear();
+      loadGeneration = generation;
+    }
+    try {
+      final int batchSize = batchSize();
+      for ( int start = 0; start < keys.size(); start += batchSize ) {
+        final List<Object> batchKeys =
+          keys.subList( start, Math.min( keys.size(), start + batchSize ) );
+        final Map<Object, Object[]> values = readKeys( batchKeys );
+        synchronized ( this ) {
+          if ( generation == loadGeneration ) {
+            // Keys which have no row in the result get null values, so
+            // that they are not read again.
+            for ( Object key : batchKeys ) {
+              addRow( key, values.get( key ) );
+            }
+          }
+        }
+      }
+    } finally {
+      synchronized ( this ) {
+        for ( Object key : keys ) {
+          loading.remove( key );
+        }
+      }
+      latch.countDown();
+    }
+    for ( CountDownLatch other : others ) {
+      try {
+        other.await();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw Util.newError(
+          e,
+          "interrupted while loading properties of level "
+            + level.getUniqueName() );
+      }
+    }
+  }
+
+  private static int batchSize() {
+    return Math.max( 1, MondrianProperties.instance().MaxConstraints.get() );
+  }
+
+  /**
+   * Reads the properties of the members with the given keys.
+   *
+   * @param keys Member keys
+   * @return Property values of each key that has a row
+   */
+  private Map<Object, Object[]> readKeys( List<Object> keys ) {
+    final RolapHierarchy hierarchy = level.getHierarchy();
+    final DataSource dataSource =
+      hierarchy.getRolapSchema().getInternalConnection().getDataSource();
+    final Pair<String, List<SqlStatement.Type>> pair =
+      makePropertiesSql( dataSource, keys );
+
+    // Keys in the result are matched to the member keys first as they are,
+    // then by their string value, in case the driver returns a different
+    // numeric type than the one the members were built with.
+    final Set<Object> keySet = new HashSet<Object>( keys );
+    final Map<String, Object> keysByString = new HashMap<String, Object>();
+    for ( Object key : keys ) {
+      keysByString.put( String.valueOf( key ), key );
+    }
+    final Map<Object, Object[]> values = new HashMap<Object, Object[]>();
+
+    final Execution execution =
+      Locus.isEmpty() ? Execution.NONE : Locus.peek().execution;
+    final SqlStatement stmt =
+      RolapUtil.executeQuery(
+        dataSource, pair.left, pair.right, 0, 0,
+        new SqlStatement.StatementLocus(
+          execution,
+          "MemberPropertyStore.loadProperties",
+          "while loading properties of level " + level.getUniqueName(),
+          SqlStatementEvent.Purpose.TUPLES, 0 ),
+        -1, -1, null );
+    try {
+      final List<SqlStatement.Accessor> accessors = stmt.getAccessors();
+      while ( stmt.getResultSet().next() ) {
+        ++stmt.rowCount;
+        Object key = accessors.get( 0 ).get();
+        if ( key == null ) {
+          key = RolapUtil.sqlNullValue;
+        }
+        if ( !keySet.contains( key ) ) {
+          key = keysByString.get( String.valueOf( key ) );
+          if ( key == null ) {
+            continue;
+          }
+        }
+        if ( values.containsKey( key ) ) {
+          // Several rows for one key; as when reading members, the
+          // first row wins.
+          continue;
+        }
+        final Object[] row = new Object[ properties.length ];
+        for ( int i = 0; i < properties.length; i++ ) {
+          row[ i ] = accessors.get( i + 1 ).get();
+        }
+        values.put( key, row );
+      }
+    } catch ( SQLException e ) {
+      throw stmt.handle( e );
+    } finally {
+      stmt.close();
+    }
+    return values;
+  }
+
+  private void addRow( Object key, Object[] row ) {
+    final int n = rowCount++;
+    for ( int i = 0; i < columns.length; i++ ) {
+      if ( n >= columns[ i ].length ) {
+        final Object[] newColumn = new Object[ Math.max( 16, n * 2 ) ];
+        System.arraycopy( columns[ i ], 0, newColumn, 0, n );
+        columns[ i ] = newColumn;
+      }
+      columns[ i ][ n ] = row == null ? null : row[ i ];
+    }
+    rows.put( key, n );
+  }
+
+  /**
+   * Generates the SQL which reads the properties of the members with the
+   * given keys. For example,
+   *
+   * <blockquote><pre>
+   * SELECT "city", "population", "mayor"
+   * FROM "customer"
+   * WHERE "city" IN ('Berkeley', 'Oakland')
+   * GROUP BY "city", "population", "mayor"
+   * </pre></blockquote>
+   */
+  private Pair<String, List<SqlStatement.Type>> makePropertiesSql(
+    DataSource dataSource,
+    List<Object> keys ) {
+    final SqlQuery sqlQuery =
+      SqlQuery.newQuery(
+        dataSource,
+        "while generating query to load properties of level " + level );
+    final Dialect dialect = sqlQuery.getDialect();
+    final RolapHierarchy hierarchy = level.getHierarchy();
+
+    final MondrianDef.Expression keyExp = level.getKeyExp();
+    hierarchy.addToFrom( sqlQuery, keyExp );
+    final String keySql = keyExp.getExpression( sqlQuery );
+    sqlQuery.addSelectGroupBy( keySql, level.getInternalType() );
+
+    for ( RolapProperty property : properties ) {
+      final MondrianDef.Expression exp = property.getExp();
+      hierarchy.addToFrom( sqlQuery, exp );
+      final String s = exp.getExpression( sqlQuery );
+      final String alias =
+        sqlQuery.addSelect( s, property.getType().getInternalType() );
+
+      // Some dialects allow us to eliminate properties from the group by
+      // that are functionally dependent on the level value
+      if ( !dialect.allowsSelectNotInGroupBy()
+        || !property.dependsOnLevelValue() ) {
+        sqlQuery.addGroupBy( s, alias );
+      }
+    }
+
+    final StringBuilder buf = new StringBuilder();
+    boolean hasNull = false;
+    int valueCount = 0;
+    for ( Object key : keys ) {
+      if ( key == RolapUtil.sqlNullValue ) {
+        hasNull = true;
+        continue;
+      }
+      buf.append( valueCount++ == 0 ? keySql + " in (" : ", " );
+      dialect.quote( buf, key, level.getDatatype() );
+    }
+    if ( valueCount > 0 ) {
+      buf.append( ")" );
+    }
+    if ( hasNull ) {
+      if ( valueCount > 0 ) {
+        buf.insert( 0, "(" ).append( " or " );
+      }
+      buf.append( keySql ).append( " is null" );
+      if ( valueCount > 0 ) {
+        buf.append( ")" );
+      }
+    }
+    Util.assertTrue( buf.length() > 0 );
+    sqlQuery.addWhere( buf.toString() );
+    return sqlQuery.toSqlAndTypes();
+  }
+}
+
+// End MemberPropertyStore.java
@@ -0,0 +1,303 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.olap.Connection;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Exp;
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Query;
+import mondrian.olap.Schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers how long native and in-memory evaluations of set expressions took, and uses that history to choose the
+ * faster strategy for expressions of the same shape.
+ *
+ * <p>
+ * The shape of an expression is its function, the schema and cube it is evaluated against, and the types of its
+ * arguments, which name the hierarchies and levels they range over. The schema is identified by its name and content
+ * checksum, so that schemas which share a name but not their data do not share decisions, and a schema keeps its
+ * decisions when it is reloaded unchanged. Until both strategies have been measured a few times for a shape,
+ * the caller's own choice, from thresholds such as {@link MondrianProperties#NativizeMinThreshold}, stands, except
+ * that one evaluation in {@link #EXPLORE_PERIOD} uses the other strategy so that it gets measured. After that, the
+ * strategy with the lower mean elapsed time is chosen, and one evaluation in {@link #EXPLORE_PERIOD} still uses the
+ * other, so that a decision is revisited when the data changes.
+ *
+ * <p>
+ * An evaluation that reads cells which are not cached does not wait for them: it records cell requests, which are
+ * loaded in a batch after the pass of the query that it belongs to. Timing the evaluation alone would leave out the
+ * loading, and make the strategy that reads cells, usually in-memory evaluation, look faster than it is. So an
+ * evaluation that is timed with a {@link Sample} and records cell requests is not recorded when it ends, but after the
+ * batch has been loaded, and its time includes its share of the time the batch took, in proportion to the number of
+ * cell requests it recorded.
+ *
+ * <p>
+ * There is one history per server. It is registered with the platform MBean server, so that its decisions can be
+ * inspected and reset.
+ *
+ * @see MondrianProperties#EnableAdaptiveNative
+ */
+public class NativeDecisionHistory implements NativeDecisionHistoryMXBean {
+  /**
+   * Number of evaluations of each strategy before the history overrides the caller's choice.
+   */
+  static final int MIN_SAMPLES = 3;
+
+  /**
+   * One evaluation of a shape in this many uses the strategy that is not preferred.
+   */
+  static final int EXPLORE_PERIOD = 16;
+
+  /**
+   * Weight of the latest evaluation in the mean elapsed time and result size.
+   */
+  static final double WEIGHT = 0.25d;
+
+  private final ConcurrentMap<String, Decision> decisions = new ConcurrentHashMap<String, Decision>();
+
+  /**
+   * Returns the history of the server that an evaluator's query runs in, or null if adaptive native evaluation is
+   * disabled or the server is not known.
+   *
+   * @param evaluator Evaluator
+   * @return History, or null
+   */
+  public static NativeDecisionHistory of( Evaluator evaluator ) {
+    if ( !MondrianProperties.instance().EnableAdaptiveNative.get() ) {
+      return null;
+    }
+    final Query query = evaluator.getQuery();
+    final Connection connection = query == null ? null : query.getConnection();
+    if ( !( connection instanceof RolapConnection ) ) {
+      return null;
+    }
+    return ( (RolapConnection) connection ).getServer().getNativeDecisionHistory();
+  }
+
+  /**
+   * Returns the shape of a call to a function.
+   *
+   * @param evaluator Evaluator
+   * @param funName   Name of the function
+   * @param args      Arguments of the call
+   * @return Shape
+   */
+  public static String shape( Evaluator evaluator, String funName, Exp[] args ) {
+    final StringBuilder buf = new StringBuilder();
+    final Schema schema = evaluator.getCube().getSchema();
+    buf.append( schema.getName() );
+    if ( schema instanceof RolapSchema ) {
+      // Without a checksum, the instance is the only identity.
+      final RolapSchema rolapSchema = (RolapSchema) schema;
+      buf.append( '@' ).append(
+          rolapSchema.getChecksum() != null ? rolapSchema.getChecksum().toString() : rolapSchema.getId() );
+    }
+    buf.append( ':' ).append( evaluator.getCube().getName() ).append( ':' ).append( funName ).append( '(' );
+    for ( int i = 0; i < args.length; i++ ) {
+      if ( i > 0 ) {
+        buf.append( ", " );
+      }
+      buf.append( args[ i ].getType() );
+    }
+    return buf.append( ')' ).toString();
+  }
+
+  /**
+   * Chooses whether to evaluate an expression natively.
+   *
+   * @param shape        Shape of the expression
+   * @param preferNative Whether the caller would evaluate it natively, without a history
+   * @return Whether to evaluate it natively
+   */
+  public boolean chooseNative( String shape, boolean preferNative ) {
+    final Decision decision = getDecision( shape );
+    final boolean explore = decision.choices.incrementAndGet() % EXPLORE_PERIOD == 0;
+    final Boolean learned = decision.learnedNative();
+    if ( learned != null ) {
+      return learned != explore;
+    }
+    // Measure the strategy that the caller would not choose, now and then.
+    return preferNative != explore;
+  }
+
+  /**
+   * Records an evaluation.
+   *
+   * @param shape    Shape of the expression
+   * @param isNative Whether the expression was evaluated natively
+   * @param nanos    Elapsed time, in nanoseconds
+   * @param size     Number of tuples in the result
+   */
+  public void record( String shape, boolean isNative, long nanos, int size ) {
+    final Decision decision = getDecision( shape );
+    ( isNative ? decision.nativeStatistics : decision.inMemoryStatistics ).record( nanos, size );
+  }
+
+  /**
+   * Starts timing an evaluation.
+   *
+   * @param evaluator Evaluator
+   * @param shape     Shape of the expression
+   * @param isNative  Whether the expression is evaluated natively
+   * @return Timer; call {@link Sample#end} when the evaluation is done
+   */
+  public Sample start( Evaluator evaluator, String shape, boolean isNative ) {
+    final CellReader cellReader =
+        evaluator instanceof RolapEvaluator ? ( (RolapEvaluator) evaluator ).cellReader : null;
+    return new Sample(
+        shape, isNative, cellReader instanceof FastBatchingCellReader ? (FastBatchingCellReader) cellReader : null );
+  }
+
+  private Decision getDecision( String shape ) {
+    return decisions.computeIfAbsent( shape, k -> new Decision() );
+  }
+
+  public List<String> getDecisions() {
+    final List<String> list = new ArrayList<String>();
+    for ( Map.Entry<String, Decision> entry : decisions.entrySet() ) {
+      list.add( entry.getKey() + " " + entry.getValue() );
+    }
+    Collections.sort( list );
+    return list;
+  }
+
+  public int getShapeCount() {
+    return decisions.size();
+  }
+
+  public void reset() {
+    decisions.clear();
+  }
+
+  public boolean forget( String shape ) {
+    return decisions.remove( shape ) != null;
+  }
+
+  /**
+   * Timed evaluation of an expression.
+   */
+  public class Sample {
+    private final String shape;
+    private final boolean isNative;
+    private final FastBatchingCellReader reader;
+    private final long startNanos;
+    private final int startMissCount;
+    private long nanos;
+    private int size;
+    private int missCount;
+
+    Sample( String shape, boolean isNative, FastBatchingCellReader reader ) {
+      this.shape = shape;
+      this.isNative = isNative;
+      this.reader = reader;
+      this.startNanos = System.nanoTime();
+      this.startMissCount = reader == null ? 0 : reader.getMissCount();
+    }
+
+    /**
+     * Ends the evaluation. It is recorded now if it did not record any cell requests, otherwise after the requests
+     * have been loaded.
+     *
+     * @param size Number of tuples in the result
+     */
+    public void end( int size ) {
+      this.nanos = System.nanoTime() - startNanos;
+      this.size = size;
+      this.missCount = reader == null ? 0 : reader.getMissCount() - startMissCount;
+      if ( missCount == 0 ) {
+        record( shape, isNative, nanos, size );
+      } else {
+        reader.addPendingSample( this );
+      }
+    }
+
+    /**
+     * Records the evaluation, charging it its share of the time it took to load a batch of cell requests.
+     *
+     * @param loadNanos    Time it took to load the batch, in nanoseconds
+     * @param requestCount Number of cell requests in the batch
+     */
+    void charge( long loadNanos, int requestCount ) {
+      final long share = requestCount <= 0 ? 0 : loadNanos * Math.min( missCount, requestCount ) / requestCount;
+      record( shape, isNative, nanos + share, size );
+    }
+  }
+
+  /**
+   * What has been learned about one shape.
+   */
+  private static class Decision {
+    final Statistics nativeStatistics = new Statistics();
+    final Statistics inMemoryStatistics = new Statistics();
+    final AtomicLong choices = new AtomicLong();
+
+    /**
+     * Returns whether native evaluation has been faster, or null if either strategy has not been measured enough.
+     */
+    Boolean learnedNative() {
+      final double nativeNanos = nativeStatistics.getMeanNanos();
+      final double inMemoryNanos = inMemoryStatistics.getMeanNanos();
+      if ( nativeNanos < 0 || inMemoryNanos < 0 ) {
+        return null;
+      }
+      return nativeNanos <= inMemoryNanos;
+    }
+
+    public String toString() {
+      final Boolean learned = learnedNative();
+      return "native={" + nativeStatistics + "} inMemory={" + inMemoryStatistics + "} prefer="
+          + ( learned == null ? "undecided" : learned ? "native" : "inMemory" );
+    }
+  }
+
+  /**
+   * Exponentially weighted means of the elapsed times and result sizes of one strategy.
+   */
+  private static class Statistics {
+    private long count;
+    private double meanNanos;
+    private double meanSize;
+
+    synchronized void record( long nanos, int size ) {
+      if ( count++ == 0 ) {
+        meanNanos = nanos;
+        meanSize = size;
+      } else {
+        meanNanos += WEIGHT * ( nanos - meanNanos );
+        meanSize += WEIGHT * ( size - meanSize );
+      }
+    }
+
+    /**
+     * Returns the mean elapsed time, or -1 if there have been fewer than {@link #MIN_SAMPLES} evaluations.
+     */
+    synchronized double getMeanNanos() {
+      return count < MIN_SAMPLES ? -1d : meanNanos;
+    }
+
+    public synchronized String toString() {
+      return "count=" + count + " meanMillis=" + String.format( "%.3f", meanNanos / 1000000d ) + " meanSize="
+          + Math.round( meanSize );
+    }
+  }
+}
+
+// End NativeDecisionHistory.java
@@ -0,0 +1,48 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import java.util.List;
+
+/**
+ * Defines the MXBean interface required to register {@link NativeDecisionHistory} with a JMX agent, so that the
+ * decisions it has learned can be inspected and reset.
+ */
+public interface NativeDecisionHistoryMXBean {
+
+  /**
+   * Returns a description of each expression shape that has been evaluated: the number of native and in-memory
+   * evaluations, their mean elapsed time and result size, and the strategy currently preferred.
+   */
+  List<String> getDecisions();
+
+  /**
+   * Returns the number of expression shapes that have been evaluated.
+   */
+  int getShapeCount();
+
+  /**
+   * Forgets everything that has been learned.
+   */
+  void reset();
+
+  /**
+   * Forgets what has been learned about one expression shape.
+   *
+   * @param shape Shape, as it appears at the start of a line of {@link #getDecisions()}
+   * @return Whether the shape was known
+   */
+  boolean forget( String shape );
+}
+
+// End NativeDecisionHistoryMXBean.java
@@ -0,0 +1,268 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.olap.Member;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory closure index over the members of a parent-child level.
+ *
+ * <p>The members are numbered by a depth-first (Euler tour) walk of the
+ * parent-child tree. Every member <code>m</code> gets an interval
+ * <code>[pre(m), end(m)]</code> where <code>pre(m)</code> is its position in
+ * the walk and <code>end(m)</code> is the position of the last member of its
+ * subtree. The descendants of <code>m</code> are then exactly the members
+ * whose position lies in <code>(pre(m), end(m)]</code>, and ancestry is a
+ * pair of integer comparisons, so neither requires SQL nor a walk up the
+ * parent chain.
+ *
+ * <p>The index is built from a single read of the level's members and is
+ * immutable. It reflects the unrestricted hierarchy; callers evaluating on
+ * behalf of a role with restricted access to the hierarchy must not use it.
+ *
+ * @see RolapLevel#getParentChildIndex(boolean)
+ */
+public class ParentChildIndex {
+  private static final Logger LOGGER =
+    LogManager.getLogger( ParentChildIndex.class );
+
+  /**
+   * Members in depth-first order.
+   */
+  private final List<RolapMember> members;
+
+  /**
+   * Position of each member in {@link #members}.
+   */
+  private final Map<Member, Integer> positions;
+
+  /**
+   * For each position, the position of the last member in its subtree.
+   */
+  private final int[] ends;
+
+  /**
+   * For each position, the distance from the root of the tree.
+   */
+  private final int[] depths;
+
+  private ParentChildIndex(
+    List<RolapMember> members,
+    Map<Member, Integer> positions,
+    int[] ends,
+    int[] depths ) {
+    this.members = Collections.unmodifiableList( members );
+    this.positions = positions;
+    this.ends = ends;
+    this.depths = depths;
+  }
+
+  /**
+   * Builds an index over the members of a parent-child level.
+   *
+   * <p>Siblings keep the order in which they occur in
+   * <code>levelMembers</code>. Returns null if the members do not form a
+   * tree (for example, if the data contain a cycle).
+   *
+   * @param levelMembers All members of a parent-child level
+   * @return Index, or null if the members are not a tree
+   */
+  public static ParentChildIndex build( List<RolapMember> levelMembers ) {
+    final int n = levelMembers.size();
+    final Map<Member, List<RolapMember>> childrenMap =
+      new HashMap<Member, List<RolapMember>>( n );
+    final Map<Member, Boolean> inLevel = new HashMap<Member, Boolean>( n );
+    for ( RolapMember member : levelMembers ) {
+      inLevel.put( member, Boolean.TRUE );
+    }
+    final List<RolapMember> roots = new ArrayList<RolapMember>();
+    for ( RolapMember member : levelMembers ) {
+      final RolapMember parent = member.getParentMember();
+      if ( parent == null || !inLevel.containsKey( parent ) ) {
+        roots.add( member );
+      } else {
+        List<RolapMember> children = childrenMap.get( parent );
+        if ( children == null ) {
+          children = new ArrayList<RolapMember>();
+          childrenMap.put( parent, children );
+        }
+        children.add( member );
+      }
+    }
+
+    final List<RolapMember> ordered = new ArrayList<RolapMember>( n );
+    final Map<Member, Integer> positions =
+      new HashMap<Member, Integer>( n * 2 );
+    final int[] ends = new int[ n ];
+    final int[] depths = new int[ n ];
+
+    // Iterative walk, so that deep trees cannot overflow the stack. Each
+    // frame holds a position and the index of the next child to visit.
+    final int[] stackPos = new int[ n ];
+    final int[] stackChild = new int[ n ];
+    for ( RolapMember root : roots ) {
+      int top = 0;
+      stackPos[ 0 ] = visit( root, 0, ordered, positions, depths );
+      stackChild[ 0 ] = 0;
+      while ( top >= 0 ) {
+        final int pos = stackPos[ top ];
+        final List<RolapMember> children =
+          childrenMap.get( ordered.get( pos ) );
+        if ( children != null && stackChild[ top ] < children.size() ) {
+          final RolapMember child = children.get( stackChild[ top ]++ );
+          if ( positions.containsKey( child ) ) {
+            LOGGER.warn(
+              "Member " + child.getUniqueName()
+                + " occurs twice in parent-child hierarchy; not indexing" );
+            return null;
+          }
+          ++top;
+          stackPos[ top ] = visit( child, depths[ pos ] + 1, ordered, positions, depths );
+          stackChild[ top ] = 0;
+        } else {
+          ends[ pos ] = ordered.size() - 1;
+          --top;
+        }
+      }
+    }
+    if ( ordered.size() != n ) {
+      // Some members were unreachable from a root: the parent-child
+      // relation contains a cycle.
+      LOGGER.warn(
+        "Parent-child hierarchy contains cyclic data; not indexing" );
+      return null;
+    }
+    return new ParentChildIndex( ordered, positions, ends, depths );
+  }
+
+  private static int visit(
+    RolapMember member,
+    int depth,
+    List<RolapMember> ordered,
+    Map<Member, Integer> positions,
+    int[] depths ) {
+    final int pos = ordered.size();
+    ordered.add( member );
+    positions.put( member, pos );
+    depths[ pos ] = depth;
+    return pos;
+  }
+
+  /**
+   * Returns the number of members in the index.
+   */
+  public int size() {
+    return members.size();
+  }
+
+  /**
+   * Returns whether the index contains a given member.
+   */
+  public boolean contains( Member member ) {
+    return positions.containsKey( member );
+  }
+
+  /**
+   * Returns whether <code>ancestor</code> is an ancestor of
+   * <code>member</code>. Both members must be in the index.
+   *
+   * @param strict if true, a member is not an ancestor of itself
+   */
+  public boolean isAncestor( Member ancestor, Member member, boolean strict ) {
+    final int a = position( ancestor );
+    final int m = position( member );
+    if ( strict && a == m ) {
+      return false;
+    }
+    return a <= m && m <= ends[ a ];
+  }
+
+  /**
+   * Returns the descendants of a member, in depth-first order.
+   *
+   * @param member Member
+   * @param self   Whether to include the member itself
+   * @return Descendants; not modifiable
+   */
+  public List<RolapMember> getDescendants( Member member, boolean self ) {
+    final int pos = position( member );
+    return members.subList( self ? pos : pos + 1, ends[ pos ] + 1 );
+  }
+
+  /**
+   * Returns the descendants of a member whose distance from the member
+   * satisfies a range, in depth-first order.
+   *
+   * @param member   Member
+   * @param minDistance Minimum distance (0 includes the member itself)
+   * @param maxDistance Maximum distance, or -1 for no limit
+   * @param leavesOnly  Whether to return only members with no children
+   * @return Descendants
+   */
+  public List<RolapMember> getDescendants(
+    Member member,
+    int minDistance,
+    int maxDistance,
+    boolean leavesOnly ) {
+    final int pos = position( member );
+    final int baseDepth = depths[ pos ];
+    final List<RolapMember> list = new ArrayList<RolapMember>();
+    for ( int i = pos; i <= ends[ pos ]; i++ ) {
+      final int distance = depths[ i ] - baseDepth;
+      if ( distance < minDistance
+        || maxDistance >= 0 && distance > maxDistance ) {
+        continue;
+      }
+      if ( leavesOnly && ends[ i ] != i ) {
+        continue;
+      }
+      list.add( members.get( i ) );
+    }
+    return list;
+  }
+
+  /**
+   * Returns the distance of a member from the root of its tree.
+   */
+  public int getDepth( Member member ) {
+    return depths[ position( member ) ];
+  }
+
+  /**
+   * Returns whether a member has no children.
+   */
+  public boolean isLeaf( Member member ) {
+    final int pos = position( member );
+    return ends[ pos ] == pos;
+  }
+
+  private int position( Member member ) {
+    final Integer pos = positions.get( member );
+    if ( pos == null ) {
+      throw new IllegalArgumentException(
+        "member " + member.getUniqueName() + " is not in index" );
+    }
+    return pos;
+  }
+}
+
+// End ParentChildIndex.java
@@ -518,6 +518,9 @@ public class RolapConnection extends ConnectionBase {
     if ( !closed ) {
       closed = true;
       server.removeConnection( this );
+      if ( schema != null ) {
+        schema.getQueryPlanCache().clear( this );
+      }
     }
     if ( internalStatement != null ) {
       internalStatement.close();
@@ -645,13 +648,23 @@ public class RolapConnection extends ConnectionBase {
         RolapUtil.MDX_LOGGER.debug( currId + ": " + Util.unparse( query ) );
       }
 
+      final RolapResultCache resultCache = RolapResultCache.instance();
+      final long flushCount = resultCache.getFlushCount();
+      final RolapResult.Snapshot snapshot = resultCache.get( query );
+      final RolapResult rolapResult;
+      Result result;
+
       final Locus locus = new Locus( execution, null, "Loading cells" );
       Locus.push( locus );
-      Result result;
       try {
         statement.start( execution );
-        ( (RolapCube) query.getCube() ).clearCachedAggregations( true );
-        result = new RolapResult( execution, true );
+        if ( snapshot != null ) {
+          rolapResult = new RolapResult( execution, snapshot );
+        } else {
+          ( (RolapCube) query.getCube() ).clearCachedAggregations( true );
+          rolapResult = new RolapResult( execution, true );
+        }
+        result = rolapResult;
         int i = 0;
         for ( QueryAxis axis : query.getAxes() ) {
           if ( axis.isNonEmpty() ) {
@@ -664,6 +677,9 @@ public class RolapConnection extends ConnectionBase {
         ( (RolapCube) query.getCube() ).clearCachedAggregations( true );
       }
       statement.end( execution );
+      if ( snapshot == null ) {
+        resultCache.put( query, rolapResult, flushCount );
+      }
       return result;
     } catch ( ResultLimitExceededException e ) {
       // query has been punted
@@ -731,6 +747,11 @@ public class RolapConnection extends ConnectionBase {
   }
 
   public QueryPart parseStatement( String query ) {
+    final RolapQueryPlanCache queryPlanCache = schema.getQueryPlanCache();
+    final Query cachedQuery = queryPlanCache.get( query, this );
+    if ( cachedQuery != null ) {
+      return cachedQuery;
+    }
     Statement statement = createInternalStatement( false );
     final Locus locus =
       new Locus(
@@ -739,10 +760,10 @@ public class RolapConnection extends ConnectionBase {
         null );
     Locus.push( locus );
     try {
-      QueryPart queryPart =
-        parseStatement( statement, query, null, false );
+      final QueryPart queryPart = parseStatement( statement, query, null, false );
       if ( queryPart instanceof Query ) {
         ( (Query) queryPart ).setOwnStatement( true );
+        queryPlanCache.put( query, this, (Query) queryPart );
         statement = null;
       }
       return queryPart;
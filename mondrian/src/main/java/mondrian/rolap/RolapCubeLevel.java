@@ -277,6 +277,16 @@ public class RolapCubeLevel extends RolapLevel {
         return rolapLevel;
     }
 
+    RolapLevel getSharedLevel() {
+        return rolapLevel;
+    }
+
+    public MemberPropertyStore getMemberPropertyStore() {
+        // members of a cube level wrap members of the shared level, which
+        // hold their properties
+        return rolapLevel.getMemberPropertyStore();
+    }
+
     public boolean equals(RolapCubeLevel level) {
         if (this == level) {
             return true;
@@ -14,6 +14,7 @@ package mondrian.rolap;
 
 import mondrian.calc.Calc;
 import mondrian.calc.ParameterSlot;
+import mondrian.calc.TupleCursor;
 import mondrian.calc.TupleList;
 import mondrian.calc.impl.DelegatingTupleList;
 import mondrian.olap.*;
@@ -353,6 +354,13 @@ public class RolapEvaluator implements Evaluator {
     return nonAllMembers;
   }
 
+  /**
+   * Returns whether the current cell is computed by a calculation, rather than read from the cell reader.
+   */
+  final boolean hasCalculations() {
+    return calculationCount > 0;
+  }
+
   public final List<List<List<Member>>> getAggregationLists() {
     return aggregationLists;
   }
@@ -459,6 +467,21 @@ public class RolapEvaluator implements Evaluator {
     return new RolapEvaluator( root, this, aggregationList );
   }
 
+  /**
+   * Creates an evaluator with the same context as this one, attached to a different root.
+   *
+   * <p>
+   * Evaluators that share a root share its expression cache, so they must be used on one thread at a time. A fork with
+   * its own root can be used on another thread while this evaluator is still in use.
+   *
+   * @param root
+   *          Root of the new evaluator
+   * @return Evaluator
+   */
+  final RolapEvaluator fork( RolapEvaluatorRoot root ) {
+    return new RolapEvaluator( root, this, null );
+  }
+
   public final void restore( int savepoint ) {
     while ( commandCount > savepoint ) {
       ( (Command) commands[--commandCount] ).execute( this );
@@ -802,6 +825,9 @@ public class RolapEvaluator implements Evaluator {
     final Calc calc = maxSolveMember.getCompiledExpression( root );
     final Object o;
     try {
+      if ( root.planningDepth >= 0 ) {
+        return CellRequestPlanner.plan( calc, this );
+      }
       o = calc.evaluate( this );
     } finally {
       restore( savepoint );
@@ -812,6 +838,41 @@ public class RolapEvaluator implements Evaluator {
     return o;
   }
 
+  public final int evaluateCurrentDoubles( TupleList tupleList, double[] values ) {
+    // Cells of stored measures are read directly, with a hint so that
+    // consecutive cells in the same segment are found without a scan.
+    final FastBatchingCellReader batchingReader =
+        cellReader instanceof FastBatchingCellReader ? (FastBatchingCellReader) cellReader : null;
+    final RolapStar.CellLookupHint hint = new RolapStar.CellLookupHint();
+    final int savepoint = savepoint();
+    try {
+      int notReady = 0;
+      int i = 0;
+      final TupleCursor cursor = tupleList.tupleCursor();
+      while ( cursor.forward() ) {
+        CancellationChecker.checkCancelOrTimeout( i, root.execution );
+        cursor.setContext( this );
+        final Object o =
+            calculationCount == 0 && batchingReader != null ? batchingReader.get( this, hint ) : evaluateCurrent();
+        if ( o == null || o == Util.nullValue ) {
+          values[i] = FunUtil.DoubleNull;
+        } else if ( o == RolapUtil.valueNotReadyException ) {
+          values[i] = FunUtil.DoubleNull;
+          ++notReady;
+        } else if ( o instanceof Number ) {
+          values[i] = ( (Number) o ).doubleValue();
+        } else {
+          return -1;
+        }
+        ++i;
+        restore( savepoint );
+      }
+      return notReady;
+    } finally {
+      restore( savepoint );
+    }
+  }
+
   void setExpanding( Member member ) {
     assert member != null;
     ensureCommandCapacity( commandCount + 3 );
@@ -1023,7 +1084,7 @@ public class RolapEvaluator implements Evaluator {
    * Creates a key which uniquely identifes an expression and its context. The context includes members of dimensions
    * which the expression is dependent upon.
    */
-  private Object getExpResultCacheKey( ExpCacheDescriptor descriptor ) {
+  private List<Object> getExpResultCacheKey( ExpCacheDescriptor descriptor ) {
     boolean includeAggregationList = false;
     if ( aggregationLists != null && !aggregationLists.isEmpty() ) {
       // Don't include empty aggregation lists in the cache key or we'll get
@@ -1035,10 +1096,13 @@ public class RolapEvaluator implements Evaluator {
     // in NON EMPTY mode the result depends on everything, e.g.
     // "NON EMPTY [Customer].[Name].members" may return different results
     // for 1997-01 and 1997-02
+    // A memoized expression is identified by its descriptor; equal
+    // expressions may have been compiled differently.
+    final Object expKey = descriptor.isMemoized() ? descriptor : descriptor.getExp();
     final List<Object> key;
     if ( nonEmpty ) {
       key = new ArrayList<>( currentMembers.length + ( includeAggregationList ? 2 : 1 ) );
-      key.add( descriptor.getExp() );
+      key.add( expKey );
       // noinspection ManualArrayToCollectionCopy
       for ( RolapMember currentMember : currentMembers ) {
         key.add( currentMember );
@@ -1046,7 +1110,7 @@ public class RolapEvaluator implements Evaluator {
     } else {
       final int[] hierarchyOrdinals = descriptor.getDependentHierarchyOrdinals();
       key = new ArrayList<>( hierarchyOrdinals.length + ( includeAggregationList ? 2 : 1 ) );
-      key.add( descriptor.getExp() );
+      key.add( expKey );
       for ( final int hierarchyOrdinal : hierarchyOrdinals ) {
         final Member member = currentMembers[hierarchyOrdinal];
         assert member != null;
@@ -1063,7 +1127,7 @@ public class RolapEvaluator implements Evaluator {
   public final Object getCachedResult( ExpCacheDescriptor cacheDescriptor ) {
     // Look up a cached result, and if not present, compute one and add to
     // cache. Use a dummy value to represent nulls.
-    final Object key = getExpResultCacheKey( cacheDescriptor );
+    final List<Object> key = getExpResultCacheKey( cacheDescriptor );
     Object result = root.getCacheResult( key );
     if ( result == null ) {
       boolean aggCacheDirty = cellReader.isDirty();
@@ -1084,7 +1148,11 @@ public class RolapEvaluator implements Evaluator {
         // evaluation uses missing aggregates.
         isValidResult = false;
       }
-      root.putCacheResult( key, result == null ? nullResult : result, isValidResult );
+      if ( cacheDescriptor.isMemoized() ) {
+        root.putMemoizedResult( key, result == null ? nullResult : result, isValidResult );
+      } else {
+        root.putCacheResult( key, result == null ? nullResult : result, isValidResult );
+      }
     } else if ( result == nullResult ) {
       result = null;
     }
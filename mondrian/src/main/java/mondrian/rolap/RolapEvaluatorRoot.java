@@ -46,6 +46,13 @@ class RolapEvaluatorRoot {
   int expResultCacheHitCount;
   int expResultCacheMissCount;
 
+  /**
+   * Estimated size, in bytes, of the valid and temporary results of memoized expressions in the expression result
+   * cache.
+   */
+  private long memoizedBytes;
+  private long tmpMemoizedBytes;
+
   /**
    * Default members of each hierarchy, from the schema reader's perspective. Finding the default member is moderately
    * expensive, but happens very often.
@@ -66,6 +73,12 @@ class RolapEvaluatorRoot {
   int recursionCheckCommandCount;
   public final Execution execution;
 
+  /**
+   * Depth of the calculated members whose cell requests are being predicted by {@link CellRequestPlanner}, or -1 if
+   * cells are being evaluated.
+   */
+  int planningDepth = -1;
+
   /**
    * Creates a RolapEvaluatorRoot.
    *
@@ -121,6 +134,43 @@ class RolapEvaluatorRoot {
     this.recursionCheckCommandCount = ( defaultMembers.length << 4 );
   }
 
+  /**
+   * Creates a RolapEvaluatorRoot with the same statement, cube and default members as another, but with its own
+   * expression caches, so that it can be used on another thread. It compiles its own copy of each expression that the
+   * other root has compiled, because a compiled expression may hold state and so must not be shared between threads.
+   * Must be called on the thread executing the query; the other root must not be used while it is being copied.
+   *
+   * @param parent
+   *          Root to copy
+   */
+  protected RolapEvaluatorRoot( RolapEvaluatorRoot parent ) {
+    this.execution = parent.execution;
+    this.statement = parent.statement;
+    this.query = parent.query;
+    this.cube = parent.cube;
+    this.connection = parent.connection;
+    this.schemaReader = parent.schemaReader;
+    this.queryStartTime = parent.queryStartTime;
+    this.defaultMembers = parent.defaultMembers;
+    this.nonAllPositions = parent.nonAllPositions;
+    this.nonAllPositionCount = parent.nonAllPositionCount;
+    this.currentDialect = parent.currentDialect;
+    this.recursionCheckCommandCount = parent.recursionCheckCommandCount;
+    for ( CompiledExpKey key : parent.compiledExps.keySet() ) {
+      compiledExps.put( key, statement.getQuery().compileExpression( key.exp, key.scalar, key.resultStyle ) );
+    }
+  }
+
+  /**
+   * Creates a root with the same statement, cube and default members as this one, but with its own expression caches,
+   * so that it can be used on another thread.
+   *
+   * @return New root
+   */
+  RolapEvaluatorRoot fork() {
+    return new RolapEvaluatorRoot( this );
+  }
+
   /**
    * Implements a cheap-and-cheerful mapping from expressions to compiled expressions.
    *
@@ -139,6 +189,11 @@ class RolapEvaluatorRoot {
     CompiledExpKey key = new CompiledExpKey( exp, scalar, resultStyle );
     Calc calc = compiledExps.get( key );
     if ( calc == null ) {
+      if ( EvaluationPool.isPoolThread() ) {
+        // Compiling uses the query's statement, which belongs to the
+        // thread executing the query.
+        throw EvaluationPool.QueryThreadRequiredException.INSTANCE;
+      }
       calc = statement.getQuery().compileExpression( exp, scalar, resultStyle );
       compiledExps.put( key, calc );
     }
@@ -245,6 +300,51 @@ class RolapEvaluatorRoot {
     }
   }
 
+  /**
+   * Puts the result of a memoized expression in cache, if the budget for memoized results allows.
+   *
+   * @param key
+   *          key, a list of the expression and the members it depends on
+   * @param result
+   *          value to be cached
+   * @param isValidResult
+   *          indicate if this result is valid
+   * @return whether the result was cached
+   *
+   * @see MondrianProperties#ExpMemoizationBudget
+   */
+  final boolean putMemoizedResult( List<Object> key, Object result, boolean isValidResult ) {
+    // Entry, key list, key array, and a reference per element.
+    final long bytes = 96 + 8L * key.size() + estimateBytes( result );
+    if ( memoizedBytes + tmpMemoizedBytes + bytes > MondrianProperties.instance().ExpMemoizationBudget.get() ) {
+      return false;
+    }
+    putCacheResult( key, result, isValidResult );
+    if ( isValidResult ) {
+      memoizedBytes += bytes;
+    } else {
+      tmpMemoizedBytes += bytes;
+    }
+    return true;
+  }
+
+  /**
+   * Estimates the memory used by a cached value. Lists count a reference per member; the members themselves are
+   * shared with the schema.
+   */
+  private static long estimateBytes( Object value ) {
+    if ( value instanceof TupleList ) {
+      final TupleList tupleList = (TupleList) value;
+      return 64 + 8L * tupleList.size() * tupleList.getArity();
+    } else if ( value instanceof Collection ) {
+      return 64 + 8L * ( (Collection<?>) value ).size();
+    } else if ( value instanceof String ) {
+      return 40 + 2L * ( (String) value ).length();
+    } else {
+      return 16;
+    }
+  }
+
   /**
    * Gets result from cache.
    *
@@ -272,8 +372,10 @@ class RolapEvaluatorRoot {
   public final void clearResultCache( boolean clearValidResult ) {
     if ( clearValidResult ) {
       expResultCache.clear();
+      memoizedBytes = 0;
     }
     tmpExpResultCache.clear();
+    tmpMemoizedBytes = 0;
   }
 
   /**
@@ -18,6 +18,7 @@ import mondrian.rolap.format.FormatterCreateContext;
 import mondrian.rolap.format.FormatterFactory;
 import mondrian.spi.Dialect;
 import mondrian.spi.PropertyFormatter;
+import mondrian.util.Pair;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -28,6 +29,7 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <code>RolapLevel</code> implements {@link Level} for a ROLAP database.
@@ -89,6 +91,20 @@ public class RolapLevel extends LevelBase {
     private final Map<String, Annotation> annotationMap;
     private final SqlStatement.Type internalType; // may be null
 
+    /** Closure index over the members of this parent-child level, built on
+     * first use, paired with the member cache flush count of the shared
+     * level when it was built. The index is null if the members do not form
+     * a tree. */
+    private volatile Pair<ParentChildIndex, Integer> parentChildIndex;
+
+    /** Number of times the member cache has been flushed for this level. */
+    private final AtomicInteger memberCacheFlushCount = new AtomicInteger();
+
+    /** Store of lazily loaded property values; created on first use. */
+    private volatile MemberPropertyStore memberPropertyStore;
+
+    private static final RolapProperty[] NO_PROPERTIES = new RolapProperty[0];
+
     /**
      * Creates a level.
      *
@@ -308,6 +324,77 @@ public class RolapLevel extends LevelBase {
         return parentExp;
     }
 
+    /**
+     * Returns the in-memory closure index over the members of this
+     * parent-child level.
+     *
+     * <p>Returns null if this is not a parent-child level, if
+     * {@link MondrianProperties#EnableParentChildIndex} is disabled, or if
+     * the members do not form a tree. The index covers the whole hierarchy,
+     * regardless of any role. An index built before the member cache was
+     * last flushed is discarded.
+     *
+     * @param build Whether to read the level's members and build the index
+     *   if it has not been built yet
+     * @return Closure index, or null
+     */
+    public ParentChildIndex getParentChildIndex(boolean build) {
+        if (!isParentChild()
+            || !MondrianProperties.instance().EnableParentChildIndex.get())
+        {
+            return null;
+        }
+        final int flushCount = getSharedLevel().memberCacheFlushCount.get();
+        Pair<ParentChildIndex, Integer> entry = parentChildIndex;
+        if ((entry == null || entry.right != flushCount) && build) {
+            synchronized (this) {
+                entry = parentChildIndex;
+                if (entry == null || entry.right != flushCount) {
+                    entry =
+                        Pair.of(
+                            ParentChildIndex.build(
+                                getHierarchy().getMemberReader()
+                                    .getMembersInLevel(this)),
+                            flushCount);
+                    parentChildIndex = entry;
+                }
+            }
+        }
+        return entry == null || entry.right != flushCount
+            ? null
+            : entry.left;
+    }
+
+    /**
+     * Returns the level whose members the members of this level are. A
+     * shared level returns itself; a cube level returns its underlying
+     * level.
+     */
+    RolapLevel getSharedLevel() {
+        return this;
+    }
+
+    /**
+     * Discards what has been derived from the members of this level when the
+     * member cache is flushed: the closure index of a parent-child level,
+     * and lazily loaded property values.
+     *
+     * @param key Key of the member that was flushed, or null if all members
+     *   of the level were flushed
+     */
+    void flushMemberCache(Object key) {
+        final RolapLevel sharedLevel = getSharedLevel();
+        sharedLevel.memberCacheFlushCount.incrementAndGet();
+        final MemberPropertyStore store = sharedLevel.memberPropertyStore;
+        if (store != null) {
+            if (key == null) {
+                store.clear();
+            } else {
+                store.remove(key);
+            }
+        }
+    }
+
     // RME: this has to be public for two of the DrillThroughTest test.
     public
     MondrianDef.Expression getNameExp() {
@@ -474,6 +561,50 @@ public class RolapLevel extends LevelBase {
         return properties;
     }
 
+    /**
+     * Returns the properties whose values are read by the same SQL statement
+     * as the members of this level.
+     *
+     * <p>Empty if the properties are loaded lazily; see
+     * {@link #isLazyProperties()}.
+     */
+    public RolapProperty[] getSqlProperties() {
+        return isLazyProperties() ? NO_PROPERTIES : properties;
+    }
+
+    /**
+     * Returns whether the property values of this level's members are
+     * loaded lazily, in batches, rather than with the members.
+     *
+     * <p>True if {@link MondrianProperties#LazyMemberProperties} is enabled,
+     * the level has properties, and each member is identified by its key
+     * alone, so that the values can be read by key.
+     */
+    public boolean isLazyProperties() {
+        return properties.length > 0
+            && !isAll()
+            && (isUnique() || areMembersUnique())
+            && MondrianProperties.instance().LazyMemberProperties.get();
+    }
+
+    /**
+     * Returns the store of property values of this level's members, or null
+     * if the properties are not loaded lazily.
+     */
+    public MemberPropertyStore getMemberPropertyStore() {
+        if (!isLazyProperties()) {
+            return null;
+        }
+        if (memberPropertyStore == null) {
+            synchronized (this) {
+                if (memberPropertyStore == null) {
+                    memberPropertyStore = new MemberPropertyStore(this);
+                }
+            }
+        }
+        return memberPropertyStore;
+    }
+
     public Property[] getInheritedProperties() {
         return inheritedProperties;
     }
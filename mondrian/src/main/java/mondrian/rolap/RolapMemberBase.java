@@ -462,7 +462,42 @@ public class RolapMemberBase
                 // fall through
             }
         }
-        return getPropertyFromMap(propertyName, matchCase);
+        final Object value = getPropertyFromMap(propertyName, matchCase);
+        if (value == null) {
+            return getLazyPropertyValue(propertyName, matchCase);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of a level property whose values are loaded lazily,
+     * loading it if necessary; null if the level's properties are read with
+     * its members or there is no such property.
+     *
+     * @see MemberPropertyStore
+     */
+    private Object getLazyPropertyValue(
+        String propertyName,
+        boolean matchCase)
+    {
+        if (getMemberType() == MemberType.FORMULA) {
+            return null;
+        }
+        final MemberPropertyStore store = getLevel().getMemberPropertyStore();
+        if (store == null) {
+            return null;
+        }
+        final RolapProperty[] properties = getLevel().getProperties();
+        for (int i = 0; i < properties.length; i++) {
+            final String name = properties[i].getName();
+            if (matchCase
+                ? name.equals(propertyName)
+                : name.equalsIgnoreCase(propertyName))
+            {
+                return store.getPropertyValue(this, i);
+            }
+        }
+        return null;
     }
 
     /**
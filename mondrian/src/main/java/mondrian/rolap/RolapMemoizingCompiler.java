@@ -0,0 +1,203 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.calc.BatchCalc;
+import mondrian.calc.Calc;
+import mondrian.calc.DoubleCalc;
+import mondrian.calc.ExpCompiler;
+import mondrian.calc.ResultStyle;
+import mondrian.calc.TupleList;
+import mondrian.calc.impl.AbstractCalc;
+import mondrian.calc.impl.DelegatingExpCompiler;
+import mondrian.calc.impl.GenericCalc;
+import mondrian.calc.impl.MemberArrayValueCalc;
+import mondrian.calc.impl.MemberValueCalc;
+import mondrian.calc.impl.TupleValueCalc;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Exp;
+import mondrian.olap.ExpCacheDescriptor;
+import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.fun.FunUtil;
+import mondrian.olap.type.ScalarType;
+import mondrian.olap.type.SetType;
+
+/**
+ * Compiler that memoizes the values of expensive sub-expressions which depend on fewer hierarchies than the
+ * expression that contains them.
+ *
+ * <p>
+ * A sub-expression is expensive if it changes the context, as a tuple or a member value does, or evaluates a set. It
+ * is wrapped in a {@link MemoizedCalc}. When the outermost scalar expression has been compiled, each wrapper is
+ * enabled if there is a hierarchy that the outermost expression depends on but the wrapped expression does not. An
+ * enabled wrapper looks up its value in the expression result cache, keyed by the current members of only the
+ * hierarchies it depends on. For example, in
+ *
+ * <blockquote><code>[Measures].[Sales] / ([Measures].[Sales], [Product].[All Products])</code></blockquote>
+ *
+ * the denominator does not depend on the product, so it is evaluated once for each combination of the other members
+ * in the context, rather than once per cell.
+ *
+ * @see MondrianProperties#EnableExpMemoization
+ * @see MondrianProperties#ExpMemoizationBudget
+ */
+class RolapMemoizingCompiler extends DelegatingExpCompiler {
+  /**
+   * Number of scalar expressions being compiled.
+   */
+  private int depth;
+
+  RolapMemoizingCompiler( ExpCompiler compiler ) {
+    super( compiler );
+  }
+
+  protected Calc afterCompile( Exp exp, Calc calc, boolean mutable ) {
+    calc = super.afterCompile( exp, calc, mutable );
+    if ( isExpensive( calc ) ) {
+      return new MemoizedCalc(
+        exp, calc, new ExpCacheDescriptor( exp, calc, getEvaluator(), true ) );
+    }
+    return calc;
+  }
+
+  public Calc compileScalar( Exp exp, boolean specific ) {
+    final Calc calc;
+    ++depth;
+    try {
+      calc = super.compileScalar( exp, specific );
+    } finally {
+      --depth;
+    }
+    if ( depth == 0 ) {
+      enable( calc, getDependentHierarchies( calc ) );
+    }
+    return calc;
+  }
+
+  private static boolean isExpensive( Calc calc ) {
+    if ( calc == null
+      || calc instanceof MemoizedCalc
+      || !( calc.getType() instanceof ScalarType ) ) {
+      return false;
+    }
+    if ( calc instanceof MemberValueCalc
+      || calc instanceof MemberArrayValueCalc
+      || calc instanceof TupleValueCalc ) {
+      return true;
+    }
+    if ( calc instanceof AbstractCalc ) {
+      final Calc[] operands = ( (AbstractCalc) calc ).getCalcs();
+      if ( operands != null ) {
+        for ( Calc operand : operands ) {
+          if ( operand != null && operand.getType() instanceof SetType ) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean[] getDependentHierarchies( Calc calc ) {
+    final Member[] members = getEvaluator().getMembers();
+    final boolean[] dependents = new boolean[members.length];
+    for ( int i = 0; i < members.length; i++ ) {
+      dependents[i] = calc.dependsOn( members[i].getHierarchy() );
+    }
+    return dependents;
+  }
+
+  /**
+   * Enables the memoized sub-expressions of an expression that do not depend on all of the hierarchies that the
+   * expression depends on.
+   */
+  private static void enable( Calc calc, boolean[] rootDependents ) {
+    if ( calc instanceof MemoizedCalc ) {
+      final MemoizedCalc memoizedCalc = (MemoizedCalc) calc;
+      final boolean[] dependents = new boolean[rootDependents.length];
+      for ( int ordinal : memoizedCalc.descriptor.getDependentHierarchyOrdinals() ) {
+        dependents[ordinal] = true;
+      }
+      for ( int i = 0; i < rootDependents.length; i++ ) {
+        if ( rootDependents[i] && !dependents[i] ) {
+          memoizedCalc.enabled = true;
+          break;
+        }
+      }
+    }
+    if ( calc instanceof AbstractCalc ) {
+      final Calc[] operands = ( (AbstractCalc) calc ).getCalcs();
+      if ( operands != null ) {
+        for ( Calc operand : operands ) {
+          enable( operand, rootDependents );
+        }
+      }
+    }
+  }
+
+  /**
+   * Calc that, if enabled, looks up the value of an expression in the expression result cache, and otherwise
+   * evaluates the expression.
+   */
+  static class MemoizedCalc extends GenericCalc implements BatchCalc {
+    private final Calc calc;
+    private final ExpCacheDescriptor descriptor;
+    /**
+     * Whether to memoize. Set once the outermost expression has been compiled, and read by the threads that evaluate
+     * the expression.
+     */
+    private volatile boolean enabled;
+
+    MemoizedCalc( Exp exp, Calc calc, ExpCacheDescriptor descriptor ) {
+      super( exp, new Calc[] { calc } );
+      this.calc = calc;
+      this.descriptor = descriptor;
+    }
+
+    public Object evaluate( Evaluator evaluator ) {
+      if ( isEnabled( evaluator ) ) {
+        return evaluator.getCachedResult( descriptor );
+      }
+      return calc.evaluate( evaluator );
+    }
+
+    /**
+     * Returns whether to look up the value in the cache. In NON EMPTY context, the cache key contains every current
+     * member, so a memoized value would never be reused.
+     */
+    private boolean isEnabled( Evaluator evaluator ) {
+      return enabled && !evaluator.isNonEmpty();
+    }
+
+    public double evaluateDouble( Evaluator evaluator ) {
+      if ( !isEnabled( evaluator ) && calc instanceof DoubleCalc ) {
+        return ( (DoubleCalc) calc ).evaluateDouble( evaluator );
+      }
+      return super.evaluateDouble( evaluator );
+    }
+
+    public int evaluateDoubles( Evaluator evaluator, TupleList tupleList, double[] values ) {
+      if ( !isEnabled( evaluator ) && calc instanceof BatchCalc ) {
+        return ( (BatchCalc) calc ).evaluateDoubles( evaluator, tupleList, values );
+      }
+      return FunUtil.evaluateEachDouble( evaluator, tupleList, this, values );
+    }
+
+    public ResultStyle getResultStyle() {
+      return calc.getResultStyle();
+    }
+  }
+}
+
+// End RolapMemoizingCompiler.java
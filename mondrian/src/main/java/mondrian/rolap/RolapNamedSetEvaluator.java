@@ -44,6 +44,9 @@ class RolapNamedSetEvaluator implements Evaluator.NamedSetEvaluator, TupleList.P
   /** Value of this named set; set on first use. */
   private TupleList list;
 
+  /** Value of this named set, without the position callback; set on first use. */
+  private TupleList rawList;
+
   /**
    * Dummy list used as a marker to detect re-entrant calls to {@link #ensureList}.
    */
@@ -68,6 +71,24 @@ class RolapNamedSetEvaluator implements Evaluator.NamedSetEvaluator, TupleList.P
     this.namedSet = namedSet;
   }
 
+  /**
+   * Creates a copy of this evaluator for another root of the same result, or returns null if this named set has not
+   * been evaluated or is dynamic. The copy shares the value of the named set, and has its own current ordinal.
+   *
+   * @param rrer
+   *          Evaluation root context of the copy
+   * @return Copy, or null
+   */
+  RolapNamedSetEvaluator copy( RolapResult.RolapResultEvaluatorRoot rrer ) {
+    if ( rawList == null || namedSet.isDynamic() ) {
+      return null;
+    }
+    final RolapNamedSetEvaluator copy = new RolapNamedSetEvaluator( rrer, namedSet );
+    copy.rawList = rawList;
+    copy.list = rawList.withPositionCallback( copy );
+    return copy;
+  }
+
   public TupleIterable evaluateTupleIterable( Evaluator evaluator ) {
     ensureList( evaluator );
     return list;
@@ -122,6 +143,7 @@ class RolapNamedSetEvaluator implements Evaluator.NamedSetEvaluator, TupleList.P
       // Wrap list so that currentOrdinal is updated whenever the list
       // is accessed. The list is immutable, because we don't override
       // AbstractList.set(int, Object).
+      this.rawList = rawList;
       this.list = rawList.withPositionCallback( this );
     } finally {
       if ( this.list == DUMMY_LIST ) {
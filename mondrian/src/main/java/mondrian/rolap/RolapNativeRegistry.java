@@ -12,8 +12,14 @@
 
 package mondrian.rolap;
 
+import mondrian.calc.Calc;
+import mondrian.calc.ListCalc;
+import mondrian.calc.ResultStyle;
+import mondrian.calc.TupleList;
+import mondrian.olap.Evaluator;
 import mondrian.olap.Exp;
 import mondrian.olap.FunDef;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.NativeEvaluator;
 
 import java.util.HashMap;
@@ -78,6 +84,51 @@ public class RolapNativeRegistry extends RolapNative {
         return ne;
     }
 
+    /**
+     * Returns the matching NativeEvaluator or null if <code>fun</code> can not
+     * be executed in SQL for the given context and arguments, learning from
+     * past evaluations whether SQL is faster.
+     *
+     * <p>If {@link MondrianProperties#EnableAdaptiveNative} is set and
+     * <code>calc</code> is a list calc, the evaluator that is returned
+     * records how long it took in the server's
+     * {@link NativeDecisionHistory}. If the history shows that calls of the
+     * same shape are faster in memory, the evaluator that is returned
+     * evaluates <code>calc</code> with native evaluation disabled, and
+     * records that instead.
+     *
+     * @param revaluator Evaluator, simplified to the hierarchies that the
+     *     call depends on
+     * @param fun Function
+     * @param args Arguments of the call
+     * @param evaluator Evaluator of the caller
+     * @param calc Calc that evaluates the call, and would otherwise evaluate
+     *     it in memory
+     */
+    public NativeEvaluator createEvaluator(
+        RolapEvaluator revaluator,
+        FunDef fun,
+        Exp[] args,
+        Evaluator evaluator,
+        Calc calc)
+    {
+        final NativeDecisionHistory history =
+            calc instanceof ListCalc
+                ? NativeDecisionHistory.of(evaluator)
+                : null;
+        final NativeEvaluator ne = createEvaluator(revaluator, fun, args);
+        if (history == null || ne == null) {
+            return ne;
+        }
+        final String shape =
+            NativeDecisionHistory.shape(evaluator, fun.getName(), args);
+        if (history.chooseNative(shape, true)) {
+            return new RecordingEvaluator(history, shape, evaluator, ne);
+        }
+        return new InMemoryEvaluator(
+            history, shape, evaluator, (ListCalc) calc);
+    }
+
     public void register(String funName, RolapNative rn) {
         writeLock.lock();
         try {
@@ -129,6 +180,80 @@ public class RolapNativeRegistry extends RolapNative {
             readLock.unlock();
         }
     }
+
+    /**
+     * Native evaluator that records how long its delegate takes.
+     */
+    private static class RecordingEvaluator implements NativeEvaluator {
+        private final NativeDecisionHistory history;
+        private final String shape;
+        private final Evaluator evaluator;
+        private final NativeEvaluator ne;
+
+        RecordingEvaluator(
+            NativeDecisionHistory history,
+            String shape,
+            Evaluator evaluator,
+            NativeEvaluator ne)
+        {
+            this.history = history;
+            this.shape = shape;
+            this.evaluator = evaluator;
+            this.ne = ne;
+        }
+
+        public Object execute(ResultStyle resultStyle) {
+            final NativeDecisionHistory.Sample sample =
+                history.start(evaluator, shape, true);
+            final Object result = ne.execute(resultStyle);
+            // A lazy iterable has not done its work yet, so its time
+            // would mislead.
+            if (result instanceof TupleList) {
+                sample.end(((TupleList) result).size());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Evaluator that evaluates a call in memory, by evaluating its calc
+     * with native evaluation disabled, and records how long it takes.
+     */
+    private static class InMemoryEvaluator implements NativeEvaluator {
+        private final NativeDecisionHistory history;
+        private final String shape;
+        private final Evaluator evaluator;
+        private final ListCalc calc;
+
+        InMemoryEvaluator(
+            NativeDecisionHistory history,
+            String shape,
+            Evaluator evaluator,
+            ListCalc calc)
+        {
+            this.history = history;
+            this.shape = shape;
+            this.evaluator = evaluator;
+            this.calc = calc;
+        }
+
+        public Object execute(ResultStyle resultStyle) {
+            // The cells that the calc reads, and are not cached, are loaded
+            // after this pass; the sample is charged for loading them.
+            final NativeDecisionHistory.Sample sample =
+                history.start(evaluator, shape, false);
+            final TupleList result;
+            final int savepoint = evaluator.savepoint();
+            try {
+                evaluator.setNativeEnabled(false);
+                result = calc.evaluateList(evaluator);
+            } finally {
+                evaluator.restore(savepoint);
+            }
+            sample.end(result.size());
+            return result;
+        }
+    }
 }
 
 // End RolapNativeRegistry.java
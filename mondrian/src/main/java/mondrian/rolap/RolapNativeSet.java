@@ -13,6 +13,7 @@
 package mondrian.rolap;
 
 import mondrian.calc.ResultStyle;
+import mondrian.calc.TupleIterable;
 import mondrian.calc.TupleList;
 import mondrian.calc.impl.DelegatingTupleList;
 import mondrian.olap.Access;
@@ -122,11 +123,21 @@ public abstract class RolapNativeSet extends RolapNative {
       RolapCube baseCube,
       AggStar aggStar ) {
       super.addConstraint( sqlQuery, baseCube, aggStar );
+      final boolean roleConstraints =
+        MondrianProperties.instance().EnableNativeRoleConstraints.get();
       for ( CrossJoinArg arg : args ) {
         if ( canApplyCrossJoinArgConstraint( arg ) ) {
           RolapLevel level = arg.getLevel();
           if ( level == null || levelIsOnBaseCube( baseCube, level ) ) {
             arg.addConstraint( sqlQuery, baseCube, aggStar );
+            if ( level != null && roleConstraints ) {
+              // Push the role's member grants into the SQL. Rows
+              // which get through are still checked in
+              // filterInaccessibleTuples.
+              SqlConstraintUtils.addRoleMemberConstraint(
+                sqlQuery, baseCube, aggStar,
+                getEvaluator().getSchemaReader(), level );
+            }
           }
         }
       }
@@ -204,6 +215,10 @@ public abstract class RolapNativeSet extends RolapNative {
         case ITERABLE:
           for ( CrossJoinArg arg : this.args ) {
             if ( arg.getLevel().getDimension().isHighCardinality() ) {
+              final TupleIterable keysetIterable = executeKeyset();
+              if ( keysetIterable != null ) {
+                return keysetIterable;
+              }
               // If any of the dimensions is a HCD,
               // use the proper tuple reader.
               return executeList(
@@ -223,6 +238,36 @@ public abstract class RolapNativeSet extends RolapNative {
       }
     }
 
+    /**
+     * Returns an iterable that reads the members of a single level in
+     * chunks, or null if keyset paging is disabled or does not apply.
+     *
+     * @see KeysetMemberIterable
+     */
+    private TupleIterable executeKeyset() {
+      final int chunkSize =
+        MondrianProperties.instance().HighCardKeysetChunkSize.get();
+      if ( chunkSize <= 0
+        || args.length != 1
+        || args[ 0 ].getMembers() != null
+        || maxRows > 0
+        || completeWithNullValues
+        || !KeysetMemberIterable.isSupported( args[ 0 ].getLevel() ) ) {
+        return null;
+      }
+      final CrossJoinArg arg = args[ 0 ];
+      return new KeysetMemberIterable(
+        constraint, arg.getLevel(), schemaReader.getDataSource(), chunkSize ) {
+        protected void addLevel( SqlTupleReader reader ) {
+          SetEvaluator.this.addLevel( reader, arg );
+        }
+
+        protected TupleList filter( TupleList chunk ) {
+          return filterInaccessibleTuples( chunk );
+        }
+      };
+    }
+
     protected TupleList executeList( final SqlTupleReader tr ) {
       tr.setMaxRows( maxRows );
       for ( CrossJoinArg arg : args ) {
@@ -0,0 +1,198 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Query;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of queries that have been parsed, validated and compiled.
+ *
+ * <p>
+ * When a query that came from the cache, or was added to it when it was parsed, is closed, it is kept in the cache
+ * instead of being discarded. When the same MDX text is parsed again, by the same connection and with the same values
+ * of the properties that affect validation and compilation, the kept query is returned, and is neither parsed,
+ * validated nor compiled again. Until it is closed again, the caller has it to itself: a query whose text is being
+ * parsed while another caller has the cached query is parsed as usual. So compiled expressions, which may hold state,
+ * and calculated members are never shared between callers.
+ *
+ * <p>
+ * A query belongs to the connection that parsed it, and so is only reused by that connection. Its statement-scoped
+ * parameters, whose names and types are fixed by the MDX text, are reused too; their values are unset when the query
+ * is returned to the cache, so that each caller starts with the default values.
+ *
+ * <p>
+ * The cache belongs to a {@link RolapSchema}, so it is discarded when the schema is flushed. It is also cleared when
+ * members are flushed or edited through {@link mondrian.olap.CacheControl}, because cached queries refer to the
+ * members they have looked up. Flushing cells does not affect compiled queries, and does not clear it.
+ *
+ * @see MondrianProperties#QueryPlanCacheSize
+ */
+class RolapQueryPlanCache {
+  private final Map<List<Object>, Query> map =
+    new LinkedHashMap<List<Object>, Query>( 16, 0.75f, true ) {
+      protected boolean removeEldestEntry( Map.Entry<List<Object>, Query> eldest ) {
+        if ( size() > MondrianProperties.instance().QueryPlanCacheSize.get() ) {
+          eldest.getValue().getStatement().close();
+          return true;
+        }
+        return false;
+      }
+    };
+  private int hitCount;
+  private int missCount;
+
+  /**
+   * Removes a query from the cache and returns it, or returns null if the query is not cached.
+   *
+   * <p>
+   * The query is returned to the cache when the caller closes it.
+   *
+   * @param mdx
+   *          MDX text
+   * @param connection
+   *          Connection that is parsing the query
+   * @return Cached query, or null
+   */
+  Query get( String mdx, RolapConnection connection ) {
+    if ( MondrianProperties.instance().QueryPlanCacheSize.get() <= 0 ) {
+      return null;
+    }
+    final List<Object> key = key( mdx, connection );
+    final Query query;
+    synchronized ( map ) {
+      query = map.remove( key );
+      if ( query == null ) {
+        ++missCount;
+        return null;
+      }
+      ++hitCount;
+    }
+    query.setOwnStatement( true );
+    query.setCloseAction( () -> release( key, query ) );
+    return query;
+  }
+
+  /**
+   * Arranges for a query that has just been parsed to be added to the cache when it is closed.
+   *
+   * @param mdx
+   *          MDX text
+   * @param connection
+   *          Connection that parsed the query
+   * @param query
+   *          Parsed query; it must own its statement
+   */
+  void put( String mdx, RolapConnection connection, Query query ) {
+    if ( MondrianProperties.instance().QueryPlanCacheSize.get() <= 0 ) {
+      return;
+    }
+    final List<Object> key = key( mdx, connection );
+    query.setCloseAction( () -> release( key, query ) );
+  }
+
+  /**
+   * Adds a query that has been closed to the cache, or closes its statement if the cache already holds a query with
+   * the same key.
+   */
+  private void release( List<Object> key, Query query ) {
+    query.setOwnStatement( false );
+    if ( query.getStatement().getCurrentExecution() == null && query.getStatement().getProfileHandler() == null ) {
+      query.reset();
+      synchronized ( map ) {
+        if ( MondrianProperties.instance().QueryPlanCacheSize.get() > 0 && !map.containsKey( key ) ) {
+          map.put( key, query );
+          return;
+        }
+      }
+    }
+    // The query is still executing, or has a profile handler that the next
+    // caller did not ask for, or is not needed.
+    query.getStatement().close();
+  }
+
+  /**
+   * Removes all queries from the cache.
+   */
+  void clear() {
+    synchronized ( map ) {
+      for ( Query query : map.values() ) {
+        query.getStatement().close();
+      }
+      map.clear();
+    }
+  }
+
+  /**
+   * Removes the queries of a connection from the cache. Called when the connection is closed.
+   *
+   * @param connection
+   *          Connection
+   */
+  void clear( RolapConnection connection ) {
+    synchronized ( map ) {
+      for ( Iterator<Map.Entry<List<Object>, Query>> iterator = map.entrySet().iterator(); iterator.hasNext(); ) {
+        final Map.Entry<List<Object>, Query> entry = iterator.next();
+        if ( entry.getKey().get( 1 ) == connection ) {
+          entry.getValue().getStatement().close();
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of lookups that found a cached query.
+   */
+  int getHitCount() {
+    synchronized ( map ) {
+      return hitCount;
+    }
+  }
+
+  /**
+   * Returns the number of lookups that did not find a cached query, and so led to the query being parsed.
+   */
+  int getMissCount() {
+    synchronized ( map ) {
+      return missCount;
+    }
+  }
+
+  private static List<Object> key( String mdx, RolapConnection connection ) {
+    final MondrianProperties properties = MondrianProperties.instance();
+    return Arrays.<Object>asList(
+      mdx,
+      connection,
+      connection.getRole(),
+      connection.getLocale(),
+      properties.IgnoreInvalidMembersDuringQuery.get(),
+      properties.CaseSensitive.get(),
+      properties.NeedDimensionPrefix.get(),
+      properties.SsasCompatibleNaming.get(),
+      properties.ExpCompilerClass.get(),
+      properties.TestExpDependencies.get(),
+      properties.EnableExpMemoization.get(),
+      properties.GenerateCalcCode.get(),
+      properties.HoistInvariantSets.get(),
+      properties.SimplifyExpressions.get() );
+  }
+}
+
+// End RolapQueryPlanCache.java
@@ -17,11 +17,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -44,6 +47,7 @@ import mondrian.mdx.DimensionExpr;
 import mondrian.mdx.HierarchyExpr;
 import mondrian.mdx.MdxVisitorImpl;
 import mondrian.mdx.MemberExpr;
+import mondrian.mdx.NamedSetExpr;
 import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.Axis;
 import mondrian.olap.Cell;
@@ -73,6 +77,8 @@ import mondrian.olap.fun.VisualTotalsFunDef.VisualTotalMember;
 import mondrian.olap.fun.sort.Sorter;
 import mondrian.olap.type.ScalarType;
 import mondrian.olap.type.SetType;
+import mondrian.olap.type.TupleType;
+import mondrian.olap.type.Type;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.agg.AggregationManager;
 import mondrian.rolap.agg.CellRequestQuantumExceededException;
@@ -108,6 +114,11 @@ public class RolapResult extends ResultBase {
   private final Map<Integer, Integer> positionsIndexes = new HashMap<Integer, Integer>();
   private final Map<Integer, List<List<Member>>> positionsCurrent = new HashMap<Integer, List<List<Member>>>();
 
+  /**
+   * Names of the pool threads on which parts of this result have been evaluated.
+   */
+  private final Set<String> forkedThreadNames = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
   /**
    * Creates a RolapResult.
    *
@@ -137,7 +148,7 @@ public class RolapResult extends ResultBase {
     RolapCube cube = (RolapCube) query.getCube();
     this.batchingReader = new FastBatchingCellReader( execution, cube, aggMgr );
 
-    this.cellInfos = ( query.axes.length > 4 ) ? new CellInfoMap( point ) : new CellInfoPool( query.axes.length );
+    this.cellInfos = newCellInfoContainer( query.axes.length, point );
 
     if ( !execute ) {
       return;
@@ -448,17 +459,34 @@ public class RolapResult extends ResultBase {
       // Execute Axes
       //
       final int savepoint = evaluator.savepoint();
+      final List<List<Integer>> axisGroups = getConcurrentAxisGroups( evaluator, query );
       do {
         try {
           boolean redo;
           do {
             evaluator.restore( savepoint );
             redo = false;
+            TupleList[] axisLists = null;
+            if ( axisGroups != null ) {
+              try {
+                axisLists = executeAxesConcurrently( evaluator, query, nonAllMembers, axisGroups );
+              } catch ( EvaluationPool.QueryThreadRequiredException e ) {
+                // An axis needed a named set or parameter; evaluate the
+                // axes on this thread.
+                evaluator.restore( savepoint );
+              }
+            }
             for ( int i = 0; i < axes.length; i++ ) {
               QueryAxis axis = query.axes[i];
               final Calc calc = query.axisCalcs[i];
               TupleIterable tupleIterable =
-                  evalExecute( nonAllMembers, nonAllMembers.size() - 1, evaluator, axis, calc );
+                  axisLists != null ? axisLists[i]
+                      : evalExecute( nonAllMembers, nonAllMembers.size() - 1, evaluator, axis, calc );
+              if ( tupleIterable instanceof KeysetMemberIterable ) {
+                // Read the members of a high-cardinality level only as the
+                // axis is accessed.
+                tupleIterable = ( (KeysetMemberIterable) tupleIterable ).toList();
+              }
 
               if ( !nonAllMembers.isEmpty() ) {
                 final TupleIterator tupleIterator = tupleIterable.tupleIterator();
@@ -494,6 +522,21 @@ public class RolapResult extends ResultBase {
 
       evaluator.restore( savepoint );
 
+      // Load the properties named in each axis's DIMENSION PROPERTIES clause
+      // in one batch per level, rather than one member at a time as the
+      // axes are written.
+      if ( MondrianProperties.instance().LazyMemberProperties.get() ) {
+        for ( int i = 0; i < axes.length; i++ ) {
+          if ( query.axes[i].getDimensionProperties().length > 0 ) {
+            final List<Member> propertyMembers = new ArrayList<Member>();
+            for ( List<Member> position : axes[i].getPositions() ) {
+              propertyMembers.addAll( position );
+            }
+            MemberPropertyStore.loadProperties( propertyMembers );
+          }
+        }
+      }
+
       // Get value for each Cell
       final Locus locus = new Locus( execution, null, "Loading cells" );
       Locus.push( locus );
@@ -549,6 +592,57 @@ public class RolapResult extends ResultBase {
     }
   }
 
+  /**
+   * Creates a RolapResult for an execution of a query from a snapshot of the result of an earlier execution of the same
+   * query.
+   *
+   * <p>
+   * The axes and cell values are those of the snapshot. The new result has its own evaluator, whose context is that of
+   * the root evaluator of the earlier result, and its own copy of the cells, so formatting its cells does not affect
+   * the snapshot or any other result created from it.
+   *
+   * @param execution
+   *          Execution of a statement
+   * @param snapshot
+   *          Snapshot of the result of an earlier execution of the same query
+   */
+  RolapResult( final Execution execution, Snapshot snapshot ) {
+    this( execution, false );
+    System.arraycopy( snapshot.axes, 0, this.axes, 0, this.axes.length );
+    this.slicerAxis = snapshot.slicerAxis;
+    for ( int i = 0; i < this.axes.length; i++ ) {
+      positionsHighCardinality.put( i, false );
+    }
+    evaluator.setSlicerContext( snapshot.slicerMembers, snapshot.slicerMembersByHierarchy );
+    evaluator.setContext( snapshot.members );
+    evaluator.setSlicerTuples( snapshot.slicerTuples );
+    slicerEvaluator = evaluator.push();
+    copyCells( snapshot.cellInfos, this.cellInfos, this.point );
+  }
+
+  /**
+   * Creates a snapshot of this result, from which other executions of the same query can create results without
+   * evaluating it.
+   *
+   * <p>
+   * The snapshot has its own copy of the cells and of the context of the root evaluator, and does not refer to the
+   * statement or execution of this result. Must be called after the query has been executed, and before the cells of
+   * this result are accessed by another thread.
+   *
+   * @return Snapshot of this result
+   */
+  Snapshot snapshot() {
+    return new Snapshot( this );
+  }
+
+  /**
+   * Returns whether the cells of any axis of this result are evaluated on demand, a chunk at a time, rather than
+   * when the query is executed. Such a result is not cached.
+   */
+  boolean hasHighCardinalityAxis() {
+    return positionsHighCardinality.containsValue( true );
+  }
+
   /**
    * Sets slicerAxis to a dummy placeholder RolapAxis containing a single item TupleList with the null member of
    * hierarchy. This is used with compound slicer evaluation to avoid the slicer tuple list from interacting with the
@@ -939,15 +1033,35 @@ public class RolapResult extends ResultBase {
     // evaluator which collects requests.
     int count = 0;
     final int savepoint = evaluator.savepoint();
+    final int parallelism = getCellEvaluationParallelism( evaluator, query );
+    if ( isCellRequestPlanningEnabled( evaluator, query ) ) {
+      planCellRequests( evaluator, query );
+    }
     while ( true ) {
       evaluator.setCellReader( batchingReader );
-      try {
-        executeStripe( query.axes.length - 1, evaluator, pos );
-      } catch ( CellRequestQuantumExceededException e ) {
-        // Safe to ignore. Need to call 'phase' and loop again.
-        // Decrement count because it wasn't a recursive formula that
-        // caused the iteration.
-        --count;
+      boolean sequential = parallelism <= 1;
+      if ( !sequential ) {
+        try {
+          if ( executeStripesInParallel( evaluator, query, pos, parallelism ) ) {
+            --count;
+          }
+        } catch ( EvaluationPool.QueryThreadRequiredException e ) {
+          // A stripe needed a named set or parameter. Evaluate this pass
+          // on this thread, which evaluates them; the stripes of the next
+          // pass start with their values.
+          evaluator.restore( savepoint );
+          sequential = true;
+        }
+      }
+      if ( sequential ) {
+        try {
+          executeStripe( query.axes.length - 1, evaluator, pos, point, false );
+        } catch ( CellRequestQuantumExceededException e ) {
+          // Safe to ignore. Need to call 'phase' and loop again.
+          // Decrement count because it wasn't a recursive formula that
+          // caused the iteration.
+          --count;
+        }
       }
       evaluator.restore( savepoint );
 
@@ -985,6 +1099,466 @@ public class RolapResult extends ResultBase {
     return batchingReader.isDirty();
   }
 
+  /**
+   * Returns whether to predict the cell requests of calculated members before evaluating the cells of this result.
+   *
+   * <p>
+   * Requests are planned only if {@link MondrianProperties#PlanCellRequests} is enabled, a calculated member occurs on
+   * an axis or in the slicer, and no axis is high-cardinality. Dependency-testing evaluators are never planned.
+   */
+  private boolean isCellRequestPlanningEnabled( RolapEvaluator evaluator, Query query ) {
+    if ( !MondrianProperties.instance().PlanCellRequests.get()
+        || evaluator instanceof RolapDependencyTestingEvaluator ) {
+      return false;
+    }
+    boolean calculated = false;
+    for ( int i = 0; i < query.axes.length; i++ ) {
+      final TupleList tupleList = ( (RolapAxis) axes[i] ).getTupleList();
+      if ( isAxisHighCardinality( i, tupleList ) ) {
+        return false;
+      }
+      calculated |= hasCalculatedMember( tupleList );
+    }
+    return calculated || hasCalculatedMember( ( (RolapAxis) slicerAxis ).getTupleList() );
+  }
+
+  private static boolean hasCalculatedMember( TupleList tupleList ) {
+    for ( List<Member> tuple : tupleList ) {
+      for ( Member member : tuple ) {
+        if ( member.isCalculated() ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Predicts the cell requests of every cell of this result, and loads them in one batch.
+   *
+   * <p>
+   * Each cell is planned by {@link CellRequestPlanner}, which requests the cells that every operand of a calculated
+   * member's formula needs, whichever branch of a conditional the data would select. Cell values are not stored.
+   * Values computed while planning are removed from the expression cache, so that they are not used when the cells are
+   * evaluated.
+   */
+  private void planCellRequests( RolapEvaluator evaluator, Query query ) {
+    final int savepoint = evaluator.savepoint();
+    evaluator.setCellReader( batchingReader );
+    evaluator.root.planningDepth = 0;
+    try {
+      planStripe( query.axes.length - 1, evaluator );
+    } catch ( CellRequestQuantumExceededException e ) {
+      // Load the requests planned so far; the rest are made when the
+      // cells are evaluated.
+    } finally {
+      evaluator.root.planningDepth = -1;
+      evaluator.restore( savepoint );
+    }
+    phase();
+    evaluator.clearExpResultCache( true );
+  }
+
+  private void planStripe( int axisOrdinal, RolapEvaluator revaluator ) {
+    if ( axisOrdinal < 0 ) {
+      final Iterator<List<Member>> tupleIterator = ( (RolapAxis) slicerAxis ).getTupleList().iterator();
+      if ( tupleIterator.hasNext() ) {
+        execution.checkCancelOrTimeout();
+        final int savepoint = revaluator.savepoint();
+        try {
+          revaluator.setContext( tupleIterator.next() );
+          revaluator.evaluateCurrent();
+        } catch ( CellRequestQuantumExceededException e ) {
+          throw e;
+        } catch ( MondrianEvaluationException e ) {
+          // The cell is evaluated, and the error reported, later.
+        } finally {
+          revaluator.restore( savepoint );
+        }
+      }
+    } else {
+      for ( List<Member> tuple : ( (RolapAxis) axes[axisOrdinal] ).getTupleList() ) {
+        final int savepoint = revaluator.savepoint();
+        try {
+          revaluator.setEvalAxes( true );
+          revaluator.setContext( tuple );
+          planStripe( axisOrdinal - 1, revaluator );
+        } finally {
+          revaluator.restore( savepoint );
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of threads with which to evaluate the cells of this result, or 1 to evaluate them on the
+   * current thread.
+   *
+   * <p>
+   * Cells are evaluated in parallel only if {@link MondrianProperties#CellEvaluationParallelism} is greater than 1,
+   * the query has at least one axis, and none of the axes are high-cardinality (those are read in chunks by shared
+   * cursors). Profiling and dependency-testing evaluators, and queries with more than four axes, are always evaluated
+   * on the current thread.
+   */
+  private int getCellEvaluationParallelism( RolapEvaluator evaluator, Query query ) {
+    final int parallelism = MondrianProperties.instance().CellEvaluationParallelism.get();
+    if ( parallelism <= 1 || query.axes.length == 0 || evaluator.getClass() != RolapEvaluator.class ) {
+      return 1;
+    }
+    if ( query.axes.length > 4 ) {
+      // The cells of such a query are held in a CellInfoMap (see the
+      // constructor), which keys each new cell by this result's shared
+      // point rather than by the position it is given, so a stripe cannot
+      // create cells at its own positions.
+      return 1;
+    }
+    for ( int i = 0; i < axes.length; i++ ) {
+      if ( isAxisHighCardinality( i, ( (RolapAxis) axes[i] ).getTupleList() ) ) {
+        return 1;
+      }
+    }
+    if ( ( (RolapAxis) axes[axes.length - 1] ).getTupleList().size() < 2 ) {
+      return 1;
+    }
+    return parallelism;
+  }
+
+  /**
+   * Evaluates every cell once, splitting the positions of the outermost axis into stripes that are evaluated on a
+   * fork-join pool.
+   *
+   * <p>
+   * Each stripe has its own evaluator, forked from <code>evaluator</code> with a root of its own, its own
+   * {@link FastBatchingCellReader}, and a copy of this thread's local segment cache. When all stripes are done, the
+   * cell requests they recorded are merged into {@link #batchingReader}, in stripe order, so that they are loaded in
+   * one batch by the next {@link #phase()}. Each cell is evaluated by exactly one stripe, so the result is the same as
+   * that of {@link #executeStripe}.
+   *
+   * @return whether any stripe stopped because its reader reached the cell request limit
+   */
+  private boolean executeStripesInParallel( RolapEvaluator evaluator, Query query, final int[] pos,
+      int parallelism ) {
+    final int axisOrdinal = query.axes.length - 1;
+    final int size = ( (RolapAxis) axes[axisOrdinal] ).getTupleList().size();
+
+    // Done here rather than in each stripe, because it modifies members
+    // and this result's evaluator.
+    for ( int i = 0; i <= axisOrdinal; i++ ) {
+      processDistinctMeasures( ( (RolapAxis) axes[i] ).getTupleList() );
+    }
+
+    final int stripeCount = Math.min( size, parallelism * 4 );
+    final List<StripeTask> tasks = new ArrayList<StripeTask>( stripeCount );
+    for ( int i = 0; i < stripeCount; i++ ) {
+      tasks.add( new StripeTask( evaluator, axisOrdinal, pos, (int) ( (long) size * i / stripeCount ),
+          (int) ( (long) size * ( i + 1 ) / stripeCount ) ) );
+    }
+    return invokeForked( evaluator, tasks, parallelism );
+  }
+
+  /**
+   * Runs forked tasks on an {@link EvaluationPool} and waits for them to finish. Then merges the cell requests each
+   * task recorded into {@link #batchingReader}, in task order, and adds the tasks' expression cache statistics to
+   * <code>evaluator</code>.
+   *
+   * @return whether any task stopped because its reader reached the cell request limit
+   * @throws EvaluationPool.QueryThreadRequiredException
+   *           if any task stopped because it needed to evaluate a named set or parameter, which is done only on the
+   *           thread executing the query; the caller must then do the work of the tasks on that thread
+   */
+  private boolean invokeForked( RolapEvaluator evaluator, final List<? extends ForkedTask> tasks, int parallelism ) {
+    EvaluationPool.invoke( parallelism, tasks );
+
+    boolean quantumExceeded = false;
+    boolean queryThreadRequired = false;
+    for ( ForkedTask task : tasks ) {
+      batchingReader.merge( (FastBatchingCellReader) task.evaluator.cellReader );
+      evaluator.root.expResultCacheHitCount += task.evaluator.root.expResultCacheHitCount;
+      evaluator.root.expResultCacheMissCount += task.evaluator.root.expResultCacheMissCount;
+      if ( evaluator.root instanceof RolapResultEvaluatorRoot ) {
+        // Keep the named sets the task evaluated, so that the tasks of the
+        // next phase do not evaluate them again.
+        ( (RolapResultEvaluatorRoot) evaluator.root ).adoptNamedSets(
+            (RolapResultEvaluatorRoot) task.evaluator.root );
+      }
+      quantumExceeded |= task.quantumExceeded;
+      queryThreadRequired |= task.queryThreadRequired;
+    }
+    if ( queryThreadRequired ) {
+      throw EvaluationPool.QueryThreadRequiredException.INSTANCE;
+    }
+    return quantumExceeded;
+  }
+
+  /**
+   * Returns the number of distinct pool threads on which parts of this result have been evaluated in parallel (see
+   * {@link MondrianProperties#CellEvaluationParallelism} and {@link MondrianProperties#ConcurrentAxisEvaluation}), or
+   * 0 if it was evaluated entirely on the thread that executed the query.
+   *
+   * @return Number of pool threads
+   */
+  public int getForkedThreadCount() {
+    return forkedThreadNames.size();
+  }
+
+  /**
+   * Task that evaluates part of this result on a thread of the cell evaluation pool.
+   *
+   * <p>
+   * The task has its own evaluator, forked from the one it is created from with a root of its own, its own
+   * {@link FastBatchingCellReader}, and a copy of the creating thread's local segment cache.
+   */
+  private abstract class ForkedTask extends RecursiveAction {
+    final RolapEvaluator evaluator;
+    private final Map<RolapStar, RolapStar.Bar> bars = new HashMap<RolapStar, RolapStar.Bar>();
+    boolean quantumExceeded;
+    boolean queryThreadRequired;
+
+    ForkedTask( RolapEvaluator parent ) {
+      final RolapCube cube = (RolapCube) statement.getQuery().getCube();
+      for ( RolapStar star : cube.getSchema().getStars() ) {
+        bars.put( star, star.forkLocalBar() );
+      }
+      this.evaluator = parent.fork( parent.root.fork() );
+      this.evaluator.setCellReader( batchingReader.fork() );
+    }
+
+    /**
+     * Does the work of the task, with the forked local segment cache installed.
+     */
+    abstract void run();
+
+    protected final void compute() {
+      forkedThreadNames.add( Thread.currentThread().getName() );
+      for ( Map.Entry<RolapStar, RolapStar.Bar> entry : bars.entrySet() ) {
+        entry.getKey().setLocalBar( entry.getValue() );
+      }
+      final Locus locus = new Locus( execution, null, "Loading cells" );
+      Locus.push( locus );
+      try {
+        run();
+      } catch ( CellRequestQuantumExceededException e ) {
+        // The task's reader is full. Its requests are loaded in the
+        // next phase, and the task is run again.
+        quantumExceeded = true;
+      } catch ( EvaluationPool.QueryThreadRequiredException e ) {
+        queryThreadRequired = true;
+      } finally {
+        Locus.pop( locus );
+        for ( RolapStar star : bars.keySet() ) {
+          star.setLocalBar( null );
+        }
+      }
+    }
+  }
+
+  /**
+   * Evaluates the cells of a range of positions of the outermost axis.
+   */
+  private class StripeTask extends ForkedTask {
+    private final int axisOrdinal;
+    private final int[] pos;
+    private final int start;
+    private final int end;
+
+    StripeTask( RolapEvaluator parent, int axisOrdinal, int[] pos, int start, int end ) {
+      super( parent );
+      this.axisOrdinal = axisOrdinal;
+      this.pos = pos;
+      this.start = start;
+      this.end = end;
+    }
+
+    void run() {
+      final CellKey stripePoint = point.copy();
+      final TupleList tupleList = ( (RolapAxis) axes[axisOrdinal] ).getTupleList();
+      for ( int tupleIndex = start; tupleIndex < end; tupleIndex++ ) {
+        stripePoint.setAxis( axisOrdinal, tupleIndex );
+        final int savepoint = evaluator.savepoint();
+        try {
+          evaluator.setEvalAxes( true );
+          evaluator.setContext( tupleList.get( tupleIndex ) );
+          execution.checkCancelOrTimeout();
+          executeStripe( axisOrdinal - 1, evaluator, pos, stripePoint, true );
+        } finally {
+          evaluator.restore( savepoint );
+        }
+      }
+    }
+  }
+
+  /**
+   * Divides the axes of a query into groups that can be evaluated concurrently, or returns null if the axes are to be
+   * evaluated one after another.
+   *
+   * <p>
+   * Axes are evaluated concurrently only if {@link MondrianProperties#ConcurrentAxisEvaluation} is enabled. Two axes
+   * that use the same named set, directly or through the formula of a calculated member or another named set, are in
+   * the same group, so that the set is evaluated once. An axis that calls a <code>StrTo</code> function may use any
+   * set, so it is in the same group as every other axis. Queries with fewer than two groups, with high-cardinality
+   * axes (which are read lazily), or with profiling or dependency-testing evaluators are evaluated sequentially.
+   *
+   * @return list of groups of axis ordinals, or null
+   */
+  private List<List<Integer>> getConcurrentAxisGroups( RolapEvaluator evaluator, Query query ) {
+    if ( !MondrianProperties.instance().ConcurrentAxisEvaluation.get() || query.axes.length < 2
+        || evaluator.getClass() != RolapEvaluator.class || statement.getProfileHandler() != null ) {
+      return null;
+    }
+
+    // Union-find over axis ordinals.
+    final int[] groupOf = new int[query.axes.length];
+    final Map<NamedSet, Integer> namedSetAxes = new HashMap<NamedSet, Integer>();
+    int opaqueAxis = -1;
+    for ( int i = 0; i < query.axes.length; i++ ) {
+      groupOf[i] = i;
+      final Calc calc = query.axisCalcs[i];
+      if ( calc == null ) {
+        continue;
+      }
+      Type elementType = ( (SetType) calc.getType() ).getElementType();
+      if ( elementType instanceof TupleType ) {
+        elementType = ( (TupleType) elementType ).elementTypes[0];
+      }
+      final Dimension dimension = elementType.getDimension();
+      if ( dimension == null || dimension.isHighCardinality() ) {
+        return null;
+      }
+      final AxisDependencyVisitor visitor = new AxisDependencyVisitor();
+      query.axes[i].getSet().accept( visitor );
+      for ( NamedSet namedSet : visitor.namedSets ) {
+        final Integer other = namedSetAxes.get( namedSet );
+        if ( other == null ) {
+          namedSetAxes.put( namedSet, i );
+        } else {
+          union( groupOf, other, i );
+        }
+      }
+      if ( visitor.opaque ) {
+        opaqueAxis = i;
+      }
+    }
+    if ( opaqueAxis >= 0 ) {
+      for ( int i = 0; i < query.axes.length; i++ ) {
+        union( groupOf, opaqueAxis, i );
+      }
+    }
+
+    final Map<Integer, List<Integer>> groups = new LinkedHashMap<Integer, List<Integer>>();
+    for ( int i = 0; i < query.axes.length; i++ ) {
+      final int root = find( groupOf, i );
+      List<Integer> group = groups.get( root );
+      if ( group == null ) {
+        group = new ArrayList<Integer>();
+        groups.put( root, group );
+      }
+      group.add( i );
+    }
+    if ( groups.size() < 2 ) {
+      return null;
+    }
+    return new ArrayList<List<Integer>>( groups.values() );
+  }
+
+  private static int find( int[] groupOf, int i ) {
+    while ( groupOf[i] != i ) {
+      i = groupOf[i] = groupOf[groupOf[i]];
+    }
+    return i;
+  }
+
+  private static void union( int[] groupOf, int i, int j ) {
+    groupOf[find( groupOf, i )] = find( groupOf, j );
+  }
+
+  /**
+   * Evaluates the axes of a query, one forked task per group of axes, and waits for them to finish. The cell requests
+   * recorded while evaluating the axes are merged into {@link #batchingReader}, so that the next {@link #phase()}
+   * loads them in one batch.
+   *
+   * @return list of each axis's tuples, indexed by axis ordinal
+   * @throws CellRequestQuantumExceededException
+   *           if any task's reader reached the cell request limit
+   * @throws EvaluationPool.QueryThreadRequiredException
+   *           if any task needed to evaluate a named set or parameter
+   */
+  private TupleList[] executeAxesConcurrently( RolapEvaluator evaluator, Query query,
+      List<List<Member>> nonAllMembers, List<List<Integer>> axisGroups ) {
+    final TupleList[] axisLists = new TupleList[query.axes.length];
+    final List<AxisTask> tasks = new ArrayList<AxisTask>( axisGroups.size() );
+    for ( List<Integer> group : axisGroups ) {
+      tasks.add( new AxisTask( evaluator, query, nonAllMembers, group, axisLists ) );
+    }
+    final int parallelism = Math.max( 2, MondrianProperties.instance().CellEvaluationParallelism.get() );
+    if ( invokeForked( evaluator, tasks, parallelism ) ) {
+      throw CellRequestQuantumExceededException.INSTANCE;
+    }
+    return axisLists;
+  }
+
+  /**
+   * Evaluates a group of axes.
+   */
+  private class AxisTask extends ForkedTask {
+    private final Query query;
+    private final List<List<Member>> nonAllMembers;
+    private final List<Integer> axisOrdinals;
+    private final TupleList[] axisLists;
+
+    AxisTask( RolapEvaluator parent, Query query, List<List<Member>> nonAllMembers, List<Integer> axisOrdinals,
+        TupleList[] axisLists ) {
+      super( parent );
+      this.query = query;
+      this.nonAllMembers = nonAllMembers;
+      this.axisOrdinals = axisOrdinals;
+      this.axisLists = axisLists;
+    }
+
+    void run() {
+      for ( int i : axisOrdinals ) {
+        // Materialize here, so that the axis is not evaluated later, on
+        // another thread, by this task's evaluator.
+        axisLists[i] = TupleCollections.materialize(
+            evalExecute( nonAllMembers, nonAllMembers.size() - 1, evaluator, query.axes[i], query.axisCalcs[i] ),
+            true );
+      }
+    }
+  }
+
+  /**
+   * Visitor that collects the named sets an axis expression uses, following the formulas of calculated members and
+   * named sets, and notes whether it calls a function that may use any set.
+   */
+  private static class AxisDependencyVisitor extends MdxVisitorImpl {
+    final Set<NamedSet> namedSets = new HashSet<NamedSet>();
+    private final Set<Member> members = new HashSet<Member>();
+    boolean opaque;
+
+    public Object visit( NamedSetExpr namedSetExpr ) {
+      final NamedSet namedSet = namedSetExpr.getNamedSet();
+      if ( namedSets.add( namedSet ) && namedSet.getExp() != null ) {
+        // A set may use other sets, and calculated members, in its formula.
+        namedSet.getExp().accept( this );
+      }
+      return null;
+    }
+
+    public Object visit( MemberExpr memberExpr ) {
+      final Member member = memberExpr.getMember();
+      if ( member.isCalculated() && member.getExpression() != null && members.add( member ) ) {
+        member.getExpression().accept( this );
+      }
+      return null;
+    }
+
+    public Object visit( ResolvedFunCall call ) {
+      if ( call.getFunName().startsWith( "StrTo" ) ) {
+        opaque = true;
+      }
+      return null;
+    }
+  }
+
   /**
    * Evaluates an expression. Intended for evaluating named sets.
    *
@@ -999,7 +1573,13 @@ public class RolapResult extends ResultBase {
    *          Evaluation context (optional)
    * @return Result
    */
-  Object evaluateExp( Calc calc, RolapEvaluator slicerEvaluator, Evaluator contextEvaluator ) {
+  synchronized Object evaluateExp( Calc calc, RolapEvaluator slicerEvaluator, Evaluator contextEvaluator ) {
+    if ( EvaluationPool.isPoolThread() ) {
+      // The slicer evaluator's root, this result's reader, and the local
+      // segment cache that phase() loads into, belong to the thread
+      // executing the query. Let that thread evaluate the expression.
+      throw EvaluationPool.QueryThreadRequiredException.INSTANCE;
+    }
     int attempt = 0;
 
     RolapEvaluator evaluator = slicerEvaluator.push();
@@ -1009,6 +1589,10 @@ public class RolapResult extends ResultBase {
 
     final int savepoint = evaluator.savepoint();
     boolean dirty = batchingReader.isDirty();
+    // Named sets are evaluated, not planned, even if requested by a
+    // calculated member that is being planned.
+    final int planningDepth = evaluator.root.planningDepth;
+    evaluator.root.planningDepth = -1;
     try {
       while ( true ) {
         evaluator.restore( savepoint );
@@ -1054,11 +1638,21 @@ public class RolapResult extends ResultBase {
       final Object o = calc.evaluate( evaluator );
       return o;
     } finally {
+      evaluator.root.planningDepth = planningDepth;
       evaluator.restore( savepoint );
     }
   }
 
-  private void executeStripe( int axisOrdinal, RolapEvaluator revaluator, final int[] pos ) {
+  /**
+   * Evaluates the cells of the axes up to and including <code>axisOrdinal</code>, in the current context.
+   *
+   * @param stripePoint
+   *          Coordinates of the current cell; updated as the axes are walked
+   * @param forked
+   *          Whether this call is one of several running in parallel; see {@link #executeStripesInParallel}
+   */
+  private void executeStripe( int axisOrdinal, RolapEvaluator revaluator, final int[] pos, CellKey stripePoint,
+      boolean forked ) {
     if ( axisOrdinal < 0 ) {
       RolapAxis axis = (RolapAxis) slicerAxis;
       TupleList tupleList = axis.getTupleList();
@@ -1090,7 +1684,13 @@ public class RolapResult extends ResultBase {
 
           // Create a CellInfo object for the given position
           // integer array.
-          ci = cellInfos.create( point.getOrdinals() );
+          if ( forked ) {
+            synchronized ( cellInfos ) {
+              ci = cellInfos.create( stripePoint.getOrdinals() );
+            }
+          } else {
+            ci = cellInfos.create( stripePoint.getOrdinals() );
+          }
 
           String cachedFormatString = null;
 
@@ -1139,8 +1739,11 @@ public class RolapResult extends ResultBase {
     } else {
       RolapAxis axis = (RolapAxis) axes[axisOrdinal];
       TupleList tupleList = axis.getTupleList();
-      Util.discard( tupleList.size() ); // force materialize
       if ( isAxisHighCardinality( axisOrdinal, tupleList ) ) {
+        // Walk the axis with a cursor rather than asking for its size: if the
+        // axis was read by a KeysetMemberIterable, the cursor reads the next
+        // chunk of members only when the cells of the previous ones have been
+        // evaluated.
         final int limit = MondrianProperties.instance().HighCardChunkSize.get();
         if ( positionsIterators.get( axisOrdinal ) == null ) {
           final TupleCursor tupleCursor = tupleList.tupleCursor();
@@ -1173,39 +1776,32 @@ public class RolapResult extends ResultBase {
           pi = positionIndex;
         }
         for ( final List<Member> tuple : subTuples ) {
-          point.setAxis( axisOrdinal, pi );
+          stripePoint.setAxis( axisOrdinal, pi );
           final int savepoint = revaluator.savepoint();
           try {
             revaluator.setContext( tuple );
             execution.checkCancelOrTimeout();
-            executeStripe( axisOrdinal - 1, revaluator, pos );
+            executeStripe( axisOrdinal - 1, revaluator, pos, stripePoint, forked );
           } finally {
             revaluator.restore( savepoint );
           }
           pi++;
         }
       } else {
-        for ( List<Member> tuple : tupleList ) {
-          List<Member> measures = new ArrayList<Member>( statement.getQuery().getMeasuresMembers() );
-          for ( Member measure : measures ) {
-            if ( measure instanceof RolapBaseCubeMeasure ) {
-              RolapBaseCubeMeasure baseCubeMeasure = (RolapBaseCubeMeasure) measure;
-              if ( baseCubeMeasure.getAggregator() == RolapAggregator.DistinctCount ) {
-                processDistinctMeasureExpr( tuple, baseCubeMeasure );
-              }
-            }
-          }
+        Util.discard( tupleList.size() ); // force materialize
+        if ( !forked ) {
+          processDistinctMeasures( tupleList );
         }
 
         int tupleIndex = 0;
         for ( final List<Member> tuple : tupleList ) {
-          point.setAxis( axisOrdinal, tupleIndex );
+          stripePoint.setAxis( axisOrdinal, tupleIndex );
           final int savepoint = revaluator.savepoint();
           try {
             revaluator.setEvalAxes( true );
             revaluator.setContext( tuple );
             execution.checkCancelOrTimeout();
-            executeStripe( axisOrdinal - 1, revaluator, pos );
+            executeStripe( axisOrdinal - 1, revaluator, pos, stripePoint, forked );
           } finally {
             revaluator.restore( savepoint );
           }
@@ -1215,6 +1811,20 @@ public class RolapResult extends ResultBase {
     }
   }
 
+  private void processDistinctMeasures( TupleList tupleList ) {
+    for ( List<Member> tuple : tupleList ) {
+      List<Member> measures = new ArrayList<Member>( statement.getQuery().getMeasuresMembers() );
+      for ( Member measure : measures ) {
+        if ( measure instanceof RolapBaseCubeMeasure ) {
+          RolapBaseCubeMeasure baseCubeMeasure = (RolapBaseCubeMeasure) measure;
+          if ( baseCubeMeasure.getAggregator() == RolapAggregator.DistinctCount ) {
+            processDistinctMeasureExpr( tuple, baseCubeMeasure );
+          }
+        }
+      }
+    }
+  }
+
   private boolean isAxisHighCardinality( int axisOrdinal, TupleList tupleList ) {
     Boolean highCardinality = positionsHighCardinality.get( axisOrdinal );
     if ( highCardinality != null ) {
@@ -1599,6 +2209,38 @@ public class RolapResult extends ResultBase {
       this.result = result;
     }
 
+    /**
+     * Creates a root for evaluating cells of the same result on another thread. The new root starts with the values of
+     * the named sets that <code>parent</code> has evaluated; other named sets are evaluated in the new root.
+     */
+    RolapResultEvaluatorRoot( RolapResultEvaluatorRoot parent ) {
+      super( parent );
+      this.result = parent.result;
+      adoptNamedSets( parent );
+    }
+
+    /**
+     * Copies into this root the values of the static named sets that another root of the same result has evaluated
+     * and this root has not. Each copy has its own iteration state, so that the roots can be used on different
+     * threads. Named sets are evaluated in the context of the slicer, so the values are the same in every root.
+     *
+     * @param other Root of the same result
+     */
+    void adoptNamedSets( RolapResultEvaluatorRoot other ) {
+      for ( Map.Entry<String, RolapNamedSetEvaluator> entry : other.namedSetEvaluators.entrySet() ) {
+        if ( !namedSetEvaluators.containsKey( entry.getKey() ) ) {
+          final RolapNamedSetEvaluator copy = entry.getValue().copy( this );
+          if ( copy != null ) {
+            namedSetEvaluators.put( entry.getKey(), copy );
+          }
+        }
+      }
+    }
+
+    RolapEvaluatorRoot fork() {
+      return new RolapResultEvaluatorRoot( this );
+    }
+
     protected Evaluator.NamedSetEvaluator evaluateNamedSet( final NamedSet namedSet, boolean create ) {
       final String name = namedSet.getNameUniqueWithinQuery();
       RolapNamedSetEvaluator value;
@@ -1796,6 +2438,93 @@ public class RolapResult extends ResultBase {
   protected static final Map<Locale, ValueFormatter> formatValueFormatters =
       Collections.synchronizedMap( new HashMap<Locale, ValueFormatter>() );
 
+  /**
+   * Creates an empty container for the cells of a result with a given number of axes.
+   */
+  private static CellInfoContainer newCellInfoContainer( int axisCount, CellKey point ) {
+    return ( axisCount > 4 ) ? new CellInfoMap( point ) : new CellInfoPool( axisCount );
+  }
+
+  /**
+   * Copies the value, format string and formatter of every cell of a result from one container to another.
+   *
+   * @param from
+   *          Container to copy from; only read
+   * @param to
+   *          Container to copy to
+   * @param point
+   *          Cell position used by <code>to</code> if it is a {@link CellInfoMap}
+   */
+  private void copyCells( CellInfoContainer from, CellInfoContainer to, CellKey point ) {
+    final int[] pos = new int[axes.length];
+    for ( Axis axis : axes ) {
+      if ( axis.getPositions().isEmpty() ) {
+        return;
+      }
+    }
+    do {
+      final CellInfo fromCi = from.lookup( pos );
+      point.setOrdinals( pos );
+      final CellInfo ci = to.create( pos );
+      if ( fromCi != null ) {
+        ci.value = fromCi.value;
+        ci.formatString = fromCi.formatString;
+        ci.valueFormatter = fromCi.valueFormatter;
+      }
+    } while ( nextPosition( pos ) );
+  }
+
+  /**
+   * Advances a cell position to the next cell, varying the first axis fastest.
+   *
+   * @param pos
+   *          Cell position
+   * @return false if there is no next cell
+   */
+  private boolean nextPosition( int[] pos ) {
+    for ( int i = 0; i < pos.length; i++ ) {
+      if ( ++pos[i] < axes[i].getPositions().size() ) {
+        return true;
+      }
+      pos[i] = 0;
+    }
+    return false;
+  }
+
+  /**
+   * Immutable copy of the axes, cells and root evaluator context of an executed result.
+   *
+   * <p>
+   * A snapshot is only read after it has been created, so many threads may create results from it at the same time.
+   *
+   * @see RolapResultCache
+   */
+  static class Snapshot {
+    final Axis[] axes;
+    final Axis slicerAxis;
+    final CellInfoContainer cellInfos;
+    final Member[] members;
+    final List<Member> slicerMembers;
+    final Map<Hierarchy, Set<Member>> slicerMembersByHierarchy;
+    final TupleList slicerTuples;
+
+    private Snapshot( RolapResult result ) {
+      this.axes = result.axes.clone();
+      this.slicerAxis = result.slicerAxis;
+      final CellKey point = CellKey.Generator.newCellKey( axes.length );
+      this.cellInfos = newCellInfoContainer( axes.length, point );
+      result.copyCells( result.cellInfos, this.cellInfos, point );
+      final RolapEvaluator evaluator = result.evaluator;
+      this.members = evaluator.getMembers().clone();
+      this.slicerMembers = new ArrayList<Member>( evaluator.getSlicerMembers() );
+      this.slicerMembersByHierarchy = new HashMap<Hierarchy, Set<Member>>();
+      for ( Map.Entry<Hierarchy, Set<Member>> entry : evaluator.getSlicerMembersByHierarchy().entrySet() ) {
+        slicerMembersByHierarchy.put( entry.getKey(), new HashSet<Member>( entry.getValue() ) );
+      }
+      this.slicerTuples = evaluator.getSlicerTuples();
+    }
+  }
+
   /**
    * A CellInfo contains all of the information that a Cell requires. It is placed in the cellInfos map during
    * evaluation and serves as a constructor parameter for {@link RolapCell}.
@@ -0,0 +1,353 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.mdx.MdxVisitorImpl;
+import mondrian.mdx.MemberExpr;
+import mondrian.mdx.ResolvedFunCall;
+import mondrian.olap.Axis;
+import mondrian.olap.Exp;
+import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Parameter;
+import mondrian.olap.Query;
+import mondrian.olap.Util;
+import mondrian.olap.fun.UdfResolver;
+import mondrian.server.Statement;
+import mondrian.util.ByteString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Server-level cache of query results.
+ *
+ * <p>
+ * A result is keyed by the schema, the role and locale of the connection, the normalized text of the query and the
+ * values of its parameters. A query that matches a cached result is not evaluated at all. The cache holds an immutable
+ * {@link RolapResult.Snapshot} of the result, and each execution of the query gets its own {@link RolapResult}, with
+ * its own statement, execution and evaluator, created from the snapshot.
+ *
+ * <p>
+ * The results of queries that call a non-deterministic function such as <code>Now()</code> or any user-defined
+ * function, or that read another cube through <code>LookupCube</code>, are not cached, and neither are results whose
+ * cells are evaluated on demand because an axis has high cardinality.
+ *
+ * <p>
+ * Each entry records the stars of the cubes that the query reads. The entry is removed when cells of one of those
+ * stars are flushed through {@link mondrian.olap.CacheControl}, when the {@link mondrian.rolap.agg.SegmentCacheManager}
+ * learns that an external segment cache has removed a segment of one of those stars, and when members or the schema
+ * are flushed. A result is not added if any flush happened while its query was executing.
+ *
+ * <p>
+ * The cache is bounded by the estimated size of its results; the least recently used results are removed first.
+ *
+ * @see MondrianProperties#ResultCacheSize
+ */
+public class RolapResultCache {
+  private static final RolapResultCache INSTANCE = new RolapResultCache();
+
+  /**
+   * Estimated size of a result, not counting its cells and positions.
+   */
+  private static final int RESULT_BYTES = 1024;
+
+  /**
+   * Estimated size of a cell, including its value and formatted value.
+   */
+  private static final int CELL_BYTES = 128;
+
+  /**
+   * Estimated size of a member in a position of an axis.
+   */
+  private static final int MEMBER_BYTES = 16;
+
+  /**
+   * Upper-case names of the functions whose value may change between executions of a query, or that read cubes other
+   * than the cube of the query.
+   */
+  private static final Set<String> UNCACHEABLE_FUNCTIONS = new HashSet<>( Arrays.asList(
+    "NOW", "DATE", "TIME", "TIMER", "CURRENTDATEMEMBER", "CURRENTDATESTRING", "LOOKUPCUBE" ) );
+
+  private final Map<List<Object>, Entry> map = new LinkedHashMap<>( 16, 0.75f, true );
+
+  private long bytes;
+
+  /**
+   * Number of flushes so far. A result is not cached if a flush happened while its query was executing, because the
+   * result may have been computed from flushed cells or members.
+   */
+  private long flushCount;
+
+  private RolapResultCache() {
+  }
+
+  /**
+   * Returns the singleton instance.
+   */
+  public static RolapResultCache instance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns a snapshot of the cached result of a query, or null.
+   *
+   * @param query
+   *          Query
+   * @return Snapshot of cached result, or null
+   */
+  RolapResult.Snapshot get( Query query ) {
+    if ( !isEnabled( query ) ) {
+      return null;
+    }
+    final List<Object> key = key( query );
+    synchronized ( map ) {
+      final Entry entry = map.get( key );
+      return entry == null ? null : entry.snapshot;
+    }
+  }
+
+  /**
+   * Returns the number of flushes so far. Call this before executing a query, and pass the value to
+   * {@link #put(Query, RolapResult, long)}.
+   *
+   * @return Flush count
+   */
+  long getFlushCount() {
+    synchronized ( map ) {
+      return flushCount;
+    }
+  }
+
+  /**
+   * Adds the result of a query to the cache, unless the cache has been flushed since the query started executing.
+   *
+   * @param query
+   *          Query
+   * @param result
+   *          Result of executing the query; must not yet have been accessed by another thread
+   * @param startFlushCount
+   *          Value of {@link #getFlushCount()} before the query started executing
+   */
+  void put( Query query, RolapResult result, long startFlushCount ) {
+    if ( !isEnabled( query ) || result.hasHighCardinalityAxis() ) {
+      return;
+    }
+    final long budget = MondrianProperties.instance().ResultCacheSize.get();
+    final Entry entry = new Entry( (RolapSchema) query.getSchemaReader( false ).getSchema(), result.snapshot() );
+    for ( RolapCube cube : ( (RolapCube) query.getCube() ).getBaseCubes() ) {
+      entry.stars.add( starKey( cube.getStar() ) );
+    }
+    if ( entry.bytes > budget ) {
+      return;
+    }
+    final List<Object> key = key( query );
+    synchronized ( map ) {
+      if ( flushCount != startFlushCount ) {
+        return;
+      }
+      final Entry previous = map.put( key, entry );
+      if ( previous != null ) {
+        bytes -= previous.bytes;
+      }
+      bytes += entry.bytes;
+      final Iterator<Entry> iterator = map.values().iterator();
+      while ( bytes > budget && iterator.hasNext() ) {
+        bytes -= iterator.next().bytes;
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Removes the results that read from any of a list of stars.
+   *
+   * @param starList
+   *          Stars whose cells have been flushed
+   */
+  public void flush( List<RolapStar> starList ) {
+    final List<List<Object>> starKeys = new ArrayList<>();
+    for ( RolapStar star : starList ) {
+      starKeys.add( starKey( star ) );
+    }
+    synchronized ( map ) {
+      ++flushCount;
+      for ( Iterator<Entry> iterator = map.values().iterator(); iterator.hasNext(); ) {
+        final Entry entry = iterator.next();
+        for ( List<Object> starKey : starKeys ) {
+          if ( entry.stars.contains( starKey ) ) {
+            bytes -= entry.bytes;
+            iterator.remove();
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the results that read from the star with a given fact table in a schema with a given checksum.
+   *
+   * @param schemaChecksum
+   *          Checksum of the schema
+   * @param factTableAlias
+   *          Alias of the fact table of the star
+   */
+  public void flush( ByteString schemaChecksum, String factTableAlias ) {
+    final List<Object> starKey = Arrays.<Object>asList( schemaChecksum, factTableAlias );
+    synchronized ( map ) {
+      ++flushCount;
+      for ( Iterator<Entry> iterator = map.values().iterator(); iterator.hasNext(); ) {
+        final Entry entry = iterator.next();
+        if ( entry.stars.contains( starKey ) ) {
+          bytes -= entry.bytes;
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the results of all queries against a schema.
+   *
+   * @param schema
+   *          Schema
+   */
+  public void flush( RolapSchema schema ) {
+    synchronized ( map ) {
+      ++flushCount;
+      for ( Iterator<Entry> iterator = map.values().iterator(); iterator.hasNext(); ) {
+        final Entry entry = iterator.next();
+        if ( entry.schema == schema ) {
+          bytes -= entry.bytes;
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns whether results of a query may be cached: the cache must have a budget, caching must not be disabled,
+   * the query must not be being profiled, and the query must not call a user-defined function or a function in
+   * {@link #UNCACHEABLE_FUNCTIONS}.
+   */
+  private static boolean isEnabled( Query query ) {
+    final MondrianProperties properties = MondrianProperties.instance();
+    final Statement statement = query.getStatement();
+    return properties.ResultCacheSize.get() > 0
+      && !properties.DisableCaching.get()
+      && statement.getProfileHandler() == null
+      && !callsUncacheableFunction( query );
+  }
+
+  /**
+   * Returns whether a query calls a user-defined function or a function in {@link #UNCACHEABLE_FUNCTIONS}, directly
+   * or through a calculated
+   * member or named set. The calculated members of the cube are checked too, because a query may use them without
+   * naming them, for example through <code>[Measures].AllMembers</code>.
+   */
+  private static boolean callsUncacheableFunction( Query query ) {
+    final UncacheableFunctionVisitor visitor = new UncacheableFunctionVisitor();
+    query.accept( visitor );
+    for ( Member member : query.getCube().getSchemaReader( query.getConnection().getRole() )
+        .getCalculatedMembers() ) {
+      visitor.visitMember( member );
+    }
+    return visitor.found;
+  }
+
+  private static List<Object> key( Query query ) {
+    final RolapConnection connection = (RolapConnection) query.getConnection();
+    final List<Object> key = new ArrayList<>();
+    key.add( query.getSchemaReader( false ).getSchema() );
+    key.add( connection.getRole() );
+    key.add( connection.getLocale() );
+    key.add( Util.unparse( query ) );
+    for ( Parameter parameter : query.getParameters() ) {
+      key.add( parameter.getName() );
+      key.add( String.valueOf( parameter.getValue() ) );
+    }
+    return key;
+  }
+
+  private static List<Object> starKey( RolapStar star ) {
+    return Arrays.<Object>asList( star.getSchema().getChecksum(), star.getFactTable().getAlias() );
+  }
+
+  /**
+   * Visitor that looks for calls to user-defined functions and to functions in {@link #UNCACHEABLE_FUNCTIONS},
+   * following the expressions of the calculated members that it meets. A user-defined function may return a different
+   * value each time it is called, and cannot say whether it does, so it is treated as non-deterministic.
+   */
+  private static class UncacheableFunctionVisitor extends MdxVisitorImpl {
+    private final Set<Member> visitedMembers = new HashSet<>();
+    boolean found;
+
+    public Object visit( ResolvedFunCall call ) {
+      if ( UdfResolver.isUserDefined( call.getFunDef() )
+          || UNCACHEABLE_FUNCTIONS.contains( call.getFunName().toUpperCase( Locale.ROOT ) ) ) {
+        found = true;
+      }
+      return null;
+    }
+
+    public Object visit( MemberExpr memberExpr ) {
+      visitMember( memberExpr.getMember() );
+      return null;
+    }
+
+    void visitMember( Member member ) {
+      if ( found || !member.isCalculated() || !visitedMembers.add( member ) ) {
+        return;
+      }
+      final Exp expression = member.getExpression();
+      if ( expression != null ) {
+        expression.accept( this );
+      }
+    }
+  }
+
+  /**
+   * Snapshot of a cached result, and what it depends on.
+   */
+  private static class Entry {
+    final RolapSchema schema;
+    final RolapResult.Snapshot snapshot;
+    final Set<List<Object>> stars = new HashSet<>();
+    final long bytes;
+
+    Entry( RolapSchema schema, RolapResult.Snapshot snapshot ) {
+      this.schema = schema;
+      this.snapshot = snapshot;
+      long cellCount = 1;
+      long memberCount = 0;
+      for ( Axis axis : snapshot.axes ) {
+        final int positionCount = axis.getPositions().size();
+        cellCount *= positionCount;
+        if ( positionCount > 0 ) {
+          memberCount += (long) positionCount * axis.getPositions().get( 0 ).size();
+        }
+      }
+      this.bytes = RESULT_BYTES + cellCount * CELL_BYTES + memberCount * MEMBER_BYTES;
+    }
+  }
+}
+
+// End RolapResultCache.java
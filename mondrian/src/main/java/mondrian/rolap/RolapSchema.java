@@ -12,6 +12,7 @@
 
 package mondrian.rolap;
 
+import mondrian.calc.impl.CalcCodeGenerator;
 import mondrian.olap.Access;
 import mondrian.olap.Annotation;
 import mondrian.olap.CacheControl;
@@ -272,6 +273,9 @@ public class RolapSchema implements Schema {
 
     // Cleanup the agg JDBC cache
     flushJdbcSchema();
+
+    queryPlanCache.clear();
+    RolapResultCache.instance().flush( this );
   }
 
   protected void finalize() {
@@ -1286,6 +1290,42 @@ public class RolapSchema implements Schema {
     return nativeRegistry;
   }
 
+  private final CalcCodeGenerator calcCodeGenerator = new CalcCodeGenerator();
+
+  /**
+   * Returns the generator of code for the formulas of calculated members in queries against this schema. The classes
+   * it generates are released with the schema.
+   *
+   * @see MondrianProperties#GenerateCalcCode
+   */
+  public CalcCodeGenerator getCalcCodeGenerator() {
+    return calcCodeGenerator;
+  }
+
+  private final RolapQueryPlanCache queryPlanCache = new RolapQueryPlanCache();
+
+  RolapQueryPlanCache getQueryPlanCache() {
+    return queryPlanCache;
+  }
+
+  /**
+   * Returns the number of times a query was copied from this schema's query plan cache instead of being parsed.
+   *
+   * @see MondrianProperties#QueryPlanCacheSize
+   */
+  public int getQueryPlanCacheHitCount() {
+    return queryPlanCache.getHitCount();
+  }
+
+  /**
+   * Returns the number of times a query was looked up in this schema's query plan cache, but had to be parsed.
+   *
+   * @see MondrianProperties#QueryPlanCacheSize
+   */
+  public int getQueryPlanCacheMissCount() {
+    return queryPlanCache.getMissCount();
+  }
+
   /**
    * @return Returns the dataSourceChangeListener.
    */
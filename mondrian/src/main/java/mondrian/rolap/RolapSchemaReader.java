@@ -710,7 +710,7 @@ public class RolapSchemaReader
             AbstractCalc.simplifyEvaluator(calc, evaluator);
         if (evaluator.nativeEnabled()) {
             return schema.getNativeRegistry().createEvaluator(
-                revaluator, fun, args);
+                revaluator, fun, args, evaluator, calc);
         }
         return null;
     }
@@ -169,6 +169,65 @@ public class RolapStar {
         return null;
     }
 
+    /**
+     * Looks up the value of a cell in the local cache, as
+     * {@link #getCellFromCache(CellRequest, RolapAggregationManager.PinSet)}
+     * does, but first looks in the segment that held the previous cell of a
+     * batch. The cells of a batch usually have the same measure and
+     * constraints, so most are found without scanning the segments.
+     *
+     * @param hint Segment of the previous cell of the batch; updated
+     */
+    Object getCellFromCache(
+        CellRequest request,
+        RolapAggregationManager.PinSet pinSet,
+        CellLookupHint hint)
+    {
+        final AggregationKey aggregationKey = new AggregationKey(request);
+        final SegmentWithData segment = hint.segment;
+        if (segment != null
+            && segment.getConstrainedColumnsBitKey().equals(
+                request.getConstrainedColumnsBitKey())
+            && segment.matches(aggregationKey, request.getMeasure()))
+        {
+            // The segment is already pinned.
+            final Object o = segment.getCellValue(request.getSingleValues());
+            if (o != null) {
+                return o;
+            }
+        }
+        final Bar bar = localBars.get();
+        for (SegmentWithData segment2
+            : Util.GcIterator.over(bar.segmentRefs))
+        {
+            if (segment2 == segment
+                || !segment2.getConstrainedColumnsBitKey().equals(
+                    request.getConstrainedColumnsBitKey())
+                || !segment2.matches(aggregationKey, request.getMeasure()))
+            {
+                continue;
+            }
+            Object o = segment2.getCellValue(request.getSingleValues());
+            if (o != null) {
+                if (pinSet != null) {
+                    ((AggregationManager.PinSetImpl) pinSet).add(segment2);
+                }
+                hint.segment = segment2;
+                return o;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remembers the segment in which the previous cell of a batch was found.
+     *
+     * @see #getCellFromCache(CellRequest, RolapAggregationManager.PinSet, CellLookupHint)
+     */
+    static class CellLookupHint {
+        private SegmentWithData segment;
+    }
+
     public Object getCellFromAllCaches(final CellRequest request) {
         // First, try the local/thread cache.
         Object result = getCellFromCache(request, null);
@@ -189,11 +248,62 @@ public class RolapStar {
         return segment.getCellValue(request.getSingleValues());
     }
 
+    /**
+     * Returns the segments in the current thread's local cache that hold
+     * cells of the same measure, constrained columns and compound predicates
+     * as a given request.
+     *
+     * @param request Cell request
+     * @return Segments that may contain the requested cell
+     */
+    List<SegmentWithData> getLocalSegments(CellRequest request) {
+        final AggregationKey aggregationKey = new AggregationKey(request);
+        final List<SegmentWithData> segments =
+            new ArrayList<SegmentWithData>();
+        final Bar bar = localBars.get();
+        for (SegmentWithData segment : Util.GcIterator.over(bar.segmentRefs)) {
+            if (segment.getConstrainedColumnsBitKey().equals(
+                    request.getConstrainedColumnsBitKey())
+                && segment.matches(aggregationKey, request.getMeasure()))
+            {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
     public void register(SegmentWithData segment) {
         localBars.get().segmentRefs.add(
             new SoftReference<SegmentWithData>(segment));
     }
 
+    /**
+     * Returns a copy of the current thread's local cache. Another thread can
+     * install the copy with {@link #setLocalBar(Bar)} to read the segments
+     * that this thread has loaded; segments it loads itself go into the copy.
+     */
+    Bar forkLocalBar() {
+        final Bar bar = localBars.get();
+        final Bar copy = new Bar();
+        copy.aggregations.putAll(bar.aggregations);
+        copy.segmentRefs.addAll(bar.segmentRefs);
+        return copy;
+    }
+
+    /**
+     * Sets the current thread's local cache, or removes it if
+     * <code>bar</code> is null.
+     *
+     * @see #forkLocalBar()
+     */
+    void setLocalBar(Bar bar) {
+        if (bar == null) {
+            localBars.remove();
+        } else {
+            localBars.set(bar);
+        }
+    }
+
     public RolapStatisticsCache getStatisticsCache() {
         return statisticsCache;
     }
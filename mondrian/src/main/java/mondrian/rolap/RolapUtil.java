@@ -551,6 +551,83 @@ public class RolapUtil {
         return view;
     }
 
+    /**
+     * Returns whether an IN predicate with a given number of values should
+     * read them from an inline VALUES table, because there are at least
+     * {@link MondrianProperties#InValuesTableThreshold} of them and the
+     * dialect supports it.
+     *
+     * @param dialect Dialect
+     * @param valueCount Number of values, or of rows of values
+     * @return Whether to use a VALUES table
+     */
+    public static boolean useInValuesTable(Dialect dialect, int valueCount) {
+        final int threshold =
+            MondrianProperties.instance().InValuesTableThreshold.get();
+        return threshold > 0
+            && valueCount >= threshold
+            && dialect.supportsInValuesTable();
+    }
+
+    /**
+     * Appends the right-hand side of an IN predicate, preceded by
+     * " in ": either a list of literals, or, if
+     * {@link #useInValuesTable(Dialect, int)}, an inline VALUES table.
+     *
+     * @param dialect Dialect
+     * @param buf Buffer
+     * @param columnCount Number of columns; if more than one, each value is
+     *     a parenthesized row of literals, rather than a single literal
+     * @param values Values
+     */
+    public static void appendInList(
+        Dialect dialect,
+        StringBuilder buf,
+        int columnCount,
+        List<String> values)
+    {
+        if (columnCount == 1 && useInValuesTable(dialect, values.size())) {
+            final List<String> rows = new ArrayList<String>(values.size());
+            for (String value : values) {
+                rows.add("(" + value + ")");
+            }
+            values = rows;
+        }
+        appendInRows(dialect, buf, columnCount, values);
+    }
+
+    /**
+     * Appends the right-hand side of an IN predicate whose values are
+     * already parenthesized rows of literals, even if there is only one
+     * column, as in <code>("a") in (("x"), ("y"))</code>. Like
+     * {@link #appendInList}, but never wraps the values again.
+     *
+     * @param dialect Dialect
+     * @param buf Buffer
+     * @param columnCount Number of columns
+     * @param rows Rows, each a parenthesized list of literals
+     */
+    public static void appendInRows(
+        Dialect dialect,
+        StringBuilder buf,
+        int columnCount,
+        List<String> rows)
+    {
+        buf.append(" in ");
+        if (!useInValuesTable(dialect, rows.size())) {
+            buf.append('(');
+            for (int i = 0; i < rows.size(); i++) {
+                if (i > 0) {
+                    buf.append(", ");
+                }
+                buf.append(rows.get(i));
+            }
+            buf.append(')');
+            return;
+        }
+        buf.append(dialect.generateInValuesTable(columnCount, rows));
+    }
+
     public static RolapMember strip(RolapMember member) {
         if (member instanceof RolapCubeMember) {
             return ((RolapCubeMember) member).getRolapMember();
@@ -563,6 +640,17 @@ public class RolapUtil {
             compiler);
     }
 
+    /**
+     * Creates a compiler which memoizes expensive sub-expressions that depend
+     * on fewer hierarchies than the expressions that contain them.
+     *
+     * @param compiler Underlying compiler
+     * @return Memoizing compiler
+     */
+    public static ExpCompiler createMemoizingCompiler(ExpCompiler compiler) {
+        return new RolapMemoizingCompiler(compiler);
+    }
+
     /**
      * Writes to a string and also to an underlying writer.
      */
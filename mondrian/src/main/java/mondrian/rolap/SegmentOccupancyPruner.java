@@ -0,0 +1,249 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap;
+
+import mondrian.calc.TupleCursor;
+import mondrian.calc.TupleList;
+import mondrian.olap.Evaluator;
+import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
+import mondrian.rolap.agg.CellRequest;
+import mondrian.rolap.agg.SegmentOccupancy;
+import mondrian.rolap.agg.SegmentWithData;
+import mondrian.rolap.agg.ValueColumnPredicate;
+import mondrian.util.CancellationChecker;
+
+import org.apache.commons.collections.CollectionUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the tuples of a list whose cells are empty, using the segments that the current statement has already
+ * loaded, without evaluating the tuples.
+ *
+ * <p>
+ * For each measure, the cell request of one tuple tells which columns constrain the cells of the list, and which of
+ * them are fixed by the context. The loaded segments that have those columns are projected to a
+ * {@link SegmentOccupancy} bitmap over the columns of the list's hierarchies, and every tuple is then looked up by
+ * the keys of its members. A tuple is empty if, for every measure, a segment holds its cell and the cell is null.
+ *
+ * <p>
+ * Tuples that cannot be decided, such as tuples with calculated members, members of hierarchies that do not apply to
+ * a measure, or cells that are in no loaded segment, are not reported as empty, so the caller must still evaluate
+ * them. Nothing is reported if the cells of the measures are calculated in the current context, or if the context has
+ * compound members.
+ *
+ * @see MondrianProperties#SegmentOccupancyPruning
+ */
+public class SegmentOccupancyPruner {
+  /**
+   * Maximum number of bits in the occupancy bitmap of a segment. Larger segments are not used.
+   */
+  private static final int MAX_BITMAP_SIZE = 1 << 26;
+
+  /**
+   * Marks a member whose keys cannot be used to look up cells.
+   */
+  private static final Object[] UNUSABLE = new Object[ 0 ];
+
+  private SegmentOccupancyPruner() {
+  }
+
+  /**
+   * Returns the indexes of the tuples of a list whose cells are known to be empty for every measure of a collection,
+   * in the current context of an evaluator.
+   *
+   * @param evaluator Evaluator; its context is restored before this method returns
+   * @param list      List of tuples
+   * @param measures  Measures
+   * @return Indexes of empty tuples, or null if none are known to be empty
+   */
+  public static BitSet findEmptyTuples( Evaluator evaluator, TupleList list, Collection<Member> measures ) {
+    if ( evaluator.getClass() != RolapEvaluator.class || list.isEmpty() || measures.isEmpty() ) {
+      return null;
+    }
+    final RolapEvaluator rolapEvaluator = (RolapEvaluator) evaluator;
+    if ( !CollectionUtils.isEmpty( rolapEvaluator.getAggregationLists() ) ) {
+      return null;
+    }
+    for ( Member measure : measures ) {
+      if ( !( measure instanceof RolapStoredMeasure ) ) {
+        return null;
+      }
+    }
+    BitSet empty = null;
+    for ( Member measure : measures ) {
+      final BitSet measureEmpty = findEmptyTuples( rolapEvaluator, list, (RolapStoredMeasure) measure );
+      if ( measureEmpty == null ) {
+        return null;
+      }
+      if ( empty == null ) {
+        empty = measureEmpty;
+      } else {
+        empty.and( measureEmpty );
+      }
+      if ( empty.isEmpty() ) {
+        return null;
+      }
+    }
+    return empty;
+  }
+
+  private static BitSet findEmptyTuples( RolapEvaluator evaluator, TupleList list, RolapStoredMeasure measure ) {
+    final RolapStar.Measure starMeasure = (RolapStar.Measure) measure.getStarMeasure();
+    final RolapCube baseCube = measure.getCube();
+    final int arity = list.getArity();
+
+    // Find a tuple whose members all constrain the cell, and the columns
+    // that each of its members constrains.
+    final BitKey[] shape = new BitKey[ arity ];
+    int representative = -1;
+    final TupleCursor cursor = list.tupleCursor();
+    for ( int i = 0; representative < 0 && cursor.forward(); i++ ) {
+      representative = i;
+      for ( int j = 0; j < arity; j++ ) {
+        final CellRequest request = memberRequest( cursor.member( j ), starMeasure, baseCube );
+        if ( request == null ) {
+          representative = -1;
+          break;
+        }
+        shape[ j ] = request.getConstrainedColumnsBitKey();
+      }
+    }
+    if ( representative < 0 ) {
+      return null;
+    }
+
+    // The request of the tuple's cell tells which segments hold the cells,
+    // and the keys of the columns that the context fixes.
+    final CellRequest request;
+    final int savepoint = evaluator.savepoint();
+    try {
+      for ( int j = 0; j < arity; j++ ) {
+        evaluator.setContext( list.get( j, representative ) );
+      }
+      evaluator.setContext( measure );
+      if ( evaluator.hasCalculations() ) {
+        return null;
+      }
+      request = RolapAggregationManager.makeRequest( evaluator );
+    } finally {
+      evaluator.restore( savepoint );
+    }
+    if ( request == null || request.isUnsatisfiable() || !hasSingleValues( request ) ) {
+      return null;
+    }
+    final BitKey requestBitKey = request.getConstrainedColumnsBitKey();
+    BitKey tupleBitKey = requestBitKey.emptyCopy();
+    for ( BitKey bitKey : shape ) {
+      if ( bitKey.intersects( tupleBitKey ) || !requestBitKey.isSuperSetOf( bitKey ) ) {
+        return null;
+      }
+      tupleBitKey = tupleBitKey.or( bitKey );
+    }
+    final RolapStar.Column[] columns = request.getConstrainedColumns();
+    final int[][] groups = new int[ arity ][];
+    for ( int j = 0; j < arity; j++ ) {
+      groups[ j ] = new int[ shape[ j ].cardinality() ];
+      int k = 0;
+      for ( int i = 0; i < columns.length; i++ ) {
+        if ( shape[ j ].get( columns[ i ].getBitPosition() ) ) {
+          groups[ j ][ k++ ] = i;
+        }
+      }
+    }
+    final List<SegmentOccupancy> occupancies = new ArrayList<SegmentOccupancy>();
+    for ( SegmentWithData segment : starMeasure.getStar().getLocalSegments( request ) ) {
+      final SegmentOccupancy occupancy =
+          SegmentOccupancy.create( segment, groups, request.getSingleValues(), MAX_BITMAP_SIZE );
+      if ( occupancy != null ) {
+        occupancies.add( occupancy );
+      }
+    }
+    if ( occupancies.isEmpty() ) {
+      return null;
+    }
+
+    // Look up each tuple in the segments.
+    final List<Map<Member, Object[]>> memberKeys = new ArrayList<Map<Member, Object[]>>( arity );
+    for ( int j = 0; j < arity; j++ ) {
+      memberKeys.add( new HashMap<Member, Object[]>() );
+    }
+    final BitSet empty = new BitSet( list.size() );
+    final Object[][] groupKeys = new Object[ arity ][];
+    final TupleCursor cursor2 = list.tupleCursor();
+    tuples:
+    for ( int i = 0; cursor2.forward(); i++ ) {
+      CancellationChecker.checkCancelOrTimeout( i, evaluator.root.execution );
+      for ( int j = 0; j < arity; j++ ) {
+        final Member member = cursor2.member( j );
+        Object[] keys = memberKeys.get( j ).get( member );
+        if ( keys == null ) {
+          final CellRequest memberRequest = memberRequest( member, starMeasure, baseCube );
+          keys =
+              memberRequest == null || !memberRequest.getConstrainedColumnsBitKey().equals( shape[ j ] )
+                  ? UNUSABLE
+                  : memberRequest.getSingleValues();
+          memberKeys.get( j ).put( member, keys );
+        }
+        if ( keys == UNUSABLE ) {
+          continue tuples;
+        }
+        groupKeys[ j ] = keys;
+      }
+      for ( SegmentOccupancy occupancy : occupancies ) {
+        final int state = occupancy.lookup( groupKeys );
+        if ( state != SegmentOccupancy.NOT_IN_SEGMENT ) {
+          if ( state == SegmentOccupancy.EMPTY ) {
+            empty.set( i );
+          }
+          break;
+        }
+      }
+    }
+    return empty;
+  }
+
+  /**
+   * Returns a request that holds the constraints that a member adds to the cells of a measure, or null if the member
+   * is calculated or does not constrain the cells to single values.
+   */
+  private static CellRequest memberRequest( Member member, RolapStar.Measure starMeasure, RolapCube baseCube ) {
+    if ( !( member instanceof RolapCubeMember ) || member.isCalculated() || member.isEvaluated() ) {
+      return null;
+    }
+    final RolapCubeMember cubeMember = (RolapCubeMember) member;
+    final CellRequest request = new CellRequest( starMeasure, false, false );
+    if ( cubeMember.getLevel().getLevelReader().constrainRequest( cubeMember, baseCube, request )
+        || request.isUnsatisfiable() || !hasSingleValues( request ) ) {
+      return null;
+    }
+    return request;
+  }
+
+  private static boolean hasSingleValues( CellRequest request ) {
+    for ( int i = 0; i < request.getNumValues(); i++ ) {
+      if ( !( request.getValueAt( i ) instanceof ValueColumnPredicate ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
+
+// End SegmentOccupancyPruner.java
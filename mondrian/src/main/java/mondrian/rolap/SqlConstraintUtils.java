@@ -528,6 +528,116 @@ public class SqlConstraintUtils {
     }
   }
 
+  /**
+   * Restricts the members of <code>level</code> read by a native set query to the part of the hierarchy the current
+   * role can see, so that inaccessible rows are discarded by the database rather than filtered out in Java afterwards.
+   *
+   * <p>
+   * The member grants of the role are translated into an IN predicate on the deepest level above <code>level</code>
+   * whose accessible members still have partial (custom) access. If that member list exceeds
+   * {@link MondrianProperties#MaxConstraints}, the dialect cannot handle unlimited value lists, and the list is too
+   * short to be read from a VALUES table (see {@link RolapUtil#useInValuesTable}), a coarser ancestor level is used
+   * instead. The predicate therefore may admit rows that the role cannot see; callers must still apply
+   * the usual access checks to the result.
+   *
+   * @param sqlQuery
+   *          the query to modify
+   * @param baseCube
+   *          base cube if virtual
+   * @param aggStar
+   *          aggregate star if available
+   * @param schemaReader
+   *          role-aware schema reader
+   * @param level
+   *          level whose members are being read
+   * @return whether a predicate was added
+   */
+  public static boolean addRoleMemberConstraint( SqlQuery sqlQuery, RolapCube baseCube, AggStar aggStar,
+      SchemaReader schemaReader, RolapLevel level ) {
+    final Role role = schemaReader.getRole();
+    if ( role.getAccess( level.getHierarchy() ) != Access.CUSTOM ) {
+      return false;
+    }
+    final List<RolapMember> grantMembers = getRoleGrantMembers( schemaReader, level, sqlQuery.getDialect() );
+    if ( grantMembers.isEmpty() || !isLevelInAggStar( baseCube, aggStar, grantMembers.get( 0 ).getLevel() ) ) {
+      return false;
+    }
+    final String where =
+        generateSingleValueInExpr( sqlQuery, baseCube, aggStar, grantMembers, grantMembers.get( 0 ).getLevel(),
+            false, false, true );
+    if ( where.length() == 0 ) {
+      return false;
+    }
+    sqlQuery.addWhere( where );
+    return true;
+  }
+
+  /**
+   * Returns the accessible members of the deepest level above <code>level</code> that still has members with custom
+   * access, limited so that the resulting IN list respects {@link MondrianProperties#MaxConstraints} unless it is read
+   * from a VALUES table. Returns an empty
+   * list if no level above <code>level</code> restricts access.
+   */
+  private static List<RolapMember> getRoleGrantMembers( SchemaReader schemaReader, RolapLevel level,
+      Dialect dialect ) {
+    final Role role = schemaReader.getRole();
+    final int maxConstraints =
+        dialect.supportsUnlimitedValueList() ? Integer.MAX_VALUE : MondrianProperties.instance().MaxConstraints.get();
+    List<RolapMember> grantMembers = Collections.emptyList();
+    for ( Level affectedLevel : schemaReader.getHierarchyLevels( level.getHierarchy() ) ) {
+      if ( affectedLevel.getDepth() >= level.getDepth() ) {
+        break;
+      }
+      if ( affectedLevel.isAll() ) {
+        continue;
+      }
+      List<Member> availableMembers = schemaReader.getLevelMembers( affectedLevel, false );
+      if ( availableMembers.size() > maxConstraints
+          && !RolapUtil.useInValuesTable( dialect, availableMembers.size() ) ) {
+        // Too many to inline; keep the coarser constraint, if any.
+        break;
+      }
+      List<RolapMember> levelMembers = new ArrayList<RolapMember>( availableMembers.size() );
+      boolean hasCustom = false;
+      for ( Member availableMember : availableMembers ) {
+        if ( !availableMember.isAll() ) {
+          levelMembers.add( (RolapMember) availableMember );
+        }
+        hasCustom |= role.getAccess( availableMember ) == Access.CUSTOM;
+      }
+      grantMembers = levelMembers;
+      if ( !hasCustom ) {
+        // Every accessible member grants its whole subtree; going
+        // deeper cannot make the constraint any tighter.
+        break;
+      }
+    }
+    return grantMembers;
+  }
+
+  /**
+   * Returns whether the key columns of <code>level</code> and of its non-unique ancestors are available in the
+   * aggregate table, if there is one.
+   */
+  private static boolean isLevelInAggStar( RolapCube baseCube, AggStar aggStar, RolapLevel level ) {
+    if ( aggStar == null ) {
+      return true;
+    }
+    for ( RolapLevel l = level; l != null && !l.isAll(); l = (RolapLevel) l.getParentLevel() ) {
+      if ( !( l instanceof RolapCubeLevel ) ) {
+        return false;
+      }
+      final RolapStar.Column column = ( (RolapCubeLevel) l ).getBaseStarKeyColumn( baseCube );
+      if ( column == null || aggStar.lookupColumn( column.getBitPosition() ) == null ) {
+        return false;
+      }
+      if ( l.isUnique() ) {
+        break;
+      }
+    }
+    return true;
+  }
+
   /**
    * Gets a map of MondrianDef.Expression to the set of sliced members associated with each expression.
    *
@@ -1422,7 +1532,10 @@ public class SqlConstraintUtils {
     } else {
       StringBuilder builder = new StringBuilder();
       builder.append( "( " );
-      if ( !values.isEmpty() ) {
+      if ( RolapUtil.useInValuesTable( query.getDialect(), values.size() ) ) {
+        builder.append( columnString );
+        RolapUtil.appendInList( query.getDialect(), builder, 1, values );
+      } else if ( !values.isEmpty() ) {
         builder.append( columnString ).append( " IN (" );
         for ( int i = 0; i < values.size(); i++ ) {
           String value = values.get( i );
@@ -1497,7 +1610,7 @@ public class SqlConstraintUtils {
       List<RolapMember> members, RolapLevel fromLevel, boolean restrictMemberTypes,
       Map<RolapMember, List<RolapMember>> parentWithNullToChildrenMap ) {
     final StringBuilder columnBuf = new StringBuilder();
-    final StringBuilder valueBuf = new StringBuilder();
+    final List<String> values = new ArrayList<String>();
     final StringBuilder memberBuf = new StringBuilder();
 
     columnBuf.append( "(" );
@@ -1523,10 +1636,9 @@ public class SqlConstraintUtils {
     }
 
     columnBuf.append( ")" );
+    final int columnCount = ordinalInMultiple;
 
     // generate the RHS of the IN predicate
-    valueBuf.append( "(" );
-    int memberOrdinal = 0;
     for ( RolapMember m : members ) {
       if ( m.isCalculated() ) {
         if ( restrictMemberTypes ) {
@@ -1587,20 +1699,16 @@ public class SqlConstraintUtils {
       // generated successfully.
       if ( !containsNull ) {
         memberBuf.append( ")" );
-        if ( memberOrdinal++ > 0 ) {
-          valueBuf.append( ", " );
-        }
-        valueBuf.append( memberBuf );
+        values.add( memberBuf.toString() );
       }
     }
 
     StringBuilder condition = new StringBuilder();
-    if ( memberOrdinal > 0 ) {
+    if ( !values.isEmpty() ) {
       // SQLs are generated for some members.
       condition.append( columnBuf );
-      condition.append( " in " );
-      condition.append( valueBuf );
-      condition.append( ")" );
+      // Each value is already a parenthesized row, even for one column.
+      RolapUtil.appendInRows( sqlQuery.getDialect(), condition, columnCount, values );
     }
 
     return condition.toString();
@@ -1793,7 +1901,8 @@ public class SqlConstraintUtils {
       StarColumnPredicate cc = getColumnPredicates( column, c );
 
       if ( !dialect.supportsUnlimitedValueList() && cc instanceof ListColumnPredicate && ( (ListColumnPredicate) cc )
-          .getPredicates().size() > maxConstraints ) {
+          .getPredicates().size() > maxConstraints && !RolapUtil.useInValuesTable( dialect, ( (ListColumnPredicate) cc )
+          .getPredicates().size() ) ) {
         // Simply get them all, do not create where-clause.
         // Below are two alternative approaches (and code). They
         // both have problems.
@@ -388,6 +388,12 @@ class SqlMemberSource implements MemberReader, MemberBuilder {
             RolapMemberBase memberBase = new RolapMemberBase( parent, level, value );
             memberBase.setOrdinal( lastOrdinal++ );
             member = memberBase;
+
+            final MemberPropertyStore propertyStore = level.getMemberPropertyStore();
+
+            if ( propertyStore != null ) {
+              propertyStore.register( member );
+            }
 /*
 RME is this right
                         if (level.getOrdinalExp() != level.getKeyExp()) {
@@ -416,7 +422,7 @@ RME is this right
             column++;
           }
 
-          Property[] properties = level.getProperties();
+          Property[] properties = level.getSqlProperties();
 
           for ( Property property : properties ) {
             // REVIEW emcdermid 9-Jul-2009:
@@ -550,7 +556,7 @@ RME is this right
         sqlQuery.addOrderBy( expString, keyAlias, true, false, true, true );
       }
 
-      RolapProperty[] properties = level.getProperties();
+      RolapProperty[] properties = level.getSqlProperties();
 
       for ( RolapProperty property : properties ) {
         final MondrianDef.Expression propExpr = property.getExp();
@@ -725,7 +731,7 @@ RME is this right
       }
     }
 
-    RolapProperty[] properties = level.getProperties();
+    RolapProperty[] properties = level.getSqlProperties();
 
     for ( RolapProperty property : properties ) {
       final MondrianDef.Expression exp = property.getExp();
@@ -841,7 +847,7 @@ RME is this right
       return true;
     }
 
-    RolapProperty[] properties = level.getProperties();
+    RolapProperty[] properties = level.getSqlProperties();
 
     for ( RolapProperty property : properties ) {
       if ( !property.getExp().equals( keyExp ) ) {
@@ -1105,7 +1111,7 @@ RME is this right
         new RolapParentChildMemberNoClosure( parentMember, rolapChildLevel, value, member );
     }
 
-    Property[] properties = childLevel.getProperties();
+    Property[] properties = childLevel.getSqlProperties();
     final List<SqlStatement.Accessor> accessors = stmt.getAccessors();
 
     if ( !childLevel.getOrdinalExp().equals( childLevel.getKeyExp() ) ) {
@@ -1122,6 +1128,14 @@ RME is this right
       member.setProperty( property.getName(), getPooledValue( accessors.get( columnOffset + j ).get() ) );
     }
 
+    final MemberPropertyStore propertyStore = rolapChildLevel.getMemberPropertyStore();
+
+    if ( propertyStore != null ) {
+      // Properties were not read; queue the member so that its properties
+      // are loaded in the same batch as its siblings'.
+      propertyStore.register( member );
+    }
+
     cache.putMember( key, member );
     return member;
   }
@@ -1245,7 +1259,7 @@ RME is this right
       sqlQuery.addOrderBy( keySql, keyAlias, true, false, true, true );
     }
 
-    final RolapProperty[] properties = level.getProperties();
+    final RolapProperty[] properties = level.getSqlProperties();
 
     for ( RolapProperty property : properties ) {
       final MondrianDef.Expression exp = property.getExp();
@@ -1310,7 +1324,7 @@ RME is this right
       }
     }
 
-    RolapProperty[] properties = level.getProperties();
+    RolapProperty[] properties = level.getSqlProperties();
 
     for ( RolapProperty property : properties ) {
       final MondrianDef.Expression exp = property.getExp();
@@ -261,7 +261,7 @@ public class SqlTupleReader implements TupleReader {
                   + " It should have 1:1 relationship" );
             }
           }
-          column += childLevel.getProperties().length;
+          column += childLevel.getSqlProperties().length;
 
           // Cache in our intermediate map the key/member pair
           // for later lookups of children.
@@ -1259,7 +1259,7 @@ public class SqlTupleReader implements TupleReader {
             lvl.getName() ) ) {
             foundUniqueKeyLevelName = true;
           }
-          for ( RolapProperty p : lvl.getProperties() ) {
+          for ( RolapProperty p : lvl.getSqlProperties() ) {
             if ( !p.dependsOnLevelValue() ) {
               needsGroupBy = true;
               // GROUP BY is required, so break out of
@@ -1458,7 +1458,7 @@ public class SqlTupleReader implements TupleReader {
         aggColumn.getTable().addToFrom( sqlQuery, false, true );
       }
 
-      RolapProperty[] properties = currLevel.getProperties();
+      RolapProperty[] properties = currLevel.getSqlProperties();
       for ( RolapProperty property : properties ) {
         final MondrianDef.Expression propExp =
           targetExp.get( property.getExp() );
@@ -113,7 +113,7 @@ public class Target extends TargetBase {
                 {
                     ++column;
                 }
-                column += childLevel.getProperties().length;
+                column += childLevel.getSqlProperties().length;
             }
             setCurrMember(member);
         }
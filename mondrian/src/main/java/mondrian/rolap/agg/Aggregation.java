@@ -229,11 +229,15 @@ public class Aggregation {
                 continue;
             }
 
-            if (valueCount > maxConstraints) {
+            if (valueCount > maxConstraints
+                && !RolapUtil.useInValuesTable(
+                    star.getSqlQueryDialect(), valueCount))
+            {
                 // Some databases can handle only a limited number of elements
                 // in 'WHERE IN (...)'. This set is greater than this database
                 // can handle, so we drop this constraint. Hopefully there are
-                // other constraints that will limit the result.
+                // other constraints that will limit the result. (Unless the
+                // list will be generated as a VALUES table.)
                 bloats[i] = 1.0; // will be optimized away
                 continue;
             }
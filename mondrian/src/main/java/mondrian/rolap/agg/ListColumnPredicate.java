@@ -323,7 +323,8 @@ public class ListColumnPredicate extends AbstractColumnPredicate {
         final int marker = buf.length(); // to allow backtrack later
         buf.append(expr);
         ValueColumnPredicate firstNotNull = null;
-        buf.append(" in (");
+        final List<String> values = new ArrayList<String>(predicates.size());
+        final StringBuilder valueBuf = new StringBuilder();
         for (StarColumnPredicate predicate1 : predicates) {
             final ValueColumnPredicate predicate2 =
                 (ValueColumnPredicate) predicate1;
@@ -331,15 +332,15 @@ public class ListColumnPredicate extends AbstractColumnPredicate {
             if (key == RolapUtil.sqlNullValue) {
                 continue;
             }
-            if (notNullCount > 0) {
-                buf.append(", ");
-            } else {
+            if (notNullCount == 0) {
                 firstNotNull = predicate2;
             }
             ++notNullCount;
-            sqlQuery.getDialect().quote(buf, key, column.getDatatype());
+            valueBuf.setLength(0);
+            sqlQuery.getDialect().quote(valueBuf, key, column.getDatatype());
+            values.add(valueBuf.toString());
         }
-        buf.append(')');
+        RolapUtil.appendInList(sqlQuery.getDialect(), buf, 1, values);
 
         // If all of the predicates were non-null, return what we've got, for
         // example, "x in (1, 2, 3)".
@@ -195,25 +195,24 @@ public class OrPredicate extends ListPredicate {
             // Multi-IN list
             buf.append(")");
         }
-        buf.append(" in (");
-
-        boolean firstPredicate = true;
+        final List<String> values =
+            new ArrayList<String>(predicateList.size());
+        final StringBuilder valueBuf = new StringBuilder();
         for (StarPredicate predicate : predicateList) {
-            if (firstPredicate) {
-                firstPredicate = false;
-            } else {
-                buf.append(", ");
-            }
-
+            valueBuf.setLength(0);
             if (predicate instanceof AndPredicate) {
                 ((AndPredicate) predicate).toInListSql(
-                    sqlQuery, buf, inListRhsBitKey);
+                    sqlQuery, valueBuf, inListRhsBitKey);
             } else {
                 assert predicate instanceof ValueColumnPredicate;
-                ((ValueColumnPredicate) predicate).toInListSql(sqlQuery, buf);
+                ((ValueColumnPredicate) predicate).toInListSql(
+                    sqlQuery, valueBuf);
             }
+            values.add(valueBuf.toString());
         }
-        buf.append(")");
+        RolapUtil.appendInList(
+            sqlQuery.getDialect(), buf,
+            inListRhsBitKey.toBitSet().cardinality(), values);
         buf.append(")");
     }
 
@@ -19,6 +19,7 @@ import mondrian.olap.MondrianServer;
 import mondrian.olap.Util;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.CacheControlImpl;
+import mondrian.rolap.RolapResultCache;
 import mondrian.rolap.RolapSchema;
 import mondrian.rolap.RolapStar;
 import mondrian.rolap.RolapStoredMeasure;
@@ -718,6 +719,8 @@ public class SegmentCacheManager {
     }
 
     public void visit( ExternalSegmentDeletedEvent event ) {
+      RolapResultCache.instance().flush(
+        event.header.schemaChecksum, event.header.rolapStarFactTableName );
       final SegmentCacheIndex index =
         event.cacheMgr.indexRegistry.getIndex( event.header );
       if ( index == null ) {
@@ -789,6 +792,7 @@ public class SegmentCacheManager {
       final List<Member> measures = CacheControlImpl.findMeasures( region );
       final SegmentColumn[] flushRegion = CacheControlImpl.findAxisValues( region );
       final List<RolapStar> starList = CacheControlImpl.getStarList( region );
+      RolapResultCache.instance().flush( starList );
 
       final List<SegmentHeader> headers = getIntersectingHeaders( measures, flushRegion );
 
@@ -0,0 +1,174 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+package mondrian.rolap.agg;
+
+import mondrian.olap.Util;
+import mondrian.rolap.CellKey;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Bitmap of the cells of a segment that have a value, projected onto groups of its axes.
+ *
+ * <p>
+ * The axes of the segment are divided into fixed axes, each of which has one key for every cell of interest, and
+ * groups of axes, each of which has a combination of keys that varies from cell to cell. Typically, a group holds the
+ * columns that constrain the members of one hierarchy of a crossjoin, and the fixed axes hold the columns of the
+ * context. The bitmap has one bit for each combination of the groups' keys, which is set if the cell with those keys
+ * and the fixed keys is not null. Testing a cell is then a matter of finding the offset of its keys in the axes, and
+ * reading one bit.
+ *
+ * @see SegmentDataset
+ */
+public class SegmentOccupancy {
+  /**
+   * Value of {@link #lookup(Object[][])} for a cell that the segment holds and that is null.
+   */
+  public static final int EMPTY = 0;
+
+  /**
+   * Value of {@link #lookup(Object[][])} for a cell that the segment holds and that has a value.
+   */
+  public static final int OCCUPIED = 1;
+
+  /**
+   * Value of {@link #lookup(Object[][])} for a cell that the segment does not hold.
+   */
+  public static final int NOT_IN_SEGMENT = 2;
+
+  private final SegmentAxis[] axes;
+  private final int[][] groups;
+  private final int[] multipliers;
+
+  /**
+   * Bits of the occupied cells, or null if the fixed keys make every cell null.
+   */
+  private final BitSet occupied;
+
+  private SegmentOccupancy( SegmentAxis[] axes, int[][] groups, int[] multipliers, BitSet occupied ) {
+    this.axes = axes;
+    this.groups = groups;
+    this.multipliers = multipliers;
+    this.occupied = occupied;
+  }
+
+  /**
+   * Creates the occupancy bitmap of a segment.
+   *
+   * <p>
+   * Returns null if the segment cannot answer for the cells: if it has excluded regions, if one of the fixed keys
+   * is outside the segment, or if the bitmap would have more than <code>maxSize</code> bits.
+   *
+   * @param segment Segment
+   * @param groups  Ordinals of the axes in each group, ascending
+   * @param keys    Key of each axis; the keys of axes in groups are ignored
+   * @param maxSize Maximum number of bits in the bitmap
+   * @return Occupancy, or null
+   */
+  public static SegmentOccupancy create( SegmentWithData segment, int[][] groups, Object[] keys, int maxSize ) {
+    if ( !segment.getExcludedRegions().isEmpty() ) {
+      return null;
+    }
+    final SegmentAxis[] axes = segment.axes;
+    final boolean[] grouped = new boolean[ axes.length ];
+    final int[] multipliers = new int[ groups.length ];
+    long size = 1;
+    for ( int g = groups.length - 1; g >= 0; g-- ) {
+      multipliers[ g ] = (int) size;
+      for ( int axis : groups[ g ] ) {
+        grouped[ axis ] = true;
+        size *= axes[ axis ].getKeys().length;
+      }
+      if ( size > maxSize ) {
+        return null;
+      }
+    }
+    final int[] fixedOffsets = new int[ axes.length ];
+    boolean allNull = false;
+    for ( int i = 0; i < axes.length; i++ ) {
+      if ( grouped[ i ] ) {
+        continue;
+      }
+      fixedOffsets[ i ] = axes[ i ].getOffset( (Comparable) keys[ i ] );
+      if ( fixedOffsets[ i ] < 0 ) {
+        if ( !axes[ i ].wouldContain( keys[ i ] ) ) {
+          return null;
+        }
+        // The key passes the axis' predicate but no fact row has it.
+        allNull = true;
+      }
+    }
+    if ( allNull ) {
+      return new SegmentOccupancy( axes, groups, multipliers, null );
+    }
+
+    final BitSet occupied = new BitSet();
+    cells:
+    for ( Map.Entry<CellKey, Object> entry : segment.getData() ) {
+      final Object value = entry.getValue();
+      if ( value == null || value == Util.nullValue ) {
+        continue;
+      }
+      final CellKey cellKey = entry.getKey();
+      for ( int i = 0; i < axes.length; i++ ) {
+        if ( !grouped[ i ] && cellKey.getAxis( i ) != fixedOffsets[ i ] ) {
+          continue cells;
+        }
+      }
+      int bit = 0;
+      for ( int g = 0; g < groups.length; g++ ) {
+        int offset = 0;
+        for ( int axis : groups[ g ] ) {
+          offset = offset * axes[ axis ].getKeys().length + cellKey.getAxis( axis );
+        }
+        bit += offset * multipliers[ g ];
+      }
+      occupied.set( bit );
+    }
+    return new SegmentOccupancy( axes, groups, multipliers, occupied );
+  }
+
+  /**
+   * Looks up a cell.
+   *
+   * @param groupKeys Keys of the axes of each group, in the order of the axes
+   * @return {@link #EMPTY}, {@link #OCCUPIED} or {@link #NOT_IN_SEGMENT}
+   */
+  public int lookup( Object[][] groupKeys ) {
+    int bit = 0;
+    boolean missing = false;
+    for ( int g = 0; g < groups.length; g++ ) {
+      int offset = 0;
+      for ( int j = 0; j < groups[ g ].length; j++ ) {
+        final SegmentAxis axis = axes[ groups[ g ][ j ] ];
+        final Object key = groupKeys[ g ][ j ];
+        final int keyOffset = axis.getOffset( (Comparable) key );
+        if ( keyOffset < 0 ) {
+          if ( !axis.wouldContain( key ) ) {
+            return NOT_IN_SEGMENT;
+          }
+          missing = true;
+        }
+        offset = offset * axis.getKeys().length + keyOffset;
+      }
+      bit += offset * multipliers[ g ];
+    }
+    if ( missing || occupied == null ) {
+      return EMPTY;
+    }
+    return occupied.get( bit ) ? OCCUPIED : EMPTY;
+  }
+}
+
+// End SegmentOccupancy.java
@@ -593,8 +593,11 @@ public class CrossJoinArgFactory {
         // be natively evaluated.
 
         // First check that the member list will not result in a predicate
-        // longer than the underlying DB could support.
-        if (argSize > MondrianProperties.instance().MaxConstraints.get()) {
+        // longer than the underlying DB could support. A list that will be
+        // generated as a VALUES table is not limited.
+        if (argSize > MondrianProperties.instance().MaxConstraints.get()
+            && !RolapUtil.useInValuesTable(evaluator.getDialect(), argSize))
+        {
             argSizeNotSupported = true;
         }
 
@@ -647,11 +650,25 @@ public class CrossJoinArgFactory {
         // Descendants of a member in an access-controlled hierarchy cannot be
         // converted to SQL. (We could be smarter; we don't currently notice
         // when the member is in a part of the hierarchy that is not
-        // access-controlled.)
+        // access-controlled.) If role constraints are pushed into SQL, treat
+        // them like Children and Level.Members: the query is restricted to
+        // the granted members and the remainder is filtered afterwards.
         final Access access = role.getAccess(level.getHierarchy());
         switch (access) {
         case ALL:
             break;
+        case CUSTOM:
+            if (!MondrianProperties.instance().EnableNativeRoleConstraints
+                .get())
+            {
+                return null;
+            }
+            final RollupPolicy rollupPolicy =
+                role.getAccessDetails(level.getHierarchy()).getRollupPolicy();
+            if (rollupPolicy == RollupPolicy.FULL) {
+                return null;
+            }
+            break;
         default:
             return null;
         }
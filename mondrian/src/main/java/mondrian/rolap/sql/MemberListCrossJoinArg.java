@@ -63,8 +63,11 @@ public class MemberListCrossJoinArg implements CrossJoinArg {
         // be natively evaluated.
 
         // First check that the member list will not result in a predicate
-        // longer than the underlying DB could support.
-        if (argSize > MondrianProperties.instance().MaxConstraints.get()) {
+        // longer than the underlying DB could support. A list that will be
+        // generated as a VALUES table is not limited.
+        if (argSize > MondrianProperties.instance().MaxConstraints.get()
+            && !RolapUtil.useInValuesTable(evaluator.getDialect(), argSize))
+        {
             argSizeNotSupported = true;
         }
 
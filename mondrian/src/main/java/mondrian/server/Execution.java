@@ -75,6 +75,8 @@ public class Execution {
   private int cellCachePendingCount;
   private int expCacheHitCount;
   private int expCacheMissCount;
+  private int parallelChunkCount;
+  private int prunedTupleCount;
 
   /**
    * Execution id, global within this JVM instance.
@@ -435,6 +437,46 @@ public class Execution {
   public int getExpCacheMissCount() {
     return expCacheMissCount;
   }
+
+  /**
+   * Records that a set has been evaluated in parallel, split into a given number of chunks.
+   *
+   * @param chunkCount
+   *          Number of chunks
+   */
+  public void addParallelChunkCount( int chunkCount ) {
+    this.parallelChunkCount += chunkCount;
+  }
+
+  /**
+   * Returns the total number of chunks of the sets that this execution evaluated in parallel.
+   *
+   * @return Number of chunks
+   */
+  public int getParallelChunkCount() {
+    return parallelChunkCount;
+  }
+
+  /**
+   * Records that tuples have been removed from a non-empty set because the loaded segments show them to be empty.
+   *
+   * @param tupleCount
+   *          Number of tuples
+   *
+   * @see mondrian.rolap.SegmentOccupancyPruner
+   */
+  public void addPrunedTupleCount( int tupleCount ) {
+    this.prunedTupleCount += tupleCount;
+  }
+
+  /**
+   * Returns the total number of tuples that this execution removed from non-empty sets without evaluating them.
+   *
+   * @return Number of tuples
+   */
+  public int getPrunedTupleCount() {
+    return prunedTupleCount;
+  }
 }
 
 // End Execution.java
@@ -16,6 +16,7 @@ import mondrian.olap.MondrianException;
 import mondrian.olap.MondrianServer;
 import mondrian.olap4j.CatalogFinder;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.NativeDecisionHistory;
 import mondrian.rolap.RolapConnection;
 import mondrian.rolap.RolapResultShepherd;
 import mondrian.rolap.RolapSchema;
@@ -98,6 +99,8 @@ class MondrianServerImpl extends MondrianServer implements CatalogFinder, XmlaHa
 
   private final MonitorImpl monitor = new MonitorImpl();
 
+  private final NativeDecisionHistory nativeDecisionHistory = new NativeDecisionHistory();
+
   private final AggregationManager aggMgr;
 
   private boolean shutdown = false;
@@ -210,6 +213,15 @@ class MondrianServerImpl extends MondrianServer implements CatalogFinder, XmlaHa
     return aggMgr;
   }
 
+  @Override
+  public NativeDecisionHistory getNativeDecisionHistory() {
+    if ( shutdown ) {
+      throw new MondrianException( SERVER_ALREADY_SHUTDOWN );
+    }
+
+    return nativeDecisionHistory;
+  }
+
   @Override
   public OlapConnection getConnection( String databaseName, String catalogName, String roleName ) throws SQLException {
     if ( shutdown ) {
@@ -380,7 +392,7 @@ class MondrianServerImpl extends MondrianServer implements CatalogFinder, XmlaHa
   }
 
   /**
-   * Registers the MonitorImpl associated with this server as an MBean accessible via JMX.
+   * Registers the MonitorImpl and NativeDecisionHistory associated with this server as MBeans accessible via JMX.
    */
   private void registerMBean() {
     MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
@@ -388,6 +400,7 @@ class MondrianServerImpl extends MondrianServer implements CatalogFinder, XmlaHa
     try {
       ObjectName mxbeanName = new ObjectName( "mondrian.server:type=Server-" + id );
       mbs.registerMBean( getMonitor(), mxbeanName );
+      mbs.registerMBean( nativeDecisionHistory, new ObjectName( "mondrian.server:type=NativeDecisions-" + id ) );
     } catch ( MalformedObjectNameException | NotCompliantMBeanException | InstanceAlreadyExistsException
               | MBeanRegistrationException e ) {
       LOGGER.warn( "Failed to register JMX MBean", e );
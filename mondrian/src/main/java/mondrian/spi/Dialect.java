@@ -629,6 +629,41 @@ public interface Dialect {
      */
     boolean supportsMultiValueInExpr();
 
+    /**
+     * Returns true if this dialect can compare expressions with the rows of
+     * an inline VALUES table in an IN predicate. E.g.,
+     *
+     * <code>WHERE col1 IN (SELECT * FROM (VALUES (val1), (val2)) AS t (c0))</code>
+     *
+     * <p>A database typically plans such a predicate as a join, and parses
+     * it more cheaply than an IN list with many literals.
+     *
+     * @return true if the dialect supports IN predicates on VALUES tables
+     *
+     * @see #generateInValuesTable(int, java.util.List)
+     */
+    boolean supportsInValuesTable();
+
+    /**
+     * Generates the right-hand side of an IN predicate that reads its rows
+     * from an inline VALUES table.
+     *
+     * <p>For example, given two columns and the rows
+     * <code>(1, 'a')</code> and <code>(2, 'b')</code>, the default
+     * implementation generates:
+     *
+     * <pre>
+     * (SELECT * FROM (VALUES (1, 'a'), (2, 'b')) AS "t" ("c0", "c1"))
+     * </pre>
+     *
+     * @param columnCount Number of columns
+     * @param rows Rows, each a parenthesized list of literals
+     * @return SQL string
+     *
+     * @see #supportsInValuesTable()
+     */
+    String generateInValuesTable(int columnCount, List<String> rows);
+
     /**
      * Returns whether this Dialect supports the given concurrency type
      * in combination with the given result set type.
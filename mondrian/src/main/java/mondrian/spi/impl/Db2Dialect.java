@@ -46,6 +46,10 @@ public class Db2Dialect extends JdbcDialectImpl {
     public boolean supportsGroupingSets() {
         return true;
     }
+
+    public boolean supportsInValuesTable() {
+        return true;
+    }
 }
 
 // End Db2Dialect.java
@@ -47,6 +47,11 @@ public class Db2OldAs400Dialect extends Db2Dialect {
         // subqueries in the FROM clause.
         return false;
     }
+
+    public boolean supportsInValuesTable() {
+        // Nor VALUES tables, which are subqueries in the FROM clause too.
+        return false;
+    }
 }
 
 // End Db2OldAs400Dialect.java
@@ -910,6 +910,32 @@ public class JdbcDialectImpl implements Dialect {
         return false;
     }
 
+    public boolean supportsInValuesTable() {
+        return false;
+    }
+
+    public String generateInValuesTable(int columnCount, List<String> rows) {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("(SELECT * FROM (VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(rows.get(i));
+        }
+        buf.append(") AS ");
+        quoteIdentifier("t", buf);
+        buf.append(" (");
+        for (int j = 0; j < columnCount; j++) {
+            if (j > 0) {
+                buf.append(", ");
+            }
+            quoteIdentifier("c" + j, buf);
+        }
+        buf.append("))");
+        return buf.toString();
+    }
+
     public boolean supportsResultSetConcurrency(
         int type,
         int concurrency)
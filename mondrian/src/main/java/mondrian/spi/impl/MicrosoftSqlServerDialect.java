@@ -66,6 +66,10 @@ public class MicrosoftSqlServerDialect extends JdbcDialectImpl {
         return false;
     }
 
+    public boolean supportsInValuesTable() {
+        return true;
+    }
+
     @Override
     public void quoteBooleanLiteral(StringBuilder buf, String value) {
       // avoid padding origin values with blanks to n for char(n),
@@ -57,6 +57,11 @@ public class NetezzaDialect extends PostgreSqlDialect {
         return false;
     }
 
+    @Override
+    public boolean supportsInValuesTable() {
+        return false;
+    }
+
     @Override
     public String generateRegularExpression(String source, String javaRegex) {
         throw new UnsupportedOperationException();
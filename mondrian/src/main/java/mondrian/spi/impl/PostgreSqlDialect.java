@@ -55,6 +55,10 @@ public class PostgreSqlDialect extends JdbcDialectImpl {
         return true;
     }
 
+    public boolean supportsInValuesTable() {
+        return true;
+    }
+
     @Override
     protected String generateOrderByNulls(
         String expr,
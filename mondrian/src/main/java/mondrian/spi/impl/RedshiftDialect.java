@@ -63,6 +63,11 @@ public class RedshiftDialect extends PostgreSqlDialect {
     return true;
   }
 
+  @Override
+  public boolean supportsInValuesTable() {
+    return false;
+  }
+
   @Override
   public String generateRegularExpression( String source, String javaRegex ) {
     try {
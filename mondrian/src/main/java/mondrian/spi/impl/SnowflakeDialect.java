@@ -58,6 +58,11 @@ public class SnowflakeDialect extends JdbcDialectImpl {
     return false;
   }
 
+  @Override
+  public boolean supportsInValuesTable() {
+    return true;
+  }
+
   @Override
   public boolean allowsRegularExpressionInWhereClause() {
     return true;
@@ -5367,6 +5367,7 @@ TODO: see above
 
     private void outputMembers( OlapConnection connection, List<Member> members, final Catalog catalog, Cube cube,
                                 List<Row> rows ) throws SQLException {
+      getExtra( connection ).loadMemberProperties( members );
       for ( Member member : members ) {
         outputMember( connection, member, catalog, cube, rows );
       }
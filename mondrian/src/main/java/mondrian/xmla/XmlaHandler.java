@@ -1302,6 +1302,14 @@ public class XmlaHandler {
 
     void checkMemberOrdinal( Member member ) throws OlapException;
 
+    /**
+     * Loads the properties of a list of members in bulk, ahead of writing
+     * them out one by one.
+     *
+     * @param members Members
+     */
+    void loadMemberProperties( List<Member> members );
+
     /**
      * Returns whether we should return a cell property in the XMLA result.
      *
@@ -2957,6 +2965,10 @@ public class XmlaHandler {
       // nothing to do
     }
 
+    public void loadMemberProperties( List<Member> members ) {
+      // nothing to do
+    }
+
     public boolean shouldReturnCellProperty( CellSet cellSet, Property cellProperty, boolean evenEmpty ) {
       return true;
     }